@@ -27,6 +27,8 @@ public class ExecutorUtils {
     * Do not use this, when adding tasks to the Executor after calling this method!<br/><br/>
     * Uses 1000 ms as polling interval to check if finished and a max time of 30000 ms 
     * for awaiting termination of the Executor after all tasks have been completed.
+    * For a {@link TrackingThreadPoolExecutor}, e.g. created by {@link #newFixedThreadPool(int, String)}, this returns
+    * as soon as the last task is finished.
     */
    public static void awaitCompletion( @Nonnull ThreadPoolExecutor executor ) {
       awaitCompletion(executor, 1000, 30000);
@@ -35,10 +37,16 @@ public class ExecutorUtils {
    /**
     * Waits for all scheduled tasks of an Executor to finish, and shuts it down.<br/>
     * Do not use this, when adding tasks to the Executor after calling this method!  
-    * @param sleepIntervalInMillis The polling interval for the checks on the Executor
+    * @param sleepIntervalInMillis The polling interval for the checks on the Executor, a {@link TrackingThreadPoolExecutor}
+    *           signals the completion of its tasks immediately, so it is checked only for being shut down in this interval
     * @param shutdownWaitIntervalInMillis The maximum time to wait for the shutdown of the Executor after all tasks have been completed
     */
    public static void awaitCompletion( @Nonnull ThreadPoolExecutor executor, long sleepIntervalInMillis, long shutdownWaitIntervalInMillis ) {
+      if ( executor instanceof TrackingThreadPoolExecutor ) {
+         awaitCompletion((TrackingThreadPoolExecutor)executor, sleepIntervalInMillis, shutdownWaitIntervalInMillis);
+         return;
+      }
+
       long taskCount = getTaskCount(executor);
       while ( true ) {
          boolean check = false;
@@ -71,11 +79,36 @@ public class ExecutorUtils {
       }
    }
 
+   /**
+    * @return a {@link TrackingThreadPoolExecutor}, so {@link #awaitCompletion(ThreadPoolExecutor)} doesn't need to poll
+    */
    public static ThreadPoolExecutor newFixedThreadPool( int nThreads, String threadNamePrefix ) {
-      return new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+      return new TrackingThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
          new NamedThreadFactory(threadNamePrefix));
    }
 
+   private static void awaitCompletion( TrackingThreadPoolExecutor executor, long sleepIntervalInMillis, long shutdownWaitIntervalInMillis ) {
+      try {
+         while ( !executor.awaitCompletion(sleepIntervalInMillis, TimeUnit.MILLISECONDS) ) {
+            if ( executor.isShutdown() ) {
+               throw new RuntimeException("Task executor was stopped early.");
+            }
+         }
+      }
+      catch ( InterruptedException argh ) {
+         Thread.currentThread().interrupt();
+         throw new RuntimeException("Interrupted while waiting for the tasks of the executor.", argh);
+      }
+
+      executor.shutdown();
+      try {
+         executor.awaitTermination(shutdownWaitIntervalInMillis, TimeUnit.MILLISECONDS);
+      }
+      catch ( InterruptedException argh ) {
+         // ignore
+      }
+   }
+
    private static long getTaskCount( ThreadPoolExecutor executor ) {
       TIntIntMap counts = new TIntIntHashMap();
       for ( int i = 5; i >= 0; i-- ) {
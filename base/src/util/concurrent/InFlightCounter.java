@@ -0,0 +1,95 @@
+package util.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Counts units of work in flight and wakes up waiting threads the moment the count drops to zero.<br/>
+ * Work spawned by a running unit must be registered with {@link #increment()} before the spawning unit calls
+ * {@link #decrement()}, then the count can only reach zero after all transitively spawned work has drained.<br/>
+ * Unlike a {@link java.util.concurrent.Phaser} the number of registered units is not limited to 65535.
+ */
+public class InFlightCounter {
+
+   private final AtomicLong _count = new AtomicLong();
+   private final Object     _lock  = new Object();
+
+
+   /**
+    * Waits until the count is zero.
+    */
+   public void await() throws InterruptedException {
+      synchronized ( _lock ) {
+         while ( _count.get() > 0 ) {
+            _lock.wait();
+         }
+      }
+   }
+
+   /**
+    * Waits until the count is zero, or the timeout elapsed, or {@link #wakeUp()} was called.
+    * @return true, if the count is zero
+    */
+   public boolean await( long timeout, TimeUnit unit ) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      synchronized ( _lock ) {
+         long waitNanos;
+         if ( _count.get() > 0 && (waitNanos = deadline - System.nanoTime()) > 0 ) {
+            TimeUnit.NANOSECONDS.timedWait(_lock, waitNanos);
+         }
+         return _count.get() <= 0;
+      }
+   }
+
+   /**
+    * @return the count after decrementing
+    */
+   public long decrement() {
+      long count = _count.decrementAndGet();
+      if ( count <= 0 ) {
+         wakeUp();
+      }
+      return count;
+   }
+
+   /**
+    * @return the count after decrementing
+    */
+   public long decrement( long n ) {
+      if ( n == 0 ) {
+         return _count.get();
+      }
+      long count = _count.addAndGet(-n);
+      if ( count <= 0 ) {
+         wakeUp();
+      }
+      return count;
+   }
+
+   public long get() {
+      return _count.get();
+   }
+
+   /**
+    * @return the count after incrementing
+    */
+   public long increment() {
+      return _count.incrementAndGet();
+   }
+
+   @Override
+   public String toString() {
+      return String.valueOf(_count.get());
+   }
+
+   /**
+    * Wakes up all threads waiting in {@link #await(long, TimeUnit)} without changing the count, e.g. when the work was
+    * aborted and the waiting threads have to check for that.
+    */
+   public void wakeUp() {
+      synchronized ( _lock ) {
+         _lock.notifyAll();
+      }
+   }
+}
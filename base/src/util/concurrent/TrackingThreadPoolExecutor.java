@@ -0,0 +1,88 @@
+package util.concurrent;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A ThreadPoolExecutor which counts all tasks that were accepted but are not finished yet in an {@link InFlightCounter}.
+ * Unlike the task counts of ThreadPoolExecutor, which are only approximations, the counter is exact and signals the
+ * completion of the last task immediately. Since a task is counted as finished only after it returned, tasks executed
+ * by other tasks are always counted before their parent finishes.
+ */
+public class TrackingThreadPoolExecutor extends ThreadPoolExecutor {
+
+   private final InFlightCounter _inFlight = new InFlightCounter();
+
+
+   public TrackingThreadPoolExecutor( int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue,
+         ThreadFactory threadFactory ) {
+      super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+   }
+
+   /**
+    * Waits until all accepted tasks are finished, or the executor was shut down, or the timeout elapsed.
+    * @return true, if all accepted tasks are finished
+    */
+   public boolean awaitCompletion( long timeout, TimeUnit unit ) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while ( !_inFlight.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) ) {
+         if ( isShutdown() || System.nanoTime() - deadline >= 0 ) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   @Override
+   public void execute( Runnable command ) {
+      _inFlight.increment();
+      try {
+         super.execute(command);
+      }
+      catch ( RejectedExecutionException argh ) {
+         _inFlight.decrement();
+         throw argh;
+      }
+   }
+
+   /**
+    * @return the number of tasks accepted, but not finished yet
+    */
+   public long getInFlightTaskCount() {
+      return _inFlight.get();
+   }
+
+   @Override
+   public boolean remove( Runnable task ) {
+      boolean removed = super.remove(task);
+      if ( removed ) {
+         _inFlight.decrement();
+      }
+      return removed;
+   }
+
+   @Override
+   public void shutdown() {
+      super.shutdown();
+      _inFlight.wakeUp();
+   }
+
+   @Override
+   public List<Runnable> shutdownNow() {
+      List<Runnable> notExecutedTasks = super.shutdownNow();
+      _inFlight.decrement(notExecutedTasks.size());
+      _inFlight.wakeUp();
+      return notExecutedTasks;
+   }
+
+   @Override
+   protected void afterExecute( Runnable r, Throwable t ) {
+      super.afterExecute(r, t);
+      _inFlight.decrement();
+   }
+}
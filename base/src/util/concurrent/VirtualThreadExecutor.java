@@ -0,0 +1,162 @@
+package util.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Runs every task on a new virtual thread, while a fair semaphore limits the number of tasks running concurrently.
+ * Tasks blocked in I/O don't occupy a platform thread, so the concurrency can be sized by what the network and the
+ * remote side allow, not by thread stack memory.<br/>
+ * Virtual threads are only available with Java 21+, since this library is compiled for Java 11 they are created by
+ * reflection, check {@link #isAvailable()} before using this class.<br/>
+ * Tasks should not block while holding a monitor, i.e. inside <code>synchronized</code>, because that pins the
+ * virtual thread to its carrier thread. Use the locks of <code>java.util.concurrent</code> instead.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+
+   private static final Logger _log = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+   private static Boolean      _available;
+
+
+   /**
+    * @return true, if the running JVM supports virtual threads without special flags
+    */
+   public static synchronized boolean isAvailable() {
+      if ( _available == null ) {
+         try {
+            createThreadFactory("test");
+            _available = true;
+         }
+         catch ( UnsupportedOperationException argh ) {
+            _log.debug("virtual threads are not available: " + argh.getMessage());
+            _available = false;
+         }
+      }
+      return _available;
+   }
+
+   private static ThreadFactory createThreadFactory( String threadNamePrefix ) {
+      try {
+         Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+         Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+         builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 1L);
+         return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+      }
+      catch ( InvocationTargetException argh ) {
+         // e.g. with Java 19 or 20 without --enable-preview
+         throw new UnsupportedOperationException("virtual threads are not supported by this JVM", argh.getCause());
+      }
+      catch ( ReflectiveOperationException argh ) {
+         throw new UnsupportedOperationException("virtual threads are not supported by this JVM", argh);
+      }
+   }
+
+
+   private final ThreadFactory   _threadFactory;
+   private final Semaphore       _permits;
+   private final Set<Thread>     _threads  = ConcurrentHashMap.newKeySet();
+   private final InFlightCounter _inFlight = new InFlightCounter();
+   private volatile boolean      _shutdown;
+
+
+   /**
+    * @throws UnsupportedOperationException if virtual threads are not available
+    */
+   public VirtualThreadExecutor( int maxConcurrency, String threadNamePrefix ) {
+      _threadFactory = createThreadFactory(threadNamePrefix + "-virtual-");
+      _permits = new Semaphore(maxConcurrency, true);
+   }
+
+   @Override
+   public boolean awaitTermination( long timeout, TimeUnit unit ) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while ( !isTerminated() ) {
+         long waitNanos = deadline - System.nanoTime();
+         if ( waitNanos <= 0 ) {
+            return false;
+         }
+         _inFlight.await(waitNanos, TimeUnit.NANOSECONDS);
+      }
+      return true;
+   }
+
+   /**
+    * Starts a new virtual thread, which waits for a permit and then runs the task. The caller never blocks.
+    */
+   @Override
+   public void execute( Runnable command ) {
+      if ( _shutdown ) {
+         throw new RejectedExecutionException("executor was shut down");
+      }
+      _inFlight.increment();
+      Thread thread = _threadFactory.newThread(() -> {
+         try {
+            _permits.acquire();
+            try {
+               command.run();
+            }
+            finally {
+               _permits.release();
+            }
+         }
+         catch ( InterruptedException argh ) {
+            // shutdownNow() was called before the task got a permit, so it is dropped
+         }
+         finally {
+            _threads.remove(Thread.currentThread());
+            _inFlight.decrement();
+         }
+      });
+      _threads.add(thread);
+      thread.start();
+   }
+
+   /**
+    * @return the number of tasks accepted, but not finished yet, including tasks waiting for a permit
+    */
+   public long getInFlightTaskCount() {
+      return _inFlight.get();
+   }
+
+   @Override
+   public boolean isShutdown() {
+      return _shutdown;
+   }
+
+   @Override
+   public boolean isTerminated() {
+      return _shutdown && _inFlight.get() == 0;
+   }
+
+   @Override
+   public void shutdown() {
+      _shutdown = true;
+      _inFlight.wakeUp();
+   }
+
+   /**
+    * Interrupts all running and waiting tasks. Tasks still waiting for a permit are dropped, but since they already have
+    * their own thread they cannot be returned, so the returned list is always empty.
+    */
+   @Override
+   public List<Runnable> shutdownNow() {
+      shutdown();
+      for ( Thread thread : _threads ) {
+         thread.interrupt();
+      }
+      return Collections.emptyList();
+   }
+}
@@ -0,0 +1,104 @@
+package util.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+public class ExecutorUtilsTest {
+
+   @Test
+   public void testAwaitCompletionDoesNotPoll() {
+      ThreadPoolExecutor executor = ExecutorUtils.newFixedThreadPool(4, "test");
+      AtomicInteger executed = new AtomicInteger();
+      for ( int i = 0; i < 100; i++ ) {
+         executor.execute(() -> {
+            executed.incrementAndGet();
+         });
+      }
+
+      long t = System.currentTimeMillis();
+      ExecutorUtils.awaitCompletion(executor, 10000, 10000);
+
+      assertThat(executed.get()).isEqualTo(100);
+      assertThat(System.currentTimeMillis() - t).isLessThan(5000);
+      assertThat(executor.isShutdown()).isTrue();
+   }
+
+   @Test
+   public void testAwaitCompletionWaitsForSpawnedTasks() {
+      ThreadPoolExecutor executor = ExecutorUtils.newFixedThreadPool(4, "test");
+      AtomicInteger executed = new AtomicInteger();
+      executor.execute(new SpawningTask(executor, executed, 5));
+
+      ExecutorUtils.awaitCompletion(executor, 10000, 10000);
+
+      assertThat(executed.get()).isEqualTo(63); // 1 + 2 + 4 + 8 + 16 + 32
+   }
+
+   @Test
+   public void testInFlightCounter() throws Exception {
+      InFlightCounter counter = new InFlightCounter();
+      assertThat(counter.await(0, TimeUnit.MILLISECONDS)).isTrue();
+
+      counter.increment();
+      counter.increment();
+      assertThat(counter.await(10, TimeUnit.MILLISECONDS)).isFalse();
+
+      Thread t = new Thread(() -> {
+         counter.decrement();
+         counter.decrement();
+      });
+      t.start();
+      counter.await();
+      assertThat(counter.get()).isEqualTo(0);
+   }
+
+   @Test
+   public void testShutdownNowReleasesQueuedTasks() throws Exception {
+      TrackingThreadPoolExecutor executor = (TrackingThreadPoolExecutor)ExecutorUtils.newFixedThreadPool(1, "test");
+      Object lock = new Object();
+      synchronized ( lock ) {
+         for ( int i = 0; i < 10; i++ ) {
+            executor.execute(() -> {
+               synchronized ( lock ) {
+                  // wait for the test thread
+               }
+            });
+         }
+         assertThat(executor.getInFlightTaskCount()).isEqualTo(10);
+         executor.shutdownNow();
+      }
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+
+      assertThat(executor.getInFlightTaskCount()).isEqualTo(0);
+   }
+
+
+   private static class SpawningTask implements Runnable {
+
+      private final ThreadPoolExecutor _executor;
+      private final AtomicInteger      _executed;
+      private final int                _depth;
+
+
+      public SpawningTask( ThreadPoolExecutor executor, AtomicInteger executed, int depth ) {
+         _executor = executor;
+         _executed = executed;
+         _depth = depth;
+      }
+
+      @Override
+      public void run() {
+         _executed.incrementAndGet();
+         if ( _depth > 0 ) {
+            _executor.execute(new SpawningTask(_executor, _executed, _depth - 1));
+            _executor.execute(new SpawningTask(_executor, _executed, _depth - 1));
+         }
+      }
+   }
+}
@@ -0,0 +1,69 @@
+package util.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class VirtualThreadExecutorTest {
+
+   @Before
+   public void setUp() {
+      Assume.assumeTrue(VirtualThreadExecutor.isAvailable());
+   }
+
+   @Test
+   public void testConcurrencyIsLimited() throws Exception {
+      VirtualThreadExecutor executor = new VirtualThreadExecutor(10, "test");
+      AtomicInteger running = new AtomicInteger();
+      AtomicInteger maxRunning = new AtomicInteger();
+      for ( int i = 0; i < 1000; i++ ) {
+         executor.execute(() -> {
+            int r = running.incrementAndGet();
+            maxRunning.accumulateAndGet(r, Math::max);
+            try {
+               Thread.sleep(1);
+            }
+            catch ( InterruptedException argh ) {
+               // ignore
+            }
+            running.decrementAndGet();
+         });
+      }
+      executor.shutdown();
+
+      assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+      assertThat(maxRunning.get()).isLessThan(11);
+   }
+
+   @Test
+   public void testShutdownNowDropsWaitingTasks() throws Exception {
+      VirtualThreadExecutor executor = new VirtualThreadExecutor(1, "test");
+      CountDownLatch blocked = new CountDownLatch(1);
+      AtomicInteger executed = new AtomicInteger();
+      executor.execute(() -> {
+         executed.incrementAndGet();
+         blocked.countDown();
+         try {
+            Thread.sleep(60000);
+         }
+         catch ( InterruptedException argh ) {
+            // expected
+         }
+      });
+      blocked.await();
+      for ( int i = 0; i < 10; i++ ) {
+         executor.execute(executed::incrementAndGet);
+      }
+      executor.shutdownNow();
+
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(executed.get()).isEqualTo(1);
+   }
+}
@@ -0,0 +1,21 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<xsl:transform xmlns:xsl="http://www.w3.org/1999/XSL/Transform" version="2.0">
+
+  <xsl:output method="xml" indent="yes"/>
+
+  <xsl:param name="url"/>
+
+  <xsl:template match="/">
+    <items>
+      <xsl:for-each select="//div[@class = 'product'] | //div[@class = 'product-detail'] | //article/p | //tr[td]">
+        <item>
+          <title><xsl:value-of select="normalize-space((.//h1, .//h2, .)[1])"/></title>
+          <link><xsl:value-of select="(.//a/@href)[1]"/></link>
+          <price><xsl:value-of select="normalize-space((.//*[@class = 'price'])[1])"/></price>
+          <url><xsl:value-of select="$url"/></url>
+        </item>
+      </xsl:for-each>
+    </items>
+  </xsl:template>
+
+</xsl:transform>
@@ -0,0 +1,168 @@
+package util.crawler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import util.crawler.CrawlParams.SeenSetMode;
+import util.crawler.Crawler.CrawlItem;
+import util.crawler.frontier.ExactSeenSet;
+import util.crawler.frontier.SeenSet;
+
+
+/**
+ * Measures the throughput of {@link Crawler#addCrawlItem(CrawlItem)} depending on the number of crawl tasks calling it
+ * concurrently. Half of the added items are new, the other half were already seen, which is about the ratio of a typical
+ * crawl after the first few levels.<br/>
+ * The crawl tasks handed over to the executor do nothing but report that they are finished, so the benchmark covers the
+ * dedupe, the frontier and the dispatch to the executor, but no http and no xslt. Every call also polls an item from
+ * the frontier, as each added item is polled once in a crawl. Otherwise the adding threads would outpace the executor
+ * and fill the heap with the frontier.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class AddCrawlItemBenchmark {
+
+   @Benchmark
+   @Threads(1)
+   public boolean add_01_thread( CrawlerState crawler, ItemState items ) {
+      return crawler.add(items);
+   }
+
+   @Benchmark
+   @Threads(4)
+   public boolean add_04_threads( CrawlerState crawler, ItemState items ) {
+      return crawler.add(items);
+   }
+
+   @Benchmark
+   @Threads(16)
+   public boolean add_16_threads( CrawlerState crawler, ItemState items ) {
+      return crawler.add(items);
+   }
+
+   @Benchmark
+   @Threads(64)
+   public boolean add_64_threads( CrawlerState crawler, ItemState items ) {
+      return crawler.add(items);
+   }
+
+   @Benchmark
+   @Threads(128)
+   public boolean add_128_threads( CrawlerState crawler, ItemState items ) {
+      return crawler.add(items);
+   }
+
+
+   @State(Scope.Benchmark)
+   public static class CrawlerState {
+
+      /** the threads of the crawl task executor, the adding threads are set by {@link Threads} */
+      private static final int EXECUTOR_THREADS = 16;
+      /**
+       * more than the items added by an iteration, so the exact seen set is not resized while it is measured, with far more
+       * adding threads than cores the resizing thread falls behind the adding ones and the set ends up in long bins
+       */
+      private static final int EXPECTED_URLS    = 1 << 24;
+
+      @Param({ "Exact", "Fingerprint" })
+      public SeenSetMode _seenSetMode;
+
+      CrawlParams        _params;
+      Crawler            _crawler;
+
+
+      @Setup(Level.Iteration)
+      public void setUp() {
+         _params = new CrawlParams();
+         _params.setId("benchmark");
+         _params.setHost("www.example.com");
+         _params.setNumberOfThreads(EXECUTOR_THREADS);
+         _params.setSeenSetMode(_seenSetMode);
+         _crawler = new Crawler(_params) {
+
+            @Override
+            protected CrawlTask createCrawlTask( Crawler crawler, CrawlItem crawlItem ) {
+               return new NoopCrawlTask(crawler, crawlItem);
+            }
+
+            @Override
+            protected SeenSet createSeenSet() {
+               return _seenSetMode == SeenSetMode.Exact ? new ExactSeenSet(EXPECTED_URLS) : super.createSeenSet();
+            }
+         };
+      }
+
+      /**
+       * Adds the next item and polls one from the frontier, so the frontier stays bounded, no matter how far the adding
+       * threads outnumber the cores and the threads of the executor.
+       */
+      boolean add( ItemState items ) {
+         boolean added = _crawler.addCrawlItem(items.next(_params));
+         _crawler._frontier.poll();
+         return added;
+      }
+
+      /**
+       * Leaves the seen set and the frontier to the garbage collector, since clearing them takes long, while the other
+       * threads spin until the tear down is finished.
+       */
+      @TearDown(Level.Iteration)
+      public void tearDown() {
+         _crawler.stop();
+         _crawler = null;
+      }
+   }
+
+   @State(Scope.Thread)
+   public static class ItemState {
+
+      private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+      private final String               _prefix      = "/t" + THREAD_INDEX.getAndIncrement() + "/page";
+      private int                        _counter;
+
+
+      /** every other call returns a path already returned before */
+      CrawlItem next( CrawlParams params ) {
+         int i = _counter++;
+         String path = _prefix + ((i & 1) == 0 ? i : i - 1) + ".html";
+         return new CrawlItem(params, null, null, path, null, null, null);
+      }
+   }
+
+   static class NoopCrawlTask extends CrawlTask {
+
+      private final Crawler   _noopCrawler;
+      private final CrawlItem _noopCrawlItem;
+
+
+      NoopCrawlTask( Crawler crawler, CrawlItem crawlItem ) {
+         super(crawler, crawlItem);
+         _noopCrawler = crawler;
+         _noopCrawlItem = crawlItem;
+      }
+
+      @Override
+      public void run() {
+         _noopCrawler.crawlTaskFinished(_noopCrawlItem, 0, true);
+      }
+   }
+}
@@ -0,0 +1,119 @@
+package util.crawler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * The pages the benchmarks run on, shared by all benchmarks of a run.<br/>
+ * The corpus is read from the directory given by <code>-p _corpusDirectory=...</code>, all <code>.html</code> and
+ * <code>.htm</code> files below it are used. The default is the corpus checked in with the benchmarks, a few listing,
+ * product and article pages and an old latin-1 page with upper case tags. Save some real pages of the sites you crawl in
+ * a directory of your own for more meaningful numbers, e.g. with <code>wget -r -l 1</code>. If the directory doesn't
+ * exist, generated pages are used.<br/>
+ * The pages are kept as raw bytes and as strings decoded with the charset each page declares.
+ */
+@State(Scope.Benchmark)
+public class Corpus {
+
+   /** the default directory is relative to the root of the project, which is where the benchmarks are usually run */
+   @Param({ "benchmarks/corpus" })
+   public String _corpusDirectory;
+
+   List<String>  _names;
+   List<byte[]>  _bytes;
+   List<String>  _pages;
+
+
+   /**
+    * @return the xslt checked in with the corpus, which scrapes items from all pages of the checked-in corpus
+    */
+   public String readXslt() throws IOException {
+      File xslt = new File(_corpusDirectory, "items.xsl");
+      if ( !xslt.isFile() ) {
+         xslt = new File("benchmarks/corpus/items.xsl");
+      }
+      return new String(Files.readAllBytes(xslt.toPath()), StandardCharsets.UTF_8);
+   }
+
+   @Setup
+   public void setUp() throws IOException {
+      _names = new ArrayList<>();
+      _bytes = new ArrayList<>();
+      File dir = new File(_corpusDirectory);
+      if ( dir.isDirectory() ) {
+         try (Stream<Path> files = Files.walk(dir.toPath())) {
+            List<Path> pages = files.filter(p -> p.toString().endsWith(".html") || p.toString().endsWith(".htm")).filter(Files::isRegularFile).sorted()
+                  .collect(Collectors.toList());
+            for ( Path page : pages ) {
+               _names.add(page.getFileName().toString());
+               _bytes.add(Files.readAllBytes(page));
+            }
+         }
+      }
+      if ( _bytes.isEmpty() ) {
+         System.err.println("no pages found in '" + dir.getAbsolutePath() + "', using generated pages");
+         int i = 0;
+         for ( String page : generatePages(100) ) {
+            _names.add("generated-" + i++ + ".html");
+            _bytes.add(page.getBytes(StandardCharsets.UTF_8));
+         }
+      }
+      _pages = new ArrayList<>();
+      for ( byte[] bytes : _bytes ) {
+         String page = new String(bytes, StandardCharsets.ISO_8859_1);
+         if ( !page.toLowerCase().contains("charset=iso-8859-1") ) {
+            page = new String(bytes, StandardCharsets.UTF_8);
+         }
+         _pages.add(page);
+      }
+      long chars = _pages.stream().mapToLong(String::length).sum();
+      System.err.println("corpus of " + _pages.size() + " pages with " + chars / 1024 + " kchars");
+   }
+
+   /** pages of 10-200 kchars with navigation, text, scripts and links with and without labels */
+   private List<String> generatePages( int numberOfPages ) {
+      Random random = new Random(42);
+      List<String> pages = new ArrayList<>();
+      for ( int i = 0; i < numberOfPages; i++ ) {
+         StringBuilder page = new StringBuilder("<!DOCTYPE html>\r\n<html>\r\n<head>\r\n<title>page " + i + "</title>\r\n");
+         page.append("<base href=\"http://www.example.com/dir/\">\r\n");
+         page.append("<script type=\"text/javascript\">var x = '<a href=\"/js\">';</script>\r\n</head>\r\n<body>\r\n<ul class=\"nav\">\r\n");
+         for ( int j = 0, n = 20 + random.nextInt(80); j < n; j++ ) {
+            page.append("<li><a class=\"nav-item\" href=\"/category/").append(j).append("/index.html?ref=nav&amp;p=").append(i).append("\">\r\n  Category ")
+                  .append(j).append("\r\n</a></li>\r\n");
+         }
+         page.append("</ul>\r\n");
+         for ( int j = 0, n = 10 + random.nextInt(200); j < n; j++ ) {
+            page.append("<div class=\"item\" data-id=\"").append(j).append("\">\r\n<p>");
+            for ( int k = 0, m = 20 + random.nextInt(80); k < m; k++ ) {
+               page.append("lorem ipsum dolor ");
+            }
+            page.append("</p>\r\n");
+            if ( random.nextInt(4) == 0 ) {
+               page.append("<a href=\"/item/").append(j).append(".html\" title=\"Item > ").append(j).append("\"/>\r\n");
+            } else {
+               page.append("<a target=\"_blank\" href=\"/item/").append(j).append(".html\"><img src=\"/img/").append(j).append(".png\" alt=\"item\"> Item ")
+                     .append(j).append("</a>\r\n");
+            }
+            page.append("</div>\r\n");
+         }
+         page.append("</body>\r\n</html>\r\n");
+         pages.add(page.toString());
+      }
+      return pages;
+   }
+}
@@ -0,0 +1,62 @@
+package util.crawler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Compares the link extraction of {@link LinkExtractor} with the regular expressions the crawler used before, on all pages
+ * of the {@link Corpus}. Each invocation extracts the href and the label of every link of every page.<br/>
+ * The generated pages, which are used if there is no corpus, contain long links without a closing tag, where the regular
+ * expression backtracks a lot, so real pages give more meaningful numbers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class LinkExtractionBenchmark {
+
+   private static final Pattern HREF       = Pattern.compile("(?i)<a .*?href=\"(.*?)\"[^>]*?(?:>(?s)(.{0,2500}?)</a|/>)");
+   private static final Pattern BASE       = Pattern.compile("(?i)<base.+?href=\"(.*?)\".*?>");
+   private static final Pattern LINEBREAKS = Pattern.compile("(\\n|\\r\\n)");
+
+
+   @Benchmark
+   public void linkExtractor( Corpus corpus, Blackhole blackhole ) {
+      for ( String page : corpus._pages ) {
+         LinkExtractor links = new LinkExtractor(page);
+         blackhole.consume(links.getBaseHref());
+         for ( LinkExtractor.Link link : links.getLinks() ) {
+            blackhole.consume(link.getHref());
+            blackhole.consume(link.getLabel());
+         }
+      }
+   }
+
+   @Benchmark
+   public void regex( Corpus corpus, Blackhole blackhole ) {
+      for ( String page : corpus._pages ) {
+         Matcher baseMatcher = BASE.matcher(page);
+         if ( baseMatcher.find() ) {
+            blackhole.consume(baseMatcher.group(1));
+         }
+         Matcher matcher = HREF.matcher(LINEBREAKS.matcher(page).replaceAll(""));
+         while ( matcher.find() ) {
+            blackhole.consume(matcher.group(1));
+            blackhole.consume(StringUtils.trimToEmpty(matcher.group(2)));
+         }
+      }
+   }
+}
@@ -0,0 +1,127 @@
+package util.crawler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sf.saxon.s9api.XdmNode;
+import util.crawler.Crawler.CrawlItem;
+import util.xslt.Transformer;
+
+
+/**
+ * Measures the stages a crawled page goes through after it was read, on all pages of the {@link Corpus}: cleaning and
+ * parsing the html with {@link Transformer#createDocument(String)}, applying the xslt of the corpus with
+ * {@link Transformer#transform(XdmNode, String, Map)} and {@link Transformer#transformToMaps(XdmNode, String, Map)},
+ * converting its result with {@link Transformer#toMap(String)}, and extracting the links to follow with
+ * {@link CrawlTask#extractCrawlItems(LinkExtractor, XdmNode)}.<br/>
+ * Each stage starts from the result of the previous stage prepared in the setup, so the numbers add up to the cost of
+ * a page. Each invocation processes every page once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class PageProcessingBenchmark {
+
+   @Benchmark
+   public void createDocument( Corpus corpus, Blackhole blackhole ) throws Exception {
+      for ( String page : corpus._pages ) {
+         blackhole.consume(Transformer.createDocument(page));
+      }
+   }
+
+   @Benchmark
+   public void extractCrawlItems( Pages pages, Blackhole blackhole ) {
+      for ( int i = 0; i < pages._documents.size(); i++ ) {
+         blackhole.consume(pages._crawlTasks.get(i).extractCrawlItems(pages._links.get(i), pages._documents.get(i)));
+      }
+   }
+
+   @Benchmark
+   public void toMap( Pages pages, Blackhole blackhole ) {
+      for ( String transformed : pages._transformed ) {
+         blackhole.consume(Transformer.toMap(transformed));
+      }
+   }
+
+   @Benchmark
+   public void transform( Pages pages, Blackhole blackhole ) {
+      for ( XdmNode document : pages._documents ) {
+         blackhole.consume(Transformer.transform(document, pages._xslt, pages._variablesForXSLT)._result);
+      }
+   }
+
+   @Benchmark
+   public void transformToMaps( Pages pages, Blackhole blackhole ) {
+      for ( XdmNode document : pages._documents ) {
+         blackhole.consume(Transformer.transformToMaps(document, pages._xslt, pages._variablesForXSLT)._maps);
+      }
+   }
+
+
+   @State(Scope.Benchmark)
+   public static class Pages {
+
+      String              _xslt;
+      Map<String, String> _variablesForXSLT = new HashMap<>();
+      List<XdmNode>       _documents;
+      List<String>        _transformed;
+      List<LinkExtractor> _links;
+      List<CrawlTask>     _crawlTasks;
+      Crawler             _crawler;
+
+
+      @Setup
+      public void setUp( Corpus corpus ) throws Exception {
+         _xslt = corpus.readXslt();
+         _variablesForXSLT.put("url", "/shop/category/3/index.html");
+
+         CrawlParams params = new CrawlParams();
+         params.setId("benchmark");
+         params.setHost("www.example.com");
+         params.setFollowRegexes(List.of("/category/.*", "/product/.*", "/shop/.*", "/news/.*", ".*detail\\.asp.*"));
+         params.setDontFollowRegexes(List.of(".*/cart/.*", ".*sort=.*"));
+         _crawler = new Crawler(params);
+
+         _documents = new ArrayList<>();
+         _transformed = new ArrayList<>();
+         _links = new ArrayList<>();
+         _crawlTasks = new ArrayList<>();
+         int items = 0;
+         for ( String page : corpus._pages ) {
+            XdmNode document = Transformer.createDocument(page);
+            _documents.add(document);
+            String transformed = Transformer.transform(document, _xslt, _variablesForXSLT)._result;
+            _transformed.add(transformed);
+            items += Transformer.toMap(transformed).length;
+            _links.add(new LinkExtractor(page));
+            _crawlTasks.add(new CrawlTask(_crawler, new CrawlItem(params, null, null, "/shop/category/3/index.html", null, null, null)));
+         }
+         System.err.println(items + " items scraped");
+      }
+
+      @TearDown
+      public void tearDown() {
+         _crawler.stop();
+         _crawler._frontier.close();
+         _crawler._seenUrls.close();
+      }
+   }
+}
@@ -0,0 +1,91 @@
+package util.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import util.http.HttpClientFactory;
+
+
+/**
+ * Measures {@link HttpClientFactory#readPage(HttpResponse, String)} on all pages of the {@link Corpus}, once for
+ * responses buffered in memory, which is the decoding only, and once for requests to a local {@link StubServer} with a
+ * client created by {@link HttpClientFactory#create()}, which adds the http round trip and, with
+ * <code>-p _gzip=true</code>, the decompression. Each invocation reads every page once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class ReadPageBenchmark {
+
+   @Benchmark
+   public void fetch( Server server, Blackhole blackhole ) throws Exception {
+      for ( String url : server._urls ) {
+         try (CloseableHttpResponse response = server._httpClient.execute(new HttpGet(url))) {
+            blackhole.consume(HttpClientFactory.readPage(response, null));
+         }
+      }
+   }
+
+   @Benchmark
+   public void readPage( Corpus corpus, Blackhole blackhole ) throws Exception {
+      for ( byte[] bytes : corpus._bytes ) {
+         BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+         response.setHeader("Content-Type", "text/html");
+         response.setEntity(new ByteArrayEntity(bytes));
+         blackhole.consume(HttpClientFactory.readPage(response, null));
+      }
+   }
+
+
+   @State(Scope.Benchmark)
+   public static class Server {
+
+      @Param({ "false" })
+      public boolean      _gzip;
+
+      StubServer          _stubServer;
+      CloseableHttpClient _httpClient;
+      List<String>        _urls;
+
+
+      @Setup
+      public void setUp( Corpus corpus ) throws Exception {
+         _stubServer = new StubServer(corpus, _gzip);
+         _httpClient = new HttpClientFactory().setGzipSupport(_gzip).create();
+         _urls = new ArrayList<>();
+         for ( String name : corpus._names ) {
+            _urls.add("http://127.0.0.1:" + _stubServer.getPort() + "/" + name);
+         }
+      }
+
+      @TearDown
+      public void tearDown() {
+         HttpClientFactory.close(_httpClient);
+         _stubServer.close();
+      }
+   }
+}
@@ -0,0 +1,94 @@
+package util.crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * A local http server for the benchmarks, which serves the pages of a {@link Corpus} from memory at
+ * <code>/&lt;file name&gt;</code>, so that the benchmarks measure the client and not the network or a real server.
+ * Pages are sent gzipped, if the request accepts it and the server was created with gzip.
+ */
+public class StubServer implements AutoCloseable {
+
+   static {
+      // otherwise Nagle's algorithm delays the body after the headers until the client acknowledges them
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+   }
+
+   private final HttpServer          _server;
+   private final ExecutorService     _executor;
+   private final Map<String, byte[]> _pages        = new HashMap<>();
+   private final Map<String, byte[]> _gzippedPages = new HashMap<>();
+
+
+   public StubServer( Corpus corpus, boolean gzip ) throws IOException {
+      List<String> names = corpus._names;
+      for ( int i = 0; i < names.size(); i++ ) {
+         byte[] page = corpus._bytes.get(i);
+         _pages.put("/" + names.get(i), page);
+         if ( gzip ) {
+            _gzippedPages.put("/" + names.get(i), gzip(page));
+         }
+      }
+      _server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      _executor = Executors.newFixedThreadPool(8);
+      _server.setExecutor(_executor);
+      _server.createContext("/", this::handle);
+      _server.start();
+   }
+
+   @Override
+   public void close() {
+      _server.stop(0);
+      _executor.shutdownNow();
+   }
+
+   public int getPort() {
+      return _server.getAddress().getPort();
+   }
+
+   private byte[] gzip( byte[] page ) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+         out.write(page);
+      }
+      return bytes.toByteArray();
+   }
+
+   private void handle( HttpExchange exchange ) throws IOException {
+      try {
+         String path = exchange.getRequestURI().getPath();
+         byte[] page = _pages.get(path);
+         if ( page == null ) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+         }
+         String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+         byte[] gzippedPage = _gzippedPages.get(path);
+         if ( gzippedPage != null && acceptEncoding != null && acceptEncoding.contains("gzip") ) {
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            page = gzippedPage;
+         }
+         exchange.getResponseHeaders().add("Content-Type", "text/html");
+         exchange.sendResponseHeaders(200, page.length);
+         try (OutputStream out = exchange.getResponseBody()) {
+            out.write(page);
+         }
+      }
+      finally {
+         exchange.close();
+      }
+   }
+}
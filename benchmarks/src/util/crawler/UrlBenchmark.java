@@ -0,0 +1,87 @@
+package util.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import util.crawler.Crawler.CrawlItem;
+
+
+/**
+ * Measures the steps every extracted link goes through, on all links of the {@link Corpus}: {@link CrawlTask#normalize(String)},
+ * {@link CrawlTask#makeAbsolute(CrawlItem, String, String)} relative to a page two directories deep, and
+ * {@link Crawler#reEncodeUrlPath(String)} of the absolute paths. Each invocation handles every link once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class UrlBenchmark {
+
+   @Benchmark
+   public void makeAbsolute( Links links, Blackhole blackhole ) {
+      for ( String href : links._normalizedHrefs ) {
+         blackhole.consume(CrawlTask.makeAbsolute(links._parent, links._pathDir, href));
+      }
+   }
+
+   @Benchmark
+   public void normalize( Links links, Blackhole blackhole ) {
+      for ( String href : links._hrefs ) {
+         blackhole.consume(CrawlTask.normalize(href));
+      }
+   }
+
+   @Benchmark
+   public void reEncodeUrlPath( Links links, Blackhole blackhole ) {
+      for ( String path : links._paths ) {
+         blackhole.consume(Crawler.reEncodeUrlPath(path));
+      }
+   }
+
+
+   @State(Scope.Benchmark)
+   public static class Links {
+
+      CrawlItem    _parent;
+      String       _pathDir;
+      List<String> _hrefs;
+      List<String> _normalizedHrefs;
+      List<String> _paths;
+
+
+      @Setup
+      public void setUp( Corpus corpus ) {
+         CrawlParams params = new CrawlParams();
+         params.setHost("www.example.com");
+         _parent = new CrawlItem(params, null, null, "/shop/category/3/index.html?page=2", null, null, null);
+         _pathDir = "/shop/category/3";
+         _hrefs = new ArrayList<>();
+         _normalizedHrefs = new ArrayList<>();
+         _paths = new ArrayList<>();
+         for ( String page : corpus._pages ) {
+            for ( LinkExtractor.Link link : new LinkExtractor(page).getLinks() ) {
+               String href = link.getHref();
+               String normalizedHref = CrawlTask.normalize(href);
+               _hrefs.add(href);
+               _normalizedHrefs.add(normalizedHref);
+               _paths.add(CrawlTask.makeAbsolute(_parent, _pathDir, normalizedHref).getPath());
+            }
+         }
+         System.err.println(_hrefs.size() + " links");
+      }
+   }
+}
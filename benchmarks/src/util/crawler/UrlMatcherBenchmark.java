@@ -0,0 +1,116 @@
+package util.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Compares {@link UrlMatcher} with the loop over all follow patterns and all dont-follow patterns, which the crawler used
+ * before, for a config with many patterns. Each invocation decides 1000 paths, about a third of them is followed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class UrlMatcherBenchmark {
+
+   @Benchmark
+   public int loop( Config config ) {
+      int followed = 0;
+      for ( String path : config._paths ) {
+         for ( Pattern p : config._params.getFollowPatterns() ) {
+            if ( p.matcher(path).matches() && !isDontFollow(config._params, path) ) {
+               followed++;
+            }
+         }
+      }
+      return followed;
+   }
+
+   @Benchmark
+   public int urlMatcher( Config config ) {
+      UrlMatcher urlMatcher = config._params.getUrlMatcher();
+      int followed = 0;
+      for ( String path : config._paths ) {
+         if ( urlMatcher.isFollowed(path) ) {
+            followed++;
+         }
+      }
+      return followed;
+   }
+
+   private boolean isDontFollow( CrawlParams params, String path ) {
+      for ( Pattern pp : params.getDontFollowPatterns() ) {
+         if ( pp.matcher(path).matches() ) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+
+   @State(Scope.Benchmark)
+   public static class Config {
+
+      @Param({ "10", "100", "500" })
+      public int    _numberOfPatterns;
+
+      CrawlParams   _params;
+      List<String>  _paths;
+
+
+      @Setup
+      public void setUp() {
+         List<String> followRegexes = new ArrayList<>();
+         List<String> dontFollowRegexes = new ArrayList<>();
+         for ( int i = 0; i < _numberOfPatterns; i++ ) {
+            followRegexes.add("/shop/category-" + i + "/.*\\.html");
+            if ( i % 3 == 0 ) {
+               dontFollowRegexes.add("/shop/category-" + i + "/.*\\?sort=.*");
+            }
+         }
+         followRegexes.add("/product/\\d+\\.html");
+         dontFollowRegexes.add(".*(login|logout|cart).*");
+         _params = new CrawlParams();
+         _params.setFollowRegexes(followRegexes);
+         _params.setDontFollowRegexes(dontFollowRegexes);
+
+         Random random = new Random(42);
+         _paths = new ArrayList<>();
+         for ( int i = 0; i < 1000; i++ ) {
+            switch ( random.nextInt(6) ) {
+            case 0:
+               _paths.add("/product/" + random.nextInt(100000) + ".html");
+               break;
+            case 1:
+               _paths.add("/shop/category-" + random.nextInt(_numberOfPatterns) + "/page-" + random.nextInt(10) + ".html");
+               break;
+            case 2:
+               _paths.add("/shop/category-" + random.nextInt(_numberOfPatterns) + "/page.html?sort=price");
+               break;
+            case 3:
+               _paths.add("/account/login?return=/shop/category-" + random.nextInt(_numberOfPatterns) + "/");
+               break;
+            default:
+               _paths.add("/static/img/" + random.nextInt(1000) + ".png");
+            }
+         }
+      }
+   }
+}
@@ -18,11 +18,11 @@ import util.http.HttpClientFactory;
 
 public class CrawlParams {
 
-   int                      _numberOfThreads    = 3;
-   int                      _socketTimeout      = HttpClientFactory.DEFAULT_VALUE_SOCKET_TIMEOUT;
-   int                      _connectionTimeout  = HttpClientFactory.DEFAULT_VALUE_CONNECTION_TIMEOUT;
-   int                      _maxRetries         = -1;
-   String                   _userAgent          = HttpClientFactory.DEFAULT_VALUE_USER_AGENT;
+   int                      _numberOfThreads          = 3;
+   int                      _socketTimeout            = HttpClientFactory.DEFAULT_VALUE_SOCKET_TIMEOUT;
+   int                      _connectionTimeout        = HttpClientFactory.DEFAULT_VALUE_CONNECTION_TIMEOUT;
+   int                      _maxRetries               = -1;
+   String                   _userAgent                = HttpClientFactory.DEFAULT_VALUE_USER_AGENT;
    private String           _id;
    String                   _host;
    String                   _authenticationUser;
@@ -37,21 +37,48 @@ public class CrawlParams {
    List<String>             _retryRegexes;
    List<String>             _insaneRegexes;
    List<SearchReplaceParam> _pageReplacements;
-   List<String>             _followXPaths       = Collections.emptyList();
-   List<Pattern>            _followPatterns     = Collections.emptyList();
-   List<Pattern>            _dontFollowPatterns = Collections.emptyList();
-   List<Pattern>            _sanePatterns       = Collections.emptyList();
-   List<Pattern>            _retryPatterns      = Collections.emptyList();
-   List<Pattern>            _insanePatterns     = Collections.emptyList();
+   List<String>             _followXPaths             = Collections.emptyList();
+   List<Pattern>            _followPatterns           = Collections.emptyList();
+   List<Pattern>            _dontFollowPatterns       = Collections.emptyList();
+   List<Pattern>            _sanePatterns             = Collections.emptyList();
+   List<Pattern>            _retryPatterns            = Collections.emptyList();
+   List<Pattern>            _insanePatterns           = Collections.emptyList();
    File                     _parentFile;
-   boolean                  _useProxies         = false;
-   boolean                  _useCookies         = false;
-   boolean                  _LIFO               = false;
-   boolean                  _reEncodeUrls       = false;
+   boolean                  _useProxies               = false;
+   boolean                  _useCookies               = false;
+   boolean                  _LIFO                     = false;
+   boolean                  _reEncodeUrls             = false;
    List<String>             _additionalHeaders;
    Comparator<Proxy>        _proxyComparator;
-
-   transient String _xslContents;
+   SeenSetMode              _seenSetMode              = SeenSetMode.Exact;
+   int                      _maxFrontierItemsInMemory = 0;
+   File                     _frontierDirectory;
+   double                   _hostRequestsPerSecond    = 0;
+   int                      _maxConcurrencyPerHost    = 0;
+   int                      _maxConcurrencyPerProxy   = 1;
+   int                      _proxyCheckIntervalMillis = 0;
+   int                      _proxyCrawlIntervalMillis = 0;
+   int                      _retryDelayMillis         = 10000;
+   boolean                  _useVirtualThreads        = false;
+   boolean                  _useAsyncFetcher          = false;
+   File                     _checkpointFile;
+   int                      _checkpointIntervalMillis = 10000;
+   File                     _responseStoreDirectory;
+   int                      _maxBodySize              = 0;
+   int                      _maxDownloadTimeMillis    = 0;
+   List<String>             _allowedContentTypes;
+   int                      _metricsIntervalMillis    = 60000;
+   OriginalPageCapture      _originalPageCapture      = OriginalPageCapture.None;
+   int                      _resultQueueSize          = 10000;
+   int                      _resultBatchSize          = 100;
+   int                      _resultWriterThreads      = 1;
+   int                      _followUrlTimeoutMillis   = 60000;
+   int                      _followUrlCacheMillis     = 60000;
+   int                      _followUrlCacheSize       = 10000;
+
+   transient String              _xslContents;
+   transient String              _followXPathsXSLT;
+   transient volatile UrlMatcher _urlMatcher;
 
 
    public void applyAdditionalHeaders( HttpRequestBase req ) {
@@ -67,6 +94,14 @@ public class CrawlParams {
       return _additionalHeaders;
    }
 
+   /**
+    * @return mime types or prefixes of mime types like <code>text/</code>, pages with another content type are rejected
+    *         without reading their body, null means all content types are allowed
+    */
+   public List<String> getAllowedContentTypes() {
+      return _allowedContentTypes;
+   }
+
    public String getAuthenticationPassword() {
       return _authenticationPassword;
    }
@@ -75,6 +110,22 @@ public class CrawlParams {
       return _authenticationUser;
    }
 
+   /**
+    * @return the file the crawl is journaled to, so that a crawl, which was stopped or killed, resumes from there when it
+    *         is started again, null means no checkpointing
+    */
+   public File getCheckpointFile() {
+      return _checkpointFile;
+   }
+
+   /**
+    * @return the interval in which the journal is written to the checkpoint file, the items added or finished within
+    *         the last interval are lost if the crawler is killed
+    */
+   public int getCheckpointIntervalMillis() {
+      return _checkpointIntervalMillis;
+   }
+
    public int getConnectionTimeout() {
       return _connectionTimeout;
    }
@@ -95,6 +146,29 @@ public class CrawlParams {
       return _followRegexes;
    }
 
+   /**
+    * @return how long in ms the result of a <code>$followurl$</code> fetch is reused by other pages referencing the same
+    *         url, 0 means no caching
+    */
+   public int getFollowUrlCacheMillis() {
+      return _followUrlCacheMillis;
+   }
+
+   /**
+    * @return the max number of cached <code>$followurl$</code> results
+    */
+   public int getFollowUrlCacheSize() {
+      return _followUrlCacheSize;
+   }
+
+   /**
+    * @return how long in ms a page waits for all its <code>$followurl$</code> fetches, the results of fetches not
+    *         finished by then are missing in the results of the page
+    */
+   public int getFollowUrlTimeoutMillis() {
+      return _followUrlTimeoutMillis;
+   }
+
    public List<String> getFollowXPaths() {
       return _followXPaths;
    }
@@ -107,10 +181,24 @@ public class CrawlParams {
       return _forcedPageEncoding;
    }
 
+   /**
+    * @return the directory for spilled frontier items and memory mapped fingerprints, defaults to java.io.tmpdir
+    */
+   public File getFrontierDirectory() {
+      return _frontierDirectory != null ? _frontierDirectory : new File(System.getProperty("java.io.tmpdir"));
+   }
+
    public String getHost() {
       return _host;
    }
 
+   /**
+    * @return max number of requests per second to a single host, 0 means unlimited
+    */
+   public double getHostRequestsPerSecond() {
+      return _hostRequestsPerSecond;
+   }
+
    public String getId() {
       return _id;
    }
@@ -123,14 +211,66 @@ public class CrawlParams {
       return _insaneRegexes;
    }
 
+   /**
+    * @return the max size of a page in bytes, larger pages are aborted and rejected, 0 means no limit
+    */
+   public int getMaxBodySize() {
+      return _maxBodySize;
+   }
+
+   /**
+    * @return upper bound of the adaptive number of concurrent requests to a single host, 0 means no per host limit,
+    *         unless <code>hostRequestsPerSecond</code> is set, in which case <code>numberOfThreads</code> is the bound
+    */
+   public int getMaxConcurrencyPerHost() {
+      return _maxConcurrencyPerHost;
+   }
+
+   /**
+    * @return upper bound of the adaptive number of concurrent requests through a single proxy, when using proxies. The
+    *         default 1 hands out every proxy to one request at a time.
+    */
+   public int getMaxConcurrencyPerProxy() {
+      return _maxConcurrencyPerProxy;
+   }
+
+   /**
+    * @return the max time to download the body of a page, slower pages are aborted and rejected, 0 means no limit
+    */
+   public int getMaxDownloadTimeMillis() {
+      return _maxDownloadTimeMillis;
+   }
+
+   /**
+    * @return the maximum number of not yet crawled items kept in memory, 0 means unlimited
+    */
+   public int getMaxFrontierItemsInMemory() {
+      return _maxFrontierItemsInMemory;
+   }
+
    public int getMaxRetries() {
       return _maxRetries;
    }
 
+   /**
+    * @return the interval of exporting the metrics of the crawl, 0 means they are exported only at the end of the crawl
+    */
+   public int getMetricsIntervalMillis() {
+      return _metricsIntervalMillis;
+   }
+
    public int getNumberOfThreads() {
       return _numberOfThreads;
    }
 
+   /**
+    * @return whether the page is added to its results, under {@link Crawler#RESULT_KEY_ORIGINAL_PAGE} or compressed under
+    *         {@link Crawler#RESULT_KEY_ORIGINAL_PAGE_GZIP}, see {@link Crawler#getOriginalPage(java.util.Map)}
+    */
+   public OriginalPageCapture getOriginalPageCapture() {
+      return _originalPageCapture;
+   }
+
    public List<SearchReplaceParam> getPageReplacements() {
       return _pageReplacements;
    }
@@ -139,6 +279,60 @@ public class CrawlParams {
       return _proxyComparator;
    }
 
+   /**
+    * @return the interval in ms, at which a {@link util.crawler.proxy.ProxyValidator} checks the proxies, which were not
+    *         used for ten intervals, in the background, 0 means no validation
+    */
+   public int getProxyCheckIntervalMillis() {
+      return _proxyCheckIntervalMillis;
+   }
+
+   /**
+    * @return the interval in ms, at which the {@link util.crawler.proxy.ProxyValidator} crawls for new proxies and adds
+    *         them to the pool, 0 means no proxy crawl during the crawl. Only used if <code>proxyCheckIntervalMillis</code>
+    *         is set.
+    */
+   public int getProxyCrawlIntervalMillis() {
+      return _proxyCrawlIntervalMillis;
+   }
+
+   /**
+    * @return the delay before the first retry of a failed page when not using proxies, doubled for each further retry
+    */
+   public int getRetryDelayMillis() {
+      return _retryDelayMillis;
+   }
+
+   /**
+    * @return the directory of the {@link util.crawler.cache.ResponseStore}, which makes re-crawls send conditional
+    *         requests and use the stored page for unchanged pages, null means no store
+    */
+   public File getResponseStoreDirectory() {
+      return _responseStoreDirectory;
+   }
+
+   /**
+    * @return the max number of results a {@link util.crawler.sink.ResultSink} gets per call
+    */
+   public int getResultBatchSize() {
+      return _resultBatchSize;
+   }
+
+   /**
+    * @return the max number of results waiting for the result sinks, a crawl task adding a result to a full queue waits
+    *         until the sinks caught up
+    */
+   public int getResultQueueSize() {
+      return _resultQueueSize;
+   }
+
+   /**
+    * @return the number of threads writing batches of results to the result sinks concurrently
+    */
+   public int getResultWriterThreads() {
+      return _resultWriterThreads;
+   }
+
    public List<Pattern> getRetryPatterns() {
       return _retryPatterns;
    }
@@ -155,6 +349,10 @@ public class CrawlParams {
       return _saneRegexes;
    }
 
+   public SeenSetMode getSeenSetMode() {
+      return _seenSetMode;
+   }
+
    public int getSocketTimeout() {
       return _socketTimeout;
    }
@@ -163,6 +361,18 @@ public class CrawlParams {
       return _startURLs;
    }
 
+   /**
+    * @return the matcher for the follow and dont-follow patterns, built when first needed
+    */
+   public UrlMatcher getUrlMatcher() {
+      UrlMatcher urlMatcher = _urlMatcher;
+      if ( urlMatcher == null ) {
+         urlMatcher = new UrlMatcher(_followPatterns, _dontFollowPatterns);
+         _urlMatcher = urlMatcher;
+      }
+      return urlMatcher;
+   }
+
    public String getUserAgent() {
       return _userAgent;
    }
@@ -192,6 +402,15 @@ public class CrawlParams {
       return _reEncodeUrls;
    }
 
+   /**
+    * @return true, if pages should be fetched with non-blocking I/O, with <code>numberOfThreads</code> limiting only the
+    *         number of requests in flight, while parsing and transformation run on one thread per CPU core. Ignored if
+    *         proxies are used.
+    */
+   public boolean isUseAsyncFetcher() {
+      return _useAsyncFetcher;
+   }
+
    public boolean isUseCookies() {
       return _useCookies;
    }
@@ -200,6 +419,14 @@ public class CrawlParams {
       return _useProxies;
    }
 
+   /**
+    * @return true, if every crawl task should run on its own virtual thread, with <code>numberOfThreads</code> limiting
+    *         only the number of concurrent requests. Needs Java 21+, otherwise platform threads are used.
+    */
+   public boolean isUseVirtualThreads() {
+      return _useVirtualThreads;
+   }
+
    public void setAdditionalHeaders( List<String> additionalHeaders ) {
       if ( additionalHeaders.size() % 2 != 0 ) {
          throw new RuntimeException("Headers must be defined in tupels, first a string with the headername, then the value.");
@@ -207,6 +434,10 @@ public class CrawlParams {
       _additionalHeaders = additionalHeaders;
    }
 
+   public void setAllowedContentTypes( List<String> allowedContentTypes ) {
+      _allowedContentTypes = allowedContentTypes;
+   }
+
    public void setAuthenticationPassword( String authenticationPassword ) {
       _authenticationPassword = authenticationPassword;
    }
@@ -215,6 +446,14 @@ public class CrawlParams {
       _authenticationUser = authenticationUser;
    }
 
+   public void setCheckpointFile( File checkpointFile ) {
+      _checkpointFile = checkpointFile;
+   }
+
+   public void setCheckpointIntervalMillis( int checkpointIntervalMillis ) {
+      _checkpointIntervalMillis = checkpointIntervalMillis;
+   }
+
    public void setConnectionTimeout( int connectionTimeout ) {
       _connectionTimeout = connectionTimeout;
    }
@@ -225,6 +464,7 @@ public class CrawlParams {
       for ( String r : dontFollowRegexes ) {
          _dontFollowPatterns.add(Pattern.compile(r));
       }
+      _urlMatcher = null;
    }
 
    public void setFollowRegexes( List<String> followRegexes ) {
@@ -233,10 +473,24 @@ public class CrawlParams {
       for ( String r : followRegexes ) {
          _followPatterns.add(Pattern.compile(r));
       }
+      _urlMatcher = null;
+   }
+
+   public void setFollowUrlCacheMillis( int followUrlCacheMillis ) {
+      _followUrlCacheMillis = followUrlCacheMillis;
+   }
+
+   public void setFollowUrlCacheSize( int followUrlCacheSize ) {
+      _followUrlCacheSize = followUrlCacheSize;
+   }
+
+   public void setFollowUrlTimeoutMillis( int followUrlTimeoutMillis ) {
+      _followUrlTimeoutMillis = followUrlTimeoutMillis;
    }
 
    public void setFollowXPaths( List<String> followXPaths ) {
       _followXPaths = followXPaths;
+      _followXPathsXSLT = null;
    }
 
    public void setFollowXSLT( String followXSLT ) {
@@ -247,6 +501,10 @@ public class CrawlParams {
       _forcedPageEncoding = forcedPageEncoding;
    }
 
+   public void setFrontierDirectory( File frontierDirectory ) {
+      _frontierDirectory = frontierDirectory;
+   }
+
    public void setHost( String host ) {
       _host = host;
       if ( host != null && host.startsWith("http") ) {
@@ -254,6 +512,10 @@ public class CrawlParams {
       }
    }
 
+   public void setHostRequestsPerSecond( double hostRequestsPerSecond ) {
+      _hostRequestsPerSecond = hostRequestsPerSecond;
+   }
+
    public void setId( String id ) {
       _id = id;
    }
@@ -270,14 +532,42 @@ public class CrawlParams {
       _LIFO = lIFO;
    }
 
+   public void setMaxBodySize( int maxBodySize ) {
+      _maxBodySize = maxBodySize;
+   }
+
+   public void setMaxConcurrencyPerHost( int maxConcurrencyPerHost ) {
+      _maxConcurrencyPerHost = maxConcurrencyPerHost;
+   }
+
+   public void setMaxConcurrencyPerProxy( int maxConcurrencyPerProxy ) {
+      _maxConcurrencyPerProxy = maxConcurrencyPerProxy;
+   }
+
+   public void setMaxDownloadTimeMillis( int maxDownloadTimeMillis ) {
+      _maxDownloadTimeMillis = maxDownloadTimeMillis;
+   }
+
+   public void setMaxFrontierItemsInMemory( int maxFrontierItemsInMemory ) {
+      _maxFrontierItemsInMemory = maxFrontierItemsInMemory;
+   }
+
    public void setMaxRetries( int maxRetries ) {
       _maxRetries = maxRetries;
    }
 
+   public void setMetricsIntervalMillis( int metricsIntervalMillis ) {
+      _metricsIntervalMillis = metricsIntervalMillis;
+   }
+
    public void setNumberOfThreads( int numberOfThreads ) {
       _numberOfThreads = numberOfThreads;
    }
 
+   public void setOriginalPageCapture( OriginalPageCapture originalPageCapture ) {
+      _originalPageCapture = originalPageCapture;
+   }
+
    public void setPageReplacements( List<SearchReplaceParam> pageReplacements ) {
       _pageReplacements = pageReplacements;
    }
@@ -293,10 +583,38 @@ public class CrawlParams {
       _proxyComparator = proxyComparator;
    }
 
+   public void setProxyCheckIntervalMillis( int proxyCheckIntervalMillis ) {
+      _proxyCheckIntervalMillis = proxyCheckIntervalMillis;
+   }
+
+   public void setProxyCrawlIntervalMillis( int proxyCrawlIntervalMillis ) {
+      _proxyCrawlIntervalMillis = proxyCrawlIntervalMillis;
+   }
+
    public void setReEncodeUrls( boolean reEncodeUrls ) {
       _reEncodeUrls = reEncodeUrls;
    }
 
+   public void setResponseStoreDirectory( File responseStoreDirectory ) {
+      _responseStoreDirectory = responseStoreDirectory;
+   }
+
+   public void setResultBatchSize( int resultBatchSize ) {
+      _resultBatchSize = resultBatchSize;
+   }
+
+   public void setResultQueueSize( int resultQueueSize ) {
+      _resultQueueSize = resultQueueSize;
+   }
+
+   public void setResultWriterThreads( int resultWriterThreads ) {
+      _resultWriterThreads = resultWriterThreads;
+   }
+
+   public void setRetryDelayMillis( int retryDelayMillis ) {
+      _retryDelayMillis = retryDelayMillis;
+   }
+
    public void setRetryRegexes( List<String> retryRegexes ) {
       _retryRegexes = retryRegexes;
       _retryPatterns = new ArrayList<Pattern>(_retryRegexes.size());
@@ -313,6 +631,10 @@ public class CrawlParams {
       }
    }
 
+   public void setSeenSetMode( SeenSetMode seenSetMode ) {
+      _seenSetMode = seenSetMode;
+   }
+
    public void setSocketTimeout( int socketTimeout ) {
       _socketTimeout = socketTimeout;
    }
@@ -321,6 +643,10 @@ public class CrawlParams {
       _startURLs = startURLs;
    }
 
+   public void setUseAsyncFetcher( boolean useAsyncFetcher ) {
+      _useAsyncFetcher = useAsyncFetcher;
+   }
+
    public void setUseCookies( boolean useCookies ) {
       _useCookies = useCookies;
    }
@@ -333,11 +659,34 @@ public class CrawlParams {
       _userAgent = userAgent;
    }
 
+   public void setUseVirtualThreads( boolean useVirtualThreads ) {
+      _useVirtualThreads = useVirtualThreads;
+   }
+
    public void setXsl( String xsl ) {
       _xsl = xsl;
    }
 
 
+   /**
+    * <code>None</code> adds no page to the results, <code>Plain</code> adds the page as it is, which keeps every page
+    * alive until its results are consumed, <code>Gzip</code> adds the gzipped page encoded in base64.
+    */
+   public enum OriginalPageCapture {
+      None, Plain, Gzip
+   }
+
+   /**
+    * <code>Exact</code> keeps all seen urls as strings, <code>Fingerprint</code> keeps 8 bytes per url on the heap,
+    * <code>MappedFingerprint</code> keeps the fingerprints in a memory mapped file in <code>frontierDirectory</code>.
+    * Fingerprints may collide, in which case a url is not crawled. The chance of any collision grows with the square of
+    * the number of urls: about 1:15,000 for 50 million urls, but already about 3% for a billion, so crawls of that size,
+    * which must not miss a single url, need <code>Exact</code>.
+    */
+   public enum SeenSetMode {
+      Exact, Fingerprint, MappedFingerprint
+   }
+
    public static class SearchReplaceParam {
 
       private Pattern _search;
@@ -5,34 +5,50 @@ import java.io.UnsupportedEncodingException;
 import java.net.ConnectException;
 import java.net.SocketException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.CookieStore;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import net.sf.saxon.s9api.XdmNode;
 import util.crawler.CrawlParams.SearchReplaceParam;
 import util.crawler.Crawler.CrawlItem;
+import util.crawler.cache.ResponseStore;
+import util.crawler.cache.StoredResponse;
+import util.crawler.fetch.Fetcher;
+import util.crawler.metrics.CrawlMetrics;
 import util.crawler.proxy.Proxy;
 import util.http.HttpClientFactory;
+import util.http.ResponseRejectedException;
 import util.string.StringTool;
 import util.time.TimeUtils;
 import util.xslt.Transformer;
@@ -42,15 +58,7 @@ import util.xslt.Transformer.TransformationResult;
 
 public class CrawlTask implements Runnable {
 
-   private static final String  FOLLOWURL       = "$followurl$";
-   private static final Pattern HREF            = Pattern.compile("(?i)<a .*?href=\"(.*?)\"[^>]*?(?:>(?s)(.{0,2500}?)</a|/>)");
-   private static final Pattern BASE            = Pattern.compile("(?i)<base.+?href=\"(.*?)\".*?>");
-   private static final Pattern LINEBREAKS      = Pattern.compile("(\\n|\\r\\n)");
-   private static final Pattern SPACE           = Pattern.compile(" ");
-   private static final Pattern PIPE            = Pattern.compile("\\|");
-   private static final Pattern AMP_ENTITY      = Pattern.compile("&amp;");
-   private static final Pattern XML_CHAR_ENTITY = Pattern.compile("&#(\\d+);");
-   private static final Pattern PORT_EXTRACTOR  = Pattern.compile("^(.+):(\\d+)");
+   private static final String FOLLOWURL = "$followurl$";
 
    private static final String FOLLOW_XPATHS_XSL =
          "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" +                                                          //
@@ -99,71 +107,27 @@ public class CrawlTask implements Runnable {
    }
 
    /**
-    * @return String[3], with String[0] null or host, String[1] normalized path and String[2] the scheme or null if none given
+    * @see UrlCanonicalizer#resolve(CrawlItem, String, String)
     */
-   public static String[] makeAbsolute( CrawlItem parentCrawlItem, String pathDir, String path ) {
-      String host = parentCrawlItem == null ? null : parentCrawlItem._host;
-      if ( path.startsWith("/") ) {
-         return new String[] { host, path, null };
-      }
-      if ( path.startsWith("http://") || path.startsWith("https://") ) {
-         String scheme = path.substring(0, path.indexOf("://"));
-         int hostNameStartIndex = path.indexOf("//") + 2;
-         int firstSlashIndex = path.indexOf('/', hostNameStartIndex);
-         if ( firstSlashIndex < 0 ) {
-            return new String[] { path, "/", scheme };
-         }
-         return new String[] { path.substring(hostNameStartIndex, firstSlashIndex), path.substring(firstSlashIndex), scheme };
-      }
-      if ( path.startsWith("?") && parentCrawlItem != null ) {
-         String name = parentCrawlItem._path.substring(pathDir.length() + 1);
-         if ( name.indexOf('?') > 0 ) {
-            name = name.substring(0, name.indexOf('?'));
-         }
-         path = name + path;
-      }
-      path = pathDir + '/' + path;
-
-      StringBuilder sb = new StringBuilder();
-      String[] s = StringTool.split(path, '/');
-      for ( int i = s.length - 1; i > 0; i-- ) {
-         if ( s[i].equals(".") ) {
-            continue;
-         } else if ( s[i].equals("..") ) {
-            i--;
-         } else {
-            sb.insert(0, '/' + s[i]);
-         }
-      }
-      if ( path.endsWith("/") ) {
-         sb.append('/');
-      }
-      return new String[] { host, sb.toString(), null };
+   public static CrawlUrl makeAbsolute( CrawlItem parentCrawlItem, String pathDir, String path ) {
+      return UrlCanonicalizer.resolve(parentCrawlItem, pathDir, path);
    }
 
+   /**
+    * @see UrlCanonicalizer#normalize(String)
+    */
    public static String normalize( String path ) {
-      path = path.trim();
-      path = SPACE.matcher(path).replaceAll("+");
-      path = PIPE.matcher(path).replaceAll("%7C");
-      path = AMP_ENTITY.matcher(path).replaceAll("&");
-      return path;
+      return UrlCanonicalizer.normalize(path);
    }
 
-   private static String convertXmlCharEntitiesToUrl( String url ) {
-      Matcher matcher = XML_CHAR_ENTITY.matcher(url);
-      boolean result = matcher.find();
-      if ( result ) {
-         StringBuffer sb = new StringBuffer();
-         do {
-            int c = Integer.parseInt(matcher.group(1));
-            matcher.appendReplacement(sb, "%" + Integer.toString(c, 16));
-            result = matcher.find();
-         }
-         while ( result );
-         matcher.appendTail(sb);
-         return sb.toString();
-      }
-      return url;
+   private static Exception unwrap( Throwable failure ) {
+      while ( failure instanceof CompletionException && failure.getCause() != null ) {
+         failure = failure.getCause();
+      }
+      if ( failure instanceof Error ) {
+         throw (Error)failure;
+      }
+      return failure instanceof Exception ? (Exception)failure : new RuntimeException(failure);
    }
 
    private final Crawler _crawler;
@@ -174,80 +138,40 @@ public class CrawlTask implements Runnable {
 
    private CrawlParams _params;
 
-   int _index;
+   private final CrawlMetrics _metrics;
+
+   /** set for tasks, whose caller waits for the result, so the response is always processed in the calling thread */
+   boolean _synchronous;
+
+   private int     _retriesLeft;
+   private boolean _retryLater;
+   private long    _requestTimeInMillis;
 
    public CrawlTask( Crawler crawler, CrawlItem crawlItem ) {
       _crawler = crawler;
       _crawlItem = crawlItem;
       _pathDir = _crawlItem._path.substring(0, _crawlItem._path.lastIndexOf('/'));
       _params = _crawler.getParams();
+      _metrics = _crawler.getMetrics();
    }
 
    @Override
    public void run() {
-      String url = _crawlItem._path;
-      MDC.put("path", url);
-
-      int maxRetries = getMaxRetries();
-      while ( maxRetries-- > 0 ) {
-         Proxy proxy = null;
-         long t = System.currentTimeMillis();
-         try {
-            proxy = _crawler.checkoutProxy();
-            HttpClient httpClient = proxy.getHttpClient();
-            String urlHost = _crawlItem._host != null ? _crawlItem._host : _params.getHost();
-            int port = -1;
-            Matcher matcher = PORT_EXTRACTOR.matcher(urlHost);
-            if ( matcher.find() ) {
-               urlHost = matcher.group(1);
-               port = Integer.parseInt(matcher.group(2));
-            }
-            HttpHost host = new HttpHost(urlHost, port, _crawlItem._scheme);
-            HttpRequestBase request = new HttpGet(url);
-            if ( url.endsWith(":POST") ) {
-               request = createPost(url);
-            }
-            _crawler._params.applyAdditionalHeaders(request);
-            String page = requestPage(httpClient, host, request);
-            page = applyPageReplacements(_params, page);
-            sanityCheck(page);
-            proxy.addSuccessfulGet((int)(System.currentTimeMillis() - t));
-            checkForHtmlBaseElement(page);
-            int numberItemsAdded = transformAndAddResult(host, page);
-            Set<CrawlItem> paths = extractCrawlItems(page);
-            int numberCrawlItemsAdded = 0;
-            for ( CrawlItem path : paths ) {
-               boolean added = _crawler.addCrawlItem(path);
-               if ( added ) {
-                  numberCrawlItemsAdded++;
-               }
-            }
-
-            String proxyString = numberCrawlItemsAdded == 0 && numberItemsAdded == 0 && _params.isUseProxies() ? ", " + proxy.getAddress().toString() : "";
-            _log.debug("added " + numberCrawlItemsAdded + " URLs to queue, scraped " + numberItemsAdded + " items" + proxyString);
-            _crawler._pathNumber++;
-            if ( _crawler._pathNumber % 1000 == 0 ) {
-               _log.info("got " + _crawler._pathNumber + " paths");
-            }
-
-            break; // we were successful
-         }
-         catch ( Exception argh ) {
-            int requestTimeInMillis = (int)(System.currentTimeMillis() - t);
-            proxy = handleException(argh, requestTimeInMillis, maxRetries, proxy);
-         }
-         finally {
-            if ( proxy != null ) {
-               _crawler.returnProxy(proxy);
-            }
-         }
+      MDC.put("path", _crawlItem._path);
+      _retriesLeft = getMaxRetries() - _crawlItem._failedAttempts;
+      if ( _retriesLeft > 0 ) {
+         attempt();
+      } else {
+         finish(false);
       }
-      _crawlItem.requestFinished();
       MDC.remove("path");
    }
 
-   protected HttpResponse executeRequest( HttpClient httpClient, HttpHost host, HttpRequestBase get ) throws IOException {
-      return httpClient.execute(host, get, _crawlItem._httpContext);
+   /**
+    * @return a future completed with the response, see {@link Fetcher#execute(HttpHost, HttpRequestBase, HttpContext)}
+    */
+   protected CompletableFuture<HttpResponse> executeRequest( Fetcher fetcher, HttpHost host, HttpRequestBase get ) {
+      return fetcher.execute(host, get, _crawlItem.getHttpContext());
    }
 
    protected int getMaxRetries() {
@@ -257,16 +181,19 @@ public class CrawlTask implements Runnable {
       return _params._useProxies ? 20 : 1;
    }
 
+   /**
+    * @return the delay before the next attempt of a failed item, if no proxies are used, doubled for every failed attempt 
+    */
+   protected long getRetryDelayMillis() {
+      return _params.getRetryDelayMillis() << Math.min(4, Math.max(0, _crawlItem._failedAttempts - 1));
+   }
+
    /**
     * @return the proxy parameter, or null, if the proxy is not to be used again 
     */
    protected Proxy handleException( Exception argh, int requestTimeInMillis, int numberOfRetriesLeft, Proxy proxy ) {
       if ( numberOfRetriesLeft > 0 ) {
          _log.info("Failed to get page (will retry)" + (_params.isUseProxies() ? " using proxy " + proxy : "") + ": " + argh);
-         if ( !_params.isUseProxies() ) {
-            _log.debug("waiting for 10 seconds before retrying");
-            TimeUtils.sleepQuietlySeconds(10);
-         }
       } else {
          _log.warn("Failed to get page", argh);
          if ( argh instanceof UnexceptedStatuscodeException ) {
@@ -294,47 +221,133 @@ public class CrawlTask implements Runnable {
    }
 
    protected String readPage( HttpResponse response, HttpContext httpContext, String pageEncoding ) throws Exception {
-      return HttpClientFactory.readPage(response, pageEncoding);
+      return HttpClientFactory.readPage(response, pageEncoding, _params.getMaxBodySize());
    }
 
-   protected String requestPage( HttpClient httpClient, HttpHost host, HttpRequestBase get ) throws Exception {
-      try {
-         HttpResponse response = executeRequest(httpClient, host, get);
-         if ( response.getStatusLine().getStatusCode() != 200 && response.getStatusLine().getStatusCode() != 404 ) {
-            throw new UnexceptedStatuscodeException(response.getStatusLine().getStatusCode());
+   /**
+    * @return a future completed with the page, or completed exceptionally, if the request failed or the status code is
+    *         neither 200 nor 404. The page is decoded and stored in the calling thread, if the response is already
+    *         there, i.e. for blocking fetchers and synchronous tasks, otherwise on the crawl task executor, so that the
+    *         I/O threads of asynchronous fetchers never decode or write pages.<br/>
+    *         With a response store, GET requests are sent conditionally, if there is a stored response of the URL, and
+    *         the stored page is used, if the server answers with 304. Responses with validators are stored.
+    */
+   protected CompletableFuture<String> requestPage( Fetcher fetcher, HttpHost host, HttpRequestBase get ) {
+      ResponseStore responseStore = get instanceof HttpGet ? _crawler._responseStore : null;
+      String url = responseStore != null ? host.toURI() + get.getURI() : null;
+      StoredResponse storedResponse = responseStore != null ? responseStore.get(url) : null;
+      if ( storedResponse != null ) {
+         if ( storedResponse.getETag() != null ) {
+            get.setHeader("If-None-Match", storedResponse.getETag());
+         }
+         if ( storedResponse.getLastModified() != null ) {
+            get.setHeader("If-Modified-Since", storedResponse.getLastModified());
+         }
+      }
+      long t = System.nanoTime();
+      CompletableFuture<HttpResponse> responseFuture = executeRequest(fetcher, host, get).thenApply(response -> {
+         _metrics.timer(CrawlMetrics.FETCH_LATENCY).recordMicrosSince(t);
+         return response;
+      });
+      if ( _synchronous ) {
+         try {
+            responseFuture.join(); // the caller waits anyway, so it can decode the page itself
+         }
+         catch ( CompletionException | CancellationException argh ) {
+            // handled by the caller
          }
-         String page = readPage(response, _crawlItem._httpContext, _params.getForcedPageEncoding());
-         return page;
-      }
-      catch ( Exception argh ) {
-         get.abort(); // to return connection of httpClient back to the pool
-         throw argh;
       }
+      Function<HttpResponse, String> read = response -> {
+         try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if ( statusCode == HttpStatus.SC_NOT_MODIFIED && storedResponse != null ) {
+               EntityUtils.consume(response.getEntity());
+               String storedPage = responseStore.notModified(storedResponse);
+               _metrics.counter(CrawlMetrics.FETCH_NOT_MODIFIED).increment();
+               return storedPage;
+            }
+            if ( statusCode != 200 && statusCode != 404 ) {
+               throw new UnexceptedStatuscodeException(statusCode);
+            }
+            long contentLength = response.getEntity() != null ? response.getEntity().getContentLength() : 0;
+            long decodeStart = System.nanoTime();
+            String page = readPage(response, _crawlItem.getHttpContext(), _params.getForcedPageEncoding());
+            _metrics.timer(CrawlMetrics.DECODE).recordMicrosSince(decodeStart);
+            _metrics.histogram(CrawlMetrics.FETCH_BYTES, "bytes").record(contentLength >= 0 ? contentLength : page.length());
+            if ( responseStore != null && statusCode == 200 ) {
+               storeResponse(responseStore, url, response, page);
+            }
+            return page;
+         }
+         catch ( Exception argh ) {
+            throw new CompletionException(argh);
+         }
+      };
+      CompletableFuture<String> page = responseFuture.isDone() ? responseFuture.thenApply(read)
+         : responseFuture.thenApplyAsync(read, _crawler._executor);
+      return page.whenComplete(( pg, argh ) -> {
+         if ( argh != null ) {
+            get.abort(); // to return connection of httpClient back to the pool
+         }
+      });
    }
 
-   private String applyFollowXPaths( String page ) {
-      if ( _params.getFollowXPaths().isEmpty() ) {
-         return page;
+   /**
+    * @param links the links of the page, which are used if neither follow XPaths nor a follow XSLT are configured
+    * @return the items of the links to follow, package-private for the benchmarks
+    */
+   Set<CrawlItem> extractCrawlItems( LinkExtractor links, XdmNode document ) {
+      Set<CrawlItem> paths = new HashSet<>();
+
+      String page = null;
+      if ( !_params.getFollowXPaths().isEmpty() ) {
+         page = applyFollowXPaths(document);
+      }
+      if ( !StringUtils.isBlank(_params.getFollowXSLT()) ) {
+         if ( !_params.getFollowXPaths().isEmpty() ) {
+            // the follow XSLT is applied to the result of the follow XPaths, which has to be parsed in this case  
+            document = createDocument(page);
+         }
+         page = applyXSLTToPage(_params.getFollowXSLT(), document, CrawlMetrics.XSLT_FOLLOW);
       }
-      StringBuilder s = new StringBuilder();
-      for ( String xpath : _params.getFollowXPaths() ) {
-         s.append("<xsl:copy-of select=\"").append(xpath).append("\"/>");
+
+      if ( page != null ) {
+         links = new LinkExtractor(page);
+      }
+      UrlMatcher urlMatcher = _params.getUrlMatcher();
+      for ( LinkExtractor.Link link : links.getLinks() ) {
+         CrawlUrl url = UrlCanonicalizer.resolve(_crawlItem, _pathDir, UrlCanonicalizer.canonicalizeHref(link.getHref()));
+         if ( urlMatcher.isFollowed(url.getPath()) ) {
+            // the label is only copied, if the link is followed
+            paths.add(new CrawlItem(_params, _crawlItem, url.getHost(), url.getPath(), link.getLabel(), getCookieStore(_crawlItem), url.getScheme()));
+         }
       }
-      String xslt = FOLLOW_XPATHS_XSL;
-      xslt = xslt.replace("@@@", s);
-      return applyXSLTToPage(xslt, page);
+      return paths;
    }
 
-   private String applyFollowXSLT( String page ) {
-      String xslt = _params.getFollowXSLT();
-      if ( StringUtils.isBlank(xslt) ) {
-         return page;
+   private String applyFollowXPaths( XdmNode document ) {
+      String xslt = _params._followXPathsXSLT;
+      if ( xslt == null ) {
+         StringBuilder s = new StringBuilder();
+         for ( String xpath : _params.getFollowXPaths() ) {
+            s.append("<xsl:copy-of select=\"").append(xpath).append("\"/>");
+         }
+         xslt = FOLLOW_XPATHS_XSL.replace("@@@", s);
+         _params._followXPathsXSLT = xslt;
       }
-      return applyXSLTToPage(xslt, page);
+      return applyXSLTToPage(xslt, document, CrawlMetrics.XSLT_FOLLOW_XPATHS);
    }
 
-   private String applyXSLTToPage( String xslt, String page ) {
-      TransformationResult transformationResult = Transformer.transform(page, xslt, _crawlItem._variablesForXSLT);
+   /**
+    * @param stage the name of the timer of this transformation, see {@link CrawlMetrics}
+    */
+   private String applyXSLTToPage( String xslt, XdmNode document, String stage ) {
+      if ( document == null ) {
+         return "";
+      }
+      long t = System.nanoTime();
+      TransformationResult transformationResult = Transformer.transform(document, xslt, _crawlItem.getVariablesForXSLT());
+      _metrics.timer(stage).recordMicrosSince(t);
       if ( !transformationResult._errors.isEmpty() ) {
          StringBuilder s = new StringBuilder();
          for ( TransformationError e : transformationResult._errors ) {
@@ -345,11 +358,62 @@ public class CrawlTask implements Runnable {
       return transformationResult._result;
    }
 
-   /** search for a <base> tag and overwrite _pathDir with its value if present */
-   private void checkForHtmlBaseElement( String page ) {
-      Matcher matcher = BASE.matcher(page);
-      if ( matcher.find() ) {
-         String path = matcher.group(1);
+   /**
+    * Starts the next attempt to fetch the page. With a blocking fetcher, or if the task is synchronous, the response is
+    * processed in the calling thread, otherwise the processing is handed over to the crawl task executor as soon as the
+    * response has arrived, so no thread waits for the network.
+    */
+   private void attempt() {
+      _retriesLeft--;
+      Proxy proxy = null;
+      HttpHost host = null;
+      long t = System.currentTimeMillis();
+      CompletableFuture<String> page;
+      try {
+         proxy = _crawler.checkoutProxy();
+         if ( proxy == null ) {
+            throw new IOException("no usable proxy");
+         }
+         String url = _crawlItem._path;
+         String urlHost = _crawlItem.getHost() != null ? _crawlItem.getHost() : _params.getHost();
+         host = UrlCanonicalizer.toHttpHost(urlHost, _crawlItem._scheme);
+         HttpRequestBase request = new HttpGet(url);
+         if ( url.endsWith(":POST") ) {
+            request = createPost(url);
+         }
+         _crawler._params.applyAdditionalHeaders(request);
+         page = requestPage(proxy.getFetcher(), host, request);
+      }
+      catch ( Throwable argh ) {
+         page = new CompletableFuture<>();
+         page.completeExceptionally(argh);
+      }
+
+      if ( _synchronous ) {
+         try {
+            page.join();
+         }
+         catch ( CompletionException | CancellationException argh ) {
+            // handled in processResponse
+         }
+      }
+      Proxy p = proxy;
+      HttpHost h = host;
+      if ( page.isDone() ) {
+         page.whenComplete(( pg, argh ) -> processResponse(p, h, t, pg, argh));
+      } else {
+         page.whenCompleteAsync(( pg, argh ) -> {
+            MDC.put("path", _crawlItem._path);
+            processResponse(p, h, t, pg, argh);
+            MDC.remove("path");
+         }, _crawler._executor);
+      }
+   }
+
+   /** overwrite _pathDir with the href of the <base> tag if present */
+   private void checkForHtmlBaseElement( LinkExtractor links ) {
+      String path = links.getBaseHref();
+      if ( path != null ) {
          if ( path.isEmpty() ) {
             return;
          }
@@ -370,6 +434,23 @@ public class CrawlTask implements Runnable {
       }
    }
 
+   /**
+    * @return the parsed page, or null if the page could not be parsed, in which case all transformations yield empty results
+    */
+   private XdmNode createDocument( String page ) {
+      long t = System.nanoTime();
+      try {
+         return Transformer.createDocument(page);
+      }
+      catch ( Exception argh ) {
+         _log.warn("Failed to parse page " + _crawlItem, argh);
+         return null;
+      }
+      finally {
+         _metrics.timer(CrawlMetrics.HTML_CLEAN).recordMicrosSince(t);
+      }
+   }
+
    private HttpRequestBase createPost( String url ) throws UnsupportedEncodingException {
       if ( url.endsWith(":POST") ) {
          url = url.substring(0, url.length() - 5);
@@ -402,34 +483,31 @@ public class CrawlTask implements Runnable {
       return post;
    }
 
-   private Set<CrawlItem> extractCrawlItems( String page ) {
-      Set<CrawlItem> paths = new HashSet<>();
-
-      page = applyFollowXPaths(page);
-      page = applyFollowXSLT(page);
-
-      page = LINEBREAKS.matcher(page).replaceAll("");
-      Matcher matcher = HREF.matcher(page);
-      while ( matcher.find() ) {
-         String path = new String(convertXmlCharEntitiesToUrl(matcher.group(1))); // new String(.) to get rid of memory leak because of substring not copying!
-         String linklabel = new String(StringUtils.trimToEmpty(matcher.group(2))); // new String(.) to get rid of memory leak because of substring not copying!
-         String[] normalizedPath = makeAbsolute(_crawlItem, _pathDir, normalize(path));
-         for ( Pattern p : _params.getFollowPatterns() ) {
-            if ( p.matcher(normalizedPath[1]).matches() && !isDontFollow(normalizedPath[1]) ) {
-               paths.add(new CrawlItem(_params, _crawlItem, normalizedPath[0], normalizedPath[1], linklabel, getHttpContext(_crawlItem), normalizedPath[2]));
-            }
-         }
-      }
-      return paths;
-   }
-
-   private Map<String, String> followUrl( String key, String value ) {
+   /**
+    * Fetches and transforms the followed page synchronously by a delegate crawler, which shares the proxies and the
+    * metrics with the crawler of this task.
+    * @return the first result of the followed page, null if it has none
+    */
+   private Map<String, String> fetchFollowUrl( CrawlItem ci ) {
       final Map<String, String>[] maps = new Map[1];
       Crawler crawlerDelegate = new Crawler(_params) {
 
+         {
+            // the followed page may have followUrls of its own, they are resolved in the calling thread, since it
+            // already is a thread of the followUrl executor and must not wait for another one
+            _followUrlCache = _crawler._followUrlCache;
+         }
+
          @Override
          public CrawlTask createCrawlTask( Crawler crawler, CrawlItem crawlItem ) {
-            return _crawler.createCrawlTask(crawler, crawlItem);
+            CrawlTask crawlTask = _crawler.createCrawlTask(crawler, crawlItem);
+            crawlTask._synchronous = true; // the caller waits for the result, and the delegate has no executor
+            return crawlTask;
+         }
+
+         @Override
+         public CrawlMetrics getMetrics() {
+            return _crawler.getMetrics();
          }
 
          @Override
@@ -438,7 +516,7 @@ public class CrawlTask implements Runnable {
          }
 
          @Override
-         protected synchronized int addResult( Map<String, String>[] m ) {
+         protected int addResult( Map<String, String>[] m ) {
             if ( m.length > 0 ) {
                maps[0] = m[0];
             }
@@ -461,17 +539,60 @@ public class CrawlTask implements Runnable {
          }
 
          @Override
-         synchronized boolean addCrawlItem( CrawlItem crawlItem ) {
+         boolean addCrawlItem( CrawlItem crawlItem ) {
             // do nothing
             return false;
          }
+
+         @Override
+         void crawlTaskFinished( CrawlItem crawlItem, long elapsedMillis, boolean success ) {
+            // do nothing
+         }
+
+         @Override
+         void retryLater( CrawlItem crawlItem, long delayMillis ) {
+            // the caller waits for the result, so we have to retry synchronously
+            TimeUtils.sleepQuietly(delayMillis);
+            createCrawlTask(this, crawlItem).run();
+         }
       };
 
+      crawlerDelegate.createCrawlTask(crawlerDelegate, ci).run();
+      return maps[0];
+   }
+
+   /**
+    * Called exactly once per task, when there is no further attempt.
+    */
+   private void finish( boolean success ) {
+      try {
+         if ( _retryLater ) {
+            _crawler.retryLater(_crawlItem, getRetryDelayMillis());
+         } else {
+            _crawlItem.requestFinished();
+            _crawler.crawlItemFinished(_crawlItem, success);
+         }
+      }
+      finally {
+         // frees the slot of this task, so that the crawler can hand over the next item from the frontier
+         _crawler.crawlTaskFinished(_crawlItem, _requestTimeInMillis, success);
+      }
+   }
+
+   /**
+    * Starts the fetch of the url of a <code>$followurl$</code> value on the followUrl executor, or shares a recent or
+    * running fetch of the same url with the same variables in the same session, if the cache is enabled. Without a
+    * followUrl executor, i.e. for followUrls of followed pages, the url is fetched in the calling thread.
+    * @return the first result of the followed page, null if it has none
+    */
+   private CompletableFuture<Map<String, String>> followUrl( String value ) {
       String[] s = StringTool.split(value, '$');
       String url = s[s.length - 1].trim();
-      String[] normalizedPath = makeAbsolute(_crawlItem, _pathDir, url);
-      CrawlItem ci = new CrawlItem(_params, _crawlItem, normalizedPath[0], normalizedPath[1], null, getHttpContext(_crawlItem), normalizedPath[2]);
+      CrawlUrl crawlUrl = UrlCanonicalizer.resolve(_crawlItem, _pathDir, url);
+      CookieStore cookieStore = getCookieStore(_crawlItem);
+      CrawlItem ci = new CrawlItem(_params, _crawlItem, crawlUrl.getHost(), crawlUrl.getPath(), null, cookieStore, crawlUrl.getScheme());
 
+      StringBuilder cacheKey = new StringBuilder(crawlUrl.toString());
       for ( int i = 0, length = s.length - 1; i < length; i++ ) {
          if ( s[i].isEmpty() || s[i].equals("followurl") ) {
             continue;
@@ -479,35 +600,189 @@ public class CrawlTask implements Runnable {
          String[] ss = StringTool.split(s[i], '=');
          if ( ss.length == 2 ) {
             ci.addVariableForXSLT(ss[0], ss[1]);
+            cacheKey.append('$').append(s[i]);
          }
       }
+      // the followed page may depend on the session, cookie stores don't override equals, so they are compared by identity
+      Object key = cookieStore == null ? cacheKey.toString() : Arrays.asList(cacheKey.toString(), cookieStore);
 
-      String oldPath = MDC.get("path");
-      crawlerDelegate.createCrawlTask(crawlerDelegate, ci).run();
-      MDC.put("path", oldPath);
+      ExecutorService followUrlExecutor = _crawler._followUrlExecutor;
+      Supplier<CompletableFuture<Map<String, String>>> fetch = () -> {
+         if ( followUrlExecutor != null ) {
+            return CompletableFuture.supplyAsync(() -> fetchFollowUrl(ci), followUrlExecutor);
+         }
+         CompletableFuture<Map<String, String>> result = new CompletableFuture<>();
+         try {
+            result.complete(fetchFollowUrl(ci));
+         }
+         catch ( Throwable argh ) {
+            result.completeExceptionally(argh);
+         }
+         return result;
+      };
+      FollowUrlCache followUrlCache = _crawler._followUrlCache;
+      return followUrlCache == null ? fetch.get() : followUrlCache.get(key, fetch);
+   }
 
-      if ( maps[0] != null ) {
-         return maps[0];
-      }
+   /**
+    * @return the cookie store of the session of the item, which is shared by all items found on its page
+    */
+   private CookieStore getCookieStore( CrawlItem crawlItem ) {
+      return _params.isUseCookies() ? crawlItem._cookieStore : null;
+   }
 
-      return null;
+   private void processPage( Proxy proxy, HttpHost host, long t, String page ) throws Exception {
+      page = applyPageReplacements(_params, page);
+      sanityCheck(page);
+      // the page is parsed only once, all transformations use the same document
+      XdmNode document = createDocument(page);
+      long xsltStart = System.nanoTime();
+      Map<String, String>[] maps = document == null ? null
+         : Transformer.transformToMaps(document, _params.getXslContents(), _crawlItem.getVariablesForXSLT())._maps;
+      _metrics.timer(CrawlMetrics.XSLT).recordMicrosSince(xsltStart);
+      sanityCheckTransformation(maps);
+      _requestTimeInMillis = System.currentTimeMillis() - t;
+      proxy.addSuccessfulGet((int)_requestTimeInMillis);
+      // links and <base> are found in a single pass over the page, the links are filtered before the results are added,
+      // since followUrl in the results depends on the <base> of the page
+      long linkExtractionStart = System.nanoTime();
+      LinkExtractor links = new LinkExtractor(page);
+      checkForHtmlBaseElement(links);
+      Set<CrawlItem> paths = extractCrawlItems(links, document);
+      _metrics.timer(CrawlMetrics.LINK_EXTRACTION).recordMicrosSince(linkExtractionStart);
+      int numberItemsAdded = transformAndAddResult(host, page, maps);
+      long enqueueStart = System.nanoTime();
+      int numberCrawlItemsAdded = 0;
+      for ( CrawlItem path : paths ) {
+         boolean added = _crawler.addCrawlItem(path);
+         if ( added ) {
+            numberCrawlItemsAdded++;
+         }
+      }
+      _metrics.timer(CrawlMetrics.ENQUEUE).recordMicrosSince(enqueueStart);
+      _metrics.counter(CrawlMetrics.PAGES).increment();
+      _metrics.counter(CrawlMetrics.RESULTS).add(numberItemsAdded);
+
+      String proxyString = numberCrawlItemsAdded == 0 && numberItemsAdded == 0 && _params.isUseProxies() ? ", " + proxy.getAddress().toString() : "";
+      _log.debug("added " + numberCrawlItemsAdded + " URLs to queue, scraped " + numberItemsAdded + " items" + proxyString);
+      int pathNumber = _crawler._pathNumber.incrementAndGet();
+      if ( pathNumber % 1000 == 0 ) {
+         _log.info("got " + pathNumber + " paths");
+      }
    }
 
-   private HttpContext getHttpContext( CrawlItem crawlItem ) {
-      HttpContext httpContext = HttpClientFactory.createHttpContext(_params.isUseCookies());
-      if ( crawlItem._httpContext != null && _params.isUseCookies() ) {
-         httpContext.setAttribute(ClientContext.COOKIE_STORE, crawlItem._httpContext.getAttribute(ClientContext.COOKIE_STORE));
+   /**
+    * @param page the page, or null if the request failed
+    * @param failure the cause of the failure, or null if the request was successful
+    */
+   private void processResponse( Proxy proxy, HttpHost host, long t, String page, Throwable failure ) {
+      Proxy checkedOutProxy = proxy;
+      boolean done = true;
+      boolean success = false;
+      try {
+         try {
+            if ( failure != null ) {
+               throw unwrap(failure);
+            }
+            processPage(proxy, host, t, page);
+            success = true;
+         }
+         catch ( ResponseRejectedException argh ) {
+            // the response was fine, but retrying would be rejected again, and the proxy is not to blame
+            _log.warn("Rejected page " + _crawlItem + ": " + argh.getMessage());
+            _crawler._rejectedPaths.add(_crawlItem);
+            _metrics.counter(CrawlMetrics.REJECTED).increment();
+         }
+         catch ( Exception argh ) {
+            _requestTimeInMillis = System.currentTimeMillis() - t;
+            String cause = argh.getClass().getSimpleName();
+            _metrics.counter((_retriesLeft > 0 ? CrawlMetrics.RETRIES_PREFIX : CrawlMetrics.ERRORS_PREFIX) + cause).increment();
+            proxy = handleException(argh, (int)_requestTimeInMillis, _retriesLeft, proxy);
+            if ( _retriesLeft > 0 ) {
+               if ( _params.isUseProxies() ) {
+                  done = false; // we retry right away with another proxy
+               } else {
+                  // without proxies we retry after a delay, meanwhile this thread crawls other items
+                  _crawlItem._failedAttempts = getMaxRetries() - _retriesLeft;
+                  _retryLater = true;
+               }
+            }
+         }
+         finally {
+            if ( checkedOutProxy != null ) {
+               if ( proxy == null && _params.isUseProxies() ) {
+                  checkedOutProxy.openCircuit(); // forgotten by handleException, probed again after the cooldown
+               }
+               _crawler.returnProxy(checkedOutProxy);
+            }
+         }
+      }
+      finally {
+         if ( done ) {
+            finish(success);
+         }
+      }
+      if ( !done ) {
+         attempt();
       }
-      return httpContext;
    }
 
-   private boolean isDontFollow( String path ) {
-      for ( Pattern pp : _params.getDontFollowPatterns() ) {
-         if ( pp.matcher(path).matches() ) {
-            return true;
+   /**
+    * Fetches the <code>$followurl$</code> values of the results concurrently and merges the non-empty values of the
+    * followed pages into the results, in the order of the values. Fetches not finished within
+    * <code>followUrlTimeoutMillis</code> after the first one started are not waited for, they are not cancelled either,
+    * since other pages may share them.
+    * @return false, if the thread was interrupted
+    */
+   private boolean resolveFollowUrls( Map<String, String>[] maps ) {
+      List<Map<String, String>> targets = new ArrayList<>();
+      List<CompletableFuture<Map<String, String>>> fetches = new ArrayList<>();
+      for ( Map<String, String> map : maps ) {
+         for ( String value : new ArrayList<>(map.values()) ) {
+            if ( value != null && value.contains(FOLLOWURL) ) {
+               targets.add(map);
+               fetches.add(followUrl(value));
+            }
+         }
+      }
+      if ( fetches.isEmpty() ) {
+         return true;
+      }
+
+      long start = System.nanoTime();
+      long deadline = System.currentTimeMillis() + _params.getFollowUrlTimeoutMillis();
+      try {
+         for ( int i = 0, length = fetches.size(); i < length; i++ ) {
+            Map<String, String> followUrlResults;
+            try {
+               followUrlResults = fetches.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+            catch ( TimeoutException argh ) {
+               _metrics.counter(CrawlMetrics.FOLLOW_URL_TIMEOUTS).increment();
+               _log.warn("followUrl of " + _crawlItem + " not finished within " + _params.getFollowUrlTimeoutMillis() + " ms");
+               continue;
+            }
+            catch ( ExecutionException argh ) {
+               _log.warn("failed to follow url of " + _crawlItem, argh.getCause());
+               continue;
+            }
+            if ( followUrlResults != null ) {
+               for ( Map.Entry<String, String> e : followUrlResults.entrySet() ) {
+                  if ( e.getValue() != null && !e.getValue().trim().isEmpty() ) {
+                     targets.get(i).put(e.getKey(), e.getValue());
+                  }
+               }
+            }
          }
+         return true;
+      }
+      catch ( InterruptedException argh ) {
+         Thread.currentThread().interrupt();
+         return false;
+      }
+      finally {
+         _metrics.timer(CrawlMetrics.FOLLOW_URL).recordMicrosSince(start);
       }
-      return false;
    }
 
    private void sanityCheck( String page ) throws IOException {
@@ -526,43 +801,60 @@ public class CrawlTask implements Runnable {
             throw new SocketException("suspicious result, " + p + " matches" + (_params.isUseProxies() ? ", will retry this proxy" : ""));
          }
       }
-      if ( _params._useProxies ) {
-         // the following two lines duplicate the effort of xslt processing in order to sanity check the result using the current proxy.
-         String transformed = Transformer.transform(page, _params.getXslContents(), _crawlItem._variablesForXSLT)._result;
-         try {
-            Transformer.toMapLoud(transformed);
-         }
-         catch ( Exception argh ) {
-            _log.debug("Exception in xslt step", argh);
-            throw new SocketException("suspicious result, exception in xslt step" + (_params.isUseProxies() ? ", will retry this proxy" : ""));
-         }
+   }
+
+   /** checks that the result of the xslt processing is valid, in order to sanity check the result using the current proxy */
+   private void sanityCheckTransformation( Map<String, String>[] maps ) throws IOException {
+      if ( _params._useProxies && maps == null ) {
+         throw new SocketException("suspicious result, exception in xslt step, will retry this proxy");
       }
    }
 
-   private int transformAndAddResult( HttpHost host, String page ) {
+   /**
+    * Stores the page, if the response has a validator, so that the next crawl can send a conditional request.
+    */
+   private void storeResponse( ResponseStore responseStore, String url, HttpResponse response, String page ) {
+      Header eTag = response.getFirstHeader("ETag");
+      Header lastModified = response.getFirstHeader("Last-Modified");
+      if ( eTag != null || lastModified != null ) {
+         responseStore.put(new StoredResponse(url, eTag != null ? eTag.getValue() : null, lastModified != null ? lastModified.getValue() : null, page));
+      }
+   }
+
+   /**
+    * @param maps the result of the xslt processing, null if it failed
+    */
+   private int transformAndAddResult( HttpHost host, String page, Map<String, String>[] maps ) {
       try {
-         String transformed = Transformer.transform(page, _params.getXslContents(), _crawlItem._variablesForXSLT)._result;
-         Map<String, String>[] maps = Transformer.toMap(transformed);
-         for ( Map<String, String> map : maps ) {
-            for ( Map.Entry<String, String> e : new HashMap<>(map).entrySet() ) {
-               String key = e.getKey();
-               String value = e.getValue();
-               if ( value.contains(FOLLOWURL) ) {
-                  Map<String, String> followUrlResults = followUrl(key, value);
-                  if ( followUrlResults != null ) {
-                     for ( Map.Entry<String, String> ee : followUrlResults.entrySet() ) {
-                        if ( ee.getValue() != null && !ee.getValue().trim().isEmpty() ) {
-                           map.put(ee.getKey(), ee.getValue());
-                        }
-                     }
-                  }
-               }
+         if ( maps == null ) {
+            maps = new Map[0];
+         }
+         if ( !resolveFollowUrls(maps) ) {
+            return 0;
+         }
+         String originalPageKey = null;
+         String originalPage = null;
+         if ( maps.length > 0 ) {
+            switch ( _params.getOriginalPageCapture() ) {
+            case Plain:
+               originalPageKey = Crawler.RESULT_KEY_ORIGINAL_PAGE;
+               originalPage = page;
+               break;
+            case Gzip:
+               // compressed once per page, all results of the page share the string
+               originalPageKey = Crawler.RESULT_KEY_ORIGINAL_PAGE_GZIP;
+               originalPage = Crawler.compressOriginalPage(page);
+               break;
+            default:
+               break;
             }
          }
          for ( Map<String, String> map : maps ) {
             map.put(Crawler.RESULT_KEY_DEEPLINK, host + _crawlItem._path);
             map.put(Crawler.RESULT_KEY_CRAWLITEM_DEPTH, "" + _crawlItem._depth);
-            map.put(Crawler.RESULT_KEY_ORIGINAL_PAGE, page);
+            if ( originalPageKey != null ) {
+               map.put(originalPageKey, originalPage);
+            }
          }
          return _crawler.addResult(maps);
       }
@@ -0,0 +1,75 @@
+package util.crawler;
+
+import java.util.Objects;
+
+
+/**
+ * A link resolved by {@link UrlCanonicalizer#resolve(Crawler.CrawlItem, String, String)}: the host, if the link names
+ * one or the page it was found on has one, the absolute path and the scheme, if the link names one. Immutable.
+ */
+public final class CrawlUrl {
+
+   private final String _host;
+   private final String _path;
+   private final String _scheme;
+
+
+   /**
+    * @param host null or the host, with the port if there is one
+    * @param path the absolute path, with the query
+    * @param scheme null or the scheme
+    */
+   public CrawlUrl( String host, String path, String scheme ) {
+      _host = host;
+      _path = path;
+      _scheme = scheme;
+   }
+
+   @Override
+   public boolean equals( Object obj ) {
+      if ( this == obj ) {
+         return true;
+      }
+      if ( obj == null || getClass() != obj.getClass() ) {
+         return false;
+      }
+      CrawlUrl other = (CrawlUrl)obj;
+      return _path.equals(other._path) && Objects.equals(_host, other._host) && Objects.equals(_scheme, other._scheme);
+   }
+
+   /**
+    * @return null or the host, with the port if there is one
+    */
+   public String getHost() {
+      return _host;
+   }
+
+   /**
+    * @return the absolute path, with the query
+    */
+   public String getPath() {
+      return _path;
+   }
+
+   /**
+    * @return null or the scheme
+    */
+   public String getScheme() {
+      return _scheme;
+   }
+
+   @Override
+   public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + ((_host == null) ? 0 : _host.hashCode());
+      result = prime * result + _path.hashCode();
+      result = prime * result + ((_scheme == null) ? 0 : _scheme.hashCode());
+      return result;
+   }
+
+   @Override
+   public String toString() {
+      return (_scheme == null ? "" : _scheme + "://") + (_host == null ? "" : _host) + _path;
+   }
+}
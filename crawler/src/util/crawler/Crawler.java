@@ -1,53 +1,102 @@
 package util.crawler;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
 import java.io.File;
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpHost;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.support.FileSystemXmlApplicationContext;
 
 import util.concurrent.ExecutorUtils;
+import util.concurrent.InFlightCounter;
+import util.concurrent.VirtualThreadExecutor;
+import util.crawler.cache.ResponseStore;
+import util.crawler.checkpoint.CheckpointEntry;
+import util.crawler.checkpoint.CheckpointLog;
+import util.crawler.fetch.AsyncFetcher;
+import util.crawler.frontier.ExactSeenSet;
+import util.crawler.frontier.FingerprintSeenSet;
+import util.crawler.frontier.Frontier;
+import util.crawler.frontier.HostFrontier;
+import util.crawler.frontier.MemoryFrontier;
+import util.crawler.frontier.SeenSet;
+import util.crawler.frontier.SpillingFrontier;
+import util.crawler.metrics.CrawlMetrics;
+import util.crawler.metrics.LogMetricsExporter;
+import util.crawler.metrics.MetricsExporter;
 import util.crawler.proxy.Proxy;
 import util.crawler.proxy.ProxyCrawler;
 import util.crawler.proxy.ProxyList;
 import util.crawler.proxy.ProxyList.ProxyAddress;
 import util.crawler.proxy.ProxyPool;
+import util.crawler.proxy.ProxyValidator;
+import util.crawler.sink.ResultSink;
+import util.crawler.sink.ResultWriter;
 import util.http.HttpClientFactory;
 
 
 public class Crawler {
 
-   public static final String RESULT_KEY_CRAWLITEM_DEPTH = "crawlItem.depth";
-   public static final String RESULT_KEY_DEEPLINK        = "deeplink";
-   public static final String RESULT_KEY_ORIGINAL_PAGE   = "originalPage";
-
-   private static final Pattern PATTERN_RE_ENCODE_URL = Pattern.compile("([/?&=]*)([^/?&=]+)");
+   public static final String RESULT_KEY_CRAWLITEM_DEPTH    = "crawlItem.depth";
+   public static final String RESULT_KEY_DEEPLINK           = "deeplink";
+   public static final String RESULT_KEY_ORIGINAL_PAGE      = "originalPage";
+   /** the gzipped page encoded in base64, see {@link #getOriginalPage(Map)} */
+   public static final String RESULT_KEY_ORIGINAL_PAGE_GZIP = "originalPage.gz";
 
    private static Logger _log = LoggerFactory.getLogger(Crawler.class);
 
 
+   /**
+    * @return the page of the result, if it was captured, see {@link CrawlParams#getOriginalPageCapture()}
+    */
+   public static String getOriginalPage( Map<String, String> result ) {
+      String gzippedPage = result.get(RESULT_KEY_ORIGINAL_PAGE_GZIP);
+      if ( gzippedPage == null ) {
+         return result.get(RESULT_KEY_ORIGINAL_PAGE);
+      }
+      try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(gzippedPage)))) {
+         return new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8);
+      }
+      catch ( IOException argh ) {
+         throw new RuntimeException("Failed to decompress original page", argh); // cannot happen with a byte array
+      }
+   }
+
    public static void main( String[] args ) {
       main(args, new CrawlerFactory() {
 
@@ -80,46 +129,98 @@ public class Crawler {
       System.exit(0);
    }
 
+   /**
+    * @see UrlCanonicalizer#reEncodePath(String)
+    */
    public static String reEncodeUrlPath( String path ) {
-      try {
-         Matcher matcher = PATTERN_RE_ENCODE_URL.matcher(path);
-
-         boolean result = matcher.find();
-         if ( result ) {
-            StringBuffer sb = new StringBuffer();
-            do {
-               String reEncodedFragment = URLEncoder.encode(URLDecoder.decode(matcher.group(2), "UTF-8"), "UTF-8");
-               matcher.appendReplacement(sb, matcher.group(1) + reEncodedFragment);
-               result = matcher.find();
-            }
-            while ( result );
-            matcher.appendTail(sb);
-            return sb.toString();
-         }
+      return UrlCanonicalizer.reEncodePath(path);
+   }
+
+   /**
+    * @return the page gzipped and encoded in base64, see {@link #getOriginalPage(Map)}
+    */
+   static String compressOriginalPage( String page ) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(page.length() / 4);
+      try (OutputStream out = new GZIPOutputStream(bytes)) {
+         out.write(page.getBytes(StandardCharsets.UTF_8));
       }
-      catch ( UnsupportedEncodingException argh ) {
-         // ignored, as this cannot happen in any JVM
+      catch ( IOException argh ) {
+         throw new RuntimeException("Failed to compress original page", argh); // cannot happen with a byte array
       }
-      return path;
+      return Base64.getEncoder().encodeToString(bytes.toByteArray());
    }
 
 
-   protected CrawlParams        _params;
-   protected ThreadPoolExecutor _executor;
-   protected Set<CrawlItem>     _crawlItems = new LinkedHashSet<CrawlItem>();
-   protected Proxy              _proxy;
-   protected ProxyPool          _proxyPool;
-   protected List<CrawlItem>    _errorPaths = new ArrayList<CrawlItem>();
-   protected int                _pathNumber = 0;
-
-   protected AtomicInteger _crawlTaskIndex = new AtomicInteger(0);
+   protected CrawlParams              _params;
+   protected ExecutorService          _executor;
+   protected SeenSet                  _seenUrls;
+   protected Frontier                 _frontier;
+   /** used for delayed retries and for waking up a rate limited frontier, so crawl threads never sleep */
+   protected ScheduledExecutorService _scheduler;
+   protected Proxy                    _proxy;
+   protected volatile ProxyPool       _proxyPool;
+   /** validates the proxies in the background, if <code>proxyCheckIntervalMillis</code> is set */
+   protected ProxyValidator           _proxyValidator;
+   /** runs the <code>$followurl$</code> fetches, apart from the crawl tasks waiting for them, so they can't starve each other */
+   protected ExecutorService          _followUrlExecutor;
+   /** the recent <code>$followurl$</code> results, if <code>followUrlCacheMillis</code> is set */
+   protected FollowUrlCache           _followUrlCache;
+   protected Queue<CrawlItem>         _errorPaths = new ConcurrentLinkedQueue<CrawlItem>();
+   /** the items, whose responses exceeded the limits or had a content type not allowed, see {@link CrawlParams#getMaxBodySize()} */
+   protected Queue<CrawlItem>         _rejectedPaths = new ConcurrentLinkedQueue<CrawlItem>();
+   protected AtomicInteger            _pathNumber = new AtomicInteger(0);
+   /** the journal of the crawl, if <code>checkpointFile</code> is set */
+   protected CheckpointLog            _checkpointLog;
+   /** the responses of the previous crawl, if <code>responseStoreDirectory</code> is set */
+   protected ResponseStore            _responseStore;
+
+   /** the hosts of the items of this crawl, cleared when the crawl ends */
+   private final HostTable       _hostTable            = new HostTable();
+   /** number of crawl tasks handed over to the executor, which are not yet finished */
+   private final AtomicInteger   _dispatchedCrawlTasks = new AtomicInteger(0);
+   /** number of items added, which are either in the frontier or not yet finished, the crawl is done when it drops to zero */
+   private final InFlightCounter _pendingCrawlItems    = new InFlightCounter();
+   /** only taken to re-initialize an exhausted proxy pool, a lock instead of a monitor, so virtual threads don't pin their carrier thread */
+   private final ReentrantLock   _proxyPoolLock        = new ReentrantLock();
+   /** true, if the pages are fetched by the async fetcher, see {@link CrawlParams#isUseAsyncFetcher()} */
+   private boolean               _asyncFetching;
+
+   private final CrawlMetrics          _metrics;
+   private final List<MetricsExporter> _metricsExporters = new CopyOnWriteArrayList<>();
+   private final List<ResultSink>      _resultSinks      = new CopyOnWriteArrayList<>();
+   /** writes the results to the result sinks, if there are any, created when the crawl starts */
+   private ResultWriter                _resultWriter;
 
 
    public Crawler( CrawlParams params ) {
       _params = params;
+      _metrics = new CrawlMetrics(params.getId());
       init();
    }
 
+   /**
+    * Adds an exporter of the metrics, which is called periodically during the crawl, see
+    * {@link CrawlParams#getMetricsIntervalMillis()}. Without exporters the metrics are logged.
+    */
+   public void addMetricsExporter( MetricsExporter metricsExporter ) {
+      _metricsExporters.add(metricsExporter);
+   }
+
+   /**
+    * Adds a sink, which gets all results of the crawl in batches. The crawl tasks only queue their results, see
+    * {@link ResultWriter}. Sinks have to be added before the crawl starts and are closed when it ends.
+    */
+   public void addResultSink( ResultSink resultSink ) {
+      _resultSinks.add(resultSink);
+   }
+
+   /**
+    * @return the metrics of this crawl, the names of the metrics recorded by the crawler are defined in {@link CrawlMetrics}
+    */
+   public CrawlMetrics getMetrics() {
+      return _metrics;
+   }
+
    public CrawlParams getParams() {
       return _params;
    }
@@ -132,67 +233,115 @@ public class Crawler {
       synchronized ( _executor ) {
          _executor.shutdownNow();
       }
+      _scheduler.shutdownNow();
+      _followUrlExecutor.shutdownNow();
+      _pendingCrawlItems.wakeUp();
    }
 
-   protected synchronized int addResult( Map<String, String>[] maps ) {
-      return 0;
+   /**
+    * Called concurrently by all crawl tasks, so implementations have to be thread safe. Prefer concurrent collections or
+    * the locks of <code>java.util.concurrent</code> over <code>synchronized</code>, which pins virtual threads.<br/>
+    * Queues the results for the result sinks, see {@link #addResultSink(ResultSink)}, and waits only while the queue is
+    * full. Prefer a sink to overriding this, since the crawl task waits for this method.
+    * @return the number of results added
+    */
+   protected int addResult( Map<String, String>[] maps ) {
+      if ( _resultWriter == null ) {
+         return 0;
+      }
+      int added = 0;
+      try {
+         for ( Map<String, String> map : maps ) {
+            _resultWriter.add(map);
+            added++;
+         }
+      }
+      catch ( InterruptedException argh ) {
+         Thread.currentThread().interrupt();
+         _log.warn("Interrupted while waiting for the result sinks, " + (maps.length - added) + " results are dropped");
+      }
+      return added;
    }
 
+   /**
+    * The proxy pool is checked out without a lock. Only when the circuits of all its proxies are open, the pool is
+    * re-initialized, once: the other tasks finding the same pool exhausted wait for the new one.
+    * @return null, if there is no usable proxy
+    */
    protected Proxy checkoutProxy() {
-      if ( _proxyPool != null ) {
-         synchronized ( _proxyPool ) {
-            if ( _proxyPool.size() == 0 ) {
-               _log.warn("got no proxies left, re-initializing proxy pool!");
-               initProxyPool();
-            }
-            Proxy proxy = _proxyPool.checkoutProxy();
-            if ( proxy == null ) {
+      ProxyPool proxyPool = _proxyPool;
+      if ( proxyPool == null ) {
+         return _proxy;
+      }
+      Proxy proxy = proxyPool.checkoutProxy();
+      if ( proxy == null && proxyPool.size() == 0 && !Thread.currentThread().isInterrupted() ) {
+         _proxyPoolLock.lock();
+         try {
+            if ( _proxyPool == proxyPool ) {
                _log.warn("got no proxies left, re-initializing proxy pool!");
+               proxyPool.storeHealth();
                initProxyPool();
-               proxy = _proxyPool.checkoutProxy();
             }
-            return proxy;
          }
+         finally {
+            _proxyPoolLock.unlock();
+         }
+         proxy = _proxyPool.checkoutProxy();
       }
-      return _proxy;
+      return proxy;
    }
 
+   /**
+    * If <code>checkpointFile</code> is set and a journal of a previous crawl exists there, the crawl is resumed from it
+    * instead of starting at the start URLs. The journal is deleted when the crawl is complete.<br/>
+    * However the crawl ends, complete, stopped or interrupted, the executors, the fetchers, the proxies, the result sinks
+    * and the metrics exporters are released in the same way, see {@link #release(boolean)}.
+    */
    protected void crawl() {
-      addStartURLs();
-
-      while ( true ) {
-         boolean check = false;
-         synchronized ( _executor ) {
-            if ( _executor.isShutdown() ) {
-               throw new RuntimeException("Crawler was stopped early.");
+      boolean complete = false;
+      try {
+         List<CheckpointEntry> checkpoint = Collections.emptyList();
+         File checkpointFile = _params.getCheckpointFile();
+         if ( checkpointFile != null ) {
+            checkpoint = CheckpointLog.read(checkpointFile);
+            try {
+               _checkpointLog = new CheckpointLog(checkpointFile, _params.getCheckpointIntervalMillis());
+            }
+            catch ( IOException argh ) {
+               throw new RuntimeException("Failed to open checkpoint " + checkpointFile, argh);
             }
-            check = _executor.getQueue().size() > 0;
-            check |= _executor.getCompletedTaskCount() < _crawlItems.size();
          }
-         if ( !check ) {
-            break;
+         startMetricsExport();
+         startProxyValidator();
+         startResultWriter();
+         if ( checkpoint.isEmpty() ) {
+            addStartURLs();
+         } else {
+            resumeFromCheckpoint(checkpoint);
          }
-         sleep(1000);
-      }
 
-      _log.info("done...");
-
-      synchronized ( _executor ) {
-         _executor.shutdown();
-         try {
-            _executor.awaitTermination(10, TimeUnit.SECONDS);
-         }
-         catch ( InterruptedException argh ) {
-            // ignore
+         while ( true ) {
+            synchronized ( _executor ) {
+               if ( _executor.isShutdown() ) {
+                  throw new RuntimeException("Crawler was stopped early.");
+               }
+            }
+            try {
+               if ( _pendingCrawlItems.await(1000, TimeUnit.MILLISECONDS) ) {
+                  break;
+               }
+            }
+            catch ( InterruptedException argh ) {
+               Thread.currentThread().interrupt();
+               throw new RuntimeException("Crawler was interrupted.", argh);
+            }
          }
-      }
 
-      for ( CrawlItem errorPath : _errorPaths ) {
-         _log.error("Failed to get " + errorPath);
+         _log.info("done...");
+         complete = true;
       }
-
-      if ( _proxyPool != null ) {
-         _log.info("\n" + _proxyPool);
+      finally {
+         release(complete);
       }
    }
 
@@ -200,26 +349,78 @@ public class Crawler {
       return new CrawlTask(crawler, crawlItem);
    }
 
-   protected ThreadPoolExecutor createCrawlTaskExecutor() {
+   /**
+    * The frontier holds all items not yet handed over to the executor, which gets only a few tasks per thread at a time.
+    * If <code>hostRequestsPerSecond</code> or <code>maxConcurrencyPerHost</code> is set, the frontier schedules the items
+    * per host. Otherwise, if <code>maxFrontierItemsInMemory</code> is set, the frontier spills items exceeding that number
+    * to disk.
+    */
+   protected Frontier createFrontier() {
+      if ( _params.getHostRequestsPerSecond() > 0 || _params.getMaxConcurrencyPerHost() > 0 ) {
+         int maxConcurrencyPerHost = _params.getMaxConcurrencyPerHost() > 0 ? _params.getMaxConcurrencyPerHost() : _params.getNumberOfThreads();
+         return new HostFrontier(_params.getHostRequestsPerSecond(), maxConcurrencyPerHost, _params.isLIFO(), _scheduler, this::dispatchCrawlTasks);
+      }
+      if ( _params.getMaxFrontierItemsInMemory() > 0 ) {
+         return new SpillingFrontier(_params.getMaxFrontierItemsInMemory(), _params.getFrontierDirectory(), _params.isLIFO());
+      }
+      return new MemoryFrontier(_params.isLIFO());
+   }
+
+   /**
+    * If <code>useAsyncFetcher</code> is set, the crawl tasks only start their requests and process the responses, so there
+    * is one thread per CPU core and <code>numberOfThreads</code> limits the number of requests in flight instead.<br/>
+    * If <code>useVirtualThreads</code> is set and the JVM supports it, every crawl task runs on its own virtual thread and
+    * <code>numberOfThreads</code> only limits the number of concurrent requests.
+    */
+   protected ExecutorService createCrawlTaskExecutor() {
       int numberOfThreads = _params.getNumberOfThreads();
+      if ( _asyncFetching ) {
+         // the continuations of the requests are executed here too, so there is no priority queue of crawl tasks
+         return ExecutorUtils.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), "crawl task executor - " + _params.getId() + " ");
+      }
+      if ( _params.isUseVirtualThreads() ) {
+         if ( VirtualThreadExecutor.isAvailable() ) {
+            return new VirtualThreadExecutor(numberOfThreads, "crawl task executor - " + _params.getId() + " ");
+         }
+         _log.warn("virtual threads are not supported by this JVM, using " + numberOfThreads + " platform threads");
+      }
       if ( _params.isLIFO() ) {
-         BlockingQueue<Runnable> queue = new PriorityBlockingQueue<Runnable>(11, new Comparator<Runnable>() {
-
-            @Override
-            public int compare( Runnable o1, Runnable o2 ) {
-               CrawlTask c1 = (CrawlTask)o1;
-               CrawlTask c2 = (CrawlTask)o2;
-               return -(c1._index < c2._index ? -1 : (c1._index == c2._index ? 0 : 1));
-            }
-         });
-         return new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0L, TimeUnit.MILLISECONDS, queue,
+         return new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0L, TimeUnit.MILLISECONDS, new LifoQueue<Runnable>(),
             new ExecutorUtils.NamedThreadFactory("crawl task executor - " + _params.getId() + " "));
       } else {
          return ExecutorUtils.newFixedThreadPool(numberOfThreads, "crawl task executor - " + _params.getId() + " ");
       }
    }
 
+   /**
+    * The <code>$followurl$</code> fetches of a page run concurrently, while its crawl task waits for them. They don't run
+    * on the crawl task executor, which might be busy with crawl tasks waiting for their fetches.
+    */
+   protected ExecutorService createFollowUrlExecutor() {
+      int numberOfThreads = _params.getNumberOfThreads();
+      if ( _params.isUseVirtualThreads() && VirtualThreadExecutor.isAvailable() ) {
+         return new VirtualThreadExecutor(numberOfThreads, "followUrl executor - " + _params.getId() + " ");
+      }
+      return ExecutorUtils.newFixedThreadPool(numberOfThreads, "followUrl executor - " + _params.getId() + " ");
+   }
+
+   protected SeenSet createSeenSet() {
+      switch ( _params.getSeenSetMode() ) {
+      case Fingerprint:
+         return new FingerprintSeenSet();
+      case MappedFingerprint:
+         return new FingerprintSeenSet(_params.getFrontierDirectory());
+      default:
+         return new ExactSeenSet();
+      }
+   }
+
    protected void init() {
+      // every proxy would need an async client with I/O threads of its own, which doesn't scale to a pool of proxies
+      _asyncFetching = _params.isUseAsyncFetcher() && !_params.isUseProxies();
+      if ( _params.isUseAsyncFetcher() && _params.isUseProxies() ) {
+         _log.warn("the async fetcher is not supported with proxies, using blocking requests");
+      }
       if ( _params.isUseProxies() ) {
          initProxyPool();
       } else {
@@ -229,14 +430,33 @@ public class Crawler {
          httpClientFactory.setConnectionTimeout(_params.getConnectionTimeout());
          httpClientFactory.setSoTimeout(_params.getSocketTimeout());
          httpClientFactory.setUseCookies(_params.isUseCookies());
+         httpClientFactory.setMaxConnections(Math.max(10, _params.getNumberOfThreads()));
          if ( _params.getAuthenticationUser() != null ) {
             httpClientFactory.setUser(_params.getAuthenticationUser());
             httpClientFactory.setPassword(_params.getAuthenticationPassword());
          }
+         configureResponseLimits(httpClientFactory);
          _proxy.setHttpClient(httpClientFactory.create());
+         if ( _asyncFetching ) {
+            _proxy.setFetcher(new AsyncFetcher(httpClientFactory.createAsync(), httpClientFactory::createAsyncResponseConsumer));
+         }
       }
 
+      if ( _params.getResponseStoreDirectory() != null ) {
+         _responseStore = new ResponseStore(_params.getResponseStoreDirectory());
+      }
+      _scheduler = Executors.newSingleThreadScheduledExecutor(new ExecutorUtils.NamedThreadFactory("crawl scheduler - " + _params.getId() + " "));
+      _seenUrls = createSeenSet();
+      _frontier = createFrontier();
       _executor = createCrawlTaskExecutor();
+      _followUrlExecutor = createFollowUrlExecutor();
+      if ( _params.getFollowUrlCacheMillis() > 0 ) {
+         _followUrlCache = new FollowUrlCache(_params.getFollowUrlCacheMillis(), _params.getFollowUrlCacheSize(), _metrics);
+      }
+
+      _metrics.gauge(CrawlMetrics.FRONTIER_SIZE, _frontier::size);
+      _metrics.gauge(CrawlMetrics.PENDING_CRAWL_ITEMS, _pendingCrawlItems::get);
+      _metrics.gauge(CrawlMetrics.DISPATCHED_TASKS, _dispatchedCrawlTasks::get);
    }
 
    protected void initProxyPool() {
@@ -254,6 +474,11 @@ public class Crawler {
       HttpHost latencyTestHost = new HttpHost(_params.getHost());
       _proxyPool = new ProxyPool(proxyList, latencyTestHost, _params.getSanePatterns(), _params.getInsanePatterns(), _params.getUserAgent(),
          _params.getAuthenticationUser(), _params.getAuthenticationPassword(), _params.getSocketTimeout(), _params.getConnectionTimeout(), "http", _params.getProxyComparator());
+      _proxyPool.setHttpClientFactoryConfigurer(this::configureResponseLimits);
+      _proxyPool.setMaxConcurrencyPerProxy(_params.getMaxConcurrencyPerProxy());
+      if ( _proxyValidator != null ) {
+         _proxyValidator.setProxyPool(_proxyPool);
+      }
       _log.info("using proxy pool with " + _proxyPool.size() + " proxies");
    }
 
@@ -263,30 +488,109 @@ public class Crawler {
       }
    }
 
-   synchronized boolean addCrawlItem( CrawlItem crawlItem ) {
-      if ( !_crawlItems.contains(crawlItem) ) {
-         //         _log.debug("adding " + crawlItem);
-         _crawlItems.add(crawlItem);
-         if ( _crawlItems.size() % 1000 == 0 ) {
-            _log.info("added " + _crawlItems.size() + " to queue");
+   /**
+    * Called concurrently by all crawl tasks for every extracted link, so this must not take any lock shared by the tasks.
+    * The seen set and the frontier are thread safe, the handover to the executor is done by {@link #dispatchCrawlTasks()}.
+    */
+   boolean addCrawlItem( CrawlItem crawlItem ) {
+      if ( _executor.isShutdown() || !_seenUrls.add(crawlItem) ) {
+         return false;
+      }
+      // only items kept in the frontier share their host, the ones already seen are dropped anyway
+      crawlItem._host = _hostTable.canonicalize(crawlItem._host);
+      //         _log.debug("adding " + crawlItem);
+      long numberOfSeenUrls = _seenUrls.size();
+      if ( numberOfSeenUrls % 1000 == 0 ) {
+         _log.info("added " + numberOfSeenUrls + " to queue");
+      }
+      if ( _checkpointLog != null ) {
+         _checkpointLog.added(crawlItem);
+      }
+      _pendingCrawlItems.increment();
+      _frontier.add(crawlItem);
+      dispatchCrawlTasks();
+      return true;
+   }
+
+   /**
+    * Called once for every item, when it is done and not going to be retried, before {@link #crawlTaskFinished}.
+    */
+   void crawlItemFinished( CrawlItem crawlItem, boolean success ) {
+      // items failing because the crawler is stopped are crawled again when resuming
+      if ( _checkpointLog == null || _executor.isShutdown() ) {
+         return;
+      }
+      if ( success ) {
+         _checkpointLog.done(crawlItem);
+      } else {
+         _checkpointLog.failed(crawlItem);
+      }
+   }
+
+   /**
+    * Called by every CrawlTask when it is done, including the adding of all the items it found.
+    * @param success false, if the page could not be fetched or is going to be retried
+    */
+   void crawlTaskFinished( CrawlItem crawlItem, long elapsedMillis, boolean success ) {
+      _frontier.taskFinished(crawlItem, elapsedMillis, success);
+      _dispatchedCrawlTasks.decrementAndGet();
+      dispatchCrawlTasks();
+      // the items found by the task were already added, so this can drop to zero only when the whole crawl is done
+      _pendingCrawlItems.decrement();
+   }
+
+   /**
+    * Puts the item back into the frontier after the delay. The item stays pending meanwhile, so the crawl is not finished.
+    */
+   void retryLater( CrawlItem crawlItem, long delayMillis ) {
+      _pendingCrawlItems.increment();
+      try {
+         _scheduler.schedule(() -> {
+            _frontier.add(crawlItem);
+            dispatchCrawlTasks();
+         }, delayMillis, TimeUnit.MILLISECONDS);
+      }
+      catch ( RejectedExecutionException e ) {
+         _pendingCrawlItems.decrement(); // the crawler was stopped
+      }
+   }
+
+   /**
+    * Hands items from the frontier over to the executor, as long as the executor has less than two tasks per thread, or
+    * with the async fetcher, as long as less than <code>numberOfThreads</code> requests are in flight.
+    * A slot is reserved by a CAS on the dispatch counter before polling, and both adders and finishing tasks first publish
+    * their change and then call this method, so an item can never be left in the frontier while a slot is free.
+    */
+   private void dispatchCrawlTasks() {
+      int maxDispatchedCrawlTasks = _asyncFetching ? _params.getNumberOfThreads() : _params.getNumberOfThreads() * 2;
+      while ( _frontier.size() > 0 ) {
+         int dispatchedCrawlTasks = _dispatchedCrawlTasks.get();
+         if ( dispatchedCrawlTasks >= maxDispatchedCrawlTasks ) {
+            return;
+         }
+         if ( !_dispatchedCrawlTasks.compareAndSet(dispatchedCrawlTasks, dispatchedCrawlTasks + 1) ) {
+            continue;
+         }
+         CrawlItem crawlItem = _frontier.poll();
+         if ( crawlItem == null ) {
+            // either another thread took the last item, or the frontier holds back the items and wakes us up later
+            _dispatchedCrawlTasks.decrementAndGet();
+            return;
          }
          try {
-            synchronized ( _executor ) {
-               CrawlTask crawlTask = createCrawlTask(this, crawlItem);
-               crawlTask._index = _crawlTaskIndex.getAndIncrement();
-               _executor.execute(crawlTask);
-            }
+            CrawlTask crawlTask = createCrawlTask(this, crawlItem);
+            _executor.execute(crawlTask);
          }
          catch ( RejectedExecutionException e ) {
-            return false;
+            _dispatchedCrawlTasks.decrementAndGet();
+            _pendingCrawlItems.decrement();
+            return;
          }
-         return true;
       }
-      return false;
    }
 
    private void addStartURLs() {
-      HttpContext httpContext = HttpClientFactory.createHttpContext(_params.isUseCookies());
+      CookieStore cookieStore = createCookieStore();
 
       List<String> startURLs = _params.getStartURLs();
       if ( _params.isLIFO() ) {
@@ -298,7 +602,7 @@ public class Crawler {
          List<String> reversedStartURLs = new ArrayList<String>();
 
          for ( int i = 0, length = Math.min(_params.getNumberOfThreads(), startURLs.size()); i < length; i++ ) {
-            addCrawlItem(createCrawlItem(httpContext, startURLs.get(i)));
+            addCrawlItem(createCrawlItem(cookieStore, startURLs.get(i)));
          }
          for ( int i = startURLs.size() - 1; i >= 0; i-- ) {
             reversedStartURLs.add(startURLs.get(i));
@@ -307,59 +611,317 @@ public class Crawler {
       }
 
       for ( String startPath : startURLs ) {
-         addCrawlItem(createCrawlItem(httpContext, startPath));
+         addCrawlItem(createCrawlItem(cookieStore, startPath));
+      }
+   }
+
+   private void closeCheckpointLog() {
+      if ( _checkpointLog != null ) {
+         _checkpointLog.close();
+      }
+   }
+
+   /**
+    * Stops the proxy validator and stores the health of the proxies, so the next crawl begins with a ranked pool.
+    */
+   private void closeProxyPool() {
+      if ( _proxyValidator != null ) {
+         _proxyValidator.close();
+      } else if ( _proxyPool != null ) {
+         _proxyPool.storeHealth();
+      }
+   }
+
+   /**
+    * Waits until the queued results are written and closes the result sinks.
+    */
+   private void closeResultWriter() {
+      if ( _resultWriter != null ) {
+         _resultWriter.close();
       }
    }
 
-   private CrawlItem createCrawlItem( HttpContext httpContext, String url ) {
-      String[] normalizedPath = CrawlTask.makeAbsolute(null, null, url);
-      CrawlItem crawlItem = new CrawlItem(_params, null, normalizedPath[0], normalizedPath[1], null, httpContext, normalizedPath[2]);
+   private void configureResponseLimits( HttpClientFactory httpClientFactory ) {
+      httpClientFactory.setMaxBodySize(_params.getMaxBodySize());
+      httpClientFactory.setMaxDownloadTime(_params.getMaxDownloadTimeMillis());
+      httpClientFactory.setAllowedContentTypes(_params.getAllowedContentTypes());
+   }
+
+   /**
+    * @return the cookie store of a new session, or null if the crawl doesn't use cookies
+    */
+   private CookieStore createCookieStore() {
+      return _params.isUseCookies() ? new BasicCookieStore() : null;
+   }
+
+   private CrawlItem createCrawlItem( CookieStore cookieStore, String url ) {
+      CrawlUrl crawlUrl = UrlCanonicalizer.resolve(null, null, url);
+      CrawlItem crawlItem = new CrawlItem(_params, null, crawlUrl.getHost(), crawlUrl.getPath(), null, cookieStore, crawlUrl.getScheme());
       return crawlItem;
    }
 
-   private void sleep( long ms ) {
-      try {
-         Thread.sleep(ms);
+   /**
+    * Exports the current metrics with all exporters, periodically if <code>metricsIntervalMillis</code> is set. A failing
+    * exporter doesn't keep the others from exporting.
+    */
+   private void exportMetrics() {
+      for ( MetricsExporter metricsExporter : _metricsExporters ) {
+         try {
+            metricsExporter.export(_metrics);
+         }
+         catch ( Exception argh ) {
+            _log.warn("Failed to export metrics with " + metricsExporter, argh);
+         }
       }
-      catch ( InterruptedException argh ) {
-         // ignore
+   }
+
+   /**
+    * Exports the metrics a last time and closes the exporters.
+    */
+   private void finishMetricsExport() {
+      exportMetrics();
+      for ( MetricsExporter metricsExporter : _metricsExporters ) {
+         try {
+            metricsExporter.close();
+         }
+         catch ( Exception argh ) {
+            _log.warn("Failed to close " + metricsExporter, argh);
+         }
+      }
+   }
+
+   /**
+    * Shuts the executors down and releases everything the crawl holds. Only a complete crawl waits for its running tasks
+    * and deletes its checkpoint, a crawl ending early keeps the checkpoint, so that it can be resumed.
+    */
+   private void release( boolean complete ) {
+      _scheduler.shutdownNow();
+      _followUrlExecutor.shutdownNow();
+      synchronized ( _executor ) {
+         if ( complete ) {
+            _executor.shutdown();
+         } else {
+            _executor.shutdownNow();
+         }
+         try {
+            _executor.awaitTermination(10, TimeUnit.SECONDS);
+         }
+         catch ( InterruptedException argh ) {
+            Thread.currentThread().interrupt();
+         }
+      }
+
+      if ( complete ) {
+         for ( CrawlItem errorPath : _errorPaths ) {
+            _log.error("Failed to get " + errorPath);
+         }
+         if ( !_rejectedPaths.isEmpty() ) {
+            _log.warn(_rejectedPaths.size() + " responses rejected by the response limits");
+         }
+         if ( _checkpointLog != null ) {
+            _checkpointLog.closeAndDelete();
+         }
+      } else {
+         closeCheckpointLog();
+      }
+      // an early end must not leak the off-heap or disk-backed frontier and seen set either
+      _frontier.close();
+      _seenUrls.close();
+      if ( _proxy != null ) {
+         _proxy.close();
+      }
+
+      if ( _proxyPool != null ) {
+         _log.info("\n" + _proxyPool);
+      }
+      closeProxyPool();
+      if ( _responseStore != null ) {
+         _log.info(_responseStore.toString());
+      }
+      closeResultWriter();
+      finishMetricsExport();
+      _hostTable.clear();
+   }
+
+   /**
+    * Restores the seen set, the error paths and the number of crawled paths, and puts the unfinished items into the
+    * frontier. They share the cookie store of a new session, since cookies are not journaled.
+    */
+   private void resumeFromCheckpoint( List<CheckpointEntry> checkpoint ) {
+      CookieStore cookieStore = createCookieStore();
+      int numberOfPendingItems = 0;
+      for ( CheckpointEntry entry : checkpoint ) {
+         CrawlItem crawlItem;
+         if ( entry.getCrawlItem() == null ) {
+            crawlItem = CrawlItem.finished(entry.getHost(), entry.getPath());
+         } else {
+            try {
+               crawlItem = CrawlItem.readFrom(new DataInputStream(new ByteArrayInputStream(entry.getCrawlItem())), cookieStore);
+            }
+            catch ( IOException argh ) {
+               throw new RuntimeException("Failed to read checkpoint entry for " + entry.getPath(), argh);
+            }
+         }
+         crawlItem._host = _hostTable.canonicalize(crawlItem._host);
+         _seenUrls.add(crawlItem);
+         switch ( entry.getType() ) {
+         case CheckpointEntry.TYPE_DONE:
+            _pathNumber.incrementAndGet();
+            break;
+         case CheckpointEntry.TYPE_ERROR:
+            crawlItem._errorStatusCode = entry.getErrorStatusCode();
+            _errorPaths.add(crawlItem);
+            break;
+         default:
+            numberOfPendingItems++;
+            _pendingCrawlItems.increment();
+            _frontier.add(crawlItem);
+         }
       }
+      _log.info("resuming crawl from checkpoint " + _params.getCheckpointFile() + ": " + _pathNumber.get() + " paths done, " + _errorPaths.size()
+         + " failed, " + numberOfPendingItems + " pending");
+      dispatchCrawlTasks();
    }
 
+   private void startResultWriter() {
+      if ( _resultSinks.isEmpty() ) {
+         return;
+      }
+      _resultWriter = new ResultWriter("result writer - " + _params.getId(), _resultSinks, _params.getResultQueueSize(), _params.getResultBatchSize(),
+            _params.getResultWriterThreads(), _metrics);
+      _metrics.gauge(CrawlMetrics.RESULTS_QUEUED, _resultWriter::getQueueSize);
+   }
+
+   private void startMetricsExport() {
+      if ( _metricsExporters.isEmpty() ) {
+         _metricsExporters.add(new LogMetricsExporter());
+      }
+      long interval = _params.getMetricsIntervalMillis();
+      if ( interval > 0 ) {
+         _scheduler.scheduleWithFixedDelay(this::exportMetrics, interval, interval, TimeUnit.MILLISECONDS);
+      }
+   }
 
+   /**
+    * Started by the crawl, not by the constructor, so a crawler which is configured and never run doesn't leak the
+    * threads of the validator.
+    */
+   private void startProxyValidator() {
+      if ( _proxyPool == null || _params.getProxyCheckIntervalMillis() <= 0 ) {
+         return;
+      }
+      // proxies not used for ten intervals are validated, at most 50 per interval
+      _proxyValidator = new ProxyValidator(_proxyPool, _params.getSocketTimeout(), 10L * _params.getProxyCheckIntervalMillis(), 50, 10);
+      _proxyValidator.start(_params.getProxyCheckIntervalMillis(), _params.getProxyCrawlIntervalMillis());
+   }
+
+
+   /**
+    * A URL in the frontier or crawled. There are millions of them in a big crawl, so an item holds only what is needed to
+    * crawl it: the host shared by all items of the host, see {@link HostTable}, the path once, the depth instead of a
+    * reference to the parent, which would keep all ancestors reachable, the cookie store shared by all items of a session,
+    * and the variables for the XSLT only if there are more than <code>url</code> and <code>linklabel</code>. The http
+    * context exists only while the item is crawled.
+    */
    public static class CrawlItem {
 
-      String                  _host             = null;
-      String                  _path;
-      String                  _linklabel;
-      int                     _depth            = 0;
-      CrawlItem               _parent;
-      HashMap<String, String> _variablesForXSLT = new HashMap<String, String>();
-      HttpContext             _httpContext;
-      int                     _errorStatusCode  = 0;
-      String                  _scheme           = "http";
+      /** null for the host given by {@link CrawlParams#getHost()} */
+      String              _host;
+      String              _path;
+      String              _linklabel;
+      int                 _depth            = 0;
+      Map<String, String> _variablesForXSLT = null;
+      CookieStore         _cookieStore;
+      HttpContext         _httpContext;
+      int                 _errorStatusCode  = 0;
+      String              _scheme           = "http";
+      int                 _failedAttempts   = 0;
+
+
+      /**
+       * @return an item of a finished URL of a checkpoint, which is only added to the seen set or the error paths
+       */
+      static CrawlItem finished( String host, String path ) {
+         CrawlItem crawlItem = new CrawlItem();
+         crawlItem._host = host;
+         crawlItem._path = path;
+         return crawlItem;
+      }
 
+      /**
+       * Reads an item written by {@link #writeTo(DataOutput)}. The cookie store has to be provided by the caller.
+       */
+      public static CrawlItem readFrom( DataInput in, CookieStore cookieStore ) throws IOException {
+         CrawlItem crawlItem = new CrawlItem();
+         crawlItem._host = readString(in);
+         crawlItem._path = readString(in);
+         crawlItem._linklabel = readString(in);
+         crawlItem._depth = in.readInt();
+         crawlItem._scheme = readString(in);
+         if ( crawlItem._scheme != null ) {
+            crawlItem._scheme = crawlItem._scheme.intern();
+         }
+         crawlItem._failedAttempts = in.readInt();
+         for ( int i = 0, length = in.readInt(); i < length; i++ ) {
+            String name = readString(in);
+            String value = readString(in);
+            if ( !(name.equals("url") && crawlItem._path.equals(value)) && !(name.equals("linklabel") && Objects.equals(crawlItem._linklabel, value)) ) {
+               crawlItem.addVariableForXSLT(name, value);
+            }
+         }
+         crawlItem._cookieStore = cookieStore;
+         return crawlItem;
+      }
+
+      private static String readString( DataInput in ) throws IOException {
+         int length = in.readInt();
+         if ( length < 0 ) {
+            return null;
+         }
+         byte[] bytes = new byte[length];
+         in.readFully(bytes);
+         return new String(bytes, StandardCharsets.UTF_8);
+      }
+
+      private static void writeString( DataOutput out, String s ) throws IOException {
+         if ( s == null ) {
+            out.writeInt(-1);
+            return;
+         }
+         byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+         out.writeInt(bytes.length);
+         out.write(bytes);
+      }
 
-      public CrawlItem( CrawlParams params, CrawlItem parent, String host, String path, String linklabel, HttpContext httpContext, String scheme ) {
+      /**
+       * @param parent null or the item the link was found on, only its depth and scheme are used
+       * @param cookieStore null or the cookie store of the session, shared with the parent
+       */
+      public CrawlItem( CrawlParams params, CrawlItem parent, String host, String path, String linklabel, CookieStore cookieStore, String scheme ) {
          if ( host != null && !host.equalsIgnoreCase(params.getHost()) ) {
             _host = host;
          }
          _path = path;
          if ( params.isReEncodeUrls() ) {
             _path = reEncodeUrlPath(_path);
+            if ( !_path.equals(path) ) {
+               addVariableForXSLT("url", path);
+            }
          }
          _linklabel = linklabel;
-         _parent = parent;
-         _httpContext = httpContext;
-         _variablesForXSLT.put("url", path);
-         _variablesForXSLT.put("linklabel", linklabel);
-         _scheme = scheme == null ? (_parent != null ? _parent._scheme : _scheme) : scheme;
-         if ( _parent != null ) {
-            _depth = _parent._depth + 1;
+         _cookieStore = cookieStore;
+         _scheme = scheme == null ? (parent != null ? parent._scheme : _scheme) : scheme;
+         if ( parent != null ) {
+            _depth = parent._depth + 1;
          }
       }
 
+      private CrawlItem() {}
+
       public void addVariableForXSLT( String variableName, String value ) {
+         if ( _variablesForXSLT == null ) {
+            _variablesForXSLT = new HashMap<>(4);
+         }
          _variablesForXSLT.put(variableName, value);
       }
 
@@ -375,11 +937,7 @@ public class Crawler {
             return false;
          }
          CrawlItem other = (CrawlItem)obj;
-         if ( _host == null ) {
-            if ( other._host != null ) {
-               return false;
-            }
-         } else if ( !_host.equals(other._host) ) {
+         if ( !Objects.equals(_host, other._host) ) {
             return false;
          }
          if ( _path == null ) {
@@ -392,10 +950,60 @@ public class Crawler {
          return true;
       }
 
+      /**
+       * @return null, if the session has no cookies
+       */
+      public CookieStore getCookieStore() {
+         return _cookieStore;
+      }
+
+      public int getDepth() {
+         return _depth;
+      }
+
       public int getErrorStatusCode() {
          return _errorStatusCode;
       }
 
+      /**
+       * @return null, if the item is on the host given by {@link CrawlParams#getHost()}
+       */
+      public String getHost() {
+         return _host;
+      }
+
+      /**
+       * @return the http context for the requests of this item, with the cookie store of the session. It is created on
+       *         the first call and kept until {@link #requestFinished()}, so that retries use the same context.
+       */
+      public HttpContext getHttpContext() {
+         if ( _httpContext == null ) {
+            _httpContext = HttpClientFactory.createHttpContext(false);
+            if ( _cookieStore != null ) {
+               _httpContext.setAttribute(ClientContext.COOKIE_STORE, _cookieStore);
+            }
+         }
+         return _httpContext;
+      }
+
+      public String getPath() {
+         return _path;
+      }
+
+      /**
+       * @return a new map with the variables <code>url</code>, <code>linklabel</code> and the ones added with
+       *         {@link #addVariableForXSLT(String, String)}
+       */
+      public Map<String, String> getVariablesForXSLT() {
+         Map<String, String> variables = new HashMap<>();
+         variables.put("url", _path);
+         variables.put("linklabel", _linklabel);
+         if ( _variablesForXSLT != null ) {
+            variables.putAll(_variablesForXSLT);
+         }
+         return variables;
+      }
+
       @Override
       public int hashCode() {
          final int prime = 31;
@@ -406,16 +1014,33 @@ public class Crawler {
       }
 
       public void requestFinished() {
-         if ( _httpContext != null ) {
-            // we don't want to keep all historic httpContexts and their data structures in memory,
-            // so we replace it with something lean
-            _httpContext = new CookieOnlyHttpContext(_httpContext);
-         }
+         // we don't want to keep all historic httpContexts and their data structures in memory,
+         // the cookies are kept by the cookie store of the session
+         _httpContext = null;
       }
 
       @Override
       public String toString() {
-         return (_host == null ? "" : _host) + _path;
+         String host = getHost();
+         return (host == null ? "" : host) + _path;
+      }
+
+      /**
+       * Writes all fields but the cookie store and the http context, which contain data not meant to be serialized.
+       */
+      public void writeTo( DataOutput out ) throws IOException {
+         writeString(out, getHost());
+         writeString(out, _path);
+         writeString(out, _linklabel);
+         out.writeInt(_depth);
+         writeString(out, _scheme);
+         out.writeInt(_failedAttempts);
+         Map<String, String> variables = getVariablesForXSLT();
+         out.writeInt(variables.size());
+         for ( Map.Entry<String, String> e : variables.entrySet() ) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+         }
       }
    }
 
@@ -425,41 +1050,19 @@ public class Crawler {
       public abstract Crawler newCrawler( CrawlParams params );
    }
 
+   /**
+    * The work queue of the crawl task executor in LIFO mode. It hands out the task queued last first, whatever kind of
+    * Runnable it is, since the executor puts its tasks into the queue by {@link #offer(Object)} only.
+    */
+   static class LifoQueue<E> extends LinkedBlockingDeque<E> {
 
-   private static class CookieOnlyHttpContext implements HttpContext {
-
-      private CookieStore _cookieStore;
+      private static final long serialVersionUID = 1L;
 
 
-      public CookieOnlyHttpContext( HttpContext httpContext ) {
-         _cookieStore = (CookieStore)httpContext.getAttribute(ClientContext.COOKIE_STORE);
-      }
-
-      @Override
-      public Object getAttribute( String id ) {
-         if ( ClientContext.COOKIE_STORE.equals(id) ) {
-            return _cookieStore;
-         }
-         return null;
-      }
-
       @Override
-      public Object removeAttribute( String id ) {
-         if ( ClientContext.COOKIE_STORE.equals(id) ) {
-            Object cookieStore = _cookieStore;
-            _cookieStore = null;
-            return cookieStore;
-         }
-         return null;
-      }
-
-      @Override
-      public void setAttribute( String id, Object obj ) {
-         if ( ClientContext.COOKIE_STORE.equals(id) ) {
-            _cookieStore = (CookieStore)obj;
-         }
+      public boolean offer( E e ) {
+         return offerFirst(e);
       }
-
    }
 
 }
@@ -0,0 +1,111 @@
+package util.crawler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import util.crawler.metrics.CrawlMetrics;
+
+
+/**
+ * Keeps the results of <code>$followurl$</code> fetches for a short time, since the same detail page is often referenced
+ * by many listing pages. Concurrent requests of the same key share a single fetch. Failed fetches and fetches without a
+ * result are not kept, so the next request tries again. Expired entries are dropped when a new fetch is added, and if
+ * the cache is full, the oldest entries are dropped as well.
+ */
+class FollowUrlCache {
+
+   /** in the order of insertion, which is the order of expiry, since all entries live equally long, guarded by itself */
+   private final LinkedHashMap<Object, Entry> _entries = new LinkedHashMap<>();
+   private final long                         _ttlMillis;
+   private final int                          _maxSize;
+   private final CrawlMetrics                 _metrics;
+
+
+   /**
+    * @param ttlMillis how long a result is used, counted from the start of its fetch
+    */
+   FollowUrlCache( long ttlMillis, int maxSize, CrawlMetrics metrics ) {
+      _ttlMillis = ttlMillis;
+      _maxSize = maxSize;
+      _metrics = metrics;
+   }
+
+   /**
+    * @param fetch starts the fetch, if there is no result for the key. It is called outside of any lock, so it may
+    *           fetch the url in the calling thread.
+    */
+   CompletableFuture<Map<String, String>> get( Object key, Supplier<CompletableFuture<Map<String, String>>> fetch ) {
+      long now = System.currentTimeMillis();
+      Entry entry;
+      synchronized ( _entries ) {
+         entry = _entries.get(key);
+         if ( entry != null && entry._expiresMillis > now ) {
+            _metrics.counter(CrawlMetrics.FOLLOW_URL_HITS).increment();
+            return entry._result;
+         }
+         if ( entry != null ) {
+            _entries.remove(key); // re-inserted at the end
+         }
+         entry = new Entry(new CompletableFuture<>(), now + _ttlMillis);
+         _entries.put(key, entry);
+         evict(now);
+      }
+
+      Entry created = entry;
+      CompletableFuture<Map<String, String>> result;
+      try {
+         result = fetch.get();
+      }
+      catch ( RuntimeException argh ) {
+         result = new CompletableFuture<>();
+         result.completeExceptionally(argh);
+      }
+      result.whenComplete(( r, argh ) -> {
+         if ( argh != null || r == null ) {
+            remove(key, created);
+         }
+         if ( argh != null ) {
+            created._result.completeExceptionally(argh);
+         } else {
+            created._result.complete(r);
+         }
+      });
+      return created._result;
+   }
+
+   /**
+    * Drops the expired entries and the oldest ones exceeding the maximum size, starting with the oldest entry, so it
+    * stops at the first entry to keep.
+    */
+   private void evict( long now ) {
+      for ( Iterator<Entry> iterator = _entries.values().iterator(); iterator.hasNext(); ) {
+         Entry e = iterator.next();
+         if ( e._expiresMillis > now && _entries.size() <= _maxSize ) {
+            break;
+         }
+         iterator.remove();
+      }
+   }
+
+   private void remove( Object key, Entry entry ) {
+      synchronized ( _entries ) {
+         _entries.remove(key, entry);
+      }
+   }
+
+
+   private static class Entry {
+
+      final CompletableFuture<Map<String, String>> _result;
+      final long                                   _expiresMillis;
+
+
+      Entry( CompletableFuture<Map<String, String>> result, long expiresMillis ) {
+         _result = result;
+         _expiresMillis = expiresMillis;
+      }
+   }
+}
@@ -0,0 +1,38 @@
+package util.crawler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Canonicalizes the host names of the items of a crawl, so that all {@link Crawler.CrawlItem}s of a host share one
+ * instance instead of their own copy of the host name, which is cut out of every absolute link. Every crawler has its
+ * own table, which is cleared when its crawl ends, so hosts don't pile up in a long running JVM. Lookups don't lock.
+ */
+final class HostTable {
+
+   private final Map<String, String> _hosts = new ConcurrentHashMap<>();
+
+
+   /**
+    * @return the instance of the host shared by all items of the crawl, null for null
+    */
+   String canonicalize( String host ) {
+      if ( host == null ) {
+         return null;
+      }
+      String canonical = _hosts.get(host);
+      if ( canonical == null ) {
+         canonical = _hosts.putIfAbsent(host, host);
+      }
+      return canonical != null ? canonical : host;
+   }
+
+   void clear() {
+      _hosts.clear();
+   }
+
+   int size() {
+      return _hosts.size();
+   }
+}
@@ -0,0 +1,217 @@
+package util.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+
+/**
+ * Finds all links and the first <code>&lt;base&gt;</code> element of a page in a single pass, without regular expressions
+ * and without copying the page. Only the href values, which are followed, and the labels, which are used, are copied.
+ * <ul>
+ * <li>A link is an <code>&lt;a</code> tag with a double quoted <code>href</code> attribute. Single quoted and unquoted
+ * values are skipped, as with the regular expression used before.</li>
+ * <li>The label of a link is the raw content up to the next <code>&lt;/a</code>, if found within
+ * {@value #MAX_LABEL_LENGTH} chars, and empty otherwise.</li>
+ * <li>Quoted attribute values may contain <code>&gt;</code>, line breaks are removed from href values and labels.</li>
+ * </ul>
+ */
+public class LinkExtractor {
+
+   public static final int MAX_LABEL_LENGTH = 2500;
+
+
+   static boolean isWhitespace( char c ) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+   }
+
+   /** removes all \n and \r\n, like the line break pattern of the crawler did with the whole page */
+   static String removeLineBreaks( String s, int start, int end ) {
+      StringBuilder sb = null;
+      for ( int i = start; i < end; i++ ) {
+         char c = s.charAt(i);
+         boolean lineBreak = c == '\n' || c == '\r' && i + 1 < end && s.charAt(i + 1) == '\n';
+         if ( lineBreak && sb == null ) {
+            sb = new StringBuilder(end - start);
+            sb.append(s, start, i);
+         } else if ( !lineBreak && sb != null ) {
+            sb.append(c);
+         }
+      }
+      return sb == null ? s.substring(start, end) : sb.toString();
+   }
+
+   private static boolean regionMatches( String s, int offset, String lowerCase ) {
+      return s.regionMatches(true, offset, lowerCase, 0, lowerCase.length());
+   }
+
+
+   private final String     _page;
+   private final List<Link> _links = new ArrayList<>();
+   private String           _baseHref;
+
+   /* the value of the href attribute of the last parsed tag */
+   private int _tagHrefStart;
+   private int _tagHrefEnd;
+
+
+   public LinkExtractor( String page ) {
+      _page = page;
+      parse();
+   }
+
+   /**
+    * @return the href of the first <code>&lt;base&gt;</code> element, or null if there is none
+    */
+   public String getBaseHref() {
+      return _baseHref;
+   }
+
+   public List<Link> getLinks() {
+      return _links;
+   }
+
+   private void parse() {
+      String page = _page;
+      int length = page.length();
+      int i = 0;
+      while ( (i = page.indexOf('<', i)) >= 0 && i + 2 < length ) {
+         i++;
+         char c = page.charAt(i);
+         if ( (c == 'a' || c == 'A') && isWhitespace(page.charAt(i + 1)) ) {
+            int tagEnd = parseTag(i + 1);
+            if ( tagEnd < 0 ) {
+               return;
+            }
+            if ( _tagHrefStart < 0 ) {
+               i = tagEnd;
+               continue;
+            }
+            int labelStart = tagEnd + 1;
+            int labelEnd = -1;
+            if ( page.charAt(tagEnd - 1) != '/' ) {
+               labelEnd = findEndOfLabel(labelStart);
+            }
+            _links.add(new Link(_tagHrefStart, _tagHrefEnd, labelStart, labelEnd));
+            i = labelEnd >= 0 ? labelEnd : labelStart;
+         } else if ( _baseHref == null && regionMatches(page, i, "base") && i + 4 < length && isWhitespace(page.charAt(i + 4)) ) {
+            int tagEnd = parseTag(i + 4);
+            if ( tagEnd < 0 ) {
+               return;
+            }
+            if ( _tagHrefStart >= 0 ) {
+               _baseHref = removeLineBreaks(page, _tagHrefStart, _tagHrefEnd);
+            }
+            i = tagEnd;
+         }
+      }
+   }
+
+   /**
+    * @return the index of the first occurrence of <code>&lt;/a</code> within {@link #MAX_LABEL_LENGTH} chars, or -1
+    */
+   private int findEndOfLabel( int labelStart ) {
+      String page = _page;
+      int maxStart = Math.min(page.length() - 3, labelStart + MAX_LABEL_LENGTH);
+      for ( int i = labelStart; (i = page.indexOf('<', i)) >= 0 && i <= maxStart; i++ ) {
+         if ( page.charAt(i + 1) == '/' && (page.charAt(i + 2) == 'a' || page.charAt(i + 2) == 'A') ) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Parses the attributes of a tag, sets {@link #_tagHrefStart} and {@link #_tagHrefEnd} to the double quoted value of its
+    * first href attribute, or {@link #_tagHrefStart} to -1 if there is none.
+    * @return the index of the closing <code>&gt;</code>, or -1 if the tag is not closed
+    */
+   private int parseTag( int i ) {
+      String page = _page;
+      int length = page.length();
+      _tagHrefStart = -1;
+      while ( i < length ) {
+         char c = page.charAt(i);
+         if ( c == '>' ) {
+            return i;
+         }
+         if ( isWhitespace(c) || c == '/' || c == '"' || c == '\'' || c == '=' ) {
+            i++;
+            continue;
+         }
+
+         int nameStart = i;
+         while ( i < length && !isWhitespace(c = page.charAt(i)) && c != '=' && c != '>' && c != '/' ) {
+            i++;
+         }
+         int nameEnd = i;
+         while ( i < length && isWhitespace(page.charAt(i)) ) {
+            i++;
+         }
+         if ( i >= length || page.charAt(i) != '=' ) {
+            continue; // an attribute without value
+         }
+         i++;
+         while ( i < length && isWhitespace(page.charAt(i)) ) {
+            i++;
+         }
+         if ( i >= length ) {
+            return -1;
+         }
+         char quote = page.charAt(i);
+         if ( quote == '"' || quote == '\'' ) {
+            int valueEnd = page.indexOf(quote, i + 1);
+            if ( valueEnd < 0 ) {
+               return -1;
+            }
+            if ( quote == '"' && _tagHrefStart < 0 && nameEnd - nameStart == 4 && regionMatches(page, nameStart, "href") ) {
+               _tagHrefStart = i + 1;
+               _tagHrefEnd = valueEnd;
+            }
+            i = valueEnd + 1;
+         } else {
+            while ( i < length && !isWhitespace(c = page.charAt(i)) && c != '>' ) {
+               i++;
+            }
+         }
+      }
+      return -1;
+   }
+
+
+   public class Link {
+
+      private final int _hrefStart;
+      private final int _hrefEnd;
+      private final int _labelStart;
+      private final int _labelEnd;
+
+
+      Link( int hrefStart, int hrefEnd, int labelStart, int labelEnd ) {
+         _hrefStart = hrefStart;
+         _hrefEnd = hrefEnd;
+         _labelStart = labelStart;
+         _labelEnd = labelEnd;
+      }
+
+      public String getHref() {
+         return removeLineBreaks(_page, _hrefStart, _hrefEnd);
+      }
+
+      /**
+       * @return the trimmed raw content of the link, which may contain markup, or an empty string
+       */
+      public String getLabel() {
+         if ( _labelEnd < 0 ) {
+            return "";
+         }
+         return StringUtils.trimToEmpty(removeLineBreaks(_page, _labelStart, _labelEnd));
+      }
+
+      @Override
+      public String toString() {
+         return getHref();
+      }
+   }
+}
@@ -0,0 +1,306 @@
+package util.crawler;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpHost;
+
+import util.crawler.Crawler.CrawlItem;
+
+
+/**
+ * Turns the links found on a page into the host, path and scheme of the {@link CrawlItem}s, which runs for every link of
+ * every page. Each step is a single pass over the chars of the link, which returns the link itself if there is nothing to
+ * change, instead of a chain of regex replacements and splits:
+ * <ul>
+ * <li>{@link #canonicalizeHref(String)} trims the href, converts XML char entities to escapes and normalizes spaces,
+ * pipes and <code>&amp;amp;</code></li>
+ * <li>{@link #resolve(CrawlItem, String, String)} resolves it against the page and removes the dot-segments</li>
+ * <li>{@link #reEncodePath(String)} re-encodes the path, if the crawl config asks for it</li>
+ * <li>{@link #toHttpHost(String, String)} splits the port off the host, before the request is made</li>
+ * </ul>
+ * The results are those of the regex based implementation, which the crawler had before, with one exception: for
+ * absolute URLs without a path, like <code>http://host</code> or <code>http://host?x</code>, the regexes returned the
+ * whole URL as host and <code>/</code> as path, while {@link #resolve(CrawlItem, String, String)} returns the real host
+ * and the path <code>/</code> or <code>/?x</code>. So such a URL found again in a crawl resumed from a checkpoint of the
+ * old implementation is not in the restored seen set and is crawled once more, and the pending items of the checkpoint
+ * with the whole URL as host fail and end up in the error paths. All other URLs keep their seen set entries.
+ */
+public class UrlCanonicalizer {
+
+   private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+
+   /**
+    * Trims the href, converts XML char entities like <code>&amp;#47;</code> to <code>%2f</code>, and replaces spaces
+    * with <code>+</code>, pipes with <code>%7C</code> and <code>&amp;amp;</code> with <code>&amp;</code>.
+    */
+   public static String canonicalizeHref( String href ) {
+      return canonicalize(href, true);
+   }
+
+   /**
+    * Like {@link #canonicalizeHref(String)}, without converting XML char entities.
+    */
+   public static String normalize( String href ) {
+      return canonicalize(href, false);
+   }
+
+   /**
+    * Re-encodes every fragment of the path between the chars <code>/?&amp;=</code>, like
+    * <code>URLEncoder.encode(URLDecoder.decode(fragment))</code> with UTF-8 does, so that equal paths with different
+    * escaping become equal strings.
+    * @throws IllegalArgumentException if a fragment contains an invalid escape
+    */
+   public static String reEncodePath( String path ) {
+      int length = path.length();
+      int i = 0;
+      while ( i < length && (isUnreserved(path.charAt(i)) || isDelimiter(path.charAt(i))) ) {
+         i++;
+      }
+      if ( i == length ) {
+         return path;
+      }
+      while ( i > 0 && !isDelimiter(path.charAt(i - 1)) ) {
+         i--; // the fragment containing the first char to change is re-encoded from its start
+      }
+      StringBuilder sb = new StringBuilder(length + 16);
+      sb.append(path, 0, i);
+      while ( i < length ) {
+         char c = path.charAt(i);
+         if ( isDelimiter(c) ) {
+            sb.append(c);
+            i++;
+            continue;
+         }
+         int end = i + 1;
+         while ( end < length && !isDelimiter(path.charAt(end)) ) {
+            end++;
+         }
+         if ( !reEncodeAsciiFragment(path, i, end, sb) ) {
+            String fragment = path.substring(i, end);
+            sb.append(URLEncoder.encode(URLDecoder.decode(fragment, StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+         }
+         i = end;
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Resolves a canonicalized href against the page it was found on.
+    * @param parent the page or null, if the href is a start URL
+    * @param pathDir the directory of the path of the page, without trailing slash
+    * @return the host of the href or of the page, which is null for the host of the crawl config, the path without
+    *         dot-segments, and the scheme, if the href names one
+    */
+   public static CrawlUrl resolve( CrawlItem parent, String pathDir, String href ) {
+      String host = parent == null ? null : parent.getHost();
+      if ( href.startsWith("/") ) {
+         return new CrawlUrl(host, href, null);
+      }
+      if ( href.startsWith("http://") ) {
+         return splitAbsoluteUrl(href, "http");
+      }
+      if ( href.startsWith("https://") ) {
+         return splitAbsoluteUrl(href, "https");
+      }
+      if ( href.startsWith("?") && parent != null ) {
+         String name = parent._path.substring(pathDir.length() + 1);
+         int queryIndex = name.indexOf('?');
+         if ( queryIndex > 0 ) {
+            name = name.substring(0, queryIndex);
+         }
+         href = name + href;
+      }
+      return new CrawlUrl(host, removeDotSegments(String.valueOf(pathDir), href), null);
+   }
+
+   /**
+    * @param host the host, optionally followed by <code>:port</code>
+    */
+   public static HttpHost toHttpHost( String host, String scheme ) {
+      for ( int i = host.length() - 2; i > 0; i-- ) {
+         if ( host.charAt(i) == ':' && isDigit(host.charAt(i + 1)) ) {
+            int end = i + 2;
+            while ( end < host.length() && isDigit(host.charAt(end)) ) {
+               end++;
+            }
+            return new HttpHost(host.substring(0, i), Integer.parseInt(host, i + 1, end, 10), scheme);
+         }
+      }
+      return new HttpHost(host, -1, scheme);
+   }
+
+   private static String canonicalize( String href, boolean convertXmlCharEntities ) {
+      int start = 0;
+      int end = href.length();
+      while ( start < end && href.charAt(start) <= ' ' ) {
+         start++;
+      }
+      while ( end > start && href.charAt(end - 1) <= ' ' ) {
+         end--;
+      }
+      int i = start;
+      while ( i < end && href.charAt(i) != ' ' && href.charAt(i) != '|' && href.charAt(i) != '&' ) {
+         i++;
+      }
+      if ( i == end ) {
+         return href.substring(start, end);
+      }
+
+      StringBuilder sb = new StringBuilder(end - start + 8);
+      sb.append(href, start, i);
+      while ( i < end ) {
+         char c = href.charAt(i);
+         if ( c == ' ' ) {
+            sb.append('+');
+         } else if ( c == '|' ) {
+            sb.append("%7C");
+         } else if ( c == '&' && convertXmlCharEntities && href.startsWith("&#", i) ) {
+            int digitsEnd = i + 2;
+            while ( digitsEnd < end && isDigit(href.charAt(digitsEnd)) ) {
+               digitsEnd++;
+            }
+            if ( digitsEnd > i + 2 && digitsEnd < end && href.charAt(digitsEnd) == ';' ) {
+               sb.append('%').append(Integer.toString(Integer.parseInt(href, i + 2, digitsEnd, 10), 16));
+               i = digitsEnd + 1;
+               continue;
+            }
+            sb.append(c);
+         } else if ( c == '&' && href.startsWith("&amp;", i) ) {
+            sb.append('&');
+            i += 5;
+            continue;
+         } else {
+            sb.append(c);
+         }
+         i++;
+      }
+      return sb.toString();
+   }
+
+   private static int hexValue( char c ) {
+      if ( c >= '0' && c <= '9' ) {
+         return c - '0';
+      }
+      if ( c >= 'a' && c <= 'f' ) {
+         return c - 'a' + 10;
+      }
+      if ( c >= 'A' && c <= 'F' ) {
+         return c - 'A' + 10;
+      }
+      return -1;
+   }
+
+   private static boolean isDelimiter( char c ) {
+      return c == '/' || c == '?' || c == '&' || c == '=';
+   }
+
+   private static boolean isDigit( char c ) {
+      return c >= '0' && c <= '9';
+   }
+
+   /**
+    * @return whether {@link URLEncoder} leaves the char as it is
+    */
+   private static boolean isUnreserved( int c ) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit((char)c) || c == '.' || c == '-' || c == '*' || c == '_';
+   }
+
+   /**
+    * Re-encodes the fragment without decoding it to a string, if it consists of ASCII chars and ASCII escapes only, for
+    * which decoding and encoding is a mapping of single chars.
+    * @return false, if the fragment has to be decoded and encoded, in which case nothing was appended
+    */
+   private static boolean reEncodeAsciiFragment( String path, int start, int end, StringBuilder sb ) {
+      int sbLength = sb.length();
+      for ( int i = start; i < end; i++ ) {
+         int c = path.charAt(i);
+         if ( c == '%' ) {
+            int value = i + 2 < end ? (hexValue(path.charAt(i + 1)) << 4) | hexValue(path.charAt(i + 2)) : -1;
+            if ( value < 0 || value >= 0x80 ) {
+               sb.setLength(sbLength); // an invalid escape or a multi-byte char
+               return false;
+            }
+            c = value;
+            i += 2;
+         } else if ( c == '+' ) {
+            c = ' ';
+         } else if ( c >= 0x80 ) {
+            sb.setLength(sbLength);
+            return false;
+         }
+         if ( isUnreserved(c) ) {
+            sb.append((char)c);
+         } else if ( c == ' ' ) {
+            sb.append('+');
+         } else {
+            sb.append('%').append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Joins the directory and the relative href and removes the segments <code>.</code> and <code>..</code>, the latter
+    * together with the segment before it. The first segment of the directory is dropped, and empty segments are kept,
+    * except at the end. The segments are copied from right to left within a single buffer.
+    */
+   private static String removeDotSegments( String pathDir, String href ) {
+      int length = pathDir.length() + 1 + href.length();
+      char[] buf = new char[length + 1];
+      pathDir.getChars(0, pathDir.length(), buf, 0);
+      buf[pathDir.length()] = '/';
+      href.getChars(0, href.length(), buf, pathDir.length() + 1);
+
+      int out = length + 1; // the result is buf[out, length + 1)
+      int end = length;
+      if ( buf[length - 1] == '/' ) {
+         buf[--out] = '/';
+         while ( end > 0 && buf[end - 1] == '/' ) {
+            end--;
+         }
+      }
+      boolean skip = false;
+      while ( true ) {
+         int slash = end - 1;
+         while ( slash >= 0 && buf[slash] != '/' ) {
+            slash--;
+         }
+         if ( slash < 0 ) {
+            break;
+         }
+         int segmentLength = end - slash - 1;
+         if ( skip ) {
+            skip = false;
+         } else if ( segmentLength == 1 && buf[slash + 1] == '.' ) {
+            // the current directory
+         } else if ( segmentLength == 2 && buf[slash + 1] == '.' && buf[slash + 2] == '.' ) {
+            skip = true;
+         } else {
+            out -= segmentLength;
+            System.arraycopy(buf, slash + 1, buf, out, segmentLength);
+            buf[--out] = '/';
+         }
+         end = slash;
+      }
+      return new String(buf, out, length + 1 - out);
+   }
+
+   /**
+    * @param url an URL starting with <code>scheme://</code>
+    */
+   private static CrawlUrl splitAbsoluteUrl( String url, String scheme ) {
+      int hostStart = scheme.length() + 3;
+      int pathStart = url.indexOf('/', hostStart);
+      if ( pathStart >= 0 ) {
+         return new CrawlUrl(url.substring(hostStart, pathStart), url.substring(pathStart), scheme);
+      }
+      int hostEnd = hostStart;
+      while ( hostEnd < url.length() && url.charAt(hostEnd) != '?' && url.charAt(hostEnd) != '#' ) {
+         hostEnd++;
+      }
+      return new CrawlUrl(url.substring(hostStart, hostEnd), "/" + url.substring(hostEnd), scheme);
+   }
+}
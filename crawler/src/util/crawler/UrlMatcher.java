@@ -0,0 +1,149 @@
+package util.crawler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+
+/**
+ * Decides whether a path is followed, i.e. whether it matches any follow pattern and none of the dont-follow patterns,
+ * like {@link Pattern#matches(String, CharSequence)} does.<br/>
+ * Most patterns of a crawl config start with a literal path prefix, like <code>/category/.*</code>. All patterns are
+ * indexed by their literal prefix in one trie, so a walk along the path yields the few patterns, which can match at
+ * all. Only those and the patterns without a literal prefix are evaluated, the dont-follow patterns only if a follow
+ * pattern matched. The matcher is immutable and thread safe.
+ */
+public class UrlMatcher {
+
+   /** chars, which are literals in a regex without escaping */
+   private static final String PLAIN_LITERALS = "/-_=&%,:;~#!@'\"<> ";
+
+
+   /**
+    * @return the literal prefix every match of the pattern starts with, or an empty string if there is none or the pattern
+    *         is too complex to tell
+    */
+   static String getLiteralPrefix( Pattern pattern ) {
+      String regex = pattern.pattern();
+      if ( pattern.flags() != 0 || regex.indexOf('|') >= 0 ) {
+         return ""; // an alternative or a flag like CASE_INSENSITIVE may match paths with any prefix
+      }
+      StringBuilder prefix = new StringBuilder();
+      int i = regex.startsWith("^") ? 1 : 0;
+      while ( i < regex.length() ) {
+         char c = regex.charAt(i);
+         char literal;
+         int next;
+         if ( Character.isLetterOrDigit(c) || PLAIN_LITERALS.indexOf(c) >= 0 ) {
+            literal = c;
+            next = i + 1;
+         } else if ( c == '\\' && i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1)) ) {
+            literal = regex.charAt(i + 1); // an escaped meta char like \. or \?
+            next = i + 2;
+         } else {
+            break;
+         }
+         if ( next < regex.length() ) {
+            char quantifier = regex.charAt(next);
+            if ( quantifier == '?' || quantifier == '*' || quantifier == '{' ) {
+               break; // the literal is optional
+            }
+            if ( quantifier == '+' ) {
+               prefix.append(literal);
+               break;
+            }
+         }
+         prefix.append(literal);
+         i = next;
+      }
+      return prefix.toString();
+   }
+
+
+   private final Node _root = new Node();
+   private final int  _numberOfPatterns;
+   private final int  _numberOfUnindexedPatterns;
+
+
+   public UrlMatcher( List<Pattern> followPatterns, List<Pattern> dontFollowPatterns ) {
+      for ( Pattern p : followPatterns ) {
+         _root.getOrCreate(getLiteralPrefix(p), 0)._followPatterns.add(p);
+      }
+      for ( Pattern p : dontFollowPatterns ) {
+         _root.getOrCreate(getLiteralPrefix(p), 0)._dontFollowPatterns.add(p);
+      }
+      _numberOfPatterns = followPatterns.size() + dontFollowPatterns.size();
+      _numberOfUnindexedPatterns = _root._followPatterns.size() + _root._dontFollowPatterns.size();
+   }
+
+   /**
+    * @return true, if the path matches any of the follow patterns and none of the dont-follow patterns
+    */
+   public boolean isFollowed( String path ) {
+      return matchesAny(path, true) && !matchesAny(path, false);
+   }
+
+   @Override
+   public String toString() {
+      return "UrlMatcher with " + _numberOfPatterns + " patterns, " + _numberOfUnindexedPatterns + " without literal prefix";
+   }
+
+   /**
+    * Walks the trie along the path, and evaluates the patterns of all nodes passed, which are the patterns whose literal
+    * prefix is a prefix of the path.
+    */
+   private boolean matchesAny( String path, boolean follow ) {
+      int i = 0;
+      for ( Node node = _root; node != null; node = node.get(path, i++) ) {
+         List<Pattern> patterns = follow ? node._followPatterns : node._dontFollowPatterns;
+         for ( int j = 0, length = patterns.size(); j < length; j++ ) {
+            if ( patterns.get(j).matcher(path).matches() ) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+
+
+   private static class Node {
+
+      final List<Pattern> _followPatterns     = new ArrayList<>();
+      final List<Pattern> _dontFollowPatterns = new ArrayList<>();
+      char[]              _chars              = new char[0];
+      Node[]              _children           = new Node[0];
+
+
+      /**
+       * @return the child for the char at the index of the path, or null if there is none or the path ends
+       */
+      Node get( String path, int index ) {
+         if ( index >= path.length() ) {
+            return null;
+         }
+         char c = path.charAt(index);
+         for ( int i = 0; i < _chars.length; i++ ) {
+            if ( _chars[i] == c ) {
+               return _children[i];
+            }
+         }
+         return null;
+      }
+
+      Node getOrCreate( String prefix, int index ) {
+         if ( index == prefix.length() ) {
+            return this;
+         }
+         Node child = get(prefix, index);
+         if ( child == null ) {
+            child = new Node();
+            _chars = Arrays.copyOf(_chars, _chars.length + 1);
+            _chars[_chars.length - 1] = prefix.charAt(index);
+            _children = Arrays.copyOf(_children, _children.length + 1);
+            _children[_children.length - 1] = child;
+         }
+         return child.getOrCreate(prefix, index + 1);
+      }
+   }
+}
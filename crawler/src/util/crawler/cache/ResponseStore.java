@@ -0,0 +1,123 @@
+package util.crawler.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import util.crawler.frontier.FingerprintSeenSet;
+
+
+/**
+ * Keeps the last response of every URL, which had an <code>ETag</code> or a <code>Last-Modified</code> header, so that
+ * a re-crawl can send conditional requests and use the stored page, if the server answers with
+ * <code>304 Not Modified</code>.<br/>
+ * Every response is a file of its own, named by the fingerprint of its URL and spread over 256 directories. The file
+ * starts with a small uncompressed header of the URL and the validators, followed by the gzipped page, so that the
+ * validators of a conditional request are read without reading the page, which is only needed if the server answers
+ * with <code>304</code>. A file is written to a temporary file first and then renamed, so concurrent crawl tasks and a
+ * killed crawler never leave a partial file. The URL is stored too, so that a fingerprint collision is detected and
+ * treated as a miss.
+ */
+public class ResponseStore {
+
+   private static final Logger _log               = LoggerFactory.getLogger(ResponseStore.class);
+
+   /** enough for the URL and the validators of most responses, so reading them takes a single small read */
+   private static final int    HEADER_BUFFER_SIZE = 1024;
+
+
+   private final File       _directory;
+   private final AtomicLong _numberOfNotModified = new AtomicLong();
+   private final AtomicLong _numberOfStored      = new AtomicLong();
+
+
+   public ResponseStore( File directory ) {
+      _directory = directory;
+      _directory.mkdirs();
+   }
+
+   /**
+    * Reads only the header of the stored response, see {@link #notModified(StoredResponse)} for the page.
+    * @return the stored response of the URL without its page, or null if there is none or it can't be read
+    */
+   public StoredResponse get( String url ) {
+      File file = getFile(url);
+      if ( !file.exists() ) {
+         return null;
+      }
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), HEADER_BUFFER_SIZE))) {
+         StoredResponse response = StoredResponse.readHeaderFrom(in);
+         return url.equals(response._url) ? response : null;
+      }
+      catch ( IOException argh ) {
+         _log.warn("Failed to read stored response for " + url, argh);
+         return null;
+      }
+   }
+
+   /**
+    * Called when the stored response is used, since the server answered with <code>304 Not Modified</code>.
+    * @return the stored page of the response, which is read now
+    * @throws IOException if the page can't be read anymore, e.g. because the response was replaced meanwhile
+    */
+   public String notModified( StoredResponse response ) throws IOException {
+      File file = getFile(response._url);
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+         StoredResponse stored = StoredResponse.readHeaderFrom(in);
+         if ( !response._url.equals(stored._url) ) {
+            throw new IOException("stored response of " + response._url + " was replaced by " + stored._url);
+         }
+         response._page = StoredResponse.readPageFrom(new DataInputStream(new GZIPInputStream(in)));
+      }
+      _numberOfNotModified.incrementAndGet();
+      return response._page;
+   }
+
+   /**
+    * Stores the response, replacing the previous response of its URL. Failures are logged only, since the crawl doesn't
+    * depend on the store.
+    */
+   public void put( StoredResponse response ) {
+      File file = getFile(response._url);
+      File tmpFile = new File(file.getParentFile(), file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+      try {
+         file.getParentFile().mkdirs();
+         try (OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(tmpFile))) {
+            response.writeHeaderTo(new DataOutputStream(fileOut));
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(fileOut)))) {
+               response.writePageTo(out);
+            }
+         }
+         Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+         _numberOfStored.incrementAndGet();
+      }
+      catch ( IOException argh ) {
+         _log.warn("Failed to store response for " + response._url, argh);
+         tmpFile.delete();
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "ResponseStore in " + _directory + ": " + _numberOfStored + " responses stored, " + _numberOfNotModified + " not modified";
+   }
+
+   File getFile( String url ) {
+      String name = String.format("%016x", FingerprintSeenSet.fingerprint(null, url));
+      return new File(new File(_directory, name.substring(0, 2)), name.substring(2) + ".response");
+   }
+}
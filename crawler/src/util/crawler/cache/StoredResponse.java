@@ -0,0 +1,101 @@
+package util.crawler.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * A page as stored by the {@link ResponseStore}, with the validators of the response, which are sent with the next
+ * request of the URL, so that the server can answer with <code>304 Not Modified</code>.
+ */
+public class StoredResponse {
+
+   /**
+    * Reads the URL and the validators written by {@link #writeHeaderTo(DataOutput)}, the page is not read.
+    */
+   static StoredResponse readHeaderFrom( DataInput in ) throws IOException {
+      StoredResponse response = new StoredResponse();
+      response._url = readString(in);
+      response._eTag = readString(in);
+      response._lastModified = readString(in);
+      return response;
+   }
+
+   static String readPageFrom( DataInput in ) throws IOException {
+      return readString(in);
+   }
+
+   private static String readString( DataInput in ) throws IOException {
+      int length = in.readInt();
+      if ( length < 0 ) {
+         return null;
+      }
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   private static void writeString( DataOutput out, String s ) throws IOException {
+      if ( s == null ) {
+         out.writeInt(-1);
+         return;
+      }
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+
+   String _url;
+   String _eTag;
+   String _lastModified;
+   String _page;
+
+
+   public StoredResponse( String url, String eTag, String lastModified, String page ) {
+      _url = url;
+      _eTag = eTag;
+      _lastModified = lastModified;
+      _page = page;
+   }
+
+   private StoredResponse() {}
+
+   /**
+    * @return the value of the <code>ETag</code> header, or null
+    */
+   public String getETag() {
+      return _eTag;
+   }
+
+   /**
+    * @return the value of the <code>Last-Modified</code> header, or null
+    */
+   public String getLastModified() {
+      return _lastModified;
+   }
+
+   /**
+    * @return the page, decoded with the charset of the original response, null for a response returned by
+    *         {@link ResponseStore#get(String)}, until {@link ResponseStore#notModified(StoredResponse)} read it
+    */
+   public String getPage() {
+      return _page;
+   }
+
+   public String getUrl() {
+      return _url;
+   }
+
+   void writeHeaderTo( DataOutput out ) throws IOException {
+      writeString(out, _url);
+      writeString(out, _eTag);
+      writeString(out, _lastModified);
+   }
+
+   void writePageTo( DataOutput out ) throws IOException {
+      writeString(out, _page);
+   }
+}
@@ -0,0 +1,62 @@
+package util.crawler.checkpoint;
+
+import util.dump.ExternalizableBean;
+
+
+/**
+ * One record of the {@link CheckpointLog}. An added item is stored with all its fields, a finished item only with its host
+ * and path, which identify it.
+ */
+public class CheckpointEntry implements ExternalizableBean {
+
+   private static final long serialVersionUID = 4362298817411504617L;
+
+   /** the item passed the seen set and was put into the frontier */
+   public static final byte TYPE_ADDED = 1;
+   /** the item was crawled successfully */
+   public static final byte TYPE_DONE  = 2;
+   /** the item failed and is not going to be retried */
+   public static final byte TYPE_ERROR = 3;
+
+   @externalize(1)
+   byte   _type;
+
+   @externalize(2)
+   String _host;
+
+   @externalize(3)
+   String _path;
+
+   @externalize(4)
+   int    _errorStatusCode;
+
+   /**
+    * the item written by {@link util.crawler.Crawler.CrawlItem#writeTo(java.io.DataOutput)}, only for added items, null
+    * after the item is finished
+    */
+   @externalize(5)
+   byte[] _crawlItem;
+
+
+   public CheckpointEntry() {}
+
+   public byte[] getCrawlItem() {
+      return _crawlItem;
+   }
+
+   public int getErrorStatusCode() {
+      return _errorStatusCode;
+   }
+
+   public String getHost() {
+      return _host;
+   }
+
+   public String getPath() {
+      return _path;
+   }
+
+   public byte getType() {
+      return _type;
+   }
+}
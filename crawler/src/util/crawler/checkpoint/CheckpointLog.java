@@ -0,0 +1,318 @@
+package util.crawler.checkpoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import util.crawler.Crawler.CrawlItem;
+import util.dump.Dump;
+import util.dump.DumpUtils;
+
+
+/**
+ * An append-only journal of a crawl, which allows to resume it after it was stopped or killed. Every item is journaled
+ * when it is added, with all its fields, and when it is finished, with its host and path only. So the frontier, the seen
+ * set, the error paths and the number of crawled paths can be restored by replaying the journal, see {@link #read(File)}.
+ * The journal is compacted when it is read and when it is closed, to one entry per item, and the finished items without
+ * their fields, so that neither the journal nor the heap of a resumed crawl holds the fields of all items ever crawled.
+ * <br/>
+ * The crawl tasks only put the entries into a lock-free queue, a single thread appends them to the {@link Dump} and
+ * flushes it every <code>flushIntervalMillis</code>. As the entries of a task are queued in the order they happen,
+ * the items found on a page are always written before the page is marked as finished, and a journal cut off at any
+ * point is consistent: the pages not marked as finished are crawled again, including the adding of their links.
+ */
+public class CheckpointLog implements Closeable {
+
+   private static final Logger _log = LoggerFactory.getLogger(CheckpointLog.class);
+
+
+   /**
+    * Replays the journal of a previous crawl. An entry cut off by killing the crawler ends the replay. The items, which
+    * are finished already, are kept with their host and path only. If the journal contains more than one entry per item,
+    * it is rewritten with one entry per item, see {@link #compact(File, List)}.
+    * @return one entry per item added, in the order the items were added, with the type of the last entry of the item
+    *         and its error status code, or an empty list if there is no journal
+    */
+   public static List<CheckpointEntry> read( File file ) {
+      finishCompaction(file);
+      if ( !file.exists() ) {
+         return Collections.emptyList();
+      }
+      Map<String, CheckpointEntry> items = new LinkedHashMap<>();
+      int numberOfEntries = 0;
+      Dump<CheckpointEntry> dump = null;
+      try {
+         dump = new Dump<>(CheckpointEntry.class, file, Dump.SHARED_MODE);
+         for ( CheckpointEntry entry : dump ) {
+            numberOfEntries++;
+            CheckpointEntry added = items.get(getKey(entry._host, entry._path));
+            if ( added == null ) {
+               // a finished item without an added entry was written by compact
+               items.put(getKey(entry._host, entry._path), entry);
+            } else if ( entry._type != CheckpointEntry.TYPE_ADDED ) {
+               added._type = entry._type;
+               added._errorStatusCode = entry._errorStatusCode;
+               added._crawlItem = null; // only needed to crawl the item again
+            }
+         }
+      }
+      catch ( Exception argh ) {
+         _log.warn("Failed to read checkpoint " + file + " completely, resuming from the " + items.size() + " items read", argh);
+      }
+      finally {
+         DumpUtils.closeSilently(dump);
+      }
+      List<CheckpointEntry> entries = new ArrayList<>(items.values());
+      if ( numberOfEntries > entries.size() ) {
+         try {
+            compact(file, entries);
+         }
+         catch ( IOException argh ) {
+            _log.warn("Failed to compact checkpoint " + file, argh);
+         }
+      }
+      return entries;
+   }
+
+   /**
+    * Replaces the journal with the given entries. They are written to a temporary dump, which is moved to the journal
+    * after the journal was deleted, main file first, and the main file of the temporary dump is moved last. So the
+    * journal is complete, whenever its main file exists, and {@link #finishCompaction(File)} completes the move otherwise.
+    */
+   private static void compact( File file, List<CheckpointEntry> entries ) throws IOException {
+      File compacted = getCompactedFile(file);
+      deleteDumpFiles(compacted);
+      try (Dump<CheckpointEntry> dump = new Dump<>(CheckpointEntry.class, compacted)) {
+         for ( CheckpointEntry entry : entries ) {
+            dump.add(entry);
+         }
+      }
+      if ( !file.delete() ) {
+         throw new IOException("Failed to delete " + file);
+      }
+      deleteDumpFiles(file);
+      moveDumpFiles(compacted, file);
+   }
+
+   /**
+    * Completes a compaction interrupted by killing the crawler, or deletes an incomplete compacted journal.
+    */
+   private static void finishCompaction( File file ) {
+      File compacted = getCompactedFile(file);
+      if ( !compacted.exists() ) {
+         return;
+      }
+      try {
+         if ( file.exists() ) {
+            deleteDumpFiles(compacted);
+         } else {
+            deleteDumpFiles(file);
+            moveDumpFiles(compacted, file);
+         }
+      }
+      catch ( IOException argh ) {
+         throw new RuntimeException("Failed to finish compaction of checkpoint " + file, argh);
+      }
+   }
+
+   /**
+    * @return the main file of a dump and the files the dump keeps next to it, with the main file last
+    */
+   private static List<File> getDumpFiles( File file ) {
+      File dir = file.getAbsoluteFile().getParentFile();
+      File[] files = dir.listFiles(( d, name ) -> name.startsWith(file.getName() + "."));
+      List<File> dumpFiles = new ArrayList<>();
+      if ( files != null ) {
+         Collections.addAll(dumpFiles, files);
+      }
+      if ( file.exists() ) {
+         dumpFiles.add(file);
+      }
+      return dumpFiles;
+   }
+
+   private static File getCompactedFile( File file ) {
+      return new File(file.getAbsoluteFile().getParentFile(), "compacted-" + file.getName());
+   }
+
+   private static void deleteDumpFiles( File file ) throws IOException {
+      for ( File f : getDumpFiles(file) ) {
+         Files.deleteIfExists(f.toPath());
+      }
+   }
+
+   private static void moveDumpFiles( File from, File to ) throws IOException {
+      for ( File f : getDumpFiles(from) ) {
+         String suffix = f.getName().substring(from.getName().length());
+         Files.move(f.toPath(), new File(to.getAbsoluteFile().getParentFile(), to.getName() + suffix).toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+   }
+
+   private static String getKey( String host, String path ) {
+      return host == null ? path : host + '\n' + path;
+   }
+
+
+   private final Queue<CheckpointEntry> _entries = new ConcurrentLinkedQueue<>();
+   private final File                   _file;
+   private final Dump<CheckpointEntry>  _dump;
+   private final long                   _flushIntervalMillis;
+   private final WriteThread            _writeThread;
+   private volatile boolean             _closed;
+
+
+   /**
+    * Opens the journal for appending, existing entries are kept.
+    */
+   public CheckpointLog( File file, long flushIntervalMillis ) throws IOException {
+      _file = file;
+      _dump = new Dump<>(CheckpointEntry.class, file);
+      _flushIntervalMillis = flushIntervalMillis;
+      _writeThread = new WriteThread(file);
+      _writeThread.start();
+   }
+
+   /**
+    * Called for every item passing the seen set, before it is put into the frontier.
+    */
+   public void added( CrawlItem crawlItem ) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+      try (DataOutputStream out = new DataOutputStream(bytes)) {
+         crawlItem.writeTo(out);
+      }
+      catch ( IOException argh ) {
+         throw new RuntimeException("Failed to serialize " + crawlItem, argh); // cannot happen with a byte array
+      }
+      CheckpointEntry entry = createEntry(CheckpointEntry.TYPE_ADDED, crawlItem);
+      entry._crawlItem = bytes.toByteArray();
+      _entries.add(entry);
+   }
+
+   /**
+    * Writes the remaining entries and closes the journal, so that the crawl can be resumed from it. The journal is
+    * compacted, so that it has one entry per item.
+    */
+   @Override
+   public void close() {
+      if ( stopWriteThread() ) {
+         DumpUtils.closeSilently(_dump);
+         read(_file);
+      }
+   }
+
+   /**
+    * Closes the journal and deletes it, since the crawl is complete.
+    */
+   public void closeAndDelete() {
+      stopWriteThread();
+      try {
+         _dump.deleteAll();
+      }
+      catch ( IOException argh ) {
+         _log.error("Failed to delete checkpoint", argh);
+      }
+   }
+
+   /**
+    * Called for every item, which was crawled and is not going to be retried.
+    */
+   public void done( CrawlItem crawlItem ) {
+      _entries.add(createEntry(CheckpointEntry.TYPE_DONE, crawlItem));
+   }
+
+   /**
+    * Called for every item, which failed and is not going to be retried.
+    */
+   public void failed( CrawlItem crawlItem ) {
+      CheckpointEntry entry = createEntry(CheckpointEntry.TYPE_ERROR, crawlItem);
+      entry._errorStatusCode = crawlItem.getErrorStatusCode();
+      _entries.add(entry);
+   }
+
+   private CheckpointEntry createEntry( byte type, CrawlItem crawlItem ) {
+      CheckpointEntry entry = new CheckpointEntry();
+      entry._type = type;
+      entry._host = crawlItem.getHost();
+      entry._path = crawlItem.getPath();
+      return entry;
+   }
+
+   /**
+    * @return false, if the journal was closed already
+    */
+   private boolean stopWriteThread() {
+      if ( _closed ) {
+         return false;
+      }
+      _closed = true;
+      synchronized ( _writeThread ) {
+         _writeThread.notifyAll();
+      }
+      try {
+         _writeThread.join();
+      }
+      catch ( InterruptedException argh ) {
+         Thread.currentThread().interrupt();
+      }
+      return true;
+   }
+
+
+   private class WriteThread extends Thread {
+
+      public WriteThread( File file ) {
+         setName(CheckpointLog.class.getSimpleName() + "-" + file.getName());
+         setDaemon(true);
+      }
+
+      @Override
+      public void run() {
+         while ( true ) {
+            boolean closed = _closed; // read before writing, so that the entries queued before closing are written
+            try {
+               writeEntries();
+            }
+            catch ( Exception argh ) {
+               _log.error("Failed to write checkpoint", argh);
+            }
+            if ( closed ) {
+               break;
+            }
+            try {
+               synchronized ( this ) {
+                  if ( !_closed ) {
+                     wait(_flushIntervalMillis);
+                  }
+               }
+            }
+            catch ( InterruptedException argh ) {
+               Thread.interrupted(); // reset interrupted state
+            }
+         }
+      }
+
+      private void writeEntries() throws IOException {
+         if ( _entries.isEmpty() ) {
+            return;
+         }
+         for ( CheckpointEntry entry; (entry = _entries.poll()) != null; ) {
+            _dump.add(entry);
+         }
+         _dump.flush();
+      }
+   }
+}
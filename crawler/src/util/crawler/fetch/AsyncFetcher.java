@@ -0,0 +1,98 @@
+package util.crawler.fetch;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import util.http.HttpClientFactory;
+
+
+/**
+ * Executes the requests with non-blocking I/O, so the number of requests in flight is not bound by the number of threads.
+ * The response is completed by an I/O dispatcher thread of the client, after the whole entity was buffered in memory.
+ * Dependent stages must not do any heavy work in that thread, use the <code>...Async</code> methods of the future with an
+ * executor of your own instead.
+ */
+public class AsyncFetcher implements Fetcher {
+
+   private static Logger _log = LoggerFactory.getLogger(AsyncFetcher.class);
+
+   private final CloseableHttpAsyncClient                          _httpClient;
+   private final Supplier<HttpAsyncResponseConsumer<HttpResponse>> _responseConsumerFactory;
+
+
+   /**
+    * @param httpClient a started client, e.g. created by {@link HttpClientFactory#createAsync()}
+    */
+   public AsyncFetcher( CloseableHttpAsyncClient httpClient ) {
+      this(httpClient, BasicAsyncResponseConsumer::new);
+   }
+
+   /**
+    * @param responseConsumerFactory creates the consumer of a single response, e.g.
+    *           {@link HttpClientFactory#createAsyncResponseConsumer()}, which enforces the response limits of the factory
+    */
+   public AsyncFetcher( CloseableHttpAsyncClient httpClient, Supplier<HttpAsyncResponseConsumer<HttpResponse>> responseConsumerFactory ) {
+      _httpClient = httpClient;
+      _responseConsumerFactory = responseConsumerFactory;
+   }
+
+   @Override
+   public void close() {
+      try {
+         _httpClient.close();
+      }
+      catch ( IOException argh ) {
+         _log.warn("Failed to close HttpAsyncClient", argh);
+      }
+   }
+
+   @Override
+   public CompletableFuture<HttpResponse> execute( HttpHost host, HttpRequestBase request, HttpContext context ) {
+      CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+      try {
+         _httpClient.execute(HttpAsyncMethods.create(host, request), _responseConsumerFactory.get(), context, new FutureCallback<HttpResponse>() {
+
+            @Override
+            public void cancelled() {
+               response.completeExceptionally(new CancellationException("request was cancelled"));
+            }
+
+            @Override
+            public void completed( HttpResponse result ) {
+               try {
+                  HttpClientFactory.decompress(result, context);
+                  response.complete(result);
+               }
+               catch ( HttpException | IOException argh ) {
+                  response.completeExceptionally(argh);
+               }
+            }
+
+            @Override
+            public void failed( Exception argh ) {
+               response.completeExceptionally(argh);
+            }
+         });
+      }
+      catch ( RuntimeException argh ) {
+         // e.g. the client was already closed
+         response.completeExceptionally(argh);
+      }
+      return response;
+   }
+}
@@ -0,0 +1,44 @@
+package util.crawler.fetch;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.protocol.HttpContext;
+
+import util.http.HttpClientFactory;
+
+
+/**
+ * Executes the request in the calling thread, the returned future is always completed. The entity of the response is
+ * still streamed from the connection when it is read.
+ */
+public class BlockingFetcher implements Fetcher {
+
+   private final HttpClient _httpClient;
+
+
+   public BlockingFetcher( HttpClient httpClient ) {
+      _httpClient = httpClient;
+   }
+
+   @Override
+   public void close() {
+      HttpClientFactory.close(_httpClient);
+   }
+
+   @Override
+   public CompletableFuture<HttpResponse> execute( HttpHost host, HttpRequestBase request, HttpContext context ) {
+      CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+      try {
+         response.complete(_httpClient.execute(host, request, context));
+      }
+      catch ( IOException | RuntimeException argh ) {
+         response.completeExceptionally(argh);
+      }
+      return response;
+   }
+}
@@ -0,0 +1,26 @@
+package util.crawler.fetch;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.protocol.HttpContext;
+
+
+/**
+ * Executes the requests of the crawl tasks. Implementations must be thread safe.
+ */
+public interface Fetcher {
+
+   /** releases all resources, the fetcher must not be used afterwards */
+   void close();
+
+   /**
+    * Reading the entity of the response may still block on the network, unless the implementation buffers the entity
+    * before completing the future, as {@link AsyncFetcher} does and {@link BlockingFetcher} does not. The caller has to
+    * read or release the entity either way, so the connection is returned.
+    * @return a future completed with the response, or completed exceptionally with the cause of the failure
+    */
+   CompletableFuture<HttpResponse> execute( HttpHost host, HttpRequestBase request, HttpContext context );
+}
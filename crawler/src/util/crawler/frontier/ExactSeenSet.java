@@ -0,0 +1,42 @@
+package util.crawler.frontier;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import util.crawler.Crawler.CrawlItem;
+
+
+/**
+ * Keeps the complete URL of every discovered item in memory. This never yields false positives, but needs the most memory.
+ */
+public class ExactSeenSet implements SeenSet {
+
+   private final Set<String> _urls;
+
+
+   public ExactSeenSet() {
+      _urls = ConcurrentHashMap.newKeySet();
+   }
+
+   /**
+    * @param expectedSize the number of urls expected, so the set does not grow while it is filled
+    */
+   public ExactSeenSet( int expectedSize ) {
+      _urls = ConcurrentHashMap.newKeySet(expectedSize);
+   }
+
+   @Override
+   public boolean add( CrawlItem crawlItem ) {
+      return _urls.add(crawlItem.toString());
+   }
+
+   @Override
+   public void close() {
+      _urls.clear();
+   }
+
+   @Override
+   public long size() {
+      return _urls.size();
+   }
+}
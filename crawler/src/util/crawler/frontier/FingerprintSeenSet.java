@@ -0,0 +1,272 @@
+package util.crawler.frontier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import util.crawler.Crawler.CrawlItem;
+
+
+/**
+ * Keeps only a 64 bit fingerprint of every discovered URL in primitive open addressing hash tables, i.e. 8 bytes per URL
+ * plus the free slots. The chance of any two URLs sharing the same fingerprint, which would make the crawler skip one of
+ * them, is about n^2 / 2^65 for n URLs, i.e. about 1:15,000 for 50 million URLs and about 3% for a billion.<br/>
+ * If a directory is given, the tables are kept in memory mapped files instead of the heap, so the heap needed by the
+ * crawler no longer depends on the number of URLs.<br/>
+ * The fingerprints are distributed over 64 independently locked segments, so concurrent crawl tasks rarely contend. The
+ * segments are locked by ReentrantLocks rather than monitors, so crawl tasks on virtual threads don't pin their carrier
+ * thread while waiting for a segment, which is growing its table.
+ */
+public class FingerprintSeenSet implements SeenSet {
+
+   private static final Logger _log = LoggerFactory.getLogger(FingerprintSeenSet.class);
+
+   private static final int    SEGMENT_BITS            = 6;
+   private static final int    MAX_SEGMENT_CAPACITY    = 1 << 28;                                            // a mapped buffer can't be larger than 2 GB
+   private static final int    INITIAL_HEAP_CAPACITY   = 1 << 10;
+   private static final int    INITIAL_MAPPED_CAPACITY = 1 << 14;
+   private static final float  LOAD_FACTOR             = 0.75f;
+
+
+   /**
+    * 64 bit FNV-1a over the chars of host and path, followed by the murmur3 finalizer to spread the bits evenly.
+    * Paths always start with a slash and hosts never contain one, so there is no need for a separator.
+    */
+   public static long fingerprint( String host, String path ) {
+      long h = 0xcbf29ce484222325L;
+      if ( host != null ) {
+         for ( int i = 0, length = host.length(); i < length; i++ ) {
+            h ^= host.charAt(i);
+            h *= 0x100000001b3L;
+         }
+      }
+      for ( int i = 0, length = path.length(); i < length; i++ ) {
+         h ^= path.charAt(i);
+         h *= 0x100000001b3L;
+      }
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h == 0 ? 1 : h; // 0 marks free slots
+   }
+
+
+   private final File      _directory;
+   private final Segment[] _segments;
+
+
+   public FingerprintSeenSet() {
+      this(null);
+   }
+
+   /**
+    * @param directory if not null, the fingerprints are stored in memory mapped temporary files in this directory
+    */
+   public FingerprintSeenSet( File directory ) {
+      _directory = directory;
+      if ( _directory != null ) {
+         _directory.mkdirs();
+      }
+      _segments = new Segment[1 << SEGMENT_BITS];
+      for ( int i = 0; i < _segments.length; i++ ) {
+         _segments[i] = new Segment(createTable(_directory == null ? INITIAL_HEAP_CAPACITY : INITIAL_MAPPED_CAPACITY));
+      }
+   }
+
+   @Override
+   public boolean add( CrawlItem crawlItem ) {
+      return add(fingerprint(crawlItem.getHost(), crawlItem.getPath()));
+   }
+
+   public boolean add( long fingerprint ) {
+      return _segments[(int)(fingerprint >>> (64 - SEGMENT_BITS))].add(fingerprint);
+   }
+
+   @Override
+   public void close() {
+      for ( Segment s : _segments ) {
+         s.release();
+      }
+   }
+
+   @Override
+   public long size() {
+      long size = 0;
+      for ( Segment s : _segments ) {
+         size += s._size;
+      }
+      return size;
+   }
+
+   LongTable createTable( int capacity ) {
+      if ( _directory == null ) {
+         return new HeapLongTable(capacity);
+      }
+      try {
+         return new MappedLongTable(_directory, capacity);
+      }
+      catch ( IOException argh ) {
+         throw new RuntimeException("Failed to create memory mapped fingerprint table in " + _directory, argh);
+      }
+   }
+
+
+   private static class HeapLongTable implements LongTable {
+
+      private final long[] _table;
+
+
+      public HeapLongTable( int capacity ) {
+         _table = new long[capacity];
+      }
+
+      @Override
+      public int capacity() {
+         return _table.length;
+      }
+
+      @Override
+      public long get( int i ) {
+         return _table[i];
+      }
+
+      @Override
+      public void release() {}
+
+      @Override
+      public void set( int i, long value ) {
+         _table[i] = value;
+      }
+   }
+
+   private interface LongTable {
+
+      int capacity();
+
+      long get( int i );
+
+      void release();
+
+      void set( int i, long value );
+   }
+
+   private static class MappedLongTable implements LongTable {
+
+      private final File       _file;
+      private final int        _capacity;
+      private final LongBuffer _table;
+
+
+      public MappedLongTable( File directory, int capacity ) throws IOException {
+         _file = File.createTempFile("seen-", ".fingerprints", directory);
+         _file.deleteOnExit();
+         _capacity = capacity;
+         try (RandomAccessFile raf = new RandomAccessFile(_file, "rw")) {
+            raf.setLength(capacity * 8L);
+            _table = raf.getChannel().map(MapMode.READ_WRITE, 0, capacity * 8L).asLongBuffer();
+         }
+      }
+
+      @Override
+      public int capacity() {
+         return _capacity;
+      }
+
+      @Override
+      public long get( int i ) {
+         return _table.get(i);
+      }
+
+      @Override
+      public void release() {
+         // the mapping itself is released when the buffer gets garbage collected, on some OS the file cannot be deleted before that   
+         if ( !_file.delete() ) {
+            _log.debug("Failed to delete " + _file + ", will retry on exit");
+         }
+      }
+
+      @Override
+      public void set( int i, long value ) {
+         _table.put(i, value);
+      }
+   }
+
+   private class Segment {
+
+      final ReentrantLock _lock = new ReentrantLock();
+      LongTable           _table;
+      volatile int        _size;
+
+
+      Segment( LongTable table ) {
+         _table = table;
+      }
+
+      boolean add( long fingerprint ) {
+         _lock.lock();
+         try {
+            if ( _size >= _table.capacity() - 1 ) {
+               throw new IllegalStateException("fingerprint table is full, cannot add more than " + _size + " URLs to this segment");
+            }
+            if ( !insert(_table, fingerprint) ) {
+               return false;
+            }
+            _size++;
+            if ( _size > _table.capacity() * LOAD_FACTOR && _table.capacity() < MAX_SEGMENT_CAPACITY ) {
+               grow();
+            }
+            return true;
+         }
+         finally {
+            _lock.unlock();
+         }
+      }
+
+      void release() {
+         _lock.lock();
+         try {
+            _table.release();
+         }
+         finally {
+            _lock.unlock();
+         }
+      }
+
+      private void grow() {
+         LongTable newTable = createTable(_table.capacity() * 2);
+         for ( int i = 0, length = _table.capacity(); i < length; i++ ) {
+            long fingerprint = _table.get(i);
+            if ( fingerprint != 0 ) {
+               insert(newTable, fingerprint);
+            }
+         }
+         _table.release();
+         _table = newTable;
+      }
+
+      private boolean insert( LongTable table, long fingerprint ) {
+         int mask = table.capacity() - 1;
+         int i = (int)fingerprint & mask;
+         while ( true ) {
+            long f = table.get(i);
+            if ( f == 0 ) {
+               table.set(i, fingerprint);
+               return true;
+            }
+            if ( f == fingerprint ) {
+               return false;
+            }
+            i = (i + 1) & mask;
+         }
+      }
+   }
+}
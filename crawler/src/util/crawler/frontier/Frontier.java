@@ -0,0 +1,29 @@
+package util.crawler.frontier;
+
+import util.crawler.Crawler.CrawlItem;
+
+
+/**
+ * Holds all discovered items that are not yet handed over to the crawl task executor.
+ * Implementations must be thread safe, items are added and polled concurrently by all crawl tasks.
+ */
+public interface Frontier {
+
+   void add( CrawlItem crawlItem );
+
+   /** releases all resources, the frontier must not be used afterwards */
+   void close();
+
+   /**
+    * @return the next item to crawl or null, if the frontier is empty
+    */
+   CrawlItem poll();
+
+   long size();
+
+   /**
+    * Called when the crawl task of an item polled from this frontier is finished.
+    * @param success false, if the page could not be fetched or is going to be retried
+    */
+   void taskFinished( CrawlItem crawlItem, long elapsedMillis, boolean success );
+}
@@ -0,0 +1,271 @@
+package util.crawler.frontier;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import util.crawler.Crawler.CrawlItem;
+
+
+/**
+ * Keeps a separate queue per host and hands out items round robin over all hosts, which are allowed to get another
+ * request. A host is allowed another request, if
+ * <ul>
+ * <li>its token bucket holds a token, the bucket is refilled with <code>requestsPerSecond</code> and holds at most one
+ * second worth of tokens, and</li>
+ * <li>the number of its requests in flight is below its concurrency limit.</li>
+ * </ul>
+ * The concurrency limit of each host adapts to the observed responses, AIMD style: it grows by one per window of
+ * successful requests with a latency below twice the best latency seen for the host, it is reduced by 10% when the
+ * latency exceeds that, and it is halved on every failure.<br/>
+ * When no host is allowed another request because of the rate limit, {@link #poll()} returns null and <code>wakeUp</code>
+ * is run on the scheduler once the next token is available, so no crawl thread has to sleep.<br/>
+ * All methods take a single lock, the critical sections are short and independent of the number of hosts. It is a
+ * ReentrantLock rather than a monitor, so crawl tasks on virtual threads waiting for it don't pin their carrier thread.
+ */
+public class HostFrontier implements Frontier {
+
+   private static final Logger _log                = LoggerFactory.getLogger(HostFrontier.class);
+
+   private static final double LATENCY_TOLERANCE   = 2;
+   private static final double LATENCY_EWMA_WEIGHT = 0.2;
+   private static final double LATENCY_DECREASE    = 0.9;
+   private static final double FAILURE_DECREASE    = 0.5;
+   private static final double MIN_CONCURRENCY     = 1;
+
+   private final double                   _requestsPerSecond;
+   private final int                      _maxConcurrency;
+   private final boolean                  _lifo;
+   private final ScheduledExecutorService _scheduler;
+   private final Runnable                 _wakeUp;
+
+   private final Map<String, Host>        _hosts        = new HashMap<>();
+   /** hosts with pending items, which are allowed another request as far as known */
+   private final ArrayDeque<Host>         _readyHosts   = new ArrayDeque<>();
+   /** hosts with pending items, which have to wait for their next token */
+   private final PriorityQueue<Host>      _waitingHosts = new PriorityQueue<>((h1, h2) -> Long.compare(h1._nextTokenNanos, h2._nextTokenNanos));
+   private final ReentrantLock            _lock         = new ReentrantLock();
+   private long                           _size;
+   private boolean                        _wakeUpScheduled;
+   private long                           _scheduledWakeUpNanos;
+
+
+   /**
+    * @param requestsPerSecond max number of requests per second and host, 0 means unlimited
+    * @param maxConcurrency max number of concurrent requests per host, the adaptive limit starts at 1 and never exceeds this
+    * @param scheduler used to run <code>wakeUp</code> when the next token of a rate limited host is available
+    * @param wakeUp called when the frontier is able to hand out items again after {@link #poll()} returned null
+    */
+   public HostFrontier( double requestsPerSecond, int maxConcurrency, boolean lifo, ScheduledExecutorService scheduler, Runnable wakeUp ) {
+      _requestsPerSecond = requestsPerSecond;
+      _maxConcurrency = Math.max(1, maxConcurrency);
+      _lifo = lifo;
+      _scheduler = scheduler;
+      _wakeUp = wakeUp;
+   }
+
+   @Override
+   public void add( CrawlItem crawlItem ) {
+      _lock.lock();
+      try {
+         String hostName = getHostName(crawlItem);
+         Host host = _hosts.get(hostName);
+         if ( host == null ) {
+            host = new Host(hostName);
+            _hosts.put(hostName, host);
+         }
+         host._items.addLast(crawlItem);
+         _size++;
+         if ( host._state == HostState.Idle ) {
+            makeReady(host);
+         }
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+
+   @Override
+   public void close() {
+      _lock.lock();
+      try {
+         _hosts.clear();
+         _readyHosts.clear();
+         _waitingHosts.clear();
+         _size = 0;
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+
+   @Override
+   public CrawlItem poll() {
+      _lock.lock();
+      try {
+         long now = System.nanoTime();
+         while ( !_waitingHosts.isEmpty() && _waitingHosts.peek()._nextTokenNanos - now <= 0 ) {
+            makeReady(_waitingHosts.poll());
+         }
+
+         for ( Host host; (host = _readyHosts.pollFirst()) != null; ) {
+            if ( host._items.isEmpty() ) {
+               host._state = HostState.Idle;
+               if ( host._inFlight == 0 ) {
+                  _hosts.remove(host._name);
+               }
+               continue;
+            }
+            if ( host._inFlight >= (int)host._concurrencyLimit ) {
+               host._state = HostState.Busy; // made ready again in taskFinished
+               continue;
+            }
+            if ( !host.takeToken(now) ) {
+               host._state = HostState.Waiting;
+               _waitingHosts.add(host);
+               continue;
+            }
+
+            CrawlItem crawlItem = _lifo ? host._items.pollLast() : host._items.pollFirst();
+            _size--;
+            host._inFlight++;
+            // round robin: the host queues up behind all other ready hosts
+            _readyHosts.addLast(host);
+            return crawlItem;
+         }
+
+         scheduleWakeUp(now);
+         return null;
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+
+   @Override
+   public long size() {
+      _lock.lock();
+      try {
+         return _size;
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+
+   @Override
+   public void taskFinished( CrawlItem crawlItem, long elapsedMillis, boolean success ) {
+      _lock.lock();
+      try {
+         Host host = _hosts.get(getHostName(crawlItem));
+         if ( host == null ) {
+            return;
+         }
+         host._inFlight--;
+         host.adaptConcurrencyLimit(elapsedMillis, success);
+         if ( host._state == HostState.Busy && host._inFlight < (int)host._concurrencyLimit ) {
+            makeReady(host);
+         }
+         if ( host._state == HostState.Idle && host._inFlight == 0 && host._items.isEmpty() ) {
+            _hosts.remove(host._name); // keeps the map small for crawls over many hosts, the limits are relearned if needed
+         }
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+
+   private String getHostName( CrawlItem crawlItem ) {
+      return crawlItem.getHost() == null ? "" : crawlItem.getHost();
+   }
+
+   private void makeReady( Host host ) {
+      host._state = HostState.Ready;
+      _readyHosts.addLast(host);
+   }
+
+   private void scheduleWakeUp( long now ) {
+      Host next = _waitingHosts.peek();
+      if ( next == null || _wakeUpScheduled && _scheduledWakeUpNanos - next._nextTokenNanos <= 0 ) {
+         return; // nothing to wait for, or a wake up is already scheduled early enough
+      }
+      long wakeUpNanos = next._nextTokenNanos;
+      _wakeUpScheduled = true;
+      _scheduledWakeUpNanos = wakeUpNanos;
+      _scheduler.schedule(() -> {
+         _lock.lock();
+         try {
+            if ( _scheduledWakeUpNanos == wakeUpNanos ) {
+               _wakeUpScheduled = false;
+            }
+         }
+         finally {
+            _lock.unlock();
+         }
+         _wakeUp.run();
+      }, Math.max(0, wakeUpNanos - now), TimeUnit.NANOSECONDS);
+   }
+
+
+   private enum HostState {
+      Idle, Ready, Busy, Waiting
+   }
+
+   private class Host {
+
+      final String                _name;
+      final ArrayDeque<CrawlItem> _items            = new ArrayDeque<>();
+      HostState                   _state            = HostState.Idle;
+      int                         _inFlight;
+      double                      _concurrencyLimit = MIN_CONCURRENCY;
+      double                      _tokens           = 1;
+      long                        _lastRefillNanos  = System.nanoTime();
+      long                        _nextTokenNanos;
+      double                      _latencyEwma      = -1;
+      long                        _bestLatency      = Long.MAX_VALUE;
+
+
+      Host( String name ) {
+         _name = name;
+      }
+
+      void adaptConcurrencyLimit( long elapsedMillis, boolean success ) {
+         double oldLimit = _concurrencyLimit;
+         if ( !success ) {
+            _concurrencyLimit = Math.max(MIN_CONCURRENCY, _concurrencyLimit * FAILURE_DECREASE);
+         } else {
+            _bestLatency = Math.min(_bestLatency, Math.max(1, elapsedMillis));
+            _latencyEwma = _latencyEwma < 0 ? elapsedMillis : _latencyEwma + LATENCY_EWMA_WEIGHT * (elapsedMillis - _latencyEwma);
+            if ( _latencyEwma > _bestLatency * LATENCY_TOLERANCE ) {
+               _concurrencyLimit = Math.max(MIN_CONCURRENCY, _concurrencyLimit * LATENCY_DECREASE);
+            } else {
+               _concurrencyLimit = Math.min(_maxConcurrency, _concurrencyLimit + 1 / _concurrencyLimit);
+            }
+         }
+         if ( (int)oldLimit != (int)_concurrencyLimit && _log.isDebugEnabled() ) {
+            _log.debug("concurrency limit of host '" + _name + "' is now " + (int)_concurrencyLimit + ", avg latency " + (long)_latencyEwma + " ms");
+         }
+      }
+
+      boolean takeToken( long now ) {
+         if ( _requestsPerSecond <= 0 ) {
+            return true;
+         }
+         _tokens = Math.min(Math.max(1, _requestsPerSecond), _tokens + (now - _lastRefillNanos) * _requestsPerSecond / 1e9);
+         _lastRefillNanos = now;
+         if ( _tokens >= 1 ) {
+            _tokens -= 1;
+            return true;
+         }
+         _nextTokenNanos = now + (long)Math.ceil((1 - _tokens) * 1e9 / _requestsPerSecond);
+         return false;
+      }
+   }
+}
@@ -0,0 +1,52 @@
+package util.crawler.frontier;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import util.crawler.Crawler.CrawlItem;
+
+
+/**
+ * Keeps all pending items in memory, either in FIFO or in LIFO order. Adding and polling is lock-free.
+ */
+public class MemoryFrontier implements Frontier {
+
+   private final ConcurrentLinkedDeque<CrawlItem> _items = new ConcurrentLinkedDeque<>();
+   /** the size of a ConcurrentLinkedDeque is computed by traversal, so it is counted separately */
+   private final AtomicLong                       _size  = new AtomicLong();
+   private final boolean                          _lifo;
+
+
+   public MemoryFrontier( boolean lifo ) {
+      _lifo = lifo;
+   }
+
+   @Override
+   public void add( CrawlItem crawlItem ) {
+      _items.addLast(crawlItem);
+      _size.incrementAndGet();
+   }
+
+   @Override
+   public void close() {
+      _items.clear();
+      _size.set(0);
+   }
+
+   @Override
+   public CrawlItem poll() {
+      CrawlItem crawlItem = _lifo ? _items.pollLast() : _items.pollFirst();
+      if ( crawlItem != null ) {
+         _size.decrementAndGet();
+      }
+      return crawlItem;
+   }
+
+   @Override
+   public long size() {
+      return _size.get();
+   }
+
+   @Override
+   public void taskFinished( CrawlItem crawlItem, long elapsedMillis, boolean success ) {}
+}
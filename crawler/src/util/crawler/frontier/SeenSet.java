@@ -0,0 +1,21 @@
+package util.crawler.frontier;
+
+import util.crawler.Crawler.CrawlItem;
+
+
+/**
+ * Remembers all URLs a crawler has already discovered, so that every URL is crawled only once.
+ * Implementations must be thread safe, {@link #add(CrawlItem)} is called concurrently by all crawl tasks.
+ */
+public interface SeenSet {
+
+   /**
+    * @return true, if the item was not contained before
+    */
+   boolean add( CrawlItem crawlItem );
+
+   /** releases all resources, the set must not be used afterwards */
+   void close();
+
+   long size();
+}
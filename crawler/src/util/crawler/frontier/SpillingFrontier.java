@@ -0,0 +1,209 @@
+package util.crawler.frontier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.CookieStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import util.crawler.Crawler.CrawlItem;
+
+
+/**
+ * Keeps at most <code>maxItemsInMemory</code> pending items on the heap and writes the rest to temporary files, which
+ * are read back in chunks when the items in memory are used up. Files are rotated, so the disk space of items already
+ * read back is freed during the crawl.<br/>
+ * In LIFO mode the oldest items are written to disk, so only the items in memory are polled in strict LIFO order.<br/>
+ * Cookie stores are not written to disk, but remembered by identity, so spilled items still share their cookies with the
+ * items they were created from.<br/>
+ * All methods take a single lock, since spilling and reading back needs exclusive access to the files anyway. It is a
+ * ReentrantLock rather than a monitor, because crawl tasks on virtual threads must not block in file I/O while pinned.
+ */
+public class SpillingFrontier implements Frontier {
+
+   private static final Logger _log                = LoggerFactory.getLogger(SpillingFrontier.class);
+
+   private static final int    MAX_SPILL_FILE_SIZE = 64 * 1024 * 1024;
+
+   private final int                       _maxItemsInMemory;
+   private final File                      _directory;
+   private final boolean                   _lifo;
+   private final ArrayDeque<CrawlItem>     _items          = new ArrayDeque<>();
+   private final ArrayDeque<SpillFile>     _spillFiles     = new ArrayDeque<>();
+   private final Map<CookieStore, Integer> _cookieStoreIds = new IdentityHashMap<>();
+   private final List<CookieStore>         _cookieStores   = new ArrayList<>();
+   private final ReentrantLock             _lock           = new ReentrantLock();
+   private long                            _spilledItems;
+
+
+   public SpillingFrontier( int maxItemsInMemory, File directory, boolean lifo ) {
+      _maxItemsInMemory = Math.max(1, maxItemsInMemory);
+      _directory = directory;
+      _lifo = lifo;
+      if ( _directory != null ) {
+         _directory.mkdirs();
+      }
+   }
+
+   @Override
+   public void add( CrawlItem crawlItem ) {
+      _lock.lock();
+      try {
+         if ( _spilledItems == 0 && _items.size() < _maxItemsInMemory ) {
+            _items.addLast(crawlItem);
+         } else if ( _lifo ) {
+            _items.addLast(crawlItem);
+            spill(_items.pollFirst());
+         } else {
+            spill(crawlItem);
+         }
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+
+   @Override
+   public void close() {
+      _lock.lock();
+      try {
+         _items.clear();
+         for ( SpillFile f : _spillFiles ) {
+            f.close();
+         }
+         _spillFiles.clear();
+         _spilledItems = 0;
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+
+   @Override
+   public CrawlItem poll() {
+      _lock.lock();
+      try {
+         if ( _items.isEmpty() && _spilledItems > 0 ) {
+            readBack();
+         }
+         return _lifo ? _items.pollLast() : _items.pollFirst();
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+
+   @Override
+   public long size() {
+      _lock.lock();
+      try {
+         return _items.size() + _spilledItems;
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+
+   private int getCookieStoreId( CookieStore cookieStore ) {
+      if ( cookieStore == null ) {
+         return -1;
+      }
+      Integer id = _cookieStoreIds.get(cookieStore);
+      if ( id == null ) {
+         id = _cookieStores.size();
+         _cookieStores.add(cookieStore);
+         _cookieStoreIds.put(cookieStore, id);
+      }
+      return id;
+   }
+
+   private void readBack() {
+      try {
+         while ( _items.size() < _maxItemsInMemory && !_spillFiles.isEmpty() ) {
+            SpillFile f = _spillFiles.peekFirst();
+            if ( f._in == null ) {
+               f.openForReading();
+            }
+            while ( _items.size() < _maxItemsInMemory && f._readItems < f._writtenItems ) {
+               int cookieStoreId = f._in.readInt();
+               CrawlItem crawlItem = CrawlItem.readFrom(f._in, cookieStoreId >= 0 ? _cookieStores.get(cookieStoreId) : null);
+               _items.addLast(crawlItem);
+               f._readItems++;
+               _spilledItems--;
+            }
+            if ( f._readItems == f._writtenItems ) {
+               f.close();
+               _spillFiles.pollFirst();
+            }
+         }
+      }
+      catch ( IOException argh ) {
+         throw new RuntimeException("Failed to read crawl items from spill file", argh);
+      }
+   }
+
+   private void spill( CrawlItem crawlItem ) {
+      try {
+         SpillFile f = _spillFiles.peekLast();
+         if ( f == null || f._in != null || f._out.size() > MAX_SPILL_FILE_SIZE ) {
+            f = new SpillFile();
+            _spillFiles.addLast(f);
+         }
+         f._out.writeInt(getCookieStoreId(crawlItem.getCookieStore()));
+         crawlItem.writeTo(f._out);
+         f._writtenItems++;
+         _spilledItems++;
+      }
+      catch ( IOException argh ) {
+         throw new RuntimeException("Failed to write crawl item to spill file", argh);
+      }
+   }
+
+
+   private class SpillFile {
+
+      File             _file;
+      DataOutputStream _out;
+      DataInputStream  _in;
+      long             _writtenItems;
+      long             _readItems;
+
+
+      SpillFile() throws IOException {
+         _file = File.createTempFile("frontier-", ".spill", _directory);
+         _file.deleteOnExit();
+         _out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_file), 65536));
+      }
+
+      void close() {
+         IOUtils.closeQuietly(_out);
+         IOUtils.closeQuietly(_in);
+         if ( !_file.delete() ) {
+            _log.debug("Failed to delete " + _file);
+         }
+      }
+
+      /** once reading started, nothing more is appended to this file */
+      void openForReading() throws IOException {
+         _out.close();
+         _in = new DataInputStream(new BufferedInputStream(new FileInputStream(_file), 65536));
+      }
+   }
+
+   @Override
+   public void taskFinished( CrawlItem crawlItem, long elapsedMillis, boolean success ) {}
+}
@@ -0,0 +1,30 @@
+package util.crawler.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A monotonic count, which is incremented concurrently by all crawl tasks without contention.
+ */
+public class Counter {
+
+   private final LongAdder _value = new LongAdder();
+
+
+   public void add( long n ) {
+      _value.add(n);
+   }
+
+   public long get() {
+      return _value.sum();
+   }
+
+   public void increment() {
+      _value.increment();
+   }
+
+   @Override
+   public String toString() {
+      return String.valueOf(get());
+   }
+}
@@ -0,0 +1,173 @@
+package util.crawler.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+
+/**
+ * The registry of the metrics of a crawl, see {@link util.crawler.Crawler#getMetrics()}. Counters and histograms are
+ * created on first use and updated by the crawl tasks without locks, gauges are sampled when the metrics are exported.
+ * <br/>
+ * The names of the metrics recorded by the crawler are defined here. Durations are in microseconds, the stages of a
+ * page are timed separately, so the slowest stage of a crawl can be found by comparing their histograms.
+ */
+public class CrawlMetrics {
+
+   /**
+    * time from sending the request until the response was received: with the blocking fetcher until its headers arrived,
+    * the body is read while decoding, with the async fetcher until the whole response was buffered
+    */
+   public static final String FETCH_LATENCY       = "fetch.latency";
+   /** size of the response bodies, the number of chars for responses without a <code>Content-Length</code> */
+   public static final String FETCH_BYTES         = "fetch.bytes";
+   /** number of stored pages used, since the server answered with <code>304 Not Modified</code> */
+   public static final String FETCH_NOT_MODIFIED  = "fetch.notModified";
+   /** time to read and decode the response body */
+   public static final String DECODE              = "decode";
+   /** time to clean and parse the html into a document */
+   public static final String HTML_CLEAN          = "htmlClean";
+   /** time of the result xslt */
+   public static final String XSLT                = "xslt";
+   /** time of the follow XPaths */
+   public static final String XSLT_FOLLOW_XPATHS  = "xslt.followXPaths";
+   /** time of the follow xslt */
+   public static final String XSLT_FOLLOW         = "xslt.follow";
+   /** time to extract the links and filter them, including the follow XPaths and the follow xslt */
+   public static final String LINK_EXTRACTION     = "linkExtraction";
+   /** time to pass the extracted links through the seen set into the frontier */
+   public static final String ENQUEUE             = "enqueue";
+   /** time a page waited for the results of its <code>$followurl$</code> values */
+   public static final String FOLLOW_URL          = "followUrl";
+   /** number of <code>$followurl$</code> values resolved from the cache, or by a fetch of another page in flight */
+   public static final String FOLLOW_URL_HITS     = "followUrl.hits";
+   /** number of <code>$followurl$</code> values not resolved before the deadline of their page */
+   public static final String FOLLOW_URL_TIMEOUTS = "followUrl.timeouts";
+   /** number of pages crawled successfully */
+   public static final String PAGES               = "pages";
+   /** number of results scraped */
+   public static final String RESULTS             = "results";
+   /** number of results waiting for the result sinks */
+   public static final String RESULTS_QUEUED      = "results.queued";
+   /** time a crawl task waited for a slot in the full queue of results */
+   public static final String RESULTS_BLOCKED     = "results.blocked";
+   /** time to write a batch of results to all result sinks */
+   public static final String RESULTS_WRITE       = "results.write";
+   /** number of results a result sink failed to write */
+   public static final String RESULTS_FAILED      = "results.failed";
+   /** number of responses rejected by the response limits */
+   public static final String REJECTED            = "rejected";
+   /** prefix of the number of retries, by the simple class name of the cause */
+   public static final String RETRIES_PREFIX      = "retries.";
+   /** prefix of the number of failed items, which are not retried anymore, by the simple class name of the cause */
+   public static final String ERRORS_PREFIX       = "errors.";
+   /** number of items in the frontier */
+   public static final String FRONTIER_SIZE       = "frontier.size";
+   /** number of items added, which are either in the frontier or not yet finished */
+   public static final String PENDING_CRAWL_ITEMS = "crawlItems.pending";
+   /** number of crawl tasks handed over to the executor, which are not yet finished */
+   public static final String DISPATCHED_TASKS    = "crawlTasks.dispatched";
+
+   private static final String UNIT_MICROS = "us";
+
+
+   private final String                    _name;
+   private final Map<String, Counter>      _counters   = new ConcurrentHashMap<>();
+   private final Map<String, Histogram>    _histograms = new ConcurrentHashMap<>();
+   private final Map<String, LongSupplier> _gauges     = new ConcurrentHashMap<>();
+
+
+   /**
+    * @param name the name of the crawl, used by the exporters
+    */
+   public CrawlMetrics( String name ) {
+      _name = name;
+   }
+
+   /**
+    * @return the counter of the name, created on first use
+    */
+   public Counter counter( String name ) {
+      return _counters.computeIfAbsent(name, n -> new Counter());
+   }
+
+   /**
+    * Registers a value, which is sampled whenever the metrics are exported, replacing a gauge of the same name.
+    */
+   public void gauge( String name, LongSupplier value ) {
+      _gauges.put(name, value);
+   }
+
+   /**
+    * @return a snapshot of all counters, sorted by name
+    */
+   public Map<String, Counter> getCounters() {
+      return Collections.unmodifiableMap(new TreeMap<>(_counters));
+   }
+
+   /**
+    * @return a snapshot of all gauges, sorted by name
+    */
+   public Map<String, LongSupplier> getGauges() {
+      return Collections.unmodifiableMap(new TreeMap<>(_gauges));
+   }
+
+   /**
+    * @return a snapshot of all histograms, sorted by name
+    */
+   public Map<String, Histogram> getHistograms() {
+      return Collections.unmodifiableMap(new TreeMap<>(_histograms));
+   }
+
+   public String getName() {
+      return _name;
+   }
+
+   /**
+    * @return the current values of all metrics as a flat map sorted by name. Counters and gauges are mapped by their
+    *         name, histograms by their name with the suffixes <code>.count</code>, <code>.sum</code>, <code>.mean</code>,
+    *         <code>.p50</code>, <code>.p99</code> and <code>.max</code>.
+    */
+   public Map<String, Long> getValues() {
+      Map<String, Long> values = new TreeMap<>();
+      for ( Map.Entry<String, Counter> e : _counters.entrySet() ) {
+         values.put(e.getKey(), e.getValue().get());
+      }
+      for ( Map.Entry<String, LongSupplier> e : _gauges.entrySet() ) {
+         values.put(e.getKey(), e.getValue().getAsLong());
+      }
+      for ( Map.Entry<String, Histogram> e : _histograms.entrySet() ) {
+         Histogram histogram = e.getValue();
+         values.put(e.getKey() + ".count", histogram.getCount());
+         values.put(e.getKey() + ".sum", histogram.getSum());
+         values.put(e.getKey() + ".mean", Math.round(histogram.getMean()));
+         values.put(e.getKey() + ".p50", histogram.getPercentile(0.5));
+         values.put(e.getKey() + ".p99", histogram.getPercentile(0.99));
+         values.put(e.getKey() + ".max", histogram.getMax());
+      }
+      return values;
+   }
+
+   /**
+    * @param unit the unit of the values, only used for reporting
+    * @return the histogram of the name, created on first use
+    */
+   public Histogram histogram( String name, String unit ) {
+      return _histograms.computeIfAbsent(name, n -> new Histogram(unit));
+   }
+
+   /**
+    * @return the histogram of durations in microseconds of the name, created on first use, see
+    *         {@link Histogram#recordMicrosSince(long)}
+    */
+   public Histogram timer( String name ) {
+      return histogram(name, UNIT_MICROS);
+   }
+
+   @Override
+   public String toString() {
+      return "CrawlMetrics of " + _name + ": " + getValues();
+   }
+}
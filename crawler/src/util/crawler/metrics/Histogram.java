@@ -0,0 +1,126 @@
+package util.crawler.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The distribution of non-negative values, like durations or sizes, recorded concurrently without locks.<br/>
+ * Every power of two is split into 8 buckets, so percentiles are exact for values below 8 and have a relative error
+ * of at most 12.5% above. Count, sum and max are exact.
+ */
+public class Histogram {
+
+   private static final int SUB_BUCKET_BITS   = 3;
+   private static final int SUB_BUCKETS       = 1 << SUB_BUCKET_BITS;
+   private static final int NUMBER_OF_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+
+   static int getBucket( long value ) {
+      if ( value < SUB_BUCKETS ) {
+         return (int)value;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+   }
+
+   /**
+    * @return the largest value falling into the bucket
+    */
+   static long getBucketUpperBound( int bucket ) {
+      if ( bucket < SUB_BUCKETS ) {
+         return bucket;
+      }
+      int shift = bucket / SUB_BUCKETS - 1;
+      long lowerBound = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+      return lowerBound + (1L << shift) - 1;
+   }
+
+
+   private final String          _unit;
+   private final AtomicLongArray _buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+   private final LongAdder       _count   = new LongAdder();
+   private final LongAdder       _sum     = new LongAdder();
+   private final AtomicLong      _max     = new AtomicLong();
+
+
+   /**
+    * @param unit the unit of the values, only used for reporting
+    */
+   public Histogram( String unit ) {
+      _unit = unit;
+   }
+
+   public long getCount() {
+      return _count.sum();
+   }
+
+   public long getMax() {
+      return _max.get();
+   }
+
+   public double getMean() {
+      long count = getCount();
+      return count == 0 ? 0 : getSum() / (double)count;
+   }
+
+   /**
+    * @param quantile between 0 and 1, e.g. 0.99 for the 99th percentile
+    * @return the smallest bucket bound, which is greater than or equal to <code>quantile</code> of all values, or 0 if
+    *         there are no values
+    */
+   public long getPercentile( double quantile ) {
+      long count = getCount();
+      if ( count == 0 ) {
+         return 0;
+      }
+      long rank = Math.max(1, (long)Math.ceil(quantile * count));
+      long seen = 0;
+      for ( int i = 0; i < NUMBER_OF_BUCKETS; i++ ) {
+         seen += _buckets.get(i);
+         if ( seen >= rank ) {
+            return Math.min(getBucketUpperBound(i), getMax());
+         }
+      }
+      return getMax(); // values recorded while iterating
+   }
+
+   public long getSum() {
+      return _sum.sum();
+   }
+
+   public String getUnit() {
+      return _unit;
+   }
+
+   /**
+    * Records a value, negative values are recorded as 0.
+    */
+   public void record( long value ) {
+      value = Math.max(0, value);
+      _buckets.incrementAndGet(getBucket(value));
+      _count.increment();
+      _sum.add(value);
+      for ( long max = _max.get(); value > max; max = _max.get() ) {
+         if ( _max.compareAndSet(max, value) ) {
+            break;
+         }
+      }
+   }
+
+   /**
+    * Records the time elapsed since <code>startNanos</code> in microseconds.
+    * @param startNanos a value of {@link System#nanoTime()}
+    */
+   public void recordMicrosSince( long startNanos ) {
+      record((System.nanoTime() - startNanos) / 1000);
+   }
+
+   @Override
+   public String toString() {
+      return "count=" + getCount() + ", mean=" + Math.round(getMean()) + ", p50=" + getPercentile(0.5) + ", p99=" + getPercentile(0.99) + ", max=" + getMax()
+         + " " + _unit;
+   }
+}
@@ -0,0 +1,128 @@
+package util.crawler.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Registers the metrics of a crawl as a read-only MBean named <code>util.crawler:type=CrawlMetrics,name=&lt;crawl id&gt;</code>
+ * in the platform MBean server, with one attribute per value of {@link CrawlMetrics#getValues()}. The attributes are
+ * read live, so {@link #export(CrawlMetrics)} does nothing. The MBean is unregistered when the crawl is done.
+ */
+public class JmxMetricsExporter implements MetricsExporter {
+
+   private static Logger _log = LoggerFactory.getLogger(JmxMetricsExporter.class);
+
+
+   private final MBeanServer _mBeanServer = ManagementFactory.getPlatformMBeanServer();
+   private ObjectName        _objectName;
+
+
+   public JmxMetricsExporter( CrawlMetrics metrics ) {
+      try {
+         _objectName = new ObjectName("util.crawler:type=CrawlMetrics,name=" + ObjectName.quote(String.valueOf(metrics.getName())));
+         if ( _mBeanServer.isRegistered(_objectName) ) {
+            _mBeanServer.unregisterMBean(_objectName); // left over by a previous crawl with the same id
+         }
+         _mBeanServer.registerMBean(new CrawlMetricsMBean(metrics), _objectName);
+      }
+      catch ( JMException argh ) {
+         _log.warn("Failed to register metrics of " + metrics.getName() + " in JMX", argh);
+         _objectName = null;
+      }
+   }
+
+   @Override
+   public void close() {
+      if ( _objectName == null ) {
+         return;
+      }
+      try {
+         _mBeanServer.unregisterMBean(_objectName);
+      }
+      catch ( JMException argh ) {
+         _log.warn("Failed to unregister " + _objectName, argh);
+      }
+      _objectName = null;
+   }
+
+   @Override
+   public void export( CrawlMetrics metrics ) {}
+
+
+   private static class CrawlMetricsMBean implements DynamicMBean {
+
+      private final CrawlMetrics _metrics;
+
+
+      public CrawlMetricsMBean( CrawlMetrics metrics ) {
+         _metrics = metrics;
+      }
+
+      @Override
+      public Object getAttribute( String attribute ) throws AttributeNotFoundException {
+         Long value = _metrics.getValues().get(attribute);
+         if ( value == null ) {
+            throw new AttributeNotFoundException(attribute);
+         }
+         return value;
+      }
+
+      @Override
+      public AttributeList getAttributes( String[] attributes ) {
+         Map<String, Long> values = _metrics.getValues();
+         AttributeList list = new AttributeList();
+         for ( String attribute : attributes ) {
+            Long value = values.get(attribute);
+            if ( value != null ) {
+               list.add(new Attribute(attribute, value));
+            }
+         }
+         return list;
+      }
+
+      /**
+       * The metrics are created on first use, so the attributes are listed anew on every call.
+       */
+      @Override
+      public MBeanInfo getMBeanInfo() {
+         List<MBeanAttributeInfo> attributes = new ArrayList<>();
+         for ( String name : _metrics.getValues().keySet() ) {
+            attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false));
+         }
+         return new MBeanInfo(getClass().getName(), "metrics of the crawl " + _metrics.getName(), attributes.toArray(new MBeanAttributeInfo[0]), null,
+            new MBeanOperationInfo[0], null);
+      }
+
+      @Override
+      public Object invoke( String actionName, Object[] params, String[] signature ) {
+         throw new UnsupportedOperationException(actionName);
+      }
+
+      @Override
+      public void setAttribute( Attribute attribute ) {
+         throw new UnsupportedOperationException("read-only: " + attribute.getName());
+      }
+
+      @Override
+      public AttributeList setAttributes( AttributeList attributes ) {
+         return new AttributeList();
+      }
+   }
+}
@@ -0,0 +1,68 @@
+package util.crawler.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import util.string.StringTable;
+import util.string.StringTable.Alignment;
+
+
+/**
+ * Logs the metrics as a table, with the rate of every counter since the previous export. This is the exporter of a
+ * crawl without other exporters.
+ */
+public class LogMetricsExporter implements MetricsExporter {
+
+   private static Logger _log = LoggerFactory.getLogger(LogMetricsExporter.class);
+
+
+   private final Map<String, Long> _lastCounts = new HashMap<>();
+   private long                    _lastExportNanos = System.nanoTime();
+
+
+   @Override
+   public void close() {}
+
+   @Override
+   public synchronized void export( CrawlMetrics metrics ) {
+      long now = System.nanoTime();
+      double seconds = Math.max(0.001, (now - _lastExportNanos) / 1e9);
+      _lastExportNanos = now;
+
+      StringTable values = new StringTable( //
+         new StringTable.Col("metric", Alignment.Left, 32), //
+         new StringTable.Col("value", Alignment.Right, 12), //
+         new StringTable.Col("per second", Alignment.Right, 10) //
+      );
+      for ( Map.Entry<String, Counter> e : metrics.getCounters().entrySet() ) {
+         long count = e.getValue().get();
+         Long lastCount = _lastCounts.put(e.getKey(), count);
+         long delta = count - (lastCount == null ? 0 : lastCount);
+         values.addRow(e.getKey(), "" + count, String.format("%.1f", delta / seconds));
+      }
+      for ( Map.Entry<String, LongSupplier> e : metrics.getGauges().entrySet() ) {
+         values.addRow(e.getKey(), "" + e.getValue().getAsLong(), "");
+      }
+
+      StringTable histograms = new StringTable( //
+         new StringTable.Col("histogram", Alignment.Left, 32), //
+         new StringTable.Col("count", Alignment.Right, 10), //
+         new StringTable.Col("mean", Alignment.Right, 10), //
+         new StringTable.Col("p50", Alignment.Right, 10), //
+         new StringTable.Col("p99", Alignment.Right, 10), //
+         new StringTable.Col("max", Alignment.Right, 10), //
+         new StringTable.Col("unit", Alignment.Left, 5) //
+      );
+      for ( Map.Entry<String, Histogram> e : metrics.getHistograms().entrySet() ) {
+         Histogram h = e.getValue();
+         histograms.addRow(e.getKey(), "" + h.getCount(), "" + Math.round(h.getMean()), "" + h.getPercentile(0.5), "" + h.getPercentile(0.99), "" + h.getMax(),
+            h.getUnit());
+      }
+
+      _log.info("metrics of " + metrics.getName() + "\n" + values + "\n" + histograms);
+   }
+}
@@ -0,0 +1,17 @@
+package util.crawler.metrics;
+
+/**
+ * Publishes the metrics of a crawl, see {@link util.crawler.Crawler#addMetricsExporter(MetricsExporter)}.
+ */
+public interface MetricsExporter {
+
+   /**
+    * Called once, when the crawl is finished or stopped, after the last {@link #export(CrawlMetrics)}.
+    */
+   void close();
+
+   /**
+    * Called every <code>metricsIntervalMillis</code> by the scheduler of the crawler, and once at the end of the crawl.
+    */
+   void export( CrawlMetrics metrics );
+}
@@ -0,0 +1,69 @@
+package util.crawler.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import util.usagetracking.TrackingId;
+import util.usagetracking.UsageTrackingService;
+
+
+/**
+ * Bridges the metrics of a crawl to the {@link UsageTrackingService}, so that they show up in its charts together with
+ * the other measurements of the application. Only the metrics with a {@link TrackingId} are measured on every export:
+ * <ul>
+ * <li>counters with their increase since the previous export,</li>
+ * <li>histograms with the mean of the values recorded since the previous export,</li>
+ * <li>gauges with their current value.</li>
+ * </ul>
+ * Nothing is measured, if data tracking of the service is disabled.
+ */
+public class UsageTrackingMetricsExporter implements MetricsExporter {
+
+   private static int toInt( long value ) {
+      return (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+   }
+
+
+   private final Map<String, TrackingId> _trackingIds;
+   private final Map<String, long[]>     _lastValues = new HashMap<>();
+
+
+   /**
+    * @param trackingIds the tracking ids by the name of the metric, e.g. {@link CrawlMetrics#PAGES}
+    */
+   public UsageTrackingMetricsExporter( Map<String, TrackingId> trackingIds ) {
+      _trackingIds = trackingIds;
+   }
+
+   @Override
+   public void close() {}
+
+   @Override
+   public synchronized void export( CrawlMetrics metrics ) {
+      Map<String, Counter> counters = metrics.getCounters();
+      Map<String, Histogram> histograms = metrics.getHistograms();
+      Map<String, LongSupplier> gauges = metrics.getGauges();
+      for ( Map.Entry<String, TrackingId> e : _trackingIds.entrySet() ) {
+         String name = e.getKey();
+         if ( counters.containsKey(name) ) {
+            long[] last = _lastValues.computeIfAbsent(name, n -> new long[1]);
+            long count = counters.get(name).get();
+            UsageTrackingService.addMeasurement(e.getValue(), toInt(count - last[0]));
+            last[0] = count;
+         } else if ( histograms.containsKey(name) ) {
+            long[] last = _lastValues.computeIfAbsent(name, n -> new long[2]);
+            Histogram histogram = histograms.get(name);
+            long count = histogram.getCount();
+            long sum = histogram.getSum();
+            if ( count > last[0] ) {
+               UsageTrackingService.addMeasurement(e.getValue(), toInt((sum - last[1]) / (count - last[0])));
+            }
+            last[0] = count;
+            last[1] = sum;
+         } else if ( gauges.containsKey(name) ) {
+            UsageTrackingService.addMeasurement(e.getValue(), toInt(gauges.get(name).getAsLong()));
+         }
+      }
+   }
+}
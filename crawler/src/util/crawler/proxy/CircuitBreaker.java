@@ -0,0 +1,146 @@
+package util.crawler.proxy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Keeps a failing proxy out of the rotation without forgetting it. While the circuit is closed the proxy is used
+ * normally. After {@link #FAILURE_THRESHOLD} consecutive failures, or when tripped by {@link #open()}, the circuit opens
+ * and the proxy is not handed out until its cooldown has passed. Then exactly one request is let through as a probe,
+ * the circuit is half open meanwhile. A successful probe closes the circuit, a failed one opens it again with twice the
+ * cooldown, up to {@link #MAX_COOLDOWN_MILLIS}.<br/>
+ * The state, the end of the cooldown and the cooldown itself are kept in one immutable {@link Circuit}, which every
+ * transition replaces by compare-and-set, so racing failures and successes never lose a transition and no thread ever
+ * waits for another one.
+ */
+class CircuitBreaker {
+
+   static final int  FAILURE_THRESHOLD       = 3;
+   static final long INITIAL_COOLDOWN_MILLIS = 30 * 1000;
+   static final long MAX_COOLDOWN_MILLIS     = 30 * 60 * 1000;
+
+
+   private final AtomicReference<Circuit> _circuit             = new AtomicReference<>(Circuit.CLOSED);
+   private final AtomicInteger            _consecutiveFailures = new AtomicInteger();
+
+
+   /**
+    * @return whether {@link #tryAcquire(long)} would let a request through at <code>now</code>
+    */
+   boolean allowsRequest( long now ) {
+      Circuit circuit = _circuit.get();
+      return circuit._state == CircuitState.Closed || (circuit._state == CircuitState.Open && now >= circuit._openUntilMillis);
+   }
+
+   /**
+    * @return the time, after which a probe is let through, if the circuit is open
+    */
+   long getOpenUntilMillis() {
+      return _circuit.get()._openUntilMillis;
+   }
+
+   CircuitState getState() {
+      return _circuit.get()._state;
+   }
+
+   /**
+    * @return true, if the circuit is open and its cooldown has not passed yet at <code>now</code>
+    */
+   boolean isOpen( long now ) {
+      Circuit circuit = _circuit.get();
+      return circuit._state == CircuitState.Open && now < circuit._openUntilMillis;
+   }
+
+   /**
+    * Opens the circuit right away, with twice the previous cooldown, if the probe failed.
+    * @return false, if the circuit was open already
+    */
+   boolean open() {
+      long now = System.currentTimeMillis();
+      while ( true ) {
+         Circuit circuit = _circuit.get();
+         if ( circuit._state == CircuitState.Open && now < circuit._openUntilMillis ) {
+            return false;
+         }
+         long cooldown = circuit._cooldownMillis;
+         if ( circuit._state == CircuitState.HalfOpen ) {
+            cooldown = Math.min(MAX_COOLDOWN_MILLIS, cooldown * 2);
+         }
+         if ( _circuit.compareAndSet(circuit, new Circuit(CircuitState.Open, now + cooldown, cooldown)) ) {
+            return true;
+         }
+      }
+   }
+
+   /**
+    * @return true, if the failure opened the circuit
+    */
+   boolean recordFailure() {
+      if ( _consecutiveFailures.incrementAndGet() >= FAILURE_THRESHOLD || getState() == CircuitState.HalfOpen ) {
+         return open();
+      }
+      return false;
+   }
+
+   void recordSuccess() {
+      _consecutiveFailures.set(0);
+      while ( true ) {
+         Circuit circuit = _circuit.get();
+         if ( circuit._state == CircuitState.Closed || _circuit.compareAndSet(circuit, Circuit.CLOSED) ) {
+            return;
+         }
+      }
+   }
+
+   /**
+    * Ends a probe, which neither succeeded nor failed, so the next request is a probe again.
+    */
+   void release() {
+      while ( true ) {
+         Circuit circuit = _circuit.get();
+         if ( circuit._state != CircuitState.HalfOpen
+            || _circuit.compareAndSet(circuit, new Circuit(CircuitState.Open, circuit._openUntilMillis, circuit._cooldownMillis)) ) {
+            return;
+         }
+      }
+   }
+
+   /**
+    * @return whether a request may be sent, an open circuit, whose cooldown has passed, lets exactly one caller through
+    */
+   boolean tryAcquire( long now ) {
+      Circuit circuit = _circuit.get();
+      if ( circuit._state == CircuitState.Closed ) {
+         return true;
+      }
+      return circuit._state == CircuitState.Open && now >= circuit._openUntilMillis
+         && _circuit.compareAndSet(circuit, new Circuit(CircuitState.HalfOpen, circuit._openUntilMillis, circuit._cooldownMillis));
+   }
+
+
+   enum CircuitState {
+      Closed, Open, HalfOpen
+   }
+
+
+   /**
+    * An immutable snapshot of the circuit, replaced as a whole by every transition.
+    */
+   private static final class Circuit {
+
+      /** closing a circuit resets its cooldown, so all closed circuits are equal */
+      static final Circuit CLOSED = new Circuit(CircuitState.Closed, 0, INITIAL_COOLDOWN_MILLIS);
+
+      final CircuitState _state;
+      final long         _openUntilMillis;
+      final long         _cooldownMillis;
+
+
+      Circuit( CircuitState state, long openUntilMillis, long cooldownMillis ) {
+         _state = state;
+         _openUntilMillis = openUntilMillis;
+         _cooldownMillis = cooldownMillis;
+      }
+   }
+}
@@ -4,6 +4,10 @@ import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import org.apache.http.HttpEntity;
@@ -15,6 +19,8 @@ import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import util.crawler.fetch.BlockingFetcher;
+import util.crawler.fetch.Fetcher;
 import util.crawler.proxy.ProxyList.ProxyAddress;
 import util.http.HttpClientFactory;
 
@@ -58,6 +64,9 @@ public class Proxy implements Comparable<Proxy> {
       return Float.compare(s1, s2);
    };
 
+   /** the default of the {@link ProxyPool}, prefers the lowest {@link #getScore()} */
+   public static final Comparator<Proxy> LOWEST_SCORE_COMPARATOR = ( p1, p2 ) -> Double.compare(p1.getScore(), p2.getScore());
+
    public static final Comparator<Proxy> LOAD_DISTRIBUTING_COMPARATOR = ( p1, p2 ) -> {
       int errors1 = p1._stats.getFaultyGets();
       int errors2 = p2._stats.getFaultyGets();
@@ -70,6 +79,19 @@ public class Proxy implements Comparable<Proxy> {
       return Integer.compare(score1, score2);
    };
 
+   /** the weight of a new request time in the latency score */
+   private static final double LATENCY_EWMA_WEIGHT   = 0.2;
+   /** the weight of a new outcome in the error score */
+   private static final double ERROR_EWMA_WEIGHT     = 0.2;
+   /** the error score halves within this time without requests, so a proxy recovers from a bad streak */
+   private static final long   ERROR_SCORE_HALF_LIFE = 5 * 60 * 1000;
+   /** how much an error score of 1 multiplies the latency score */
+   private static final double ERROR_PENALTY         = 10;
+   private static final double LATENCY_TOLERANCE     = 2;
+   private static final double LATENCY_DECREASE      = 0.9;
+   private static final double FAILURE_DECREASE      = 0.5;
+   private static final double MIN_CONCURRENCY       = 1;
+
    private static Logger _log = LoggerFactory.getLogger(Proxy.class);
 
 
@@ -92,16 +114,30 @@ public class Proxy implements Comparable<Proxy> {
    private final ProxyAddress _address;
    private HttpHost           _proxyHost;
 
-   private CloseableHttpClient _httpClient;
-
-   private Stats _stats;
+   private volatile CloseableHttpClient _httpClient;
+   private Fetcher                      _fetcher;
+   private Consumer<HttpClientFactory>  _httpClientFactoryConfigurer;
+   private final ReentrantLock          _httpClientLock = new ReentrantLock();
+
+   private final Stats          _stats;
+   private final CircuitBreaker _circuitBreaker   = new CircuitBreaker();
+   /** number of requests using this proxy, the {@link ProxyPool} keeps it below the concurrency limit */
+   final AtomicInteger          _inFlight         = new AtomicInteger();
+   /** the adaptive limit of concurrent requests, updated with the scores */
+   private volatile double      _concurrencyLimit = MIN_CONCURRENCY;
+   private int                  _maxConcurrency   = 1;
+   private long                 _bestLatency      = Long.MAX_VALUE;
+   /** the pool this proxy was created for, so proxies of a replaced pool are not returned to the new one */
+   ProxyPool                    _pool;
+   /** the persistent health history, set by the pool, see {@link #restoreHealth(ProxyHealth)} */
+   private ProxyHealth          _health;
 
    private HttpHost      _latencyTestHost = DEFAULT_LATENCY_TEST_HOST;
    private List<Pattern> _sanePatterns    = DEFAULT_SANE_PATTERNS;
    private List<Pattern> _insanePatterns  = DEFAULT_INSANE_PATTERNS;
 
-   private boolean _insane;
-   private String  _userAgent;
+   private volatile boolean _insane;
+   private String           _userAgent;
 
    private String _authenticationUser;
    private String _authenticationPassword;
@@ -124,13 +160,36 @@ public class Proxy implements Comparable<Proxy> {
    }
 
    public void addFaultyGet( int time ) {
-      _stats._sumFaultyRequestTimes += time;
-      _stats._faultyGets++;
+      _stats._sumFaultyRequestTimes.add(time);
+      _stats._faultyGets.increment();
+      _stats.addOutcome(time, false, true);
+      if ( _circuitBreaker.recordFailure() ) {
+         logCircuitOpened();
+      }
    }
 
    public void addSuccessfulGet( int time ) {
-      _stats._sumSuccessfulRequestTimes += time;
-      _stats._successfulGets++;
+      _stats._sumSuccessfulRequestTimes.add(time);
+      _stats._successfulGets.increment();
+      _stats.addOutcome(time, true, true);
+      _circuitBreaker.recordSuccess();
+   }
+
+   /**
+    * Adds the result of a validation, which is not counted as a get. A successful validation closes an open circuit, a
+    * failed one counts as a failure for the circuit breaker.
+    * @param latency the time to load the latency test page in ms
+    */
+   public void addValidation( int latency, boolean success ) {
+      _stats.addOutcome(latency, success, false);
+      if ( success ) {
+         _circuitBreaker.recordSuccess();
+      } else if ( _circuitBreaker.recordFailure() ) {
+         logCircuitOpened();
+      }
+      if ( _health != null ) {
+         _health.setFailedChecks(success ? 0 : _health.getFailedChecks() + 1);
+      }
    }
 
    public void close() {
@@ -140,6 +199,9 @@ public class Proxy implements Comparable<Proxy> {
       if ( _httpClient != null ) {
          _httpClient.getConnectionManager().shutdown();
       }
+      if ( _fetcher != null ) {
+         _fetcher.close();
+      }
    }
 
    @Override
@@ -173,14 +235,82 @@ public class Proxy implements Comparable<Proxy> {
       return _address;
    }
 
+   /**
+    * @return the health history of this proxy, updated by {@link #updateHealth()}, null if the proxy is not in a pool
+    */
+   public ProxyHealth getHealth() {
+      return _health;
+   }
+
+   /**
+    * @return "Closed", if the proxy is used normally, "Open", if it is kept out of the rotation after failures, or
+    *         "HalfOpen", while a probe request is in flight
+    */
+   public String getCircuitState() {
+      return _circuitBreaker.getState().name();
+   }
+
+   /**
+    * @return the fetcher set by {@link #setFetcher(Fetcher)}, or a blocking fetcher using {@link #getHttpClient()}
+    */
+   public Fetcher getFetcher() {
+      if ( _fetcher != null ) {
+         _stats._clientAccesses.increment();
+         return _fetcher;
+      }
+      return new BlockingFetcher(getHttpClient());
+   }
+
+   /**
+    * @return the number of concurrent requests this proxy is used for at most right now. The limit starts at 1 and
+    *         adapts to the responses, AIMD style: it grows by one per window of successful requests with a latency
+    *         score below twice the best request time seen, it is reduced by 10% when the latency score exceeds that, and
+    *         it is halved on every failure. It never exceeds {@link #setMaxConcurrency(int)}.
+    */
+   public int getConcurrencyLimit() {
+      return (int)_concurrencyLimit;
+   }
+
    public CloseableHttpClient getHttpClient() {
-      _stats._clientAccesses++;
-      if ( _httpClient != null ) {
+      _stats._clientAccesses.increment();
+      CloseableHttpClient httpClient = _httpClient;
+      if ( httpClient != null ) {
+         return httpClient;
+      }
+      _httpClientLock.lock();
+      try {
+         if ( _httpClient == null ) {
+            _httpClient = createHttpClient(_socketTimeout, _connectionTimeout);
+         }
          return _httpClient;
       }
-      _httpClient = createHttpClient(_socketTimeout, _connectionTimeout);
+      finally {
+         _httpClientLock.unlock();
+      }
+   }
 
-      return _httpClient;
+   /**
+    * @return the expected time of a request in ms, the latency score penalized by the error score, see {@link Stats}.
+    *         0 for a proxy without requests, so untried proxies are preferred, a proxy which only failed so far counts
+    *         as slow as the socket timeout.
+    */
+   public double getScore() {
+      double latency = _stats.getLatencyScore();
+      double errorScore = _stats.getErrorScore();
+      if ( latency < 0 ) {
+         if ( errorScore == 0 ) {
+            return 0;
+         }
+         latency = _socketTimeout;
+      }
+      return latency * (1 + ERROR_PENALTY * errorScore);
+   }
+
+   /**
+    * @return the time of the last request or validation, including those before a restart, 0 if there was none
+    */
+   public long getLastSeenMillis() {
+      return _stats._errorScoreMillis;
    }
 
    public Stats getStats() {
@@ -242,6 +372,15 @@ public class Proxy implements Comparable<Proxy> {
       HttpClientFactory.close(httpClient);
    }
 
+   /**
+    * Keeps the proxy out of the rotation for the cooldown of its circuit breaker, even if it did not fail repeatedly.
+    */
+   public void openCircuit() {
+      if ( _circuitBreaker.open() ) {
+         logCircuitOpened();
+      }
+   }
+
    public void setAuthenticationPassword( String authenticationPassword ) {
       _authenticationPassword = authenticationPassword;
    }
@@ -254,10 +393,19 @@ public class Proxy implements Comparable<Proxy> {
       _connectionTimeout = connectionTimeout;
    }
 
+   public void setFetcher( Fetcher fetcher ) {
+      _fetcher = fetcher;
+   }
+
    public void setHttpClient( CloseableHttpClient httpClient ) {
       _httpClient = httpClient;
    }
 
+   /** use this to configure anything in the HttpClientFactory of this proxy's clients that is not provided here */
+   public void setHttpClientFactoryConfigurer( Consumer<HttpClientFactory> httpClientFactoryConfigurer ) {
+      _httpClientFactoryConfigurer = httpClientFactoryConfigurer;
+   }
+
    public void setInsanePatterns( List<Pattern> insanePatterns ) {
       _insanePatterns = insanePatterns == null ? DEFAULT_INSANE_PATTERNS : insanePatterns;
    }
@@ -266,6 +414,14 @@ public class Proxy implements Comparable<Proxy> {
       _latencyTestHost = latencyTestHost == null ? DEFAULT_LATENCY_TEST_HOST : latencyTestHost;
    }
 
+   /**
+    * @param maxConcurrency the upper bound of the adaptive concurrency limit, see {@link #getConcurrencyLimit()}
+    */
+   public void setMaxConcurrency( int maxConcurrency ) {
+      _maxConcurrency = Math.max(1, maxConcurrency);
+      _concurrencyLimit = Math.min(_concurrencyLimit, _maxConcurrency);
+   }
+
    public void setSanePatterns( List<Pattern> sanePatterns ) {
       _sanePatterns = sanePatterns == null ? DEFAULT_SANE_PATTERNS : sanePatterns;
    }
@@ -283,14 +439,102 @@ public class Proxy implements Comparable<Proxy> {
       return _address + ", " + _stats;
    }
 
+   /**
+    * Copies the current scores to the health history, see {@link ProxyList#storeProxyHealth(ProxyList)}.
+    */
+   public void updateHealth() {
+      if ( _health != null ) {
+         _stats._scoreLock.lock();
+         try {
+            _health.update(_stats._errorScoreMillis, _stats._latencyScore, _stats._errorScore);
+         }
+         finally {
+            _stats._scoreLock.unlock();
+         }
+      }
+   }
+
    @Override
    protected void finalize() throws Throwable {
       close();
       super.finalize();
    }
 
+   /**
+    * @return whether the circuit allows a request at <code>now</code>, see {@link #tryAcquireCircuit(long)}
+    */
+   boolean circuitAllowsRequest( long now ) {
+      return _circuitBreaker.allowsRequest(now);
+   }
+
+   /**
+    * @return the time, after which an open circuit lets a probe through
+    */
+   long getCircuitOpenUntilMillis() {
+      return _circuitBreaker.getOpenUntilMillis();
+   }
+
+   /**
+    * @return whether the circuit of this proxy is open at <code>now</code>, so it must not be used
+    */
+   boolean isCircuitOpen( long now ) {
+      return _circuitBreaker.isOpen(now);
+   }
+
+   /**
+    * Ends a probe of a half open circuit, for which neither a successful nor a faulty get was added.
+    */
+   void releaseCircuit() {
+      _circuitBreaker.release();
+   }
+
+   /**
+    * Seeds the scores from the health history of a previous pool, the error score keeps decaying from the time it was
+    * last updated.
+    */
+   void restoreHealth( ProxyHealth health ) {
+      _health = health;
+      _stats._scoreLock.lock();
+      try {
+         _stats._latencyScore = health.getLatencyScore();
+         _stats._errorScore = health.getErrorScore();
+         _stats._errorScoreMillis = health.getLastSeenMillis();
+      }
+      finally {
+         _stats._scoreLock.unlock();
+      }
+   }
+
+   /**
+    * @return whether the circuit allows a request, lets exactly one probe through an open circuit, whose cooldown passed
+    */
+   boolean tryAcquireCircuit( long now ) {
+      return _circuitBreaker.tryAcquire(now);
+   }
+
+   /**
+    * Called with the score lock of the stats held.
+    */
+   private void adaptConcurrencyLimit( int time, boolean success ) {
+      double oldLimit = _concurrencyLimit;
+      if ( !success ) {
+         _concurrencyLimit = Math.max(MIN_CONCURRENCY, oldLimit * FAILURE_DECREASE);
+      } else {
+         _bestLatency = Math.min(_bestLatency, Math.max(1, time));
+         if ( _stats._latencyScore > _bestLatency * LATENCY_TOLERANCE ) {
+            _concurrencyLimit = Math.max(MIN_CONCURRENCY, oldLimit * LATENCY_DECREASE);
+         } else {
+            _concurrencyLimit = Math.min(_maxConcurrency, oldLimit + 1 / oldLimit);
+         }
+      }
+      if ( (int)oldLimit != (int)_concurrencyLimit && _log.isDebugEnabled() ) {
+         _log.debug("concurrency limit of proxy " + _address + " is now " + (int)_concurrencyLimit + ", latency score " + (long)_stats._latencyScore + " ms");
+      }
+   }
+
    private CloseableHttpClient createHttpClient( int socketTimeout, int connectionTimeout ) {
       HttpClientFactory httpClientFactory = new HttpClientFactory();
+      httpClientFactory.setMaxConnections(Math.max(10, _maxConcurrency));
       httpClientFactory.setConnectionTimeout(connectionTimeout);
       httpClientFactory.setSoTimeout(socketTimeout);
       if ( _userAgent != null ) {
@@ -302,37 +546,65 @@ public class Proxy implements Comparable<Proxy> {
       }
       httpClientFactory.setNeverRetryHttpRequests(true);
       httpClientFactory.setProxy(_proxyHost);
+      if ( _httpClientFactoryConfigurer != null ) {
+         _httpClientFactoryConfigurer.accept(httpClientFactory);
+      }
 
       return httpClientFactory.create();
    }
 
+   private void logCircuitOpened() {
+      _log.info("proxy " + _address + " is not used for " + (_circuitBreaker.getOpenUntilMillis() - System.currentTimeMillis()) / 1000 + " s after failures");
+   }
+
 
+   /**
+    * The counters are updated concurrently without locks. Besides the totals, the stats keep two exponentially decayed
+    * scores for choosing a proxy: the latency score, a moving average of the successful request times, and the error
+    * score, a moving average of the failures, which also halves every {@link Proxy#ERROR_SCORE_HALF_LIFE} ms.
+    */
    public class Stats {
 
-      private long _firstByteLatency = -1;
-      private long _lastByteLatency  = -1;
+      private volatile long _firstByteLatency = -1;
+      private volatile long _lastByteLatency  = -1;
 
-      private int _clientAccesses            = 0;
-      private int _successfulGets            = 0;
-      private int _faultyGets                = 0;
-      private int _sumSuccessfulRequestTimes = 0;
-      private int _sumFaultyRequestTimes     = 0;
+      private final LongAdder _clientAccesses            = new LongAdder();
+      private final LongAdder _successfulGets            = new LongAdder();
+      private final LongAdder _faultyGets                = new LongAdder();
+      private final LongAdder _sumSuccessfulRequestTimes = new LongAdder();
+      private final LongAdder _sumFaultyRequestTimes     = new LongAdder();
+
+      /** guards the updates of the scores and of the concurrency limit, which are read without it */
+      private final ReentrantLock _scoreLock         = new ReentrantLock();
+      private volatile double     _latencyScore      = -1;
+      private volatile double     _errorScore;
+      private volatile long       _errorScoreMillis;
 
 
       public int getAverageFaultyRequestTime() {
-         return _faultyGets == 0 ? 0 : _sumFaultyRequestTimes / _faultyGets;
+         long faultyGets = _faultyGets.sum();
+         return faultyGets == 0 ? 0 : (int)(_sumFaultyRequestTimes.sum() / faultyGets);
       }
 
       public int getAverageRequestTime() {
-         return getTotalGets() == 0 ? 0 : (_sumFaultyRequestTimes + _sumSuccessfulRequestTimes) / getTotalGets();
+         int totalGets = getTotalGets();
+         return totalGets == 0 ? 0 : (int)((_sumFaultyRequestTimes.sum() + _sumSuccessfulRequestTimes.sum()) / totalGets);
       }
 
       public int getAverageSuccessfulRequestTime() {
-         return _successfulGets == 0 ? 0 : _sumSuccessfulRequestTimes / _successfulGets;
+         long successfulGets = _successfulGets.sum();
+         return successfulGets == 0 ? 0 : (int)(_sumSuccessfulRequestTimes.sum() / successfulGets);
       }
 
       public int getClientAccesses() {
-         return _clientAccesses;
+         return _clientAccesses.intValue();
+      }
+
+      /**
+       * @return the decayed ratio of failed requests, between 0 and 1
+       */
+      public double getErrorScore() {
+         return decayedErrorScore(System.currentTimeMillis());
       }
 
       public float getFaultRatio() {
@@ -340,7 +612,7 @@ public class Proxy implements Comparable<Proxy> {
       }
 
       public int getFaultyGets() {
-         return _faultyGets;
+         return _faultyGets.intValue();
       }
 
       public long getFirstByteLatency() {
@@ -357,8 +629,15 @@ public class Proxy implements Comparable<Proxy> {
          return _lastByteLatency;
       }
 
+      /**
+       * @return the moving average of the successful request times in ms, -1 if there was no successful request yet
+       */
+      public double getLatencyScore() {
+         return _latencyScore;
+      }
+
       public int getSuccessfulGets() {
-         return _successfulGets;
+         return _successfulGets.intValue();
       }
 
       public int getTotalGets() {
@@ -375,7 +654,54 @@ public class Proxy implements Comparable<Proxy> {
             "averageRequestTime: " + getAverageRequestTime() + " ms, " + //
             "averageSuccessfulRequestTime: " + getAverageSuccessfulRequestTime() + " ms, " + //
             "averageFaultyRequestTime: " + getAverageFaultyRequestTime() + " ms, " + //
+            "score: " + (long)getScore() + ", " + //
+            "circuit: " + getCircuitState() + ", " + //
             "insane: " + _insane;
       }
+
+      /**
+       * @param adaptConcurrencyLimit false for validations, whose latency is not that of the crawled host
+       */
+      void addOutcome( int time, boolean success, boolean adaptConcurrencyLimit ) {
+         _scoreLock.lock();
+         try {
+            long now = System.currentTimeMillis();
+            double errorScore = decayedErrorScore(now);
+            _errorScore = errorScore + ERROR_EWMA_WEIGHT * ((success ? 0 : 1) - errorScore);
+            _errorScoreMillis = now;
+            if ( success ) {
+               _latencyScore = _latencyScore < 0 ? time : _latencyScore + LATENCY_EWMA_WEIGHT * (time - _latencyScore);
+            }
+            if ( adaptConcurrencyLimit ) {
+               adaptConcurrencyLimit(time, success);
+            }
+         }
+         finally {
+            _scoreLock.unlock();
+         }
+      }
+
+      /**
+       * @return the first byte latency of the last latency test, -1 if there was none, without testing the proxy
+       */
+      long getMeasuredFirstByteLatency() {
+         return _firstByteLatency;
+      }
+
+      /**
+       * @return the last byte latency of the last latency test, -1 if there was none, without testing the proxy
+       */
+      long getMeasuredLastByteLatency() {
+         return _lastByteLatency;
+      }
+
+      private double decayedErrorScore( long now ) {
+         double errorScore = _errorScore;
+         long elapsed = now - _errorScoreMillis;
+         if ( errorScore == 0 || elapsed <= 0 ) {
+            return errorScore;
+         }
+         return errorScore * Math.pow(0.5, elapsed / (double)ERROR_SCORE_HALF_LIFE);
+      }
    }
 }
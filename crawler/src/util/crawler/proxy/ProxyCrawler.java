@@ -2,10 +2,10 @@ package util.crawler.proxy;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
@@ -20,6 +20,9 @@ import util.crawler.Crawler;
 
 public class ProxyCrawler {
 
+   /** proxies validated within this time are not validated again by {@link #refreshProxyList} */
+   public static final long REVALIDATION_AGE_MILLIS = 60 * 60 * 1000;
+
    private static Logger _log = LoggerFactory.getLogger(ProxyCrawler.class);
 
    private static CrawlParams SAMAIR_PARAMS = new CrawlParamsWithXsltFromClasspath("proxies-samair.xsl");
@@ -49,21 +52,32 @@ public class ProxyCrawler {
       refreshProxyList(null, null, null, 120, 3000);
    }
 
+   /**
+    * Merges newly crawled proxies into the current proxy list and validates only the new ones and those not validated
+    * within {@link #REVALIDATION_AGE_MILLIS}, the others keep their stored health. Proxies failing
+    * {@link ProxyValidator#MAX_FAILED_CHECKS} validations in a row are dropped from the list.
+    * @param maxTimeToMeasureLatency in s
+    */
    public static void refreshProxyList( String testHost, List<Pattern> sanePatterns, List<Pattern> insanePatterns, int maxTimeToMeasureLatency,
          int maxResponseTimeInMillis ) {
+      ProxyList proxyList = ProxyList.getCurrentProxyList();
       ProxyCrawler proxyCrawler = new ProxyCrawler();
       proxyCrawler.crawl();
+      int added = proxyList.merge(proxyCrawler._proxyList).size();
+      _log.info("added " + added + " new proxies to the " + (proxyList.getProxies().size() - added) + " known ones");
 
       HttpHost latencyTestHost = testHost != null ? new HttpHost(testHost) : null;
-      ProxyPool proxyPool = new ProxyPool(proxyCrawler._proxyList, latencyTestHost, sanePatterns, insanePatterns, null, null, null, maxResponseTimeInMillis,
+      ProxyPool proxyPool = new ProxyPool(proxyList, latencyTestHost, sanePatterns, insanePatterns, null, null, null, maxResponseTimeInMillis,
          maxResponseTimeInMillis, "http", null);
-      ProxyList fastProxies = proxyPool.measureLatency(maxTimeToMeasureLatency, maxResponseTimeInMillis);
+      ProxyValidator validator = new ProxyValidator(proxyPool, maxResponseTimeInMillis, REVALIDATION_AGE_MILLIS, Integer.MAX_VALUE, 50);
+      validator.validateStaleProxies(maxTimeToMeasureLatency * 1000L);
+      validator.close();
 
-      ProxyList.storeProxyList(fastProxies);
+      ProxyList.storeProxyList(validator.retainHealthy());
    }
 
 
-   Set<String> _proxyAdresses = new HashSet<String>();
+   Set<String> _proxyAdresses = ConcurrentHashMap.newKeySet();
 
    ProxyList _proxyList = new ProxyList();
 
@@ -129,7 +143,7 @@ public class ProxyCrawler {
       }
 
       @Override
-      protected synchronized int addResult( Map<String, String>[] maps ) {
+      protected int addResult( Map<String, String>[] maps ) {
          int added = 0;
          for ( Map<String, String> map : maps ) {
             String ip = map.get("ip");
@@ -0,0 +1,91 @@
+package util.crawler.proxy;
+
+import util.crawler.proxy.ProxyList.ProxyAddress;
+
+
+/**
+ * The health history of a proxy, which survives restarts: it is stored by {@link ProxyList#storeProxyList(ProxyList)}
+ * next to the proxy list, one line per proxy, and seeds the scores of the proxy in a new {@link ProxyPool}, so a new
+ * pool is ranked right away.
+ */
+public class ProxyHealth {
+
+   /**
+    * @return the health of a line written by {@link #toString()}, or null, if the line is malformed
+    */
+   static ProxyHealth parse( String line ) {
+      String[] fields = line.split("\t");
+      if ( fields.length != 5 ) {
+         return null;
+      }
+      try {
+         ProxyHealth health = new ProxyHealth(new ProxyAddress(fields[0]));
+         health._lastSeenMillis = Long.parseLong(fields[1]);
+         health._latencyScore = Double.parseDouble(fields[2]);
+         health._errorScore = Double.parseDouble(fields[3]);
+         health._failedChecks = Integer.parseInt(fields[4]);
+         return health;
+      }
+      catch ( IllegalArgumentException argh ) {
+         return null;
+      }
+   }
+
+
+   private final ProxyAddress _address;
+   /** the time of the last validation or request, 0 if the proxy was never used */
+   private volatile long      _lastSeenMillis;
+   private volatile double    _latencyScore = -1;
+   private volatile double    _errorScore;
+   /** the number of validations failed in a row */
+   private volatile int       _failedChecks;
+
+
+   public ProxyHealth( ProxyAddress address ) {
+      _address = address;
+   }
+
+   public ProxyAddress getAddress() {
+      return _address;
+   }
+
+   /**
+    * @return the error score of the proxy at {@link #getLastSeenMillis()}, see {@link Proxy.Stats#getErrorScore()}
+    */
+   public double getErrorScore() {
+      return _errorScore;
+   }
+
+   /**
+    * @return the number of validations failed in a row, see {@link ProxyValidator}
+    */
+   public int getFailedChecks() {
+      return _failedChecks;
+   }
+
+   public long getLastSeenMillis() {
+      return _lastSeenMillis;
+   }
+
+   /**
+    * @return the latency score of the proxy, see {@link Proxy.Stats#getLatencyScore()}
+    */
+   public double getLatencyScore() {
+      return _latencyScore;
+   }
+
+   @Override
+   public String toString() {
+      return _address + "\t" + _lastSeenMillis + "\t" + (long)_latencyScore + "\t" + _errorScore + "\t" + _failedChecks;
+   }
+
+   void setFailedChecks( int failedChecks ) {
+      _failedChecks = failedChecks;
+   }
+
+   void update( long lastSeenMillis, double latencyScore, double errorScore ) {
+      _lastSeenMillis = lastSeenMillis;
+      _latencyScore = latencyScore;
+      _errorScore = errorScore;
+   }
+}
@@ -4,8 +4,15 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -13,14 +20,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
+/**
+ * The proxies to use, together with their {@link ProxyHealth}. The list is stored in the file of the system property
+ * <code>proxyListFilename</code>, default <code>proxies.txt</code>, the health history in the same file with the
+ * suffix <code>.health</code>.<br/>
+ * Proxies are only added, never removed, so a pool can iterate the list while a {@link ProxyValidator} merges newly
+ * discovered proxies.
+ */
 public class ProxyList {
 
-   private static Logger _log = LoggerFactory.getLogger(ProxyList.class);
+   private static Logger              _log       = LoggerFactory.getLogger(ProxyList.class);
+
+   /** a lock instead of a monitor, so virtual threads storing the list don't pin their carrier thread */
+   private static final ReentrantLock STORE_LOCK = new ReentrantLock();
 
 
    public static ProxyList getCurrentProxyList() {
       ProxyList proxyList = null;
-      String proxyListFilename = System.getProperty("proxyListFilename", "proxies.txt");
+      String proxyListFilename = getProxyListFilename();
       if ( proxyListFilename != null ) {
          proxyList = new ProxyList();
          FileInputStream in = null;
@@ -34,37 +51,94 @@ public class ProxyList {
          finally {
             IOUtils.closeQuietly(in);
          }
+         File healthFile = new File(proxyListFilename + ".health");
+         if ( healthFile.exists() ) {
+            try {
+               proxyList.initHealthFromDisk(FileUtils.readLines(healthFile));
+            }
+            catch ( IOException argh ) {
+               _log.warn("Failed to read proxy health from " + healthFile, argh);
+            }
+         }
       }
       return proxyList;
    }
 
+   /**
+    * Stores only the health of the proxies, so the next pool created from the stored list is ranked right away.
+    */
+   public static void storeProxyHealth( ProxyList proxyList ) {
+      File healthFile = new File(getProxyListFilename() + ".health");
+      try {
+         write(healthFile, proxyList.healthToString());
+      }
+      catch ( IOException argh ) {
+         _log.error("Failed to write proxy health to " + healthFile, argh);
+      }
+   }
+
+   /**
+    * Stores the proxy list and the health of its proxies.
+    */
    public static void storeProxyList( ProxyList proxyList ) {
       try {
-         FileUtils.writeStringToFile(new File(System.getProperty("proxyListFilename", "proxies.txt")), proxyList.toString());
+         write(new File(getProxyListFilename()), proxyList.toString());
       }
       catch ( IOException argh ) {
          _log.error("Failed to write to file", argh);
       }
+      storeProxyHealth(proxyList);
    }
 
+   private static String getProxyListFilename() {
+      return System.getProperty("proxyListFilename", "proxies.txt");
+   }
+
+   /**
+    * Writes a temporary file and moves it over the file, so that a crash never leaves a truncated file behind. The
+    * validator, the end of a crawl and the re-initialization of a pool may store concurrently, so the writers take turns.
+    */
+   private static void write( File file, String contents ) throws IOException {
+      File tmpFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+      STORE_LOCK.lock();
+      try {
+         FileUtils.writeStringToFile(tmpFile, contents);
+         Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch ( IOException argh ) {
+         tmpFile.delete();
+         throw argh;
+      }
+      finally {
+         STORE_LOCK.unlock();
+      }
+   }
 
-   List<ProxyAddress> _proxies         = new ArrayList<ProxyAddress>();
 
-   long               _lastRefreshTime = System.currentTimeMillis();
+   List<ProxyAddress>                     _proxies         = new CopyOnWriteArrayList<ProxyAddress>();
+   /** the proxies of the list, to find duplicates without scanning the list */
+   private Set<ProxyAddress>              _addresses       = ConcurrentHashMap.newKeySet();
+   private Map<ProxyAddress, ProxyHealth> _health          = new ConcurrentHashMap<>();
+
+   long                                   _lastRefreshTime = System.currentTimeMillis();
 
 
    public ProxyList() {}
 
    public void addProxy( String p ) {
-      try {
-         _proxies.add(new ProxyAddress(p));
-      }
-      catch ( Exception argh ) {
-         _log.warn("Failed to add proxy", argh);
-         // ignore
+      ProxyAddress address = parseNewProxy(p);
+      if ( address != null ) {
+         _proxies.add(address);
       }
    }
 
+   /**
+    * @return the health of the proxy, created if it has none yet
+    */
+   public ProxyHealth getHealth( ProxyAddress address ) {
+      return _health.computeIfAbsent(address, ProxyHealth::new);
+   }
+
    public long getLastRefreshTime() {
       return _lastRefreshTime;
    }
@@ -88,15 +162,57 @@ public class ProxyList {
       }
    }
 
+   /**
+    * Adds the proxies in a single step, since every add copies the list.
+    */
    public void initFromDisk( InputStream in ) throws IOException {
       List<String> proxies = IOUtils.readLines(in);
+      List<ProxyAddress> added = new ArrayList<>(proxies.size());
       for ( String p : proxies ) {
          if ( p.startsWith("lastRefreshTime=") ) {
             _lastRefreshTime = Long.parseLong(p.substring(16));
          } else {
-            addProxy(p);
+            ProxyAddress address = parseNewProxy(p);
+            if ( address != null ) {
+               added.add(address);
+            }
          }
       }
+      _proxies.addAll(added);
+   }
+
+   /**
+    * Reads the lines of a health file, the health of proxies not in this list is ignored.
+    */
+   public void initHealthFromDisk( List<String> lines ) {
+      for ( String line : lines ) {
+         ProxyHealth health = ProxyHealth.parse(line);
+         if ( health == null ) {
+            _log.warn("Ignoring malformed proxy health: " + line);
+         } else if ( _addresses.contains(health.getAddress()) ) {
+            _health.put(health.getAddress(), health);
+         }
+      }
+   }
+
+   /**
+    * Adds the proxies of <code>other</code>, which are not in this list yet, together with their health. The proxies and
+    * the health already in this list are kept.
+    * @return the proxies added
+    */
+   public List<ProxyAddress> merge( ProxyList other ) {
+      List<ProxyAddress> added = new ArrayList<>();
+      for ( ProxyAddress address : other._proxies ) {
+         if ( _addresses.add(address) ) {
+            ProxyHealth health = other._health.get(address);
+            if ( health != null ) {
+               _health.putIfAbsent(address, health);
+            }
+            added.add(address);
+         }
+      }
+      _proxies.addAll(added);
+      return added;
    }
 
    @Override
@@ -111,6 +227,31 @@ public class ProxyList {
       return sb.toString();
    }
 
+   /**
+    * @return the address, or null if it is malformed or already in the list, in which case it is not added
+    */
+   private ProxyAddress parseNewProxy( String p ) {
+      try {
+         ProxyAddress address = new ProxyAddress(p);
+         return _addresses.add(address) ? address : null;
+      }
+      catch ( Exception argh ) {
+         _log.warn("Failed to add proxy", argh);
+         return null;
+      }
+   }
+
+   private String healthToString() {
+      StringBuilder sb = new StringBuilder();
+      for ( ProxyAddress p : _proxies ) {
+         ProxyHealth health = _health.get(p);
+         if ( health != null ) {
+            sb.append(health).append("\n");
+         }
+      }
+      return sb.toString();
+   }
+
 
    public static class ProxyAddress {
 
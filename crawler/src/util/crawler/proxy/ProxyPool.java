@@ -2,14 +2,16 @@ package util.crawler.proxy;
 
 import java.text.NumberFormat;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import org.apache.http.HttpHost;
@@ -18,18 +20,53 @@ import org.slf4j.LoggerFactory;
 
 import util.concurrent.ExecutorUtils;
 import util.crawler.proxy.ProxyList.ProxyAddress;
+import util.http.HttpClientFactory;
 import util.string.StringTable;
 import util.string.StringTable.Alignment;
 
 
+/**
+ * Hands out proxies to concurrent requests, each proxy to at most {@link Proxy#getConcurrencyLimit()} requests at a
+ * time, which adapts to its latency and failures up to {@link #setMaxConcurrencyPerProxy(int)}. So with few good
+ * proxies, their pooled connections serve many requests, instead of the requests queueing for an idle proxy.<br/>
+ * A checkout takes no lock: starting at a random proxy it looks for two proxies below their limit, whose circuit is not
+ * open, and claims a slot of the better one by compare-and-set, see {@link Proxy#getScore()} for the default order.
+ * Choosing the better of two random candidates spreads the load over the good proxies, instead of hammering the best
+ * one, while the bad ones are seldom used. Failing proxies are kept out of the rotation by their circuit breaker and
+ * probed again after a cooldown, so the pool does not shrink with every failure.<br/>
+ * Only when all proxies are at their limit, the checkout waits for a returned proxy.<br/>
+ * The scores of a new pool are seeded from the {@link ProxyHealth} of the proxy list, proxies discovered later are
+ * added by {@link #addProxies(List)}.
+ */
 public class ProxyPool {
 
    private static Logger _log = LoggerFactory.getLogger(ProxyPool.class);
 
-   private ProxyList            _proxyList;
-   private List<Proxy>          _allProxies;
-   private BlockingQueue<Proxy> _proxies;
-   private AtomicInteger        _size = new AtomicInteger();
+   /** number of available proxies compared per checkout */
+   private static final int  CANDIDATES               = 2;
+   /** the longest wait for a returned proxy, before looking again, in case a cooldown passed meanwhile */
+   private static final long MAX_CHECKOUT_WAIT_MILLIS = 1000;
+
+   private ProxyList                   _proxyList;
+   /** copied on write, see {@link #addProxies(List)} */
+   private volatile Proxy[]            _proxies;
+   private Comparator<Proxy>           _comparator;
+   private HttpHost                    _latencyTestHost;
+   private List<Pattern>               _sanePatterns;
+   private List<Pattern>               _insanePatterns;
+   private String                      _userAgent;
+   private String                      _authenticationUser;
+   private String                      _authenticationPassword;
+   private int                         _socketTimeout;
+   private int                         _connectionTimeout;
+   private String                      _scheme;
+   private Consumer<HttpClientFactory> _httpClientFactoryConfigurer;
+   private int                         _maxConcurrencyPerProxy = 1;
+   private final ReentrantLock         _addLock                = new ReentrantLock();
+   /** only used by threads waiting for a returned proxy */
+   private final ReentrantLock _returnLock    = new ReentrantLock();
+   private final Condition     _proxyReturned = _returnLock.newCondition();
+   private final AtomicInteger _waiters       = new AtomicInteger();
 
 
    public ProxyPool( ProxyList proxyList ) {
@@ -46,41 +83,91 @@ public class ProxyPool {
          scheme, proxyComparator);
    }
 
-   public Proxy checkoutProxy() {
+   /**
+    * Adds proxies, which are not in the pool yet, the pool can be used meanwhile.
+    * @return the number of proxies added
+    */
+   public int addProxies( List<ProxyAddress> addresses ) {
+      int added = 0;
+      _addLock.lock();
       try {
-         Proxy proxy;
-         proxy = _proxies.poll(1, TimeUnit.HOURS);
-         int size = _size.decrementAndGet();
-         if ( size <= 0 ) {
-            _log.warn("proxy pool emptied during checkoutProxy, because all proxies failed latency check.");
-         }
-         while ( proxy != null && proxy.getStats().getLastByteLatency() < 0 ) {
-            proxy = _proxies.poll(1, TimeUnit.HOURS);
-            size = _size.decrementAndGet();
-            if ( size <= 0 ) {
-               _log.warn("proxy pool emptied during checkoutProxy, because all proxies failed latency check.");
+         List<Proxy> proxies = new ArrayList<>(Arrays.asList(_proxies));
+         for ( ProxyAddress address : addresses ) {
+            Proxy proxy = createProxy(address);
+            if ( !proxies.contains(proxy) ) {
+               proxies.add(proxy);
+               added++;
             }
          }
-         if ( proxy == null ) {
-            return checkoutProxy();
-         }
+         _proxies = proxies.toArray(new Proxy[proxies.size()]);
+      }
+      finally {
+         _addLock.unlock();
+      }
+      if ( added > 0 ) {
+         signalWaiters();
+      }
+      return added;
+   }
 
-         if ( size() < 3 ) {
-            _log.warn("only " + size() + " proxies in proxy pool left");
+   /**
+    * Waits while all proxies are at their concurrency limit.
+    * @return null, if the circuits of all proxies are open, or if the calling thread was interrupted
+    */
+   public Proxy checkoutProxy() {
+      while ( true ) {
+         long now = System.currentTimeMillis();
+         Proxy proxy = claimProxy(now);
+         if ( proxy != null ) {
+            return proxy;
+         }
+         if ( size() == 0 ) {
+            _log.warn("the circuits of all " + _proxies.length + " proxies in the proxy pool are open, or it is empty");
+            return null;
          }
 
-         return proxy;
-      }
-      catch ( InterruptedException argh ) {
-         _log.info("checkout from proxy pool interrupted", argh);
-         return null;
+         // registered as waiter before claiming again, so a proxy returned after the claim signals the condition
+         _waiters.incrementAndGet();
+         _returnLock.lock();
+         try {
+            proxy = claimProxy(now);
+            if ( proxy != null ) {
+               return proxy;
+            }
+            long nextProbe = now + MAX_CHECKOUT_WAIT_MILLIS;
+            for ( Proxy p : _proxies ) {
+               if ( p.isCircuitOpen(now) ) {
+                  nextProbe = Math.min(nextProbe, p.getCircuitOpenUntilMillis());
+               }
+            }
+            _proxyReturned.await(Math.max(1, nextProbe - now), TimeUnit.MILLISECONDS);
+         }
+         catch ( InterruptedException argh ) {
+            Thread.currentThread().interrupt();
+            _log.info("checkout from proxy pool interrupted");
+            return null;
+         }
+         finally {
+            _returnLock.unlock();
+            _waiters.decrementAndGet();
+         }
       }
    }
 
    /**
+    * @return the proxy list this pool was created from, with proxies added since
+    */
+   public ProxyList getProxyList() {
+      return _proxyList;
+   }
+
+   /**
+    * Measures all proxies at once, blocking.
     * @param maxTimeToMeasureLatency in s
     * @return proxies which responded faster than <code>maxResponseTimeInMillis</code>
+    * @deprecated a {@link ProxyValidator} checks the stalest proxies in the background and keeps their health
     */
+   @Deprecated
    public ProxyList measureLatency( int maxTimeToMeasureLatency, final int maxResponseTimeInMillis ) {
       final ProxyList fastProxies = new ProxyList();
 
@@ -111,21 +198,82 @@ public class ProxyPool {
    }
 
    public void returnProxy( Proxy p ) {
-      _proxies.add(p);
-      _size.incrementAndGet();
+      if ( p._pool != this ) {
+         return; // the pool was re-initialized meanwhile
+      }
+      p.releaseCircuit();
+      while ( true ) {
+         int inFlight = p._inFlight.get();
+         if ( inFlight == 0 ) {
+            _log.warn("proxy " + p.getAddress() + " returned, but not checked out");
+            return;
+         }
+         if ( p._inFlight.compareAndSet(inFlight, inFlight - 1) ) {
+            break;
+         }
+      }
+      signalWaiters();
    }
 
+   /**
+    * Configures the http clients of all proxies, which are created from now on, see
+    * {@link Proxy#setHttpClientFactoryConfigurer(Consumer)}.
+    */
+   public void setHttpClientFactoryConfigurer( Consumer<HttpClientFactory> httpClientFactoryConfigurer ) {
+      _httpClientFactoryConfigurer = httpClientFactoryConfigurer;
+      for ( Proxy proxy : _proxies ) {
+         proxy.setHttpClientFactoryConfigurer(httpClientFactoryConfigurer);
+      }
+   }
+
+   /**
+    * Sets the upper bound of the adaptive concurrency limit of all proxies, see {@link Proxy#getConcurrencyLimit()}.
+    */
+   public void setMaxConcurrencyPerProxy( int maxConcurrencyPerProxy ) {
+      _maxConcurrencyPerProxy = maxConcurrencyPerProxy;
+      for ( Proxy proxy : _proxies ) {
+         proxy.setMaxConcurrency(maxConcurrencyPerProxy);
+      }
+   }
+
+   /**
+    * @return the number of proxies, whose circuit is not open
+    */
    public int size() {
-      return _size.get();
+      long now = System.currentTimeMillis();
+      int size = 0;
+      for ( Proxy p : _proxies ) {
+         if ( !p.isCircuitOpen(now) ) {
+            size++;
+         }
+      }
+      return size;
    }
 
+   /**
+    * Copies the scores of all proxies to their health and stores it next to the proxy list, see
+    * {@link ProxyList#storeProxyHealth(ProxyList)}.
+    */
+   public void storeHealth() {
+      for ( Proxy p : _proxies ) {
+         p.updateHealth();
+      }
+      ProxyList.storeProxyHealth(_proxyList);
+   }
+
+   /**
+    * Lists the stats of the proxies used so far, without testing the latency of any proxy, which was not tested yet.
+    */
    @Override
    public String toString() {
-      Collections.sort(_allProxies);
+      List<Proxy> proxies = new ArrayList<>(Arrays.asList(_proxies));
+      proxies.sort(_comparator);
       StringTable table = new StringTable( //
          new StringTable.Col("ip", Alignment.Right, 21), new StringTable.Col("gets", Alignment.Right, 7), //
          new StringTable.Col("errors", Alignment.Right, 7), //
-         new StringTable.Col("stillInUse", Alignment.Center, 10), //
+         new StringTable.Col("circuit", Alignment.Center, 8), //
+         new StringTable.Col("score", Alignment.Right, 8), //
+         new StringTable.Col("limit", Alignment.Right, 5), //
          new StringTable.Col("avgRequestTime", Alignment.Right, 14), //
          new StringTable.Col("avgSuccessfulRequestTime", Alignment.Right, 24), //
          new StringTable.Col("avgFaultyRequestTime", Alignment.Right, 20), //
@@ -134,17 +282,19 @@ public class ProxyPool {
          new StringTable.Col("clientAccesses", Alignment.Right, 14), //
          new StringTable.Col("faultRatio", Alignment.Right, 10) //
       );
-      for ( Proxy p : _allProxies ) {
+      for ( Proxy p : proxies ) {
          if ( p.getStats().getTotalGets() > 0 ) {
             table.addRow(p.getAddress()._ip + ":" + p.getAddress()._port, //
                "" + p.getStats().getTotalGets(), //
                "" + p.getStats().getFaultyGets(), //
-               "" + _proxies.contains(p), //
+               p.getCircuitState(), //
+               (long)p.getScore() + " ms", //
+               "" + p.getConcurrencyLimit(), //
                p.getStats().getAverageRequestTime() + " ms", //
                p.getStats().getAverageSuccessfulRequestTime() + " ms", //
                p.getStats().getAverageFaultyRequestTime() + " ms", //
-               p.getStats().getFirstByteLatency() + " ms", //
-               p.getStats().getLastByteLatency() + " ms", //
+               p.getStats().getMeasuredFirstByteLatency() + " ms", //
+               p.getStats().getMeasuredLastByteLatency() + " ms", //
                "" + p.getStats().getClientAccesses(), //
                NumberFormat.getPercentInstance().format(p.getStats().getFaultRatio()) //
             );
@@ -157,21 +307,90 @@ public class ProxyPool {
          String authenticationUser, String authenticationPassword, int socketTimeout, int connectionTimeout, String scheme,
          Comparator<Proxy> proxyComparator ) {
       _proxyList = proxyList;
-      _allProxies = new ArrayList<>();
-      _proxies = new PriorityBlockingQueue<>(proxyList._proxies.size(), proxyComparator == null ? Proxy.FASTEST_FIRST_COMPARATOR : proxyComparator);
+      _comparator = proxyComparator == null ? Proxy.LOWEST_SCORE_COMPARATOR : proxyComparator;
+      _latencyTestHost = latencyTestHost;
+      _sanePatterns = sanePatterns;
+      _insanePatterns = insanePatterns;
+      _userAgent = userAgent;
+      _authenticationUser = authenticationUser;
+      _authenticationPassword = authenticationPassword;
+      _socketTimeout = socketTimeout;
+      _connectionTimeout = connectionTimeout;
+      _scheme = scheme;
+      List<Proxy> proxies = new ArrayList<>();
       for ( ProxyAddress a : _proxyList.getProxies() ) {
-         Proxy proxy = new Proxy(a, scheme);
-         proxy.setLatencyTestHost(latencyTestHost);
-         proxy.setSanePatterns(sanePatterns);
-         proxy.setInsanePatterns(insanePatterns);
-         proxy.setUserAgent(userAgent);
-         proxy.setAuthenticationUser(authenticationUser);
-         proxy.setAuthenticationPassword(authenticationPassword);
-         proxy.setSocketTimeout(socketTimeout);
-         proxy.setConnectionTimeout(connectionTimeout);
-         _proxies.add(proxy);
-         _allProxies.add(proxy);
-      }
-      _size.set(_proxies.size());
+         proxies.add(createProxy(a));
+      }
+      _proxies = proxies.toArray(new Proxy[proxies.size()]);
+   }
+
+   /**
+    * @return a snapshot of the proxies, which may change, see {@link #addProxies(List)}
+    */
+   Proxy[] getProxies() {
+      return _proxies;
+   }
+
+   /**
+    * @return a proxy with a slot now taken, or null, if all proxies are at their limit or have an open circuit
+    */
+   private Proxy claimProxy( long now ) {
+      Proxy[] proxies = _proxies;
+      int n = proxies.length;
+      if ( n == 0 ) {
+         return null;
+      }
+      while ( true ) {
+         int start = ThreadLocalRandom.current().nextInt(n);
+         Proxy best = null;
+         for ( int i = 0, candidates = 0; i < n && candidates < CANDIDATES; i++ ) {
+            Proxy p = proxies[(start + i) % n];
+            if ( p._inFlight.get() < p.getConcurrencyLimit() && p.circuitAllowsRequest(now) ) {
+               candidates++;
+               if ( best == null || _comparator.compare(p, best) < 0 ) {
+                  best = p;
+               }
+            }
+         }
+         if ( best == null ) {
+            return null;
+         }
+         int inFlight = best._inFlight.get();
+         if ( inFlight < best.getConcurrencyLimit() && best._inFlight.compareAndSet(inFlight, inFlight + 1) ) {
+            if ( best.tryAcquireCircuit(now) ) {
+               return best;
+            }
+            best._inFlight.decrementAndGet(); // the circuit opened meanwhile, or another request is the probe
+         }
+      }
+   }
+
+   private Proxy createProxy( ProxyAddress address ) {
+      Proxy proxy = new Proxy(address, _scheme);
+      proxy.setLatencyTestHost(_latencyTestHost);
+      proxy.setSanePatterns(_sanePatterns);
+      proxy.setInsanePatterns(_insanePatterns);
+      proxy.setUserAgent(_userAgent);
+      proxy.setAuthenticationUser(_authenticationUser);
+      proxy.setAuthenticationPassword(_authenticationPassword);
+      proxy.setSocketTimeout(_socketTimeout);
+      proxy.setConnectionTimeout(_connectionTimeout);
+      proxy.setHttpClientFactoryConfigurer(_httpClientFactoryConfigurer);
+      proxy.setMaxConcurrency(_maxConcurrencyPerProxy);
+      proxy.restoreHealth(_proxyList.getHealth(address));
+      proxy._pool = this;
+      return proxy;
+   }
+
+   private void signalWaiters() {
+      if ( _waiters.get() > 0 ) {
+         _returnLock.lock();
+         try {
+            _proxyReturned.signalAll();
+         }
+         finally {
+            _returnLock.unlock();
+         }
+      }
    }
 }
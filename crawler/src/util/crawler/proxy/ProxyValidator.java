@@ -0,0 +1,198 @@
+package util.crawler.proxy;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import util.concurrent.ExecutorUtils;
+import util.crawler.proxy.ProxyList.ProxyAddress;
+
+
+/**
+ * Validates the proxies of a {@link ProxyPool} in the background, instead of measuring the whole list in one blocking
+ * batch. Every round checks the proxies, which were neither used nor validated within <code>maxAgeMillis</code>,
+ * stalest first and at most <code>batchSize</code> of them, by loading the latency test page, see
+ * {@link Proxy#measureLatency(int)}. The result feeds the scores and the circuit breaker of the proxy, see
+ * {@link Proxy#addValidation(int, boolean)}, and the health of the proxies is stored after every round, so a restart
+ * begins with a ranked pool.<br/>
+ * Optionally, new proxies are discovered by a {@link ProxyCrawler} and merged into the list and the pool, keeping the
+ * proxies known already and their health.
+ */
+public class ProxyValidator implements Closeable {
+
+   /** a proxy, whose validations failed this often in a row, is dropped by {@link #retainHealthy()} */
+   public static final int MAX_FAILED_CHECKS = 3;
+
+   private static final Logger _log = LoggerFactory.getLogger(ProxyValidator.class);
+
+
+   private volatile ProxyPool             _proxyPool;
+   private final int                      _maxResponseTimeMillis;
+   private final long                     _maxAgeMillis;
+   private final int                      _batchSize;
+   private final ThreadPoolExecutor       _checkExecutor;
+   private final ScheduledExecutorService _scheduler;
+
+
+   /**
+    * @param maxResponseTimeMillis a proxy, which does not load the latency test page within this time, fails the check
+    * @param maxAgeMillis proxies used or validated within this time are not validated
+    * @param batchSize the max number of proxies validated per round
+    * @param parallelChecks the number of threads validating proxies
+    */
+   public ProxyValidator( ProxyPool proxyPool, int maxResponseTimeMillis, long maxAgeMillis, int batchSize, int parallelChecks ) {
+      _proxyPool = proxyPool;
+      _maxResponseTimeMillis = maxResponseTimeMillis;
+      _maxAgeMillis = maxAgeMillis;
+      _batchSize = batchSize;
+      _checkExecutor = ExecutorUtils.newFixedThreadPool(Math.max(1, parallelChecks), "proxy-validator");
+      _scheduler = new ScheduledThreadPoolExecutor(1, new ExecutorUtils.NamedThreadFactory("proxy-validator-scheduler"));
+   }
+
+   /**
+    * Stops the validation and stores the health of the proxies.
+    */
+   @Override
+   public void close() {
+      _scheduler.shutdownNow();
+      _checkExecutor.shutdownNow();
+      _proxyPool.storeHealth();
+   }
+
+   /**
+    * Crawls for new proxies and adds those not known yet to the proxy list and to the pool.
+    * @return the number of proxies added
+    */
+   public int discoverProxies() {
+      ProxyCrawler proxyCrawler = new ProxyCrawler();
+      proxyCrawler.crawl();
+      ProxyPool proxyPool = _proxyPool;
+      List<ProxyAddress> added = proxyPool.getProxyList().merge(proxyCrawler.getProxyList());
+      proxyPool.addProxies(added);
+      _log.info("discovered " + added.size() + " new proxies");
+      return added.size();
+   }
+
+   /**
+    * @return the proxies of the pool, whose last validation did not fail {@link #MAX_FAILED_CHECKS} times in a row, with
+    *         their health
+    */
+   public ProxyList retainHealthy() {
+      ProxyList proxyList = _proxyPool.getProxyList();
+      ProxyList healthy = new ProxyList();
+      for ( ProxyAddress address : proxyList.getProxies() ) {
+         ProxyHealth health = proxyList.getHealth(address);
+         if ( health.getFailedChecks() < MAX_FAILED_CHECKS ) {
+            healthy.addProxy(address.toString());
+            ProxyHealth healthyHealth = healthy.getHealth(address);
+            healthyHealth.update(health.getLastSeenMillis(), health.getLatencyScore(), health.getErrorScore());
+            healthyHealth.setFailedChecks(health.getFailedChecks());
+         }
+      }
+      return healthy;
+   }
+
+   /**
+    * Sets the pool to validate, after the previous one was replaced.
+    */
+   public void setProxyPool( ProxyPool proxyPool ) {
+      _proxyPool = proxyPool;
+   }
+
+   /**
+    * Runs {@link #validateStaleProxies()} every <code>intervalMillis</code> and, if <code>discoveryIntervalMillis</code>
+    * is positive, {@link #discoverProxies()} at that interval, in the background.
+    */
+   public void start( long intervalMillis, long discoveryIntervalMillis ) {
+      _scheduler.scheduleWithFixedDelay(() -> {
+         try {
+            validateStaleProxies();
+         }
+         catch ( Exception argh ) {
+            _log.warn("Failed to validate proxies", argh);
+         }
+      }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+      if ( discoveryIntervalMillis > 0 ) {
+         _scheduler.scheduleWithFixedDelay(() -> {
+            try {
+               discoverProxies();
+            }
+            catch ( Exception argh ) {
+               _log.warn("Failed to discover proxies", argh);
+            }
+         }, discoveryIntervalMillis, discoveryIntervalMillis, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   /**
+    * Validates up to <code>batchSize</code> proxies, which were neither used nor validated within
+    * <code>maxAgeMillis</code>, stalest first, waits for the results and stores the health of the proxies.
+    * @return the number of proxies validated
+    */
+   public int validateStaleProxies() {
+      return validateStaleProxies(Long.MAX_VALUE);
+   }
+
+   /**
+    * Like {@link #validateStaleProxies()}, but cancels the validations not finished within <code>maxWaitMillis</code>.
+    */
+   public int validateStaleProxies( long maxWaitMillis ) {
+      long deadline = maxWaitMillis == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + maxWaitMillis;
+      ProxyPool proxyPool = _proxyPool;
+      long staleBefore = System.currentTimeMillis() - _maxAgeMillis;
+      List<Proxy> stale = new ArrayList<>();
+      for ( Proxy p : proxyPool.getProxies() ) {
+         if ( p.getLastSeenMillis() < staleBefore && p._inFlight.get() == 0 ) {
+            stale.add(p);
+         }
+      }
+      stale.sort(Comparator.comparingLong(Proxy::getLastSeenMillis));
+      List<Future<?>> checks = new ArrayList<>();
+      for ( Proxy p : stale.subList(0, Math.min(_batchSize, stale.size())) ) {
+         checks.add(_checkExecutor.submit(() -> validate(p)));
+      }
+      int validated = 0;
+      for ( Future<?> check : checks ) {
+         try {
+            if ( deadline == Long.MAX_VALUE ) {
+               check.get();
+            } else {
+               check.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+            validated++;
+         }
+         catch ( InterruptedException argh ) {
+            Thread.currentThread().interrupt();
+            return validated;
+         }
+         catch ( TimeoutException argh ) {
+            check.cancel(true);
+         }
+         catch ( Exception argh ) {
+            _log.warn("Failed to validate proxy", argh);
+         }
+      }
+      if ( validated > 0 ) {
+         proxyPool.storeHealth();
+         _log.debug("validated " + validated + " of " + stale.size() + " stale proxies, " + proxyPool.size() + " proxies usable");
+      }
+      return validated;
+   }
+
+   private void validate( Proxy p ) {
+      p.measureLatency(_maxResponseTimeMillis);
+      long latency = p.getStats().getLastByteLatency();
+      boolean success = !p.isInsane() && latency > 0 && latency <= _maxResponseTimeMillis;
+      p.addValidation((int)latency, success);
+   }
+}
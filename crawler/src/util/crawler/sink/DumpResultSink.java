@@ -0,0 +1,45 @@
+package util.crawler.sink;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import util.crawler.values.CrawlResult;
+import util.dump.Dump;
+
+
+/**
+ * Appends the results to a {@link Dump} of {@link CrawlResult}s. Existing results in the dump are kept.
+ */
+public class DumpResultSink implements ResultSink {
+
+   private final Dump<CrawlResult> _dump;
+
+
+   public DumpResultSink( File file ) throws IOException {
+      _dump = new Dump<>(CrawlResult.class, file);
+   }
+
+   @Override
+   public void close() throws IOException {
+      _dump.close();
+   }
+
+   @Override
+   public void flush() throws IOException {
+      _dump.flush();
+   }
+
+   @Override
+   public String toString() {
+      return "DumpResultSink " + _dump.getDumpFile();
+   }
+
+   @Override
+   public void write( List<Map<String, String>> results ) throws IOException {
+      for ( Map<String, String> result : results ) {
+         _dump.add(new CrawlResult(result));
+      }
+   }
+}
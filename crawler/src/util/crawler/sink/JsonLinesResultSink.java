@@ -0,0 +1,127 @@
+package util.crawler.sink;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Writes every result as a JSON object on a line of its own, in UTF-8, see <a href="https://jsonlines.org/">JSON
+ * Lines</a>. A batch is formatted without holding the lock of the file, so writer threads format their batches in
+ * parallel and only the writing of the bytes is serialized.
+ */
+public class JsonLinesResultSink implements ResultSink {
+
+   private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+   private static void appendJsonString( StringBuilder sb, String s ) {
+      sb.append('"');
+      for ( int i = 0, length = s.length(); i < length; i++ ) {
+         char c = s.charAt(i);
+         switch ( c ) {
+         case '"':
+            sb.append("\\\"");
+            break;
+         case '\\':
+            sb.append("\\\\");
+            break;
+         case '\n':
+            sb.append("\\n");
+            break;
+         case '\r':
+            sb.append("\\r");
+            break;
+         case '\t':
+            sb.append("\\t");
+            break;
+         default:
+            if ( c < 0x20 || c == '\u2028' || c == '\u2029' ) {
+               sb.append("\\u").append(HEX_DIGITS[c >> 12]).append(HEX_DIGITS[(c >> 8) & 0xF]).append(HEX_DIGITS[(c >> 4) & 0xF])
+                     .append(HEX_DIGITS[c & 0xF]);
+            } else {
+               sb.append(c);
+            }
+         }
+      }
+      sb.append('"');
+   }
+
+
+   private final File          _file;
+   private final OutputStream  _out;
+   private final ReentrantLock _lock = new ReentrantLock();
+
+
+   /**
+    * @param append whether the results are appended to an existing file, instead of replacing it
+    */
+   public JsonLinesResultSink( File file, boolean append ) throws IOException {
+      _file = file;
+      _out = new BufferedOutputStream(new FileOutputStream(file, append), 64 * 1024);
+   }
+
+   @Override
+   public void close() throws IOException {
+      _lock.lock();
+      try {
+         _out.close();
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+
+   @Override
+   public void flush() throws IOException {
+      _lock.lock();
+      try {
+         _out.flush();
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "JsonLinesResultSink " + _file;
+   }
+
+   @Override
+   public void write( List<Map<String, String>> results ) throws IOException {
+      StringBuilder sb = new StringBuilder(results.size() * 256);
+      for ( Map<String, String> result : results ) {
+         sb.append('{');
+         boolean first = true;
+         for ( Map.Entry<String, String> e : result.entrySet() ) {
+            if ( !first ) {
+               sb.append(',');
+            }
+            first = false;
+            appendJsonString(sb, e.getKey());
+            sb.append(':');
+            if ( e.getValue() == null ) {
+               sb.append("null");
+            } else {
+               appendJsonString(sb, e.getValue());
+            }
+         }
+         sb.append("}\n");
+      }
+      byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+      _lock.lock();
+      try {
+         _out.write(bytes);
+      }
+      finally {
+         _lock.unlock();
+      }
+   }
+}
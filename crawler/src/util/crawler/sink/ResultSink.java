@@ -0,0 +1,34 @@
+package util.crawler.sink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Receives the results of a crawl in batches, see {@link util.crawler.Crawler#addResultSink(ResultSink)}. The crawl
+ * tasks only queue their results, the sinks are called by the threads of a {@link ResultWriter}, so a slow sink slows down
+ * the crawl only when the queue is full.<br/>
+ * With more than one writer thread, see {@link util.crawler.CrawlParams#getResultWriterThreads()}, the methods are called
+ * concurrently and implementations have to be thread safe. The order of the results is not preserved then.
+ */
+public interface ResultSink extends Closeable {
+
+   /**
+    * Called after the last batch of the crawl.
+    */
+   @Override
+   void close() throws IOException;
+
+   /**
+    * Called whenever the queue of results ran empty, so that buffered results reach their destination while the crawl
+    * is slow.
+    */
+   default void flush() throws IOException {}
+
+   /**
+    * @param results the result maps of one or more pages, which must not be modified. The list is reused after the call.
+    */
+   void write( List<Map<String, String>> results ) throws IOException;
+}
@@ -0,0 +1,164 @@
+package util.crawler.sink;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import util.crawler.metrics.CrawlMetrics;
+
+
+/**
+ * Decouples the crawl tasks from the {@link ResultSink}s: {@link #add(Map)} puts a result into a bounded queue, which
+ * is drained by one or more writer threads in batches. A full queue blocks the crawl tasks adding results until the
+ * sinks caught up, so a slow sink throttles the crawl instead of filling the heap. The queue is an
+ * {@link ArrayBlockingQueue}, which waits on a ReentrantLock, so blocked crawl tasks on virtual threads don't pin their
+ * carrier thread.<br/>
+ * A failing sink is logged and counted in {@link CrawlMetrics#RESULTS_FAILED}, the other sinks still get the batch.
+ */
+public class ResultWriter implements Closeable {
+
+   private static final Logger _log = LoggerFactory.getLogger(ResultWriter.class);
+
+
+   private final List<ResultSink>                   _sinks;
+   private final BlockingQueue<Map<String, String>> _queue;
+   private final int                                _batchSize;
+   private final CrawlMetrics                       _metrics;
+   private final List<WriteThread>                  _writeThreads = new ArrayList<>();
+   private volatile boolean                         _closed;
+
+
+   public ResultWriter( String name, List<ResultSink> sinks, int queueSize, int batchSize, int numberOfThreads, CrawlMetrics metrics ) {
+      _sinks = new ArrayList<>(sinks);
+      _queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+      _batchSize = Math.max(1, batchSize);
+      _metrics = metrics;
+      for ( int i = 0, length = Math.max(1, numberOfThreads); i < length; i++ ) {
+         WriteThread writeThread = new WriteThread(name + " " + i);
+         _writeThreads.add(writeThread);
+         writeThread.start();
+      }
+   }
+
+   /**
+    * Queues the result, waiting while the queue is full.
+    * @throws InterruptedException if the calling thread was interrupted while waiting, the result is not queued then
+    */
+   public void add( Map<String, String> result ) throws InterruptedException {
+      if ( _closed ) {
+         throw new IllegalStateException("result writer is closed");
+      }
+      if ( !_queue.offer(result) ) {
+         long t = System.nanoTime();
+         _queue.put(result);
+         _metrics.timer(CrawlMetrics.RESULTS_BLOCKED).recordMicrosSince(t);
+      }
+   }
+
+   /**
+    * Waits until the queued results are written and closes the sinks. Results must not be added anymore.
+    */
+   @Override
+   public void close() {
+      if ( _closed ) {
+         return;
+      }
+      _closed = true;
+      for ( WriteThread writeThread : _writeThreads ) {
+         try {
+            writeThread.join();
+         }
+         catch ( InterruptedException argh ) {
+            Thread.currentThread().interrupt();
+            _log.warn("Interrupted while waiting for the result sinks, " + _queue.size() + " results are not written");
+            break;
+         }
+      }
+      for ( ResultSink sink : _sinks ) {
+         try {
+            sink.close();
+         }
+         catch ( Exception argh ) {
+            _log.error("Failed to close result sink " + sink, argh);
+         }
+      }
+   }
+
+   /**
+    * @return the number of results waiting for the sinks
+    */
+   public int getQueueSize() {
+      return _queue.size();
+   }
+
+   private void flush() {
+      for ( ResultSink sink : _sinks ) {
+         try {
+            sink.flush();
+         }
+         catch ( Exception argh ) {
+            _log.error("Failed to flush result sink " + sink, argh);
+         }
+      }
+   }
+
+   private void write( List<Map<String, String>> batch ) {
+      long t = System.nanoTime();
+      for ( ResultSink sink : _sinks ) {
+         try {
+            sink.write(batch);
+         }
+         catch ( Exception argh ) {
+            _log.error("Failed to write " + batch.size() + " results to result sink " + sink, argh);
+            _metrics.counter(CrawlMetrics.RESULTS_FAILED).add(batch.size());
+         }
+      }
+      _metrics.timer(CrawlMetrics.RESULTS_WRITE).recordMicrosSince(t);
+   }
+
+
+   private class WriteThread extends Thread {
+
+      public WriteThread( String name ) {
+         setName(name);
+         setDaemon(true);
+      }
+
+      @Override
+      public void run() {
+         List<Map<String, String>> batch = new ArrayList<>(_batchSize);
+         boolean flushed = true;
+         while ( true ) {
+            Map<String, String> result;
+            try {
+               result = _queue.poll(100, TimeUnit.MILLISECONDS);
+            }
+            catch ( InterruptedException argh ) {
+               continue; // the thread only stops when the writer is closed and the queue is empty
+            }
+            if ( result == null ) {
+               if ( !flushed ) {
+                  flush();
+                  flushed = true;
+               }
+               if ( _closed && _queue.isEmpty() ) {
+                  break;
+               }
+               continue;
+            }
+            batch.add(result);
+            _queue.drainTo(batch, _batchSize - 1);
+            write(batch);
+            batch.clear();
+            flushed = false;
+         }
+      }
+   }
+}
@@ -0,0 +1,61 @@
+package util.crawler.values;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import util.dump.ExternalizableBean;
+
+
+/**
+ * A result map of a crawl as written by the {@link util.crawler.sink.DumpResultSink}, with the keys and values in two
+ * arrays of the same length.
+ */
+public class CrawlResult implements ExternalizableBean {
+
+   private static final long serialVersionUID = -3129712462470387254L;
+
+   @externalize(1)
+   String[] _keys;
+
+   @externalize(2)
+   String[] _values;
+
+
+   public CrawlResult() {}
+
+   public CrawlResult( Map<String, String> result ) {
+      _keys = new String[result.size()];
+      _values = new String[result.size()];
+      int i = 0;
+      for ( Map.Entry<String, String> e : result.entrySet() ) {
+         _keys[i] = e.getKey();
+         _values[i] = e.getValue();
+         i++;
+      }
+   }
+
+   public String get( String key ) {
+      for ( int i = 0; i < _keys.length; i++ ) {
+         if ( _keys[i].equals(key) ) {
+            return _values[i];
+         }
+      }
+      return null;
+   }
+
+   /**
+    * @return the result as a new map, in the order of the original map
+    */
+   public Map<String, String> toMap() {
+      Map<String, String> result = new LinkedHashMap<>();
+      for ( int i = 0; i < _keys.length; i++ ) {
+         result.put(_keys[i], _values[i]);
+      }
+      return result;
+   }
+
+   @Override
+   public String toString() {
+      return toMap().toString();
+   }
+}
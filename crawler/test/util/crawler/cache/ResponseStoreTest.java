@@ -0,0 +1,104 @@
+package util.crawler.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class ResponseStoreTest {
+
+   private File          _directory;
+   private ResponseStore _store;
+
+
+   @Before
+   public void setUp() throws IOException {
+      _directory = Files.createTempDirectory("responses").toFile();
+      _store = new ResponseStore(_directory);
+   }
+
+   @After
+   public void tearDown() throws IOException {
+      FileUtils.deleteDirectory(_directory);
+   }
+
+   @Test
+   public void testRoundTrip() throws Exception {
+      _store.put(new StoredResponse("/a.html", "\"v1\"", "Sat, 17 Oct 2026 10:00:00 GMT", "<html>Gr\u00fc\u00dfe</html>"));
+
+      StoredResponse response = _store.get("/a.html");
+      assertThat(response.getUrl()).isEqualTo("/a.html");
+      assertThat(response.getETag()).isEqualTo("\"v1\"");
+      assertThat(response.getLastModified()).isEqualTo("Sat, 17 Oct 2026 10:00:00 GMT");
+      assertThat(response.getPage()).isNull();
+
+      assertThat(_store.notModified(response)).isEqualTo("<html>Gr\u00fc\u00dfe</html>");
+      assertThat(response.getPage()).isEqualTo("<html>Gr\u00fc\u00dfe</html>");
+   }
+
+   @Test
+   public void testMissingValidatorsAndLargePage() throws Exception {
+      StringBuilder page = new StringBuilder();
+      for ( int i = 0; i < 100000; i++ ) {
+         page.append("\u65e5").append(i);
+      }
+      _store.put(new StoredResponse("/large.html", null, null, page.toString()));
+
+      StoredResponse response = _store.get("/large.html");
+      assertThat(response.getETag()).isNull();
+      assertThat(response.getLastModified()).isNull();
+      assertThat(_store.notModified(response)).isEqualTo(page.toString());
+   }
+
+   @Test
+   public void testMissAndReplace() throws Exception {
+      assertThat(_store.get("/a.html")).isNull();
+
+      _store.put(new StoredResponse("/a.html", "\"v1\"", null, "old"));
+      _store.put(new StoredResponse("/a.html", "\"v2\"", null, "new"));
+
+      StoredResponse response = _store.get("/a.html");
+      assertThat(response.getETag()).isEqualTo("\"v2\"");
+      assertThat(_store.notModified(response)).isEqualTo("new");
+      assertThat(_store.get("/b.html")).isNull();
+   }
+
+   @Test
+   public void testUrlCollisionIsAMiss() throws Exception {
+      _store.put(new StoredResponse("/a.html", "\"a\"", null, "page of a"));
+      File collision = _store.getFile("/b.html");
+      collision.getParentFile().mkdirs();
+      Files.copy(_store.getFile("/a.html").toPath(), collision.toPath());
+
+      assertThat(_store.get("/b.html")).isNull();
+      assertThat(_store.get("/a.html").getETag()).isEqualTo("\"a\"");
+   }
+
+   @Test(expected = IOException.class)
+   public void testReplacedByCollidingUrl() throws Exception {
+      _store.put(new StoredResponse("/a.html", "\"a\"", null, "page of a"));
+      _store.put(new StoredResponse("/b.html", "\"b\"", null, "page of b"));
+      StoredResponse response = _store.get("/b.html");
+      // a colliding URL replaces the response between the conditional request and the 304
+      Files.copy(_store.getFile("/a.html").toPath(), _store.getFile("/b.html").toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+      _store.notModified(response);
+   }
+
+   @Test
+   public void testCorruptFileIsAMiss() throws Exception {
+      File file = _store.getFile("/a.html");
+      file.getParentFile().mkdirs();
+      Files.write(file.toPath(), new byte[] { 0, 0 });
+
+      assertThat(_store.get("/a.html")).isNull();
+   }
+}
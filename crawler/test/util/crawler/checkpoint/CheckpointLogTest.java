@@ -0,0 +1,168 @@
+package util.crawler.checkpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import util.crawler.CrawlParams;
+import util.crawler.Crawler.CrawlItem;
+import util.dump.Dump;
+
+
+public class CheckpointLogTest {
+
+   private File        _directory;
+   private File        _file;
+   private CrawlParams _params;
+
+
+   @Before
+   public void setUp() throws IOException {
+      _directory = Files.createTempDirectory("checkpoint").toFile();
+      _file = new File(_directory, "crawl.checkpoint");
+      _params = new CrawlParams();
+      _params.setHost("www.example.com");
+   }
+
+   @After
+   public void tearDown() throws IOException {
+      FileUtils.deleteDirectory(_directory);
+   }
+
+   @Test
+   public void testResume() throws Exception {
+      CrawlItem a = item("/a.html");
+      CrawlItem b = item("/b.html");
+      CrawlItem c = new CrawlItem(_params, a, "other.example.com", "/c.html", "C", null, "https");
+      c.addVariableForXSLT("category", "shoes");
+
+      CheckpointLog log = new CheckpointLog(_file, 10);
+      log.added(a);
+      log.added(b);
+      log.added(c);
+      log.done(a);
+      log.failed(b);
+      log.close();
+
+      List<CheckpointEntry> entries = CheckpointLog.read(_file);
+      assertThat(entries).extracting(CheckpointEntry::getPath).containsExactly("/a.html", "/b.html", "/c.html");
+      assertThat(entries).extracting(CheckpointEntry::getType)
+            .containsExactly(CheckpointEntry.TYPE_DONE, CheckpointEntry.TYPE_ERROR, CheckpointEntry.TYPE_ADDED);
+      assertThat(entries.get(0).getCrawlItem()).isNull();
+      assertThat(entries.get(1).getCrawlItem()).isNull();
+
+      CrawlItem resumed = CrawlItem.readFrom(new DataInputStream(new ByteArrayInputStream(entries.get(2).getCrawlItem())), null);
+      assertThat(resumed).isEqualTo(c);
+      assertThat(resumed.getDepth()).isEqualTo(1);
+      assertThat(resumed.getVariablesForXSLT()).containsEntry("category", "shoes").containsEntry("linklabel", "C");
+   }
+
+   @Test
+   public void testResumedJournalIsAppended() throws Exception {
+      CheckpointLog log = new CheckpointLog(_file, 10);
+      log.added(item("/a.html"));
+      log.added(item("/b.html"));
+      log.close();
+
+      log = new CheckpointLog(_file, 10);
+      log.done(item("/a.html"));
+      log.added(item("/c.html"));
+      log.close();
+
+      List<CheckpointEntry> entries = CheckpointLog.read(_file);
+      assertThat(entries).extracting(CheckpointEntry::getPath).containsExactly("/a.html", "/b.html", "/c.html");
+      assertThat(entries).extracting(CheckpointEntry::getType)
+            .containsExactly(CheckpointEntry.TYPE_DONE, CheckpointEntry.TYPE_ADDED, CheckpointEntry.TYPE_ADDED);
+   }
+
+   @Test
+   public void testCompactsToOneEntryPerItem() throws Exception {
+      CheckpointLog log = new CheckpointLog(_file, 10);
+      for ( int i = 0; i < 100; i++ ) {
+         log.added(item("/" + i + ".html"));
+      }
+      for ( int i = 0; i < 100; i += 2 ) {
+         log.done(item("/" + i + ".html"));
+      }
+      log.close();
+
+      assertThat(readRaw(_file)).hasSize(100);
+      List<CheckpointEntry> entries = CheckpointLog.read(_file);
+      assertThat(entries).hasSize(100);
+      assertThat(entries.stream().filter(e -> e.getType() == CheckpointEntry.TYPE_DONE).count()).isEqualTo(50);
+   }
+
+   @Test
+   public void testFinishesInterruptedCompaction() throws Exception {
+      CheckpointLog log = new CheckpointLog(_file, 10);
+      log.added(item("/a.html"));
+      log.added(item("/b.html"));
+      log.done(item("/a.html"));
+      log.close();
+
+      // killed after the journal was deleted, but before the compacted journal was moved
+      File compacted = new File(_directory, "compacted-" + _file.getName());
+      for ( File f : _directory.listFiles() ) {
+         Files.move(f.toPath(), new File(_directory, "compacted-" + f.getName()).toPath());
+      }
+      assertThat(_file).doesNotExist();
+
+      List<CheckpointEntry> entries = CheckpointLog.read(_file);
+      assertThat(entries).extracting(CheckpointEntry::getPath).containsExactly("/a.html", "/b.html");
+      assertThat(entries).extracting(CheckpointEntry::getType).containsExactly(CheckpointEntry.TYPE_DONE, CheckpointEntry.TYPE_ADDED);
+      assertThat(_file).exists();
+      assertThat(compacted).doesNotExist();
+   }
+
+   @Test
+   public void testDropsIncompleteCompaction() throws Exception {
+      CheckpointLog log = new CheckpointLog(_file, 10);
+      log.added(item("/a.html"));
+      log.added(item("/b.html"));
+      log.close();
+
+      // killed while the compacted journal was written, the journal itself is still complete
+      File compacted = new File(_directory, "compacted-" + _file.getName());
+      log = new CheckpointLog(compacted, 10);
+      log.added(item("/a.html"));
+      log.close();
+
+      assertThat(CheckpointLog.read(_file)).extracting(CheckpointEntry::getPath).containsExactly("/a.html", "/b.html");
+      assertThat(compacted).doesNotExist();
+   }
+
+   @Test
+   public void testCloseAndDelete() throws Exception {
+      CheckpointLog log = new CheckpointLog(_file, 10);
+      log.added(item("/a.html"));
+      log.closeAndDelete();
+
+      assertThat(_file).doesNotExist();
+      assertThat(CheckpointLog.read(_file)).isEmpty();
+   }
+
+   private CrawlItem item( String path ) {
+      return new CrawlItem(_params, null, null, path, null, null, null);
+   }
+
+   private List<CheckpointEntry> readRaw( File file ) throws IOException {
+      List<CheckpointEntry> entries = new ArrayList<>();
+      try (Dump<CheckpointEntry> dump = new Dump<>(CheckpointEntry.class, file, Dump.SHARED_MODE)) {
+         for ( CheckpointEntry entry : dump ) {
+            entries.add(entry);
+         }
+      }
+      return entries;
+   }
+}
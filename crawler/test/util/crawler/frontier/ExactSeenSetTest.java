@@ -0,0 +1,28 @@
+package util.crawler.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import util.crawler.CrawlParams;
+import util.crawler.Crawler.CrawlItem;
+
+
+public class ExactSeenSetTest {
+
+   @Test
+   public void testAddsEveryUrlOnce() {
+      CrawlParams params = new CrawlParams();
+      params.setHost("www.example.com");
+      ExactSeenSet seenSet = new ExactSeenSet(16);
+
+      assertThat(seenSet.add(new CrawlItem(params, null, null, "/a.html", null, null, null))).isTrue();
+      assertThat(seenSet.add(new CrawlItem(params, null, "www.example.com", "/a.html", "other label", null, null))).isFalse();
+      assertThat(seenSet.add(new CrawlItem(params, null, "other.example.com", "/a.html", null, null, null))).isTrue();
+      assertThat(seenSet.add(new CrawlItem(params, null, null, "/b.html", null, null, null))).isTrue();
+      assertThat(seenSet.size()).isEqualTo(3);
+
+      seenSet.close();
+      assertThat(seenSet.size()).isZero();
+   }
+}
@@ -0,0 +1,91 @@
+package util.crawler.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import util.crawler.CrawlParams;
+import util.crawler.Crawler.CrawlItem;
+
+
+public class FingerprintSeenSetTest {
+
+   private static void assertAddsEveryFingerprintOnce( FingerprintSeenSet seenSet, int n ) {
+      for ( int i = 0; i < n; i++ ) {
+         assertThat(seenSet.add(FingerprintSeenSet.fingerprint(null, "/" + i + ".html"))).isTrue();
+      }
+      for ( int i = 0; i < n; i++ ) {
+         assertThat(seenSet.add(FingerprintSeenSet.fingerprint(null, "/" + i + ".html"))).isFalse();
+      }
+      assertThat(seenSet.size()).isEqualTo(n);
+   }
+
+   @Test
+   public void testAddsEveryUrlOnce() {
+      CrawlParams params = new CrawlParams();
+      params.setHost("www.example.com");
+      FingerprintSeenSet seenSet = new FingerprintSeenSet();
+
+      assertThat(seenSet.add(new CrawlItem(params, null, null, "/a.html", null, null, null))).isTrue();
+      assertThat(seenSet.add(new CrawlItem(params, null, "www.example.com", "/a.html", null, null, null))).isFalse();
+      assertThat(seenSet.add(new CrawlItem(params, null, "other.example.com", "/a.html", null, null, null))).isTrue();
+      assertThat(seenSet.size()).isEqualTo(2);
+   }
+
+   @Test
+   public void testGrowsOnHeap() {
+      // far more than the initial capacity of the 64 segments
+      assertAddsEveryFingerprintOnce(new FingerprintSeenSet(), 200000);
+   }
+
+   @Test
+   public void testGrowsInMappedFiles() throws IOException {
+      File directory = Files.createTempDirectory("seen").toFile();
+      try {
+         FingerprintSeenSet seenSet = new FingerprintSeenSet(directory);
+         assertAddsEveryFingerprintOnce(seenSet, 200000);
+         assertThat(directory.list()).hasSize(64);
+
+         seenSet.close();
+         assertThat(directory.list()).isEmpty();
+      }
+      finally {
+         FileUtils.deleteDirectory(directory);
+      }
+   }
+
+   @Test
+   public void testConcurrentAdds() throws Exception {
+      FingerprintSeenSet seenSet = new FingerprintSeenSet();
+      int urls = 50000;
+      AtomicInteger added = new AtomicInteger();
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      Future<?>[] futures = new Future<?>[8];
+      for ( int t = 0; t < futures.length; t++ ) {
+         futures[t] = executor.submit(() -> {
+            for ( int i = 0; i < urls; i++ ) {
+               if ( seenSet.add(FingerprintSeenSet.fingerprint(null, "/" + i + ".html")) ) {
+                  added.incrementAndGet();
+               }
+            }
+         });
+      }
+      for ( Future<?> f : futures ) {
+         f.get(30, TimeUnit.SECONDS);
+      }
+      executor.shutdown();
+
+      assertThat(added.get()).isEqualTo(urls);
+      assertThat(seenSet.size()).isEqualTo(urls);
+   }
+}
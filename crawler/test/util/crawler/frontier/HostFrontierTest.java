@@ -0,0 +1,146 @@
+package util.crawler.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import util.crawler.CrawlParams;
+import util.crawler.Crawler.CrawlItem;
+
+
+public class HostFrontierTest {
+
+   private CrawlParams              _params;
+   private ScheduledExecutorService _scheduler;
+
+
+   @Before
+   public void setUp() {
+      _params = new CrawlParams();
+      _scheduler = Executors.newSingleThreadScheduledExecutor();
+   }
+
+   @After
+   public void tearDown() {
+      _scheduler.shutdownNow();
+   }
+
+   @Test
+   public void testRoundRobinWithinConcurrencyLimit() {
+      HostFrontier frontier = new HostFrontier(0, 10, false, _scheduler, () -> {});
+      frontier.add(item("a", 1));
+      frontier.add(item("a", 2));
+      frontier.add(item("b", 1));
+
+      CrawlItem a1 = frontier.poll();
+      assertThat(a1).isEqualTo(item("a", 1));
+      assertThat(frontier.poll()).isEqualTo(item("b", 1));
+      assertThat(frontier.poll()).isNull(); // the limit of each host starts at one request
+      assertThat(frontier.size()).isEqualTo(1);
+
+      frontier.taskFinished(a1, 10, true);
+      assertThat(frontier.poll()).isEqualTo(item("a", 2));
+      assertThat(frontier.size()).isZero();
+   }
+
+   @Test
+   public void testConcurrencyLimitAdapts() {
+      HostFrontier frontier = new HostFrontier(0, 10, false, _scheduler, () -> {});
+      for ( int i = 0; i < 10; i++ ) {
+         frontier.add(item("a", i));
+      }
+      frontier.taskFinished(pollOne(frontier), 10, true); // the limit grows to 2
+
+      CrawlItem first = frontier.poll();
+      assertThat(first).isNotNull();
+      assertThat(frontier.poll()).isNotNull();
+      assertThat(frontier.poll()).isNull();
+
+      frontier.taskFinished(first, 10, false); // the limit is halved to 1, while one request is still in flight
+      assertThat(frontier.poll()).isNull();
+   }
+
+   @Test
+   public void testRateLimitedHostWakesUp() throws Exception {
+      CountDownLatch wokenUp = new CountDownLatch(1);
+      HostFrontier frontier = new HostFrontier(20, 10, false, _scheduler, wokenUp::countDown);
+      frontier.add(item("a", 1));
+      frontier.add(item("a", 2));
+      frontier.taskFinished(pollOne(frontier), 10, true);
+
+      assertThat(frontier.poll()).isNull(); // the next token is due in 50 ms
+      assertThat(wokenUp.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(frontier.poll()).isEqualTo(item("a", 2));
+   }
+
+   @Test
+   public void testLifoPerHost() {
+      HostFrontier frontier = new HostFrontier(0, 10, true, _scheduler, () -> {});
+      frontier.add(item("a", 1));
+      frontier.add(item("a", 2));
+
+      assertThat(frontier.poll()).isEqualTo(item("a", 2));
+   }
+
+   @Test
+   public void testConcurrentAddAndPoll() throws Exception {
+      HostFrontier frontier = new HostFrontier(0, 4, false, _scheduler, () -> {});
+      int itemsPerThread = 2000;
+      int threads = 4;
+      Set<CrawlItem> polled = ConcurrentHashMap.newKeySet();
+      AtomicInteger duplicates = new AtomicInteger();
+      ExecutorService executor = Executors.newFixedThreadPool(2 * threads);
+      Future<?>[] futures = new Future<?>[2 * threads];
+      for ( int t = 0; t < threads; t++ ) {
+         int thread = t;
+         futures[t] = executor.submit(() -> {
+            for ( int i = 0; i < itemsPerThread; i++ ) {
+               frontier.add(item("host" + (i % 10), thread * itemsPerThread + i));
+            }
+         });
+         futures[threads + t] = executor.submit(() -> {
+            while ( polled.size() < threads * itemsPerThread ) {
+               CrawlItem crawlItem = frontier.poll();
+               if ( crawlItem == null ) {
+                  Thread.yield();
+                  continue;
+               }
+               if ( !polled.add(crawlItem) ) {
+                  duplicates.incrementAndGet();
+               }
+               frontier.taskFinished(crawlItem, 10, true);
+            }
+         });
+      }
+      for ( Future<?> f : futures ) {
+         f.get(30, TimeUnit.SECONDS);
+      }
+      executor.shutdown();
+
+      assertThat(duplicates.get()).isZero();
+      assertThat(polled).hasSize(threads * itemsPerThread);
+      assertThat(frontier.size()).isZero();
+   }
+
+   private CrawlItem item( String host, int i ) {
+      return new CrawlItem(_params, null, host, "/" + i + ".html", null, null, null);
+   }
+
+   private CrawlItem pollOne( Frontier frontier ) {
+      CrawlItem crawlItem = frontier.poll();
+      assertThat(crawlItem).isNotNull();
+      return crawlItem;
+   }
+}
@@ -0,0 +1,45 @@
+package util.crawler.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import util.crawler.CrawlParams;
+import util.crawler.Crawler.CrawlItem;
+
+
+public class MemoryFrontierTest {
+
+   private static CrawlItem item( int i ) {
+      return new CrawlItem(new CrawlParams(), null, null, "/" + i + ".html", null, null, null);
+   }
+
+   @Test
+   public void testFifo() {
+      MemoryFrontier frontier = new MemoryFrontier(false);
+      for ( int i = 0; i < 3; i++ ) {
+         frontier.add(item(i));
+      }
+
+      assertThat(frontier.size()).isEqualTo(3);
+      assertThat(frontier.poll().getPath()).isEqualTo("/0.html");
+      assertThat(frontier.poll().getPath()).isEqualTo("/1.html");
+      assertThat(frontier.poll().getPath()).isEqualTo("/2.html");
+      assertThat(frontier.poll()).isNull();
+      assertThat(frontier.size()).isZero();
+   }
+
+   @Test
+   public void testLifo() {
+      MemoryFrontier frontier = new MemoryFrontier(true);
+      for ( int i = 0; i < 3; i++ ) {
+         frontier.add(item(i));
+      }
+
+      assertThat(frontier.poll().getPath()).isEqualTo("/2.html");
+      frontier.add(item(3));
+      assertThat(frontier.poll().getPath()).isEqualTo("/3.html");
+      assertThat(frontier.poll().getPath()).isEqualTo("/1.html");
+      assertThat(frontier.size()).isEqualTo(1);
+   }
+}
@@ -0,0 +1,122 @@
+package util.crawler.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.client.CookieStore;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import util.crawler.CrawlParams;
+import util.crawler.Crawler.CrawlItem;
+
+
+public class SpillingFrontierTest {
+
+   private File        _directory;
+   private CrawlParams _params;
+
+
+   @Before
+   public void setUp() throws IOException {
+      _directory = Files.createTempDirectory("frontier").toFile();
+      _params = new CrawlParams();
+   }
+
+   @After
+   public void tearDown() throws IOException {
+      FileUtils.deleteDirectory(_directory);
+   }
+
+   @Test
+   public void testFifoOrderAcrossSpillFiles() {
+      SpillingFrontier frontier = new SpillingFrontier(10, _directory, false);
+      for ( int i = 0; i < 25; i++ ) {
+         frontier.add(item(i, null));
+      }
+      assertThat(frontier.size()).isEqualTo(25);
+      assertThat(_directory.list()).isNotEmpty();
+
+      List<Integer> polled = poll(frontier, 5);
+      for ( int i = 25; i < 50; i++ ) {
+         frontier.add(item(i, null));
+      }
+      polled.addAll(poll(frontier, 100));
+
+      assertThat(polled).hasSize(50);
+      for ( int i = 0; i < 50; i++ ) {
+         assertThat(polled.get(i)).isEqualTo(i);
+      }
+      assertThat(frontier.size()).isZero();
+      assertThat(_directory.list()).isEmpty();
+   }
+
+   @Test
+   public void testLifoSpillsOldestItems() {
+      SpillingFrontier frontier = new SpillingFrontier(10, _directory, true);
+      for ( int i = 0; i < 30; i++ ) {
+         frontier.add(item(i, null));
+      }
+
+      List<Integer> polled = poll(frontier, 10);
+      for ( int i = 0; i < 10; i++ ) {
+         assertThat(polled.get(i)).isEqualTo(29 - i);
+      }
+      polled.addAll(poll(frontier, 100));
+      assertThat(polled).hasSize(30).doesNotHaveDuplicates();
+      assertThat(frontier.size()).isZero();
+   }
+
+   @Test
+   public void testSpilledItemsKeepTheirFieldsAndCookieStore() {
+      SpillingFrontier frontier = new SpillingFrontier(1, _directory, false);
+      CookieStore cookieStore = new BasicCookieStore();
+      CrawlItem parent = item(0, cookieStore);
+      CrawlItem child = new CrawlItem(_params, parent, "other.example.com", "/child.html", "Child", cookieStore, "https");
+      child.addVariableForXSLT("category", "shoes");
+      frontier.add(parent);
+      frontier.add(child);
+
+      frontier.poll();
+      CrawlItem spilled = frontier.poll();
+
+      assertThat(spilled).isEqualTo(child);
+      assertThat(spilled.getCookieStore()).isSameAs(cookieStore);
+      assertThat(spilled.getDepth()).isEqualTo(1);
+      assertThat(spilled.getVariablesForXSLT()).containsEntry("category", "shoes").containsEntry("linklabel", "Child");
+   }
+
+   @Test
+   public void testCloseDeletesSpillFiles() {
+      SpillingFrontier frontier = new SpillingFrontier(1, _directory, false);
+      for ( int i = 0; i < 10; i++ ) {
+         frontier.add(item(i, null));
+      }
+
+      frontier.close();
+
+      assertThat(frontier.size()).isZero();
+      assertThat(frontier.poll()).isNull();
+      assertThat(_directory.list()).isEmpty();
+   }
+
+   private CrawlItem item( int i, CookieStore cookieStore ) {
+      return new CrawlItem(_params, null, null, "/" + i + ".html", null, cookieStore, null);
+   }
+
+   private List<Integer> poll( Frontier frontier, int maxItems ) {
+      List<Integer> polled = new ArrayList<>();
+      for ( CrawlItem crawlItem; polled.size() < maxItems && (crawlItem = frontier.poll()) != null; ) {
+         polled.add(Integer.parseInt(crawlItem.getPath().substring(1, crawlItem.getPath().indexOf('.'))));
+      }
+      return polled;
+   }
+}
@@ -0,0 +1,134 @@
+package util.crawler.proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import util.crawler.proxy.CircuitBreaker.CircuitState;
+
+
+public class CircuitBreakerTest {
+
+   @Test
+   public void testOpensAfterConsecutiveFailures() {
+      CircuitBreaker breaker = new CircuitBreaker();
+      for ( int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++ ) {
+         assertThat(breaker.recordFailure()).isFalse();
+      }
+      assertThat(breaker.getState()).isEqualTo(CircuitState.Closed);
+
+      long before = System.currentTimeMillis();
+      assertThat(breaker.recordFailure()).isTrue();
+
+      long now = System.currentTimeMillis();
+      assertThat(breaker.getState()).isEqualTo(CircuitState.Open);
+      assertThat(breaker.isOpen(now)).isTrue();
+      assertThat(breaker.allowsRequest(now)).isFalse();
+      assertThat(breaker.tryAcquire(now)).isFalse();
+      assertThat(breaker.getOpenUntilMillis()).isBetween(before + CircuitBreaker.INITIAL_COOLDOWN_MILLIS, now + CircuitBreaker.INITIAL_COOLDOWN_MILLIS);
+   }
+
+   @Test
+   public void testSuccessResetsFailures() {
+      CircuitBreaker breaker = new CircuitBreaker();
+      for ( int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++ ) {
+         breaker.recordFailure();
+      }
+      breaker.recordSuccess();
+      for ( int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++ ) {
+         assertThat(breaker.recordFailure()).isFalse();
+      }
+
+      assertThat(breaker.getState()).isEqualTo(CircuitState.Closed);
+      assertThat(breaker.tryAcquire(System.currentTimeMillis())).isTrue();
+   }
+
+   @Test
+   public void testOnlyOneProbeAfterCooldown() {
+      CircuitBreaker breaker = new CircuitBreaker();
+      assertThat(breaker.open()).isTrue();
+      assertThat(breaker.open()).isFalse();
+      long cooldownPassed = breaker.getOpenUntilMillis();
+
+      assertThat(breaker.allowsRequest(cooldownPassed - 1)).isFalse();
+      assertThat(breaker.allowsRequest(cooldownPassed)).isTrue();
+      assertThat(breaker.isOpen(cooldownPassed)).isFalse();
+
+      assertThat(breaker.tryAcquire(cooldownPassed)).isTrue();
+      assertThat(breaker.getState()).isEqualTo(CircuitState.HalfOpen);
+      assertThat(breaker.allowsRequest(cooldownPassed)).isFalse();
+      assertThat(breaker.tryAcquire(cooldownPassed)).isFalse();
+   }
+
+   @Test
+   public void testSuccessfulProbeCloses() {
+      CircuitBreaker breaker = new CircuitBreaker();
+      breaker.open();
+      assertThat(breaker.tryAcquire(breaker.getOpenUntilMillis())).isTrue();
+
+      breaker.recordSuccess();
+
+      assertThat(breaker.getState()).isEqualTo(CircuitState.Closed);
+      assertThat(breaker.tryAcquire(System.currentTimeMillis())).isTrue();
+   }
+
+   @Test
+   public void testFailedProbeDoublesCooldownUpToMax() {
+      CircuitBreaker breaker = new CircuitBreaker();
+      breaker.open();
+      long cooldown = CircuitBreaker.INITIAL_COOLDOWN_MILLIS;
+      while ( cooldown < CircuitBreaker.MAX_COOLDOWN_MILLIS ) {
+         assertThat(breaker.tryAcquire(breaker.getOpenUntilMillis())).isTrue();
+         cooldown = Math.min(CircuitBreaker.MAX_COOLDOWN_MILLIS, cooldown * 2);
+
+         long before = System.currentTimeMillis();
+         assertThat(breaker.recordFailure()).isTrue(); // a single failure of the probe opens the circuit again
+
+         assertThat(breaker.getState()).isEqualTo(CircuitState.Open);
+         assertThat(breaker.getOpenUntilMillis()).isBetween(before + cooldown, System.currentTimeMillis() + cooldown);
+      }
+
+      assertThat(breaker.tryAcquire(breaker.getOpenUntilMillis())).isTrue();
+      long before = System.currentTimeMillis();
+      breaker.recordFailure();
+      assertThat(breaker.getOpenUntilMillis()).isBetween(before + CircuitBreaker.MAX_COOLDOWN_MILLIS,
+            System.currentTimeMillis() + CircuitBreaker.MAX_COOLDOWN_MILLIS);
+   }
+
+   @Test
+   public void testClosingResetsCooldown() {
+      CircuitBreaker breaker = new CircuitBreaker();
+      breaker.open();
+      breaker.tryAcquire(breaker.getOpenUntilMillis());
+      breaker.recordFailure();
+      breaker.tryAcquire(breaker.getOpenUntilMillis());
+      breaker.recordSuccess();
+
+      long before = System.currentTimeMillis();
+      breaker.open();
+      assertThat(breaker.getOpenUntilMillis()).isBetween(before + CircuitBreaker.INITIAL_COOLDOWN_MILLIS,
+            System.currentTimeMillis() + CircuitBreaker.INITIAL_COOLDOWN_MILLIS);
+   }
+
+   @Test
+   public void testReleasedProbeIsRepeated() {
+      CircuitBreaker breaker = new CircuitBreaker();
+      breaker.open();
+      long openUntil = breaker.getOpenUntilMillis();
+      assertThat(breaker.tryAcquire(openUntil)).isTrue();
+
+      breaker.release();
+
+      assertThat(breaker.getState()).isEqualTo(CircuitState.Open);
+      assertThat(breaker.getOpenUntilMillis()).isEqualTo(openUntil);
+      assertThat(breaker.tryAcquire(openUntil)).isTrue();
+   }
+
+   @Test
+   public void testReleaseKeepsClosedCircuit() {
+      CircuitBreaker breaker = new CircuitBreaker();
+      breaker.release();
+
+      assertThat(breaker.getState()).isEqualTo(CircuitState.Closed);
+   }
+}
@@ -0,0 +1,110 @@
+package util.crawler.proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+public class ProxyPoolTest {
+
+   private static ProxyPool pool( int numberOfProxies ) {
+      ProxyList proxyList = new ProxyList();
+      for ( int i = 1; i <= numberOfProxies; i++ ) {
+         proxyList.addProxy("10.0.0." + i + ":8080");
+      }
+      return new ProxyPool(proxyList);
+   }
+
+   @Test
+   public void testCheckoutClaimsASlot() {
+      ProxyPool pool = pool(2);
+
+      Proxy p1 = pool.checkoutProxy();
+      Proxy p2 = pool.checkoutProxy();
+
+      assertThat(p1).isNotEqualTo(p2);
+      assertThat(p1._inFlight.get()).isEqualTo(1);
+      assertThat(p2._inFlight.get()).isEqualTo(1);
+
+      pool.returnProxy(p1);
+      assertThat(p1._inFlight.get()).isZero();
+      assertThat(pool.checkoutProxy()).isSameAs(p1);
+   }
+
+   @Test
+   public void testCheckoutWaitsForReturnedProxy() throws Exception {
+      ProxyPool pool = pool(1);
+      Proxy proxy = pool.checkoutProxy();
+
+      CompletableFuture<Proxy> waiting = CompletableFuture.supplyAsync(pool::checkoutProxy);
+      Thread.sleep(100);
+      assertThat(waiting).isNotDone();
+
+      pool.returnProxy(proxy);
+      assertThat(waiting.get(5, TimeUnit.SECONDS)).isSameAs(proxy);
+      assertThat(proxy._inFlight.get()).isEqualTo(1);
+   }
+
+   @Test
+   public void testOpenCircuitsAreSkipped() {
+      ProxyPool pool = pool(2);
+      Proxy[] proxies = pool.getProxies();
+      proxies[0].openCircuit();
+
+      assertThat(pool.size()).isEqualTo(1);
+      for ( int i = 0; i < 20; i++ ) {
+         Proxy proxy = pool.checkoutProxy();
+         assertThat(proxy).isSameAs(proxies[1]);
+         pool.returnProxy(proxy);
+      }
+
+      proxies[1].openCircuit();
+      assertThat(pool.size()).isZero();
+      assertThat(pool.checkoutProxy()).isNull();
+   }
+
+   @Test
+   public void testProxyOfOtherPoolIsIgnored() {
+      ProxyPool pool = pool(1);
+      Proxy proxy = pool(1).checkoutProxy();
+
+      pool.returnProxy(proxy);
+
+      assertThat(proxy._inFlight.get()).isEqualTo(1);
+   }
+
+   @Test
+   public void testConcurrentCheckoutsStayWithinLimit() throws Exception {
+      ProxyPool pool = pool(3);
+      AtomicInteger exceeded = new AtomicInteger();
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      Future<?>[] futures = new Future<?>[8];
+      for ( int t = 0; t < futures.length; t++ ) {
+         futures[t] = executor.submit(() -> {
+            for ( int i = 0; i < 2000; i++ ) {
+               Proxy proxy = pool.checkoutProxy();
+               if ( proxy._inFlight.get() > proxy.getConcurrencyLimit() ) {
+                  exceeded.incrementAndGet();
+               }
+               pool.returnProxy(proxy);
+            }
+         });
+      }
+      for ( Future<?> f : futures ) {
+         f.get(30, TimeUnit.SECONDS);
+      }
+      executor.shutdown();
+
+      assertThat(exceeded.get()).isZero();
+      for ( Proxy proxy : pool.getProxies() ) {
+         assertThat(proxy._inFlight.get()).isZero();
+      }
+   }
+}
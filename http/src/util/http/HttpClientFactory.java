@@ -1,14 +1,26 @@
 package util.http;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.WeakHashMap;
@@ -18,6 +30,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
 
 import org.apache.commons.codec.Charsets;
 import org.apache.commons.io.IOUtils;
@@ -25,9 +38,11 @@ import org.apache.http.Header;
 import org.apache.http.HeaderElement;
 import org.apache.http.HeaderElementIterator;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.NameValuePair;
 import org.apache.http.ProtocolException;
 import org.apache.http.auth.AuthScope;
@@ -42,6 +57,8 @@ import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
 import org.apache.http.client.utils.DateUtils;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.config.Registry;
@@ -56,19 +73,30 @@ import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.util.PublicSuffixMatcher;
 import org.apache.http.conn.util.PublicSuffixMatcherLoader;
 import org.apache.http.cookie.CookieSpecProvider;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.DefaultRedirectStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-import org.apache.http.impl.cookie.DefaultCookieSpecProvider;
 import org.apache.http.impl.cookie.DefaultCookieSpecProvider.CompatibilityLevel;
+import org.apache.http.impl.cookie.DefaultCookieSpecProvider;
 import org.apache.http.impl.cookie.IgnoreSpecProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.message.BasicHeaderElementIterator;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
@@ -81,7 +109,6 @@ import org.slf4j.LoggerFactory;
 import util.string.StringTool;
 import util.time.TimeUtils;
 
-
 public class HttpClientFactory {
 
    public static final int    DEFAULT_VALUE_SOCKET_TIMEOUT     = 31000;
@@ -90,7 +117,11 @@ public class HttpClientFactory {
 
    private static Logger _log = LoggerFactory.getLogger(HttpClientFactory.class);
 
-   private static final Pattern                     HTML_CHARSET_DECLARATION = Pattern.compile("(?i)[ ;](?:charset|encoding)=[\"']?(.*?)[\"'/>]");
+   /** the number of bytes at the start of a page, which are searched for a byte order mark or a charset declaration */
+   private static final int                         CHARSET_SNIFF_LENGTH      = 8192;
+   private static final ResponseContentEncoding     RESPONSE_CONTENT_ENCODING = new ResponseContentEncoding();
+   private static final Pattern                     HTML_CHARSET_DECLARATION  = Pattern.compile("(?i)[ ;](?:charset|encoding)=[\"']?(.*?)[\"'/>]");
+   private static final ThreadLocal<ReadBuffers>    READ_BUFFERS              = ThreadLocal.withInitial(ReadBuffers::new);
    private static       IdleConnectionMonitorThread _idleConnectionMonitorThread;
 
    public static void close( HttpClient httpClient ) {
@@ -150,6 +181,14 @@ public class HttpClientFactory {
       return postBuilder.build();
    }
 
+   /**
+    * Wraps the entity of a response with a decompressing entity according to its Content-Encoding header, like the blocking
+    * client does, if content compression is enabled in the request config of the context.
+    */
+   public static void decompress( HttpResponse response, HttpContext context ) throws HttpException, IOException {
+      RESPONSE_CONTENT_ENCODING.process(response, context);
+   }
+
    public static Date getLastModified( HttpClient httpClient, URL url ) throws ClientProtocolException, IOException, URISyntaxException {
       HttpHead httpHead = new HttpHead(url.toURI());
       HttpContext localContext = createHttpContext(false);
@@ -169,40 +208,129 @@ public class HttpClientFactory {
    }
 
    public static String readPage( HttpResponse response, String pageEncoding ) throws Exception {
+      return readPage(response, pageEncoding, 0);
+   }
+
+   /**
+    * Reads the page and decodes it while reading, so the body is never held as a whole in a byte array. The charset is
+    * <code>pageEncoding</code>, if given, otherwise it is sniffed from the first {@value #CHARSET_SNIFF_LENGTH} bytes:
+    * a byte order mark, or else a charset declaration like <code>&lt;meta charset="..."&gt;</code> or
+    * <code>&lt;?xml encoding="..."?&gt;</code>, or else the charset of the <code>Content-Type</code> header, or UTF-8.<br/>
+    * The bytes are read and the chars decoded into buffers reused by all pages read by the thread, see
+    * {@link ReadBuffers}, so a page is copied only once more, into the returned String.
+    * @param maxBodySize the max number of bytes to read, a larger body fails with a {@link ResponseRejectedException} as
+    *           soon as the limit is exceeded, 0 means no limit
+    */
+   public static String readPage( HttpResponse response, String pageEncoding, long maxBodySize ) throws Exception {
       HttpEntity entity = response.getEntity();
-      InputStream content = entity.getContent();
-      byte[] bytes = IOUtils.toByteArray(content);
-      content.close();
-
-      if ( pageEncoding != null ) {
-         return new String(bytes, pageEncoding);
-      }
-
-      String charset = EntityUtils.getContentCharSet(entity);
-      if ( charset == null ) {
-         charset = StandardCharsets.UTF_8.name();
-      }
-      String page = new String(bytes, charset);
-
-      Matcher matcher = HTML_CHARSET_DECLARATION.matcher(page);
-      if ( matcher.find() ) {
-         charset = matcher.group(1);
-         charset = sanitizeCharset(charset);
-         if ( charset.length() < 20 ) {
-            try {
-               page = new String(bytes, charset);
-               if ( page.length() > 0 && page.charAt(0) == 0xfeff ) {
-                  // remove BOM
-                  page = page.substring(1);
+      long contentLength = entity.getContentLength();
+      if ( maxBodySize > 0 && contentLength > maxBodySize ) {
+         throw new ResponseRejectedException("Content-Length " + contentLength + " exceeds the max body size of " + maxBodySize + " bytes");
+      }
+      try (InputStream content = maxBodySize > 0 ? new LimitedInputStream(entity.getContent(), maxBodySize, 0) : entity.getContent()) {
+         ReadBuffers buffers = READ_BUFFERS.get();
+         byte[] bytes = buffers._bytes;
+         int prefixLength = 0;
+         for ( int n; prefixLength < CHARSET_SNIFF_LENGTH && (n = content.read(bytes, prefixLength, CHARSET_SNIFF_LENGTH - prefixLength)) >= 0; ) {
+            prefixLength += n;
+         }
+         int bomLength = 0;
+         Charset charset;
+         if ( pageEncoding != null ) {
+            charset = toCharset(pageEncoding);
+         } else {
+            charset = getBomCharset(bytes, prefixLength);
+            if ( charset != null ) {
+               bomLength = charset == StandardCharsets.UTF_8 ? 3 : 2;
+            } else {
+               charset = getDeclaredCharset(bytes, prefixLength);
+            }
+            if ( charset == null ) {
+               String contentCharset = EntityUtils.getContentCharSet(entity);
+               charset = contentCharset != null ? toCharset(contentCharset) : StandardCharsets.UTF_8;
+            }
+         }
+
+         // like an InputStreamReader, malformed and unmappable bytes are replaced
+         CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+         ByteBuffer in = ByteBuffer.wrap(bytes, bomLength, prefixLength - bomLength);
+         // no charset a page is written in has more chars than bytes, so the Content-Length is enough in most cases
+         CharBuffer page = CharBuffer.wrap(buffers.page(contentLength > 0 ? (int)Math.min(contentLength, 1 << 24) : prefixLength));
+         boolean endOfInput = false;
+         while ( true ) {
+            CoderResult result = decoder.decode(in, page, endOfInput);
+            if ( result.isUnderflow() && endOfInput ) {
+               result = decoder.flush(page);
+               if ( result.isUnderflow() ) {
+                  break;
                }
             }
-            catch ( UnsupportedEncodingException argh ) {
-               _log.warn("Failed to decode encoding " + charset, argh);
+            if ( result.isOverflow() ) {
+               page = buffers.grow(page);
+            } else if ( !endOfInput ) {
+               in.compact();
+               int n = content.read(bytes, in.position(), bytes.length - in.position());
+               if ( n < 0 ) {
+                  endOfInput = true;
+               } else {
+                  in.position(in.position() + n);
+               }
+               in.flip();
             }
          }
+         return new String(page.array(), 0, page.position());
+      }
+   }
+
+   /**
+    * @param start the time the download started
+    */
+   private static void checkDownload( long bytesRead, long start, long maxBodySize, int maxDownloadTime ) throws ResponseRejectedException {
+      if ( maxBodySize > 0 && bytesRead > maxBodySize ) {
+         throw new ResponseRejectedException("body exceeds the max body size of " + maxBodySize + " bytes");
+      }
+      if ( maxDownloadTime > 0 && System.currentTimeMillis() - start > maxDownloadTime ) {
+         throw new ResponseRejectedException("download of the body exceeds the max download time of " + maxDownloadTime + " ms");
+      }
+   }
+
+   /**
+    * @return the charset of the byte order mark, or null if there is none
+    */
+   private static Charset getBomCharset( byte[] bytes, int length ) {
+      if ( length >= 3 && bytes[0] == (byte)0xef && bytes[1] == (byte)0xbb && bytes[2] == (byte)0xbf ) {
+         return StandardCharsets.UTF_8;
+      }
+      if ( length >= 2 && bytes[0] == (byte)0xfe && bytes[1] == (byte)0xff ) {
+         return StandardCharsets.UTF_16BE;
       }
+      if ( length >= 2 && bytes[0] == (byte)0xff && bytes[1] == (byte)0xfe ) {
+         return StandardCharsets.UTF_16LE;
+      }
+      return null;
+   }
 
-      return page;
+   /**
+    * Finds the first charset declaration in the bytes, which are decoded as ISO-8859-1 for that, since declarations are
+    * ASCII in all charsets a page is likely to be written in.
+    * @return the declared charset, or null if there is none or it is not supported
+    */
+   private static Charset getDeclaredCharset( byte[] bytes, int length ) {
+      Matcher matcher = HTML_CHARSET_DECLARATION.matcher(new String(bytes, 0, length, StandardCharsets.ISO_8859_1));
+      if ( !matcher.find() ) {
+         return null;
+      }
+      String charset = sanitizeCharset(matcher.group(1));
+      if ( charset.length() >= 20 ) {
+         return null;
+      }
+      try {
+         return toCharset(charset);
+      }
+      catch ( UnsupportedEncodingException argh ) {
+         _log.warn("Failed to decode encoding " + charset, argh);
+         return null;
+      }
    }
 
    /**
@@ -224,6 +352,15 @@ public class HttpClientFactory {
       return charset;
    }
 
+   private static Charset toCharset( String charset ) throws UnsupportedEncodingException {
+      try {
+         return Charset.forName(charset);
+      }
+      catch ( IllegalArgumentException argh ) {
+         throw new UnsupportedEncodingException(charset);
+      }
+   }
+
    int                         _soTimeout               = DEFAULT_VALUE_SOCKET_TIMEOUT;
    int                         _connectionTimeout       = DEFAULT_VALUE_CONNECTION_TIMEOUT;
    boolean                     _useExpectContinue       = true;
@@ -239,69 +376,44 @@ public class HttpClientFactory {
    int                         _maxConnections          = 10;
    Consumer<HttpClientBuilder> _clientBuilderConfigurer = null;
    HttpHost                    _proxyHost;
+   long                        _maxBodySize             = 0;
+   int                         _maxDownloadTime         = 0;
+   List<String>                _allowedContentTypes     = null;
 
-   public CloseableHttpClient create() {
-
-      /* we need to allow broken cookie expire headers, so we have to tune the CookieSpecs.DEFAULT config */
-      PublicSuffixMatcher publicSuffixMatcher = PublicSuffixMatcherLoader.getDefault();
-      Registry<CookieSpecProvider> cookieSpecRegistry = RegistryBuilder.<CookieSpecProvider>create() //
-            .register(CookieSpecs.DEFAULT, new DefaultCookieSpecProvider(CompatibilityLevel.DEFAULT, publicSuffixMatcher,
-                  new String[] { "EEE, dd-MMM-yy HH:mm:ss z", "EEE, dd MMM yy HH:mm:ss z" }, false)) //
-            .register(CookieSpecs.IGNORE_COOKIES, new IgnoreSpecProvider())//
-            .build();
+   Consumer<HttpAsyncClientBuilder> _asyncClientBuilderConfigurer = null;
 
-      RequestConfig.Builder requestConfigBuilder = RequestConfig.custom();
-      requestConfigBuilder.setConnectTimeout(_connectionTimeout); // the time to establish the connection with the remote host
-      requestConfigBuilder.setConnectionRequestTimeout(_connectionTimeout); // the time to wait for a connection from the connection manager/pool
-      requestConfigBuilder.setSocketTimeout(
-            _soTimeout); // the time waiting for data – after the connection was established; maximum time of inactivity between two data packets
-      requestConfigBuilder.setContentCompressionEnabled(_gzipSupport);
-      requestConfigBuilder.setRedirectsEnabled(_executeRedirects);
-      requestConfigBuilder.setExpectContinueEnabled(_useExpectContinue);
-      if ( _useCookies ) {
-         requestConfigBuilder.setCookieSpec(CookieSpecs.DEFAULT);
-      } else {
-         requestConfigBuilder.setCookieSpec(CookieSpecs.IGNORE_COOKIES);
-      }
+   public CloseableHttpClient create() {
 
       HttpClientBuilder clientBuilder = HttpClients.custom();
-      clientBuilder.setDefaultCookieSpecRegistry(cookieSpecRegistry);
+      clientBuilder.setDefaultCookieSpecRegistry(createCookieSpecRegistry());
       clientBuilder.setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(_soTimeout).setTcpNoDelay(_tcpNodelay).build());
-      clientBuilder.setDefaultRequestConfig(requestConfigBuilder.build());
+      clientBuilder.setDefaultRequestConfig(createRequestConfig());
       clientBuilder.setUserAgent(_userAgent);
       if ( _neverRetryHttpRequests ) {
          clientBuilder.disableAutomaticRetries();
       }
+      if ( hasResponseLimits() ) {
+         // added first, so it sees the raw response before it is decompressed
+         clientBuilder.addInterceptorFirst(new ResponseLimiter(_maxBodySize, _maxDownloadTime, _allowedContentTypes));
+         if ( !_neverRetryHttpRequests ) {
+            clientBuilder.setRetryHandler(new NoRejectedResponseRetryHandler());
+         }
+      }
       if ( _user != null && _password != null ) {
-         CredentialsProvider provider = new BasicCredentialsProvider();
-         UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(_user, _password);
-         provider.setCredentials(AuthScope.ANY, credentials);
-         clientBuilder.setDefaultCredentialsProvider(provider);
+         clientBuilder.setDefaultCredentialsProvider(createCredentialsProvider());
       }
       if ( _proxyHost != null ) {
          clientBuilder.setRoutePlanner(new DefaultProxyRoutePlanner(_proxyHost));
       }
 
       PoolingHttpClientConnectionManager connectionManager;
-      if ( _trustAllSsl ) {
-         Registry<ConnectionSocketFactory> socketFactoryRegistry = null;
-         try {
-            SSLContext sslContext = SSLContexts.custom().loadTrustMaterial(null, new TrustStrategy() {
-
-               @Override
-               public boolean isTrusted( X509Certificate[] chain, String authType ) throws CertificateException {
-                  return true;
-               }
-            }).build();
-            SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
-            socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()//
-                  .register("http", PlainConnectionSocketFactory.getSocketFactory())//
-                  .register("https", sslSocketFactory)//
-                  .build();
-         }
-         catch ( Exception argh ) {
-            _log.error("Failed to build ssl context", argh);
-         }
+      SSLContext sslContext = _trustAllSsl ? createTrustAllSslContext() : null;
+      if ( sslContext != null ) {
+         SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
+         Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()//
+               .register("http", PlainConnectionSocketFactory.getSocketFactory())//
+               .register("https", sslSocketFactory)//
+               .build();
          connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
       } else {
          connectionManager = new PoolingHttpClientConnectionManager();
@@ -326,6 +438,78 @@ public class HttpClientFactory {
 
    }
 
+   /**
+    * Creates a non-blocking client with the same configuration as {@link #create()}. A few I/O dispatcher threads serve
+    * all connections, so the number of requests in flight is not bound by the number of threads.<br/>
+    * The returned client is already started. Close it when it is no longer needed, its I/O threads keep the JVM alive.<br/>
+    * Unlike the blocking client, the async client doesn't decompress gzipped responses by itself, use
+    * {@link #decompress(HttpResponse, HttpContext)} when the response has arrived. And it enforces the response limits
+    * only, if the requests are executed with a consumer created by {@link #createAsyncResponseConsumer()}.
+    */
+   public CloseableHttpAsyncClient createAsync() {
+      HttpAsyncClientBuilder clientBuilder = HttpAsyncClients.custom();
+      clientBuilder.setDefaultCookieSpecRegistry(createCookieSpecRegistry());
+      clientBuilder.setDefaultIOReactorConfig(IOReactorConfig.custom() //
+            .setSoTimeout(_soTimeout) //
+            .setConnectTimeout(_connectionTimeout) //
+            .setTcpNoDelay(_tcpNodelay) //
+            .build());
+      clientBuilder.setDefaultRequestConfig(createRequestConfig());
+      clientBuilder.setUserAgent(_userAgent);
+      if ( _gzipSupport ) {
+         clientBuilder.addInterceptorLast(new RequestAcceptEncoding());
+      }
+      if ( _user != null && _password != null ) {
+         clientBuilder.setDefaultCredentialsProvider(createCredentialsProvider());
+      }
+      if ( _proxyHost != null ) {
+         clientBuilder.setRoutePlanner(new DefaultProxyRoutePlanner(_proxyHost));
+      }
+      if ( _trustAllSsl ) {
+         clientBuilder.setSSLContext(createTrustAllSslContext());
+         clientBuilder.setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE);
+      }
+      clientBuilder.setMaxConnTotal(_maxConnections * 10);
+      clientBuilder.setMaxConnPerRoute(_maxConnections);
+      clientBuilder.setKeepAliveStrategy(new MyConnectionKeepAliveStrategy());
+      clientBuilder.setRedirectStrategy(new Redirector());
+
+      if ( _asyncClientBuilderConfigurer != null ) {
+         _asyncClientBuilderConfigurer.accept(clientBuilder);
+      }
+      CloseableHttpAsyncClient client = clientBuilder.build();
+      client.start();
+      return client;
+   }
+
+   /**
+    * @return a consumer for a single request of the async client, which enforces the max body size, the max download time
+    *         and the allowed content types while the response is received
+    */
+   public HttpAsyncResponseConsumer<HttpResponse> createAsyncResponseConsumer() {
+      if ( !hasResponseLimits() ) {
+         return new BasicAsyncResponseConsumer();
+      }
+      return new LimitedAsyncResponseConsumer(new ResponseLimiter(_maxBodySize, _maxDownloadTime, _allowedContentTypes));
+   }
+
+   /**
+    * Responses with another content type are rejected before their body is read. A response without content type is
+    * allowed.
+    * @param allowedContentTypes mime types or prefixes of mime types like <code>text/</code>, case insensitive, null means
+    *           all content types are allowed
+    */
+   public HttpClientFactory setAllowedContentTypes( List<String> allowedContentTypes ) {
+      _allowedContentTypes = allowedContentTypes;
+      return this;
+   }
+
+   /** use this to configure anything in the HttpAsyncClientBuilder that is not provided here */
+   public HttpClientFactory setAsyncClientBuilderConfigurer( Consumer<HttpAsyncClientBuilder> asyncClientBuilderConfigurer ) {
+      _asyncClientBuilderConfigurer = asyncClientBuilderConfigurer;
+      return this;
+   }
+
    /** use this to configure anything in the HttpClientBuilder that is not provided here */
    public HttpClientFactory setClientBuilderConfigurer( Consumer<HttpClientBuilder> clientBuilderConfigurer ) {
       _clientBuilderConfigurer = clientBuilderConfigurer;
@@ -348,11 +532,31 @@ public class HttpClientFactory {
       return this;
    }
 
+   /**
+    * Responses with a larger body are rejected, i.e. aborted as soon as the Content-Length header or the number of bytes
+    * received exceeds the limit. Gzipped bodies are limited by their compressed size.
+    * @param maxBodySize in bytes, 0 means no limit
+    */
+   public HttpClientFactory setMaxBodySize( long maxBodySize ) {
+      _maxBodySize = maxBodySize;
+      return this;
+   }
+
    public HttpClientFactory setMaxConnections( int maxConnections ) {
       _maxConnections = maxConnections;
       return this;
    }
 
+   /**
+    * Responses, whose body takes longer to download, are rejected. Like the body size, the time is checked whenever data
+    * is received, a stalled download is ended by the socket timeout.
+    * @param maxDownloadTime in millis since the response head was received, 0 means no limit
+    */
+   public HttpClientFactory setMaxDownloadTime( int maxDownloadTime ) {
+      _maxDownloadTime = maxDownloadTime;
+      return this;
+   }
+
    public HttpClientFactory setNeverRetryHttpRequests( boolean neverRetry ) {
       _neverRetryHttpRequests = neverRetry;
       return this;
@@ -410,6 +614,63 @@ public class HttpClientFactory {
       return this;
    }
 
+   /* we need to allow broken cookie expire headers, so we have to tune the CookieSpecs.DEFAULT config */
+   private Registry<CookieSpecProvider> createCookieSpecRegistry() {
+      PublicSuffixMatcher publicSuffixMatcher = PublicSuffixMatcherLoader.getDefault();
+      return RegistryBuilder.<CookieSpecProvider>create() //
+            .register(CookieSpecs.DEFAULT, new DefaultCookieSpecProvider(CompatibilityLevel.DEFAULT, publicSuffixMatcher,
+                  new String[] { "EEE, dd-MMM-yy HH:mm:ss z", "EEE, dd MMM yy HH:mm:ss z" }, false)) //
+            .register(CookieSpecs.IGNORE_COOKIES, new IgnoreSpecProvider())//
+            .build();
+   }
+
+   private CredentialsProvider createCredentialsProvider() {
+      CredentialsProvider provider = new BasicCredentialsProvider();
+      UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(_user, _password);
+      provider.setCredentials(AuthScope.ANY, credentials);
+      return provider;
+   }
+
+   private RequestConfig createRequestConfig() {
+      RequestConfig.Builder requestConfigBuilder = RequestConfig.custom();
+      requestConfigBuilder.setConnectTimeout(_connectionTimeout); // the time to establish the connection with the remote host
+      requestConfigBuilder.setConnectionRequestTimeout(_connectionTimeout); // the time to wait for a connection from the connection manager/pool
+      requestConfigBuilder.setSocketTimeout(
+            _soTimeout); // the time waiting for data – after the connection was established; maximum time of inactivity between two data packets
+      requestConfigBuilder.setContentCompressionEnabled(_gzipSupport);
+      requestConfigBuilder.setRedirectsEnabled(_executeRedirects);
+      requestConfigBuilder.setExpectContinueEnabled(_useExpectContinue);
+      if ( _useCookies ) {
+         requestConfigBuilder.setCookieSpec(CookieSpecs.DEFAULT);
+      } else {
+         requestConfigBuilder.setCookieSpec(CookieSpecs.IGNORE_COOKIES);
+      }
+      return requestConfigBuilder.build();
+   }
+
+   /**
+    * @return null, if the ssl context could not be built
+    */
+   private SSLContext createTrustAllSslContext() {
+      try {
+         return SSLContexts.custom().loadTrustMaterial(null, new TrustStrategy() {
+
+            @Override
+            public boolean isTrusted( X509Certificate[] chain, String authType ) throws CertificateException {
+               return true;
+            }
+         }).build();
+      }
+      catch ( Exception argh ) {
+         _log.error("Failed to build ssl context", argh);
+         return null;
+      }
+   }
+
+   private boolean hasResponseLimits() {
+      return _maxBodySize > 0 || _maxDownloadTime > 0 || _allowedContentTypes != null;
+   }
+
    /**
     * One of the major shortcomings of the classic blocking I/O model is that the network socket can react to I/O events only when blocked in an I/O operation. When a connection is released back to the manager, it can be kept alive however it is unable to monitor the status of the socket and react to any I/O events. If the connection gets closed on the server side, the client side connection is unable to detect the change in the connection state (and react appropriately by closing the socket on its end).
     *
@@ -464,6 +725,100 @@ public class HttpClientFactory {
    }
 
 
+   /**
+    * Fails as soon as more than <code>maxBytes</code> are read or reading takes longer than <code>maxMillis</code>, so an
+    * oversized body is not read completely.
+    */
+   static class LimitedInputStream extends FilterInputStream {
+
+      private final long _maxBytes;
+      private final int  _maxMillis;
+      private final long _start = System.currentTimeMillis();
+      private long       _bytesRead;
+
+
+      LimitedInputStream( InputStream in, long maxBytes, int maxMillis ) {
+         super(in);
+         _maxBytes = maxBytes;
+         _maxMillis = maxMillis;
+      }
+
+      @Override
+      public int read() throws IOException {
+         int b = super.read();
+         if ( b >= 0 ) {
+            count(1);
+         }
+         return b;
+      }
+
+      @Override
+      public int read( byte[] b, int off, int len ) throws IOException {
+         int n = super.read(b, off, len);
+         if ( n > 0 ) {
+            count(n);
+         }
+         return n;
+      }
+
+      @Override
+      public long skip( long n ) throws IOException {
+         long skipped = super.skip(n);
+         count(skipped);
+         return skipped;
+      }
+
+      private void count( long n ) throws IOException {
+         _bytesRead += n;
+         checkDownload(_bytesRead, _start, _maxBytes, _maxMillis);
+      }
+   }
+
+
+   /**
+    * Checks the response head and counts the bytes of the body while the async client receives it.
+    */
+   static class LimitedAsyncResponseConsumer extends BasicAsyncResponseConsumer {
+
+      private final ResponseLimiter _limiter;
+      private long                  _start;
+      private long                  _bytesRead;
+
+
+      LimitedAsyncResponseConsumer( ResponseLimiter limiter ) {
+         _limiter = limiter;
+      }
+
+      @Override
+      protected void onContentReceived( ContentDecoder decoder, IOControl ioctrl ) throws IOException {
+         super.onContentReceived(new ContentDecoder() {
+
+            @Override
+            public boolean isCompleted() {
+               return decoder.isCompleted();
+            }
+
+            @Override
+            public int read( ByteBuffer dst ) throws IOException {
+               int n = decoder.read(dst);
+               if ( n > 0 ) {
+                  _bytesRead += n;
+                  checkDownload(_bytesRead, _start, _limiter._maxBodySize, _limiter._maxDownloadTime);
+               }
+               return n;
+            }
+         }, ioctrl);
+      }
+
+      @Override
+      protected void onEntityEnclosed( HttpEntity entity, ContentType contentType ) throws IOException {
+         _limiter.checkEntity(entity);
+         _start = System.currentTimeMillis();
+         super.onEntityEnclosed(entity, contentType); // buffers the body, preallocating the Content-Length
+      }
+   }
+
+
    /**
     * Quoting the HttpClient 4.3.3. reference: “If the Keep-Alive header is not present in the response, HttpClient assumes the connection can be kept alive indefinitely.” (See the HttpClient Reference).
     *
@@ -489,6 +844,60 @@ public class HttpClientFactory {
    }
 
 
+   /**
+    * The default retry handler, but rejected responses are not retried.
+    */
+   static class NoRejectedResponseRetryHandler extends DefaultHttpRequestRetryHandler {
+
+      NoRejectedResponseRetryHandler() {
+         super(3, false, Arrays.asList(InterruptedIOException.class, UnknownHostException.class, ConnectException.class, SSLException.class,
+            ResponseRejectedException.class));
+      }
+   }
+
+
+   /**
+    * The buffers of {@link HttpClientFactory#readPage(HttpResponse, String, long)}, one instance per thread. The page buffer
+    * grows to the largest page read by the thread, up to {@link #MAX_REUSED_PAGE_CHARS}, a larger page gets a buffer of its
+    * own, so a single huge page doesn't pin its memory to the thread.
+    */
+   static class ReadBuffers {
+
+      /** 1 MB per thread */
+      static final int MAX_REUSED_PAGE_CHARS = 1 << 19;
+
+      /** the prefix of the page, sniffed for the charset, is read into it as well, so it is never shorter than that */
+      final byte[]     _bytes                = new byte[CHARSET_SNIFF_LENGTH];
+      private char[]   _page                 = new char[CHARSET_SNIFF_LENGTH];
+
+
+      /**
+       * @return the page buffer, if it has at least <code>length</code> chars, otherwise a new one, which is kept, if it
+       *         is not too large to be reused
+       */
+      char[] page( int length ) {
+         if ( length <= _page.length ) {
+            return _page;
+         }
+         char[] page = new char[length];
+         if ( length <= MAX_REUSED_PAGE_CHARS ) {
+            _page = page;
+         }
+         return page;
+      }
+
+      /**
+       * @return a buffer twice as large as the full <code>page</code>, with its chars copied
+       */
+      CharBuffer grow( CharBuffer page ) {
+         CharBuffer grown = CharBuffer.wrap(page(Math.max(page.capacity() * 2, CHARSET_SNIFF_LENGTH)));
+         page.flip();
+         grown.put(page);
+         return grown;
+      }
+   }
+
+
    static class Redirector extends DefaultRedirectStrategy {
 
       @Override
@@ -505,4 +914,66 @@ public class HttpClientFactory {
       }
    }
 
+
+   /**
+    * Rejects responses with a content type not allowed or a Content-Length exceeding the max body size, and limits the
+    * body of the other responses.
+    */
+   static class ResponseLimiter implements HttpResponseInterceptor {
+
+      final long         _maxBodySize;
+      final int          _maxDownloadTime;
+      final List<String> _allowedContentTypes;
+
+
+      ResponseLimiter( long maxBodySize, int maxDownloadTime, List<String> allowedContentTypes ) {
+         _maxBodySize = maxBodySize;
+         _maxDownloadTime = maxDownloadTime;
+         _allowedContentTypes = allowedContentTypes;
+      }
+
+      @Override
+      public void process( HttpResponse response, HttpContext context ) throws IOException {
+         HttpEntity entity = response.getEntity();
+         if ( entity == null ) {
+            return;
+         }
+         checkEntity(entity);
+         if ( _maxBodySize > 0 || _maxDownloadTime > 0 ) {
+            response.setEntity(new HttpEntityWrapper(entity) {
+
+               @Override
+               public InputStream getContent() throws IOException {
+                  return new LimitedInputStream(super.getContent(), _maxBodySize, _maxDownloadTime);
+               }
+
+               @Override
+               public void writeTo( OutputStream out ) throws IOException {
+                  try (InputStream in = getContent()) {
+                     IOUtils.copy(in, out);
+                  }
+               }
+            });
+         }
+      }
+
+      void checkEntity( HttpEntity entity ) throws ResponseRejectedException {
+         if ( _maxBodySize > 0 && entity.getContentLength() > _maxBodySize ) {
+            throw new ResponseRejectedException("Content-Length " + entity.getContentLength() + " exceeds the max body size of " + _maxBodySize + " bytes");
+         }
+         Header contentType = entity.getContentType();
+         if ( _allowedContentTypes == null || contentType == null ) {
+            return;
+         }
+         String mimeType = contentType.getValue();
+         int semicolon = mimeType.indexOf(';');
+         mimeType = (semicolon >= 0 ? mimeType.substring(0, semicolon) : mimeType).trim();
+         for ( String allowedContentType : _allowedContentTypes ) {
+            if ( mimeType.regionMatches(true, 0, allowedContentType, 0, allowedContentType.length()) ) {
+               return;
+            }
+         }
+         throw new ResponseRejectedException("content type " + mimeType + " is not allowed");
+      }
+   }
 }
@@ -0,0 +1,18 @@
+package util.http;
+
+import java.io.IOException;
+
+
+/**
+ * Thrown, if a response exceeds the max body size or the max download time, or if its content type is not allowed, see
+ * {@link HttpClientFactory#setMaxBodySize(long)}. The response is aborted, and retrying the request won't help.
+ */
+public class ResponseRejectedException extends IOException {
+
+   private static final long serialVersionUID = -2415390532807137706L;
+
+
+   public ResponseRejectedException( String message ) {
+      super(message);
+   }
+}
@@ -0,0 +1,109 @@
+package util.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+
+public class HttpClientFactoryTest {
+
+   private static HttpResponse response( byte[] body, long contentLength, String contentType ) {
+      BasicHttpEntity entity = new BasicHttpEntity();
+      entity.setContent(new ByteArrayInputStream(body));
+      entity.setContentLength(contentLength);
+      entity.setContentType(contentType);
+      BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+      response.setEntity(entity);
+      return response;
+   }
+
+   private static String page( String head, int repetitions, String text ) {
+      StringBuilder page = new StringBuilder("<html><head>" + head + "</head><body>");
+      for ( int i = 0; i < repetitions; i++ ) {
+         page.append(text).append(i);
+      }
+      return page.append("</body></html>").toString();
+   }
+
+   private static String readPage( String page, Charset charset, boolean withContentLength, String contentType ) throws Exception {
+      byte[] body = page.getBytes(charset);
+      return HttpClientFactory.readPage(response(body, withContentLength ? body.length : -1, contentType));
+   }
+
+   @Test
+   public void testDeclaredCharset() throws Exception {
+      String page = page("<meta charset=\"windows-1252\">", 10, "Gr\u00fc\u00dfe ");
+
+      assertThat(readPage(page, Charset.forName("windows-1252"), true, "text/html; charset=UTF-8")).isEqualTo(page);
+   }
+
+   @Test
+   public void testByteOrderMark() throws Exception {
+      String page = page("", 10000, "\u65e5\u672c\u8a9e ");
+      byte[] bom = { (byte)0xff, (byte)0xfe };
+      byte[] chars = page.getBytes(StandardCharsets.UTF_16LE);
+      byte[] body = new byte[bom.length + chars.length];
+      System.arraycopy(bom, 0, body, 0, bom.length);
+      System.arraycopy(chars, 0, body, bom.length, chars.length);
+
+      assertThat(HttpClientFactory.readPage(response(body, body.length, null))).isEqualTo(page);
+   }
+
+   @Test
+   public void testContentTypeCharsetAndDefault() throws Exception {
+      String page = page("", 10, "Gr\u00fc\u00dfe ");
+
+      assertThat(readPage(page, StandardCharsets.ISO_8859_1, true, "text/html; charset=ISO-8859-1")).isEqualTo(page);
+      assertThat(readPage(page, StandardCharsets.UTF_8, true, "text/html")).isEqualTo(page);
+   }
+
+   @Test
+   public void testMultiByteCharsAcrossBuffers() throws Exception {
+      // odd lengths, so the 3 byte chars straddle the boundaries of the byte buffer
+      String page = page("<meta charset=\"utf-8\">", 20000, "\u20acuro ");
+
+      assertThat(readPage(page, StandardCharsets.UTF_8, true, null)).isEqualTo(page);
+      assertThat(readPage(page, StandardCharsets.UTF_8, false, null)).isEqualTo(page);
+   }
+
+   @Test
+   public void testPagesLargerThanReusedBuffer() throws Exception {
+      String page = page("", HttpClientFactory.ReadBuffers.MAX_REUSED_PAGE_CHARS / 4, "abc");
+      assertThat(page.length()).isGreaterThan(HttpClientFactory.ReadBuffers.MAX_REUSED_PAGE_CHARS);
+
+      assertThat(readPage(page, StandardCharsets.UTF_8, true, null)).isEqualTo(page);
+      assertThat(readPage(page, StandardCharsets.UTF_8, false, null)).isEqualTo(page);
+      // a small page read after a large one only gets its own chars
+      assertThat(readPage("<html/>", StandardCharsets.UTF_8, false, null)).isEqualTo("<html/>");
+   }
+
+   @Test
+   public void testContentLengthTooShort() throws Exception {
+      String page = page("", 1000, "abc");
+      byte[] body = page.getBytes(StandardCharsets.UTF_8);
+
+      assertThat(HttpClientFactory.readPage(response(body, 10, null))).isEqualTo(page);
+   }
+
+   @Test
+   public void testMalformedBytesAreReplaced() throws Exception {
+      byte[] body = { '<', 'p', '>', (byte)0xc3, '<', '/', 'p', '>', (byte)0xe2, (byte)0x82 };
+
+      assertThat(HttpClientFactory.readPage(response(body, body.length, "text/html; charset=UTF-8"))).isEqualTo("<p>\ufffd</p>\ufffd");
+   }
+
+   @Test(expected = ResponseRejectedException.class)
+   public void testMaxBodySize() throws Exception {
+      byte[] body = page("", 1000, "abc").getBytes(StandardCharsets.UTF_8);
+
+      HttpClientFactory.readPage(response(body, -1, null), null, 100);
+   }
+}
@@ -0,0 +1,268 @@
+package util.xslt;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.sf.saxon.s9api.XdmNode;
+
+
+/**
+ * Caches parsed documents keyed by a fingerprint of the page and the way it was parsed, so repeated evaluations on the
+ * same page parse it only once, without keeping the page itself as key. The size is bounded by the estimated bytes of
+ * the cached documents, the least recently used documents are evicted first.<br/>
+ * The fingerprint is a 128 bit hash over all chars of the page, following MurmurHash3 x64 128, so it takes a single
+ * pass over the page, which is cheap compared to parsing it. Two different pages sharing a fingerprint are as unlikely as
+ * with any 128 bit hash, i.e. never going to happen by accident, while a collision of a shorter hash would silently
+ * evaluate xpaths against another page.
+ */
+public class DocumentCache {
+
+   /** the tree of a document takes about this many bytes per char of the page, the text itself and the node arrays */
+   public static final int   ESTIMATED_BYTES_PER_CHAR = 4;
+
+   private static final long C1                       = 0x87c37b91114253d5L;
+   private static final long C2                       = 0x4cf5ad432745937fL;
+
+   /**
+    * @return the key of the page, to be computed once per lookup and used for {@link #get(Key)} and {@link #put(Key, XdmNode)}
+    */
+   static Key key( String page, boolean normalizeHtml ) {
+      long h1 = 0;
+      long h2 = 0;
+      int length = page.length();
+      int i = 0;
+      for ( int blockEnd = length & ~7; i < blockEnd; i += 8 ) {
+         h1 ^= mixK1(chars(page, i, i + 4));
+         h1 = Long.rotateLeft(h1, 27);
+         h1 += h2;
+         h1 = h1 * 5 + 0x52dce729;
+         h2 ^= mixK2(chars(page, i + 4, i + 8));
+         h2 = Long.rotateLeft(h2, 31);
+         h2 += h1;
+         h2 = h2 * 5 + 0x38495ab5;
+      }
+      if ( i < length ) {
+         h1 ^= mixK1(chars(page, i, Math.min(i + 4, length)));
+         h2 ^= mixK2(chars(page, Math.min(i + 4, length), length));
+      }
+      h1 ^= length;
+      h2 ^= length;
+      h1 += h2;
+      h2 += h1;
+      h1 = fmix(h1);
+      h2 = fmix(h2);
+      h1 += h2;
+      h2 += h1;
+      return new Key(h1, h2, length, normalizeHtml);
+   }
+
+   /**
+    * @return up to 4 chars packed into a long, the first char in the lowest bits
+    */
+   private static long chars( String page, int start, int end ) {
+      long k = 0;
+      for ( int i = start; i < end; i++ ) {
+         k |= (long)page.charAt(i) << (16 * (i - start));
+      }
+      return k;
+   }
+
+   private static long fmix( long k ) {
+      k ^= k >>> 33;
+      k *= 0xff51afd7ed558ccdL;
+      k ^= k >>> 33;
+      k *= 0xc4ceb9fe1a85ec53L;
+      k ^= k >>> 33;
+      return k;
+   }
+
+   private static long mixK1( long k1 ) {
+      k1 *= C1;
+      k1 = Long.rotateLeft(k1, 31);
+      return k1 * C2;
+   }
+
+   private static long mixK2( long k2 ) {
+      k2 *= C2;
+      k2 = Long.rotateLeft(k2, 33);
+      return k2 * C1;
+   }
+
+
+   private final ConcurrentHashMap<Key, Entry> _cache     = new ConcurrentHashMap<>();
+   private volatile long                       _maxBytes;
+   private final AtomicLong                    _bytes     = new AtomicLong();
+
+   private final LongAdder                     _hits      = new LongAdder();
+   private final LongAdder                     _misses    = new LongAdder();
+   private final LongAdder                     _evictions = new LongAdder();
+
+
+   public DocumentCache( long maxBytes ) {
+      _maxBytes = maxBytes;
+   }
+
+   public void clear() {
+      for ( Key key : _cache.keySet() ) {
+         Entry entry = _cache.remove(key);
+         if ( entry != null ) {
+            _bytes.addAndGet(-entry._weight);
+         }
+      }
+   }
+
+   /**
+    * @return the document parsed from the page, null if it is not cached
+    */
+   public XdmNode get( String page, boolean normalizeHtml ) {
+      return get(key(page, normalizeHtml));
+   }
+
+   /**
+    * @return the document of the key, null if it is not cached
+    */
+   XdmNode get( Key key ) {
+      Entry entry = _cache.get(key);
+      if ( entry == null ) {
+         _misses.increment();
+         return null;
+      }
+      _hits.increment();
+      entry._lastAccess = System.nanoTime();
+      return entry._document;
+   }
+
+   /**
+    * @return the estimated bytes of all cached documents
+    */
+   public long getBytes() {
+      return _bytes.get();
+   }
+
+   public long getEvictions() {
+      return _evictions.sum();
+   }
+
+   public long getHits() {
+      return _hits.sum();
+   }
+
+   /**
+    * @return the share of lookups, which found their document, 0 if there were none
+    */
+   public double getHitRate() {
+      long hits = getHits();
+      long lookups = hits + getMisses();
+      return lookups == 0 ? 0 : (double)hits / lookups;
+   }
+
+   public long getMaxBytes() {
+      return _maxBytes;
+   }
+
+   public long getMisses() {
+      return _misses.sum();
+   }
+
+   /**
+    * Adds the document parsed from the page. A document heavier than the whole cache is not added.
+    */
+   public void put( String page, boolean normalizeHtml, XdmNode document ) {
+      put(key(page, normalizeHtml), document);
+   }
+
+   /**
+    * Adds the document parsed from the page of the key. A document heavier than the whole cache is not added.
+    */
+   void put( Key key, XdmNode document ) {
+      Entry entry = new Entry(document, (long)key._length * ESTIMATED_BYTES_PER_CHAR);
+      if ( entry._weight > _maxBytes ) {
+         return;
+      }
+      if ( _cache.putIfAbsent(key, entry) == null ) {
+         _bytes.addAndGet(entry._weight);
+         evictIfNecessary();
+      }
+   }
+
+   public void setMaxBytes( long maxBytes ) {
+      _maxBytes = maxBytes;
+      evictIfNecessary();
+   }
+
+   public int size() {
+      return _cache.size();
+   }
+
+   @Override
+   public String toString() {
+      return "size: " + size() + ", bytes: " + getBytes() + ", hits: " + getHits() + ", misses: " + getMisses() + ", hitRate: "
+         + String.format("%.2f", getHitRate()) + ", evictions: " + getEvictions();
+   }
+
+   /** removes the least recently used entries, called only when a new entry was added, so the linear scan is affordable */
+   private void evictIfNecessary() {
+      while ( _bytes.get() > _maxBytes ) {
+         Map.Entry<Key, Entry> eldest = null;
+         for ( Map.Entry<Key, Entry> e : _cache.entrySet() ) {
+            if ( eldest == null || e.getValue()._lastAccess < eldest.getValue()._lastAccess ) {
+               eldest = e;
+            }
+         }
+         if ( eldest == null ) {
+            return;
+         }
+         if ( _cache.remove(eldest.getKey(), eldest.getValue()) ) {
+            _bytes.addAndGet(-eldest.getValue()._weight);
+            _evictions.increment();
+         }
+      }
+   }
+
+
+   static final class Key {
+
+      private final long    _hash1;
+      private final long    _hash2;
+      private final int     _length;
+      private final boolean _normalizeHtml;
+
+
+      Key( long hash1, long hash2, int length, boolean normalizeHtml ) {
+         _hash1 = hash1;
+         _hash2 = hash2;
+         _length = length;
+         _normalizeHtml = normalizeHtml;
+      }
+
+      @Override
+      public boolean equals( Object obj ) {
+         if ( !(obj instanceof Key) ) {
+            return false;
+         }
+         Key other = (Key)obj;
+         return _hash1 == other._hash1 && _hash2 == other._hash2 && _length == other._length && _normalizeHtml == other._normalizeHtml;
+      }
+
+      @Override
+      public int hashCode() {
+         return (int)(_hash1 ^ (_hash1 >>> 32)) * 2 + (_normalizeHtml ? 1 : 0);
+      }
+   }
+
+
+   private static class Entry {
+
+      final XdmNode _document;
+      final long    _weight;
+      volatile long _lastAccess = System.nanoTime();
+
+
+      Entry( XdmNode document, long weight ) {
+         _document = document;
+         _weight = weight;
+      }
+   }
+}
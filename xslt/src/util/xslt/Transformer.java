@@ -21,7 +21,6 @@ import javax.xml.transform.ErrorListener;
 import javax.xml.transform.SourceLocator;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamSource;
 
 import org.apache.commons.lang3.StringUtils;
 import org.htmlcleaner.CleanerProperties;
@@ -35,28 +34,40 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXParseException;
 
+import net.sf.saxon.s9api.Axis;
 import net.sf.saxon.s9api.Processor;
 import net.sf.saxon.s9api.QName;
 import net.sf.saxon.s9api.Serializer;
 import net.sf.saxon.s9api.XdmAtomicValue;
+import net.sf.saxon.s9api.XdmDestination;
 import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmNodeKind;
+import net.sf.saxon.s9api.XdmSequenceIterator;
 import net.sf.saxon.s9api.XdmValue;
-import net.sf.saxon.s9api.XsltCompiler;
 import net.sf.saxon.s9api.XsltExecutable;
 import net.sf.saxon.s9api.XsltTransformer;
 
 
 public class Transformer {
 
-   private static Logger                          _log               = LoggerFactory.getLogger(Transformer.class);
+   private static Logger                          _log                  = LoggerFactory.getLogger(Transformer.class);
 
-   private static final Pattern                   NON_BREAKING_SPACE = Pattern.compile("\\xa0");
-   private static final Pattern                   SCRIPT_BLOCK       = Pattern.compile("(?s)<c24script>(.*?)</c24script>");
+   private static final Pattern                   SCRIPT_BLOCK          = Pattern.compile("(?s)<c24script>(.*?)</c24script>");
 
-   private static final ThreadLocal<ScriptEngine> JAVASCRIPT_ENGINE  = ThreadLocal.withInitial(                                                                                                                                                                                                                                                               //
+   static final Processor                         PROC                  = new Processor(false);
+   static final XsltExecutableCache               XSLT_EXECUTABLE_CACHE = new XsltExecutableCache(PROC, 100);
+
+   private static final ThreadLocal<ScriptEngine> JAVASCRIPT_ENGINE     = ThreadLocal.withInitial(                                                                                                                                                                                                                                                               //
       () -> new ScriptEngineManager().getEngineByMimeType("text/javascript"));
 
 
+   /**
+    * Stylesheets are compiled once and then cached by content, use this to inspect the hit rate and compile time or to change the size of the cache.
+    */
+   public static XsltExecutableCache getXsltExecutableCache() {
+      return XSLT_EXECUTABLE_CACHE;
+   }
+
    public static Map<String, String>[] toMap( String transformed ) {
       List<Map<String, String>> maps;
       try {
@@ -73,7 +84,7 @@ public class Transformer {
     * same as {@link #toMap(String)} only that it throws Exceptions
     */
    public static List<Map<String, String>> toMapLoud( String transformed ) throws Exception {
-      transformed = NON_BREAKING_SPACE.matcher(transformed).replaceAll(" ");
+      transformed = transformed.replace('\u00a0', ' ');
 
       List<Map<String, String>> maps = new ArrayList<Map<String, String>>();
       DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
@@ -96,83 +107,121 @@ public class Transformer {
       return maps;
    }
 
+   /**
+    * Cleans the page using HtmlCleaner and builds the Saxon tree from it, which is the input for all
+    * transformations. Use this together with {@link #transform(XdmNode, String, Map)}, if you apply multiple stylesheets
+    * to the same page, so the page is parsed only once.
+    */
+   public static XdmNode createDocument( String page ) throws Exception {
+      if ( isNotHtml(page) ) {
+         // script tag preserves the text as text in the DOM, i.e. it doesn't try to parse any html elements which might occur in the text 
+         page = "<script>" + page + "</script>";
+      } else {
+         page = SCRIPT_BLOCK.matcher(page).replaceAll("");
+      }
+      CleanerProperties prop = new CleanerProperties();
+      prop.setNamespacesAware(false);
+      prop.setAllowHtmlInsideAttributes(true);
+      HtmlCleaner cleaner = new HtmlCleaner(prop);
+      TagNode clean = cleaner.clean(page);
+      Document document = new LenientDomSerializer(prop).createDOM(clean);
+
+      return PROC.newDocumentBuilder().build(new DOMSource(document));
+   }
+
    public static TransformationResult transform( String page, String xslt, Map<String, String> variablesForXSLT ) {
+      XdmNode source;
+      try {
+         source = createDocument(page);
+      }
+      catch ( Exception argh ) {
+         _log.warn("Failed to execute xslt", argh);
+         return new TransformationResult();
+      }
+      return transform(source, xslt, variablesForXSLT);
+   }
+
+   /**
+    * @param source a document created using {@link #createDocument(String)}
+    */
+   public static TransformationResult transform( XdmNode source, String xslt, Map<String, String> variablesForXSLT ) {
       StringWriter sw;
       final TransformationResult r = new TransformationResult();
       try {
-         Processor proc = new Processor(false);
-         XsltCompiler comp = proc.newXsltCompiler();
-         ErrorListener errorListener = new ErrorListener() {
-
-            @Override
-            public void error( TransformerException exception ) throws TransformerException {
-               addError(exception);
-            }
-
-            @Override
-            public void fatalError( TransformerException exception ) throws TransformerException {
-               addError(exception);
-            }
-
-            @Override
-            public void warning( TransformerException exception ) throws TransformerException {
-               addError(exception);
-            }
-
-            private void addError( TransformerException exception ) {
-               String error = exception.getMessage();
-               SourceLocator loc = exception.getLocator();
-               int lineNumber = 0, columnNumber = 0;
-               if ( loc != null ) {
-                  lineNumber = loc.getLineNumber();
-                  columnNumber = loc.getColumnNumber();
-               } else {
-                  if ( exception.getException() instanceof SAXParseException ) {
-                     SAXParseException sex = (SAXParseException)exception.getException();
-                     lineNumber = sex.getLineNumber();
-                     columnNumber = sex.getColumnNumber();
-                  }
-               }
-               r._errors.add(new TransformationError(error, lineNumber, columnNumber));
-            }
-
-         };
-         comp.setErrorListener(errorListener);
-         XsltExecutable exp = comp.compile(new StreamSource(new StringReader(xslt)));
-
-         if ( isNotHtml(page) ) {
-            // script tag preserves the text as text in the DOM, i.e. it doesn't try to parse any html elements which might occur in the text 
-            page = "<script>" + page + "</script>";
-         } else {
-            page = SCRIPT_BLOCK.matcher(page).replaceAll("");
-         }
-         CleanerProperties prop = new CleanerProperties();
-         prop.setNamespacesAware(false);
-         prop.setAllowHtmlInsideAttributes(true);
-         HtmlCleaner cleaner = new HtmlCleaner(prop);
-         TagNode clean = cleaner.clean(page);
-         Document document = new LenientDomSerializer(prop).createDOM(clean);
-
-         XdmNode source = proc.newDocumentBuilder().build(new DOMSource(document));
+         ErrorListener errorListener = new ErrorCollector(r._errors);
+         XsltExecutable exp = XSLT_EXECUTABLE_CACHE.get(xslt, r._errors);
 
          sw = new StringWriter();
          Serializer out = new Serializer();
          out.setOutputWriter(sw);
          XsltTransformer trans = exp.load();
+         setParameters(trans, variablesForXSLT);
+         trans.setInitialContextNode(source);
+         trans.setDestination(out);
+         trans.getUnderlyingController().setErrorListener(errorListener);
+         trans.transform();
+         r._result = sw.toString();
+         replaceJavaScriptBlocks(xslt, r);
+      }
+      catch ( Exception argh ) {
+         _log.warn("Failed to execute xslt", argh);
+      }
+      return r;
+   }
 
-         for ( Map.Entry<String, String> e : variablesForXSLT.entrySet() ) {
-            String variableName = e.getKey();
-            String value = e.getValue();
-            trans.setParameter(new QName(variableName), new XdmValue(Collections.singletonList(new XdmAtomicValue(value))));
+   /**
+    * Same as {@link #transform(XdmNode, String, Map)} followed by {@link #toMap(String)}, only that the records are extracted
+    * directly from the result tree instead of serializing and re-parsing it. The records are returned in
+    * {@link TransformationResult#_maps}, which is null if the transformation failed or did not produce an XML document.
+    * {@link TransformationResult#_result} stays empty, unless the stylesheet uses script blocks.
+    */
+   public static TransformationResult transformToMaps( XdmNode source, String xslt, Map<String, String> variablesForXSLT ) {
+      if ( xslt.contains("c24script") ) {
+         // script blocks operate on the serialized result, so we have to take the long way
+         TransformationResult r = transform(source, xslt, variablesForXSLT);
+         try {
+            List<Map<String, String>> maps = toMapLoud(r._result);
+            r._maps = maps.toArray(new Map[maps.size()]);
          }
-         trans.setParameter(new QName("newline"), new XdmValue(Collections.singletonList(new XdmAtomicValue("\n"))));
+         catch ( Exception argh ) {
+            _log.debug("failed to parse XML", argh);
+         }
+         return r;
+      }
 
+      final TransformationResult r = new TransformationResult();
+      try {
+         ErrorListener errorListener = new ErrorCollector(r._errors);
+         XsltExecutable exp = XSLT_EXECUTABLE_CACHE.get(xslt, r._errors);
+
+         XdmDestination out = new XdmDestination();
+         XsltTransformer trans = exp.load();
+         setParameters(trans, variablesForXSLT);
          trans.setInitialContextNode(source);
          trans.setDestination(out);
          trans.getUnderlyingController().setErrorListener(errorListener);
          trans.transform();
-         r._result = sw.toString();
-         replaceJavaScriptBlocks(xslt, r);
+
+         XdmNode root = null;
+         for ( XdmSequenceIterator i = out.getXdmNode().axisIterator(Axis.CHILD); i.hasNext() && root == null; ) {
+            XdmNode child = (XdmNode)i.next();
+            if ( child.getNodeKind() == XdmNodeKind.ELEMENT ) {
+               root = child;
+            }
+         }
+         if ( root != null ) {
+            List<Map<String, String>> maps = new ArrayList<Map<String, String>>();
+            for ( XdmSequenceIterator i = root.axisIterator(Axis.CHILD); i.hasNext(); ) {
+               XdmNode record = (XdmNode)i.next();
+               if ( !record.axisIterator(Axis.CHILD).hasNext() ) {
+                  continue;
+               }
+               Map<String, String> map = new HashMap<String, String>();
+               addChildren(map, record);
+               maps.add(map);
+            }
+            r._maps = maps.toArray(new Map[maps.size()]);
+         }
       }
       catch ( Exception argh ) {
          _log.warn("Failed to execute xslt", argh);
@@ -200,6 +249,31 @@ public class Transformer {
       }
    }
 
+   /** same as {@link #addChildren(Map, NodeList)}, only for the Saxon tree, which has no whitespace text nodes from indenting */
+   private static void addChildren( Map<String, String> map, XdmNode node ) {
+      for ( XdmSequenceIterator i = node.axisIterator(Axis.CHILD); i.hasNext(); ) {
+         XdmNode item = (XdmNode)i.next();
+         String nodeName;
+         switch ( item.getNodeKind() ) {
+         case ELEMENT:
+            nodeName = item.getUnderlyingNode().getDisplayName();
+            break;
+         case TEXT:
+            nodeName = "#text";
+            break;
+         case COMMENT:
+            nodeName = "#comment";
+            break;
+         default:
+            continue;
+         }
+         map.put(nodeName, item.getStringValue().replace('\u00a0', ' '));
+         if ( item.getNodeKind() == XdmNodeKind.ELEMENT ) {
+            addChildren(map, item);
+         }
+      }
+   }
+
    private static String evaluateJavaScript( String js, String xslt, TransformationResult r, int n, Map<String, String>[] maps ) {
       StringWriter out = new StringWriter();
       try {
@@ -226,6 +300,15 @@ public class Transformer {
       return !page.trim().startsWith("<") && !page.contains("<!DOCTYPE") && !page.contains("<html") && !page.contains("<head") && !page.contains("<body");
    }
 
+   private static void setParameters( XsltTransformer trans, Map<String, String> variablesForXSLT ) {
+      for ( Map.Entry<String, String> e : variablesForXSLT.entrySet() ) {
+         String variableName = e.getKey();
+         String value = e.getValue();
+         trans.setParameter(new QName(variableName), new XdmValue(Collections.singletonList(new XdmAtomicValue(value))));
+      }
+      trans.setParameter(new QName("newline"), new XdmValue(Collections.singletonList(new XdmAtomicValue("\n"))));
+   }
+
    private static void replaceJavaScriptBlocks( String xslt, TransformationResult r ) {
       Matcher matcher = SCRIPT_BLOCK.matcher(r._result);
       boolean result = matcher.find();
@@ -249,6 +332,49 @@ public class Transformer {
    }
 
 
+   static class ErrorCollector implements ErrorListener {
+
+      private final List<TransformationError> _errors;
+
+
+      ErrorCollector( List<TransformationError> errors ) {
+         _errors = errors;
+      }
+
+      @Override
+      public void error( TransformerException exception ) throws TransformerException {
+         addError(exception);
+      }
+
+      @Override
+      public void fatalError( TransformerException exception ) throws TransformerException {
+         addError(exception);
+      }
+
+      @Override
+      public void warning( TransformerException exception ) throws TransformerException {
+         addError(exception);
+      }
+
+      private void addError( TransformerException exception ) {
+         String error = exception.getMessage();
+         SourceLocator loc = exception.getLocator();
+         int lineNumber = 0, columnNumber = 0;
+         if ( loc != null ) {
+            lineNumber = loc.getLineNumber();
+            columnNumber = loc.getColumnNumber();
+         } else {
+            if ( exception.getException() instanceof SAXParseException ) {
+               SAXParseException sex = (SAXParseException)exception.getException();
+               lineNumber = sex.getLineNumber();
+               columnNumber = sex.getColumnNumber();
+            }
+         }
+         _errors.add(new TransformationError(error, lineNumber, columnNumber));
+      }
+   }
+
+
    public static class TransformationError {
 
       public String _error;
@@ -267,5 +393,7 @@ public class Transformer {
 
       public String                    _result = "";
       public List<TransformationError> _errors = new ArrayList<TransformationError>();
+      /** only set by {@link Transformer#transformToMaps(XdmNode, String, Map)} */
+      public Map<String, String>[]     _maps;
    }
 }
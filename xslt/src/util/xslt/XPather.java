@@ -1,8 +1,6 @@
 package util.xslt;
 
 import java.io.StringReader;
-import java.util.Collections;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -21,14 +19,16 @@ import net.sf.saxon.s9api.XPathExecutable;
 import net.sf.saxon.s9api.XPathSelector;
 import net.sf.saxon.s9api.XdmNode;
 import net.sf.saxon.s9api.XdmValue;
-import util.collections.LRUCache;
 
 
 public class XPather {
 
+   /** the default size of the {@link #getDocumentCache() document cache} */
+   public static final long DEFAULT_DOCUMENT_CACHE_BYTES = 64L * 1024 * 1024;
+
    static final Processor                                  PROC                   = new Processor(false);
    static final ConcurrentHashMap<String, XPathExecutable> XPATH_EXECUTABLE_CACHE = new ConcurrentHashMap<>();
-   static final Map<String, XdmNode>                       DOCUMENT_CACHE         = Collections.synchronizedMap(new LRUCache<>(30));
+   static final DocumentCache                              DOCUMENT_CACHE         = new DocumentCache(DEFAULT_DOCUMENT_CACHE_BYTES);
 
    public static String eval( String page, String xpath ) throws Exception {
       return eval(page, xpath, true);
@@ -36,7 +36,8 @@ public class XPather {
 
    public static String eval( String page, String xpath, boolean normalizeHtml ) throws Exception {
 
-      XdmNode source = DOCUMENT_CACHE.get(page);
+      DocumentCache.Key key = DocumentCache.key(page, normalizeHtml);
+      XdmNode source = DOCUMENT_CACHE.get(key);
       if ( source == null ) {
          Document document;
          if ( normalizeHtml ) {
@@ -50,7 +51,7 @@ public class XPather {
             document = loadXMLFromString(page);
          }
          source = PROC.newDocumentBuilder().build(new DOMSource(document));
-         DOCUMENT_CACHE.put(page, source);
+         DOCUMENT_CACHE.put(key, source);
       }
 
       XPathExecutable xPathExecutable = XPATH_EXECUTABLE_CACHE.get(xpath);
@@ -76,6 +77,13 @@ public class XPather {
       return s.toString();
    }
 
+   /**
+    * @return the cache of the parsed pages, shared by all evaluations, for its stats and to change its size
+    */
+   public static DocumentCache getDocumentCache() {
+      return DOCUMENT_CACHE;
+   }
+
    private static Document loadXMLFromString( String xml ) throws Exception {
       DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 
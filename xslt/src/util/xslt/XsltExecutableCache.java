@@ -0,0 +1,165 @@
+package util.xslt;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.transform.stream.StreamSource;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltExecutable;
+import util.xslt.Transformer.TransformationError;
+
+
+/**
+ * Caches compiled stylesheets keyed by their content, so that a stylesheet is compiled only once per {@link Processor},
+ * no matter how many threads and pages it is applied to. Compilation errors and warnings are cached together with the
+ * executable and handed out on every lookup, so callers get the same errors as with an uncached compile.
+ */
+public class XsltExecutableCache {
+
+   private final Processor                        _processor;
+   private final ConcurrentHashMap<String, Entry> _cache            = new ConcurrentHashMap<>();
+   private volatile int                           _maxSize;
+
+   private final LongAdder                        _hits             = new LongAdder();
+   private final LongAdder                        _misses           = new LongAdder();
+   private final LongAdder                        _evictions        = new LongAdder();
+   private final LongAdder                        _compileTimeNanos = new LongAdder();
+
+
+   public XsltExecutableCache( Processor processor, int maxSize ) {
+      _processor = processor;
+      _maxSize = maxSize;
+   }
+
+   public void clear() {
+      _cache.clear();
+   }
+
+   /**
+    * @param compileErrors errors and warnings of the compilation are added to this list, may be null
+    * @throws SaxonApiException if the stylesheet does not compile, the exception is cached as well
+    */
+   public XsltExecutable get( String xslt, List<TransformationError> compileErrors ) throws SaxonApiException {
+      Entry entry = _cache.get(xslt);
+      if ( entry == null ) {
+         Entry newEntry = new Entry();
+         entry = _cache.putIfAbsent(xslt, newEntry);
+         if ( entry == null ) {
+            entry = newEntry;
+            evictIfNecessary();
+         }
+      }
+      entry._lastAccess = System.nanoTime();
+      return entry.get(xslt, compileErrors);
+   }
+
+   public long getCompileTimeNanos() {
+      return _compileTimeNanos.sum();
+   }
+
+   public long getEvictions() {
+      return _evictions.sum();
+   }
+
+   public long getHits() {
+      return _hits.sum();
+   }
+
+   public int getMaxSize() {
+      return _maxSize;
+   }
+
+   public long getMisses() {
+      return _misses.sum();
+   }
+
+   public void setMaxSize( int maxSize ) {
+      _maxSize = maxSize;
+      evictIfNecessary();
+   }
+
+   public int size() {
+      return _cache.size();
+   }
+
+   @Override
+   public String toString() {
+      return "size: " + size() + ", hits: " + getHits() + ", misses: " + getMisses() + ", evictions: " + getEvictions() + ", compileTime: "
+         + (getCompileTimeNanos() / 1000000) + " ms";
+   }
+
+   /** removes the least recently used entries, called only when a new entry was added, so the linear scan is affordable */
+   private void evictIfNecessary() {
+      while ( _cache.size() > _maxSize ) {
+         String eldestKey = null;
+         long eldestAccess = Long.MAX_VALUE;
+         for ( Map.Entry<String, Entry> e : _cache.entrySet() ) {
+            if ( e.getValue()._lastAccess < eldestAccess ) {
+               eldestAccess = e.getValue()._lastAccess;
+               eldestKey = e.getKey();
+            }
+         }
+         if ( eldestKey == null || _cache.remove(eldestKey) == null ) {
+            return;
+         }
+         _evictions.increment();
+      }
+   }
+
+
+   private class Entry {
+
+      /** set on creation, so a new entry is the most recently used one, when it makes the cache evict */
+      volatile long                     _lastAccess = System.nanoTime();
+      private volatile boolean          _compiled;
+      private XsltExecutable            _executable;
+      private SaxonApiException         _exception;
+      private List<TransformationError> _compileErrors;
+
+
+      XsltExecutable get( String xslt, List<TransformationError> compileErrors ) throws SaxonApiException {
+         if ( _compiled ) {
+            _hits.increment();
+         } else {
+            compile(xslt);
+         }
+         if ( compileErrors != null ) {
+            compileErrors.addAll(_compileErrors);
+         }
+         if ( _exception != null ) {
+            throw _exception;
+         }
+         return _executable;
+      }
+
+      private synchronized void compile( String xslt ) {
+         if ( _compiled ) {
+            _hits.increment();
+            return;
+         }
+         _misses.increment();
+         List<TransformationError> compileErrors = new ArrayList<>();
+         long t = System.nanoTime();
+         try {
+            XsltCompiler comp = _processor.newXsltCompiler();
+            comp.setErrorListener(new Transformer.ErrorCollector(compileErrors));
+            _executable = comp.compile(new StreamSource(new StringReader(xslt)));
+         }
+         catch ( SaxonApiException argh ) {
+            _exception = argh;
+         }
+         finally {
+            _compileTimeNanos.add(System.nanoTime() - t);
+         }
+         _compileErrors = compileErrors;
+         _compiled = true;
+      }
+   }
+}
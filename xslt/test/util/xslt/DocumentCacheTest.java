@@ -0,0 +1,113 @@
+package util.xslt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.StringReader;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Test;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XdmNode;
+
+
+public class DocumentCacheTest {
+
+   private static final int PAGE_LENGTH = 100;
+   private static final int PAGE_BYTES  = PAGE_LENGTH * DocumentCache.ESTIMATED_BYTES_PER_CHAR;
+
+
+   private static XdmNode document( String name ) throws Exception {
+      return new Processor(false).newDocumentBuilder().build(new StreamSource(new StringReader("<" + name + "/>")));
+   }
+
+   private static String page( String name ) {
+      StringBuilder page = new StringBuilder("<" + name + ">");
+      while ( page.length() < PAGE_LENGTH ) {
+         page.append('.');
+      }
+      return page.toString();
+   }
+
+   @Test
+   public void testCachesPerPageAndParsing() throws Exception {
+      DocumentCache cache = new DocumentCache(10 * PAGE_BYTES);
+      XdmNode a = document("a");
+      cache.put(page("a"), true, a);
+
+      assertThat(cache.get(page("a"), true)).isSameAs(a);
+      assertThat(cache.get(page("a"), false)).isNull();
+      assertThat(cache.get(page("b"), true)).isNull();
+      assertThat(cache.getHits()).isEqualTo(1);
+      assertThat(cache.getMisses()).isEqualTo(2);
+      assertThat(cache.getBytes()).isEqualTo(PAGE_BYTES);
+   }
+
+   @Test
+   public void testKeysDifferInTheLastChars() {
+      // 8 chars are hashed per block, the chars after the last block separately
+      for ( String page : new String[] { "12345678", "123456789", "123456781", "1234567812345" } ) {
+         assertThat(DocumentCache.key(page, false)).isEqualTo(DocumentCache.key(new String(page), false));
+         assertThat(DocumentCache.key(page, false)).isNotEqualTo(DocumentCache.key(page.substring(0, page.length() - 1) + "x", false));
+      }
+   }
+
+   @Test
+   public void testEvictsLeastRecentlyUsed() throws Exception {
+      DocumentCache cache = new DocumentCache(3 * PAGE_BYTES);
+      cache.put(page("a"), false, document("a"));
+      cache.put(page("b"), false, document("b"));
+      cache.put(page("c"), false, document("c"));
+      cache.get(page("a"), false);
+      cache.put(page("d"), false, document("d")); // evicts b
+
+      assertThat(cache.size()).isEqualTo(3);
+      assertThat(cache.getEvictions()).isEqualTo(1);
+      assertThat(cache.getBytes()).isEqualTo(3 * PAGE_BYTES);
+      assertThat(cache.get(page("b"), false)).isNull();
+      assertThat(cache.get(page("a"), false)).isNotNull();
+      assertThat(cache.get(page("c"), false)).isNotNull();
+      assertThat(cache.get(page("d"), false)).isNotNull();
+
+      cache.put(page("e"), false, document("e")); // evicts a, which was read before c and d
+      assertThat(cache.get(page("a"), false)).isNull();
+      assertThat(cache.get(page("c"), false)).isNotNull();
+   }
+
+   @Test
+   public void testNewEntryIsKeptWhenFull() throws Exception {
+      DocumentCache cache = new DocumentCache(PAGE_BYTES);
+      cache.put(page("a"), false, document("a"));
+      XdmNode b = document("b");
+      cache.put(page("b"), false, b);
+
+      assertThat(cache.size()).isEqualTo(1);
+      assertThat(cache.get(page("b"), false)).isSameAs(b);
+   }
+
+   @Test
+   public void testDocumentHeavierThanCacheIsNotAdded() throws Exception {
+      DocumentCache cache = new DocumentCache(PAGE_BYTES - 1);
+      cache.put(page("a"), false, document("a"));
+
+      assertThat(cache.size()).isZero();
+      assertThat(cache.getBytes()).isZero();
+      assertThat(cache.getEvictions()).isZero();
+   }
+
+   @Test
+   public void testShrinkingEvictsLeastRecentlyUsed() throws Exception {
+      DocumentCache cache = new DocumentCache(3 * PAGE_BYTES);
+      cache.put(page("a"), false, document("a"));
+      cache.put(page("b"), false, document("b"));
+      cache.put(page("c"), false, document("c"));
+      cache.get(page("a"), false);
+
+      cache.setMaxBytes(PAGE_BYTES);
+
+      assertThat(cache.size()).isEqualTo(1);
+      assertThat(cache.getEvictions()).isEqualTo(2);
+      assertThat(cache.get(page("a"), false)).isNotNull();
+   }
+}
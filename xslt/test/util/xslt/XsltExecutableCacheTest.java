@@ -0,0 +1,79 @@
+package util.xslt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import util.xslt.Transformer.TransformationError;
+
+
+public class XsltExecutableCacheTest {
+
+   private static String xslt( String name ) {
+      return "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" //
+         + "<xsl:template match=\"/\"><" + name + "/></xsl:template></xsl:stylesheet>";
+   }
+
+   @Test
+   public void testCompilesOnlyOnce() throws Exception {
+      XsltExecutableCache cache = new XsltExecutableCache(new Processor(false), 10);
+
+      assertThat(cache.get(xslt("a"), null)).isSameAs(cache.get(xslt("a"), null));
+      assertThat(cache.getMisses()).isEqualTo(1);
+      assertThat(cache.getHits()).isEqualTo(1);
+   }
+
+   @Test
+   public void testCompileErrorsAreCached() {
+      XsltExecutableCache cache = new XsltExecutableCache(new Processor(false), 10);
+      for ( int i = 0; i < 2; i++ ) {
+         List<TransformationError> errors = new ArrayList<>();
+         try {
+            cache.get("<xsl:stylesheet", errors);
+            throw new AssertionError("compiled an invalid stylesheet");
+         }
+         catch ( SaxonApiException argh ) {
+            // expected
+         }
+         assertThat(errors).isNotEmpty();
+      }
+      assertThat(cache.getMisses()).isEqualTo(1);
+   }
+
+   @Test
+   public void testEvictsLeastRecentlyUsed() throws Exception {
+      XsltExecutableCache cache = new XsltExecutableCache(new Processor(false), 2);
+      cache.get(xslt("a"), null);
+      cache.get(xslt("b"), null);
+      cache.get(xslt("a"), null);
+      cache.get(xslt("c"), null); // evicts b
+
+      assertThat(cache.size()).isEqualTo(2);
+      assertThat(cache.getEvictions()).isEqualTo(1);
+      assertThat(cache.getMisses()).isEqualTo(3);
+
+      cache.get(xslt("c"), null);
+      cache.get(xslt("a"), null);
+      assertThat(cache.getMisses()).isEqualTo(3);
+
+      cache.get(xslt("b"), null);
+      assertThat(cache.getMisses()).isEqualTo(4);
+   }
+
+   @Test
+   public void testNewEntryIsKeptWhenFull() throws Exception {
+      XsltExecutableCache cache = new XsltExecutableCache(new Processor(false), 1);
+      cache.get(xslt("a"), null);
+      cache.get(xslt("b"), null);
+      cache.get(xslt("b"), null);
+
+      assertThat(cache.size()).isEqualTo(1);
+      assertThat(cache.getMisses()).isEqualTo(2);
+      assertThat(cache.getHits()).isEqualTo(1);
+   }
+}